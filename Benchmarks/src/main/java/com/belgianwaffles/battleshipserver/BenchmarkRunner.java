@@ -0,0 +1,39 @@
+package com.belgianwaffles.battleshipserver;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the JMH benchmarks with the GC profiler on, so allocation rates are always reported.
+ * Takes the normal JMH arguments, such as a benchmark name pattern or -f, -wi and -i.
+ * Use <code>loopback</code> as the first argument to run <code>LoopbackBenchmark</code> instead.
+ */
+public final class BenchmarkRunner {
+
+    // ----- Constants -----
+
+    private static final String ARG_LOOPBACK = "loopback";
+
+
+
+    // ----- Methods -----
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException, InterruptedException {
+        if (args.length > 0 && args[0].equals(ARG_LOOPBACK)) {
+            String[] rest = new String[args.length - 1];
+            System.arraycopy(args, 1, rest, 0, rest.length);
+            LoopbackBenchmark.main(rest);
+            return;
+        }
+
+        ChainedOptionsBuilder options = new OptionsBuilder()
+        .parent(new CommandLineOptions(args))
+        .addProfiler(GCProfiler.class);
+        new Runner(options.build()).run();
+    }
+}
@@ -0,0 +1,77 @@
+package com.belgianwaffles.battleshipserver;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Game steps that do not need connected clients
+ */
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GameEngineBenchmark {
+
+    // ----- Constants -----
+
+    private static final long SEED = 42;
+
+
+
+    // ----- Data -----
+
+    private Grid mGrid;
+    private SplittableRandom mRng;
+
+
+
+    // ----- Methods -----
+
+    /**
+     * Creates a grid with both fleets placed
+     */
+    @Setup
+    public void setup() {
+        this.mGrid = new Grid();
+        this.mGrid.generateShipsPlayer1();
+        this.mGrid.generateShipsPlayer2();
+        this.mRng = new SplittableRandom(SEED);
+    }
+
+
+
+    // ----- Benchmarks -----
+
+    @Benchmark
+    public void placeSharks() {
+        this.mGrid.placeSharks(GameEngine.SHARK_COUNT, this.mRng);
+    }
+
+    /**
+     * Plays a whole game on a copy of the grid, each player shooting the cells in order
+     * @return the winner
+     */
+    @Benchmark
+    public int playGame() {
+        GameEngine engine = new GameEngine(new Grid(this.mGrid), this.mRng);
+        int[] next = { 0, 0 };
+        while (!engine.isOver()) {
+            int player = engine.getCurrentPlayer();
+            engine.shoot(player, next[player - 1]++);
+        }
+        return engine.getWinner();
+    }
+}
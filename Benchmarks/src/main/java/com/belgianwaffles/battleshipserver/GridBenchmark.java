@@ -0,0 +1,89 @@
+package com.belgianwaffles.battleshipserver;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Grid work done by the game every turn, and the board generation done for every new game
+ */
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GridBenchmark {
+
+    // ----- Data -----
+
+    private Grid mPlayer1, mPlayer2;
+    private Grid mCombined;
+
+
+
+    // ----- Methods -----
+
+    /**
+     * Creates a board for each player and a combined game board with some shots
+     */
+    @Setup
+    public void setup() {
+        this.mPlayer1 = new Grid();
+        this.mPlayer1.generateShipsPlayer1();
+        this.mPlayer2 = new Grid();
+        this.mPlayer2.generateShipsPlayer2();
+        this.mCombined = new Grid();
+        this.mCombined.combine(this.mPlayer1, this.mPlayer2);
+
+        var cells = this.mCombined.getCells();
+        for (int i = 0; i < Grid.GRID_SIZE; i += 2) {
+            cells[i][i].setShotP1(true);
+            cells[i][Grid.GRID_SIZE - 1 - i].setShotP2(true);
+        }
+    }
+
+
+
+    // ----- Benchmarks -----
+
+    @Benchmark
+    public Grid combine() {
+        Grid grid = new Grid();
+        grid.combine(this.mPlayer1, this.mPlayer2);
+        return grid;
+    }
+
+    @Benchmark
+    public Grid generateShipsPlayer1() {
+        Grid grid = new Grid();
+        grid.generateShipsPlayer1();
+        return grid;
+    }
+
+    @Benchmark
+    public Grid viewPlayer1() {
+        Grid grid = new Grid(this.mCombined);
+        grid.getGridP1();
+        return grid;
+    }
+
+    @Benchmark
+    public int hitCounts() {
+        return this.mCombined.hitCountP1() + this.mCombined.hitCountP2();
+    }
+
+    @Benchmark
+    public int shipsAfloat() {
+        return this.mCombined.checkShipCount(1) + this.mCombined.checkShipCount(2);
+    }
+}
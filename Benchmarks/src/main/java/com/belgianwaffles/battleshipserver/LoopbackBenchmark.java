@@ -0,0 +1,317 @@
+package com.belgianwaffles.battleshipserver;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Plays whole games over loopback against a real <code>ConnectionManager</code> with synthetic clients.
+ * Each client shoots a random open cell as soon as it is its turn, and keeps joining new games until time is up.
+ * Reports moves per second and the time from sending a move to receiving the updated board.
+ * Arguments: [games] [seconds] [port], then any server arguments such as --selector or --workers
+ */
+public final class LoopbackBenchmark {
+
+    // ----- Constants -----
+
+    private static final int DEFAULT_GAMES   = 8;
+    private static final int DEFAULT_SECONDS = 10;
+    private static final int DEFAULT_PORT    = 27100;
+
+    // Longest to wait for clients to notice the end
+    private static final long JOIN_TIME      = 5000;
+
+    // Clients always see themselves as player 1
+    private static final byte SHOT           = (byte)0b00100000;
+
+
+
+    // ----- Methods -----
+
+    public static void main(String[] args) throws InterruptedException {
+        int games = (args.length > 0) ? Integer.parseInt(args[0]) : DEFAULT_GAMES;
+        int seconds = (args.length > 1) ? Integer.parseInt(args[1]) : DEFAULT_SECONDS;
+        int port = (args.length > 2) ? Integer.parseInt(args[2]) : DEFAULT_PORT;
+        ServerConfig config = ServerConfig.parse(Arrays.copyOfRange(args, Math.min(3, args.length), args.length));
+
+        // Log the same way the server does
+        FileLogger.initLogger();
+        if (config.useAsyncLogging()) {
+            FileLogger.startAsync(FileLogger.DEFAULT_CAPACITY, config.getLogPolicy());
+        }
+        FleetPool.startPool(config.getFleetPoolSize(), config.getFleetPoolWatermark());
+
+        // Start the server
+        ConnectionManager server;
+        try {
+            server = new ConnectionManager(port, config.getMode(), config.useVirtualThreads(), config.getWorkers());
+        } catch (IOException e) {
+            System.err.println("Could not open port " + port);
+            FleetPool.stopPool();
+            FileLogger.stopAsync();
+            return;
+        }
+        Thread serverThread = new Thread(server, "loopback-server");
+        serverThread.setDaemon(true);
+        serverThread.start();
+
+        // Two clients per game
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.SECONDS.toNanos(seconds);
+        SyntheticClient[] clients = new SyntheticClient[games * 2];
+        Thread[] threads = new Thread[clients.length];
+        for (int i = 0; i < clients.length; i++) {
+            clients[i] = new SyntheticClient(port, deadline, i);
+            threads[i] = new Thread(clients[i], "loopback-client-" + i);
+            threads[i].setDaemon(true);
+            threads[i].start();
+        }
+
+        // Stop everything once time is up
+        Thread.sleep(TimeUnit.SECONDS.toMillis(seconds));
+        long elapsed = System.nanoTime() - start;
+        for (SyntheticClient client : clients) {
+            client.stop();
+        }
+        for (Thread thread : threads) {
+            thread.join(JOIN_TIME);
+        }
+        server.close();
+        FleetPool.stopPool();
+        FileLogger.stopAsync();
+
+        report(clients, elapsed);
+    }
+
+    /**
+     * Prints the combined results of every client
+     * @param clients the clients that played
+     * @param elapsed nanoseconds the clients played for
+     */
+    private static void report(SyntheticClient[] clients, long elapsed) {
+        int games = 0;
+        int count = 0;
+        for (SyntheticClient client : clients) {
+            games += client.mGames;
+            count += client.mMoves;
+        }
+
+        long[] latencies = new long[count];
+        int index = 0;
+        for (SyntheticClient client : clients) {
+            System.arraycopy(client.mLatencies, 0, latencies, index, client.mMoves);
+            index += client.mMoves;
+        }
+        Arrays.sort(latencies);
+
+        // Each game ends for both of its clients
+        System.out.println("Games finished: " + (games / 2));
+        System.out.println("Moves: " + count);
+        System.out.printf("Moves/second: %.1f%n", count / (elapsed / 1e9));
+        if (count > 0) {
+            System.out.printf("Turn latency p50: %.3f ms, p99: %.3f ms, max: %.3f ms%n",
+            percentile(latencies, 0.50), percentile(latencies, 0.99), latencies[count - 1] / 1e6);
+        }
+    }
+
+    /**
+     * Gets a percentile of sorted latencies
+     * @param sorted latencies in nanoseconds, smallest first
+     * @param fraction the percentile, 0.99 for p99
+     * @return the latency in milliseconds
+     */
+    private static double percentile(long[] sorted, double fraction) {
+        int index = (int)Math.ceil(fraction * sorted.length) - 1;
+        return sorted[Math.max(0, index)] / 1e6;
+    }
+
+
+
+    // ----- Subclasses -----
+
+    /**
+     * A client that confirms the first board it is given and then shoots whenever it is its turn
+     */
+    private static final class SyntheticClient implements Runnable {
+
+        // ----- Data -----
+
+        private final int mPort;
+        private final long mDeadline;
+        private final Random mRng;
+        private volatile Socket mSocket;
+        private volatile boolean mStopped;
+
+        // Only read once the client thread is done
+        private long[] mLatencies;
+        private int mMoves;
+        private int mGames;
+
+        // Current game
+        private Grid mBoard;
+        private int mVersion;
+        private long mMoveSent;
+
+
+
+        // ----- Methods -----
+
+        /**
+         * Creates a client
+         * @param port the port of the server
+         * @param deadline time in nanoseconds to stop shooting at
+         * @param seed seed for choosing cells
+         */
+        private SyntheticClient(int port, long deadline, long seed) {
+            this.mPort = port;
+            this.mDeadline = deadline;
+            this.mRng = new Random(seed);
+            this.mLatencies = new long[1024];
+            this.mMoves = 0;
+            this.mGames = 0;
+            this.mStopped = false;
+        }
+
+        /**
+         * Joins games until stopped
+         */
+        @Override
+        public void run() {
+            while (!this.mStopped) {
+                try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), this.mPort)) {
+                    socket.setTcpNoDelay(true);
+                    this.mSocket = socket;
+                    this.play(socket);
+                } catch (IOException e) {
+                    // Server closed the game or the benchmark is over, join another if there is time
+                }
+            }
+        }
+
+        /**
+         * Stops the client, closing its connection
+         */
+        private void stop() {
+            this.mStopped = true;
+            Socket socket = this.mSocket;
+            if (socket != null) {
+                try {
+                    socket.close();
+                } catch (IOException e) {
+                    // Already closed
+                }
+            }
+        }
+
+        /**
+         * Plays a single game
+         * @param socket connection to the server
+         * @throws IOException once the connection closes
+         */
+        private void play(Socket socket) throws IOException {
+            DataInputStream input = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            OutputStream output = socket.getOutputStream();
+            byte[] header = new byte[Packet.HEADER_SIZE];
+            boolean placed = false;
+            this.mBoard = null;
+            this.mMoveSent = 0;
+
+            while (true) {
+                // Read a whole packet
+                input.readFully(header);
+                byte[] frame = new byte[Packet.frameLength(header)];
+                System.arraycopy(header, 0, frame, 0, Packet.HEADER_SIZE);
+                input.readFully(frame, Packet.HEADER_SIZE, frame.length - Packet.HEADER_SIZE);
+                Packet packet = new Packet();
+                packet.wrap(frame);
+
+                switch (packet.getType()) {
+                    case Packet.PACKET_TYPE_PING -> output.write(Packet.sharedPing().getBuffer());
+                    case Packet.PACKET_TYPE_GRID -> {
+                        // The first grid is the layout to confirm
+                        if (!placed) {
+                            placed = true;
+                            Packet confirm = new Packet();
+                            confirm.addFlag(Packet.PACKET_FLAG_CONFIRM);
+                            confirm.serialize(packet.getGrid());
+                            output.write(confirm.getBuffer());
+                            continue;
+                        }
+                        this.mBoard = packet.getGrid();
+                        this.mVersion = 0;
+                        this.onBoard(output, packet.isTurn());
+                    }
+                    case Packet.PACKET_TYPE_DELTA -> {
+                        int version = packet.getVersion();
+                        if (this.mBoard == null || version != ((this.mVersion + 1) & Packet.DELTA_VERSION_MASK)) {
+                            Packet resync = new Packet();
+                            resync.addFlag(Packet.PACKET_FLAG_RESYNC);
+                            resync.serialize(this.mVersion);
+                            output.write(resync.getBuffer());
+                            continue;
+                        }
+                        packet.applyDelta(this.mBoard);
+                        this.mVersion = version;
+                        this.onBoard(output, packet.isTurn());
+                    }
+                    case Packet.PACKET_TYPE_FLAGS -> {
+                        this.mGames++;
+                        return;
+                    }
+                    default -> {
+                        // Images are not needed
+                    }
+                }
+            }
+        }
+
+        /**
+         * Records the answer to the last move and shoots again if it is this clients turn
+         * @param output stream to the server
+         * @param turn true if it is this clients turn
+         * @throws IOException if the move could not be sent
+         */
+        private void onBoard(OutputStream output, boolean turn) throws IOException {
+            long now = System.nanoTime();
+            if (this.mMoveSent != 0) {
+                this.record(now - this.mMoveSent);
+                this.mMoveSent = 0;
+            }
+            if (!turn || now >= this.mDeadline) {
+                return;
+            }
+
+            // Random open cell, scanning on from there if it was already shot
+            int cells = Grid.GRID_SIZE * Grid.GRID_SIZE;
+            int start = this.mRng.nextInt(cells);
+            for (int i = 0; i < cells; i++) {
+                int index = (start + i) % cells;
+                byte cell = this.mBoard.getCell(index / Grid.GRID_SIZE, index % Grid.GRID_SIZE);
+                if ((cell & SHOT) == 0) {
+                    Packet move = new Packet();
+                    move.serialize(this.mVersion, index, (byte)(cell | SHOT));
+                    this.mMoveSent = System.nanoTime();
+                    output.write(move.getBuffer());
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Adds a turn latency
+         * @param nanos the latency in nanoseconds
+         */
+        private void record(long nanos) {
+            if (this.mMoves == this.mLatencies.length) {
+                this.mLatencies = Arrays.copyOf(this.mLatencies, this.mMoves * 2);
+            }
+            this.mLatencies[this.mMoves++] = nanos;
+        }
+    }
+}
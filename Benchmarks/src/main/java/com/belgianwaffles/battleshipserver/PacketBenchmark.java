@@ -0,0 +1,97 @@
+package com.belgianwaffles.battleshipserver;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Packing and reading packets, done for every packet sent or received
+ */
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PacketBenchmark {
+
+    // ----- Data -----
+
+    private Grid mGrid;
+    private Grid mMoved;
+    private byte[] mFrame;
+    private Packet mReceived;
+
+
+
+    // ----- Methods -----
+
+    /**
+     * Creates a grid with ships and a received copy of its packet
+     */
+    @Setup
+    public void setup() {
+        this.mGrid = new Grid();
+        this.mGrid.generateShipsPlayer1();
+        this.mGrid.generateShipsPlayer2();
+        this.mMoved = new Grid(this.mGrid);
+        this.mMoved.getCells()[4][4].setShotP1(true);
+
+        Packet packet = new Packet();
+        packet.serialize(this.mGrid);
+        this.mFrame = packet.getBuffer().clone();
+        this.mReceived = new Packet();
+        this.mReceived.wrap(this.mFrame);
+    }
+
+
+
+    // ----- Benchmarks -----
+
+    @Benchmark
+    public byte[] serializeGrid() {
+        Packet packet = new Packet();
+        packet.serialize(this.mGrid);
+        return packet.getBuffer();
+    }
+
+    @Benchmark
+    public byte[] serializeDelta() {
+        Packet packet = new Packet();
+        packet.serialize(1, this.mGrid, this.mMoved);
+        return packet.getBuffer();
+    }
+
+    @Benchmark
+    public Packet deserializeGrid() {
+        Packet packet = new Packet();
+        packet.deserialize(this.mFrame);
+        return packet;
+    }
+
+    @Benchmark
+    public Packet wrapGrid() {
+        Packet packet = new Packet();
+        packet.wrap(this.mFrame);
+        return packet;
+    }
+
+    @Benchmark
+    public Grid readGrid() {
+        return this.mReceived.getGrid();
+    }
+
+    @Benchmark
+    public int headerLength() {
+        return this.mReceived.getLength();
+    }
+}
@@ -0,0 +1,262 @@
+package com.belgianwaffles.battleship;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.swing.ImageIcon;
+
+/**
+ * Keeps images so they are only read and decoded once.
+ * Downloaded assets are stored on disk under their SHA-256, so they are kept between sessions,
+ * and the least recently used files are removed once the folder grows past its size limit.
+ * Decoded images are also kept in memory, for downloaded assets and files from the assets folder alike.
+ */
+public class AssetCache {
+
+    // Folder downloaded assets are kept in between sessions
+    public static final Path DEFAULT_DIRECTORY = Path.of(System.getProperty("user.home"), ".battleship", "assets");
+    public static final long DEFAULT_MAX_BYTES = 64L << 20;
+    // Decoded backgrounds are large, so only a few are kept
+    public static final int DEFAULT_MAX_IMAGES = 16;
+
+    private static final String HASH_ALGORITHM = "SHA-256";
+    private static final String TEMP_SUFFIX = ".part";
+
+    private static AssetCache shared;
+
+    // On disk assets by hash, oldest use first
+    private final Path directory;
+    private final long maxBytes;
+    private final LinkedHashMap<String, Long> files;
+    private long totalBytes;
+
+    // Decoded images by hash or path, oldest use first
+    private final LinkedHashMap<String, ImageIcon> images;
+
+    /**
+     * Opens a cache, finding the assets already stored in the folder
+     * @param directory the folder to store downloaded assets in, created if missing
+     * @param maxBytes most bytes of downloaded assets kept on disk
+     * @param maxImages most decoded images kept in memory
+     */
+    public AssetCache(Path directory, long maxBytes, int maxImages) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        this.files = new LinkedHashMap<>(16, 0.75f, true);
+        this.totalBytes = 0;
+        this.images = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, ImageIcon> eldest) {
+                return this.size() > maxImages;
+            }
+        };
+        this.scan();
+    }
+
+    /**
+     * Gets the cache shared by the whole client
+     * @return the shared cache
+     */
+    public static synchronized AssetCache shared() {
+        if (shared == null) {
+            shared = new AssetCache(DEFAULT_DIRECTORY, DEFAULT_MAX_BYTES, DEFAULT_MAX_IMAGES);
+        }
+        return shared;
+    }
+
+    /**
+     * Gets a downloaded asset, from memory or else from disk
+     * @param hash the SHA-256 of the asset
+     * @return the image, null if the asset is not held
+     */
+    public synchronized ImageIcon get(byte[] hash) {
+        String key = HexFormat.of().formatHex(hash);
+        ImageIcon image = this.images.get(key);
+        if (image != null) {
+            this.touch(key);
+            return image;
+        }
+        if (!this.files.containsKey(key)) {
+            return null;
+        }
+
+        // Files that no longer match their name are thrown out
+        byte[] data;
+        try {
+            data = Files.readAllBytes(this.directory.resolve(key));
+        } catch (IOException e) {
+            data = null;
+        }
+        if (data == null || !MessageDigest.isEqual(hash, hash(data))) {
+            this.remove(key);
+            return null;
+        }
+        this.touch(key);
+        image = new ImageIcon(data);
+        this.images.put(key, image);
+        return image;
+    }
+
+    /**
+     * Stores a downloaded asset on disk and in memory
+     * @param hash the SHA-256 of the asset, already checked against the data
+     * @param data the asset
+     * @return the decoded image
+     */
+    public synchronized ImageIcon put(byte[] hash, byte[] data) {
+        String key = HexFormat.of().formatHex(hash);
+        ImageIcon image = new ImageIcon(data);
+        this.images.put(key, image);
+        if (this.files.containsKey(key) || data.length > this.maxBytes) {
+            return image;
+        }
+
+        // Written under another name first, so a crash never leaves a partial file under the hash
+        Path temp = this.directory.resolve(key + TEMP_SUFFIX);
+        try {
+            Files.createDirectories(this.directory);
+            Files.write(temp, data);
+            Files.move(temp, this.directory.resolve(key), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.out.println("Could not store asset " + key);
+            return image;
+        }
+        this.files.put(key, (long)data.length);
+        this.totalBytes += data.length;
+        this.evict();
+        return image;
+    }
+
+    /**
+     * Gets an image from the assets folder, decoding it only the first time
+     * @param path the path of the image file
+     * @return the image
+     */
+    public synchronized ImageIcon load(String path) {
+        return this.images.computeIfAbsent(path, ImageIcon::new);
+    }
+
+    /**
+     * Gets the bytes of downloaded assets kept on disk
+     * @return the total size in bytes
+     */
+    public synchronized long getTotalBytes() {
+        return this.totalBytes;
+    }
+
+    /**
+     * Hashes an asset the same way the server does
+     * @param data the asset
+     * @return the SHA-256 of the asset
+     */
+    public static byte[] hash(byte[] data) {
+        try {
+            return MessageDigest.getInstance(HASH_ALGORITHM).digest(data);
+        } catch (NoSuchAlgorithmException e) {
+            return new byte[0];
+        }
+    }
+
+    // finds the assets kept by earlier sessions, oldest use first
+    private void scan() {
+        List<Path> found = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(this.directory)) {
+            for (Path path : stream) {
+                if (isHashName(path.getFileName().toString())) {
+                    found.add(path);
+                }
+            }
+        } catch (IOException e) {
+            // Nothing stored yet
+            return;
+        }
+        found.sort(Comparator.comparing(AssetCache::lastUsed));
+        for (Path path : found) {
+            try {
+                long size = Files.size(path);
+                this.files.put(path.getFileName().toString(), size);
+                this.totalBytes += size;
+            } catch (IOException e) {
+                // Removed while scanning
+            }
+        }
+        this.evict();
+    }
+
+    // marks a stored asset as just used, the file time carries the order over to the next session
+    private void touch(String key) {
+        if (this.files.get(key) == null) {
+            return;
+        }
+        try {
+            Files.setLastModifiedTime(this.directory.resolve(key), FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            // Order is only lost for the next session
+        }
+    }
+
+    // removes the least recently used assets until the folder fits its limit
+    private void evict() {
+        Iterator<Map.Entry<String, Long>> oldest = this.files.entrySet().iterator();
+        while (this.totalBytes > this.maxBytes && oldest.hasNext()) {
+            Map.Entry<String, Long> entry = oldest.next();
+            oldest.remove();
+            this.totalBytes -= entry.getValue();
+            this.images.remove(entry.getKey());
+            try {
+                Files.deleteIfExists(this.directory.resolve(entry.getKey()));
+            } catch (IOException e) {
+                System.out.println("Could not remove asset " + entry.getKey());
+            }
+        }
+    }
+
+    // removes a single stored asset
+    private void remove(String key) {
+        Long size = this.files.remove(key);
+        if (size != null) {
+            this.totalBytes -= size;
+        }
+        this.images.remove(key);
+        try {
+            Files.deleteIfExists(this.directory.resolve(key));
+        } catch (IOException e) {
+            System.out.println("Could not remove asset " + key);
+        }
+    }
+
+    // checks if a file name is a hex SHA-256
+    private static boolean isHashName(String name) {
+        if (name.length() != 64) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            if (Character.digit(name.charAt(i), 16) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // gets when a stored asset was last used
+    private static FileTime lastUsed(Path path) {
+        try {
+            return Files.getLastModifiedTime(path);
+        } catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+}
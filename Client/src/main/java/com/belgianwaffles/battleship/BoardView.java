@@ -0,0 +1,217 @@
+package com.belgianwaffles.battleship;
+
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.util.Arrays;
+
+import javax.swing.BorderFactory;
+import javax.swing.JComponent;
+import javax.swing.UIManager;
+import javax.swing.border.Border;
+
+import com.belgianwaffles.battleship.Grid.GridCell;
+
+/**
+ * One board painted straight from the grid, instead of a label per cell.
+ * Each update works out which tile every cell shows and only repaints the cells that changed.
+ */
+public final class BoardView extends JComponent {
+
+    private static final long serialVersionUID = 1L;
+    private static final int CELLS = Constants.BOARD_DIMENSIONS;
+    private static final int NO_CELL = -1;
+    private static final int HOVER_BORDER_WIDTH = 4;
+
+    // Borders are immutable, so every cell of every board shares them
+    private static final Border CELL_BORDER = BorderFactory.createLineBorder(Color.black);
+    private static final Border HOVER_BORDER = BorderFactory.createLineBorder(Color.blue, HOVER_BORDER_WIDTH);
+
+    private final transient TileAtlas tiles;
+    private final boolean opponent;
+
+    // Tile kind of every cell, row by row, NO_CELL before the first grid
+    private final int[] kinds;
+    private int hovered;
+
+    /**
+     * Creates an empty board
+     * @param tiles the tile images to paint with
+     * @param opponent true to show the shots at the opponent, false to show the players own fleet
+     */
+    public BoardView(TileAtlas tiles, boolean opponent) {
+        this.tiles = tiles;
+        this.opponent = opponent;
+        this.kinds = new int[CELLS * CELLS];
+        this.hovered = NO_CELL;
+        this.clear();
+
+        // every pixel is painted, with the panel colour behind see through tiles
+        this.setOpaque(true);
+        this.setBackground(UIManager.getColor("Panel.background"));
+    }
+
+    /**
+     * Shows a grid, repainting only the cells whose tile changed
+     * @param grid the grid to show
+     */
+    public void setGrid(Grid grid) {
+        GridCell[][] cells = grid.getCells();
+        for (int i = 0; i < CELLS; i++) {
+            for (int j = 0; j < CELLS; j++) {
+                int kind = this.opponent ? opponentTile(cells[i][j]) : playerTile(cells[i][j]);
+                if (this.kinds[i * CELLS + j] != kind) {
+                    this.kinds[i * CELLS + j] = kind;
+                    this.repaintCell(i * CELLS + j);
+                }
+            }
+        }
+    }
+
+    /**
+     * Shows every cell as an empty tile, such as between games
+     */
+    public void clear() {
+        Arrays.fill(this.kinds, TileAtlas.TILE);
+        this.hovered = NO_CELL;
+        this.repaint();
+    }
+
+    /**
+     * Highlights a cell, repainting only the old and new highlighted cells
+     * @param row the row of the cell, -1 to highlight nothing
+     * @param column the column of the cell, -1 to highlight nothing
+     */
+    public void setHover(int row, int column) {
+        int cell = (row < 0 || column < 0 || row >= CELLS || column >= CELLS) ? NO_CELL : row * CELLS + column;
+        if (cell == this.hovered) {
+            return;
+        }
+        this.repaintCell(this.hovered);
+        this.hovered = cell;
+        this.repaintCell(cell);
+    }
+
+    /**
+     * Highlights the cell under a point
+     * @param point the point in this boards coordinates, outside the board highlights nothing
+     */
+    public void setHoverAt(Point point) {
+        Point cell = this.cellAt(point);
+        if (cell == null) {
+            this.setHover(NO_CELL, NO_CELL);
+            return;
+        }
+        this.setHover(cell.y, cell.x);
+    }
+
+    /**
+     * Gets the cell under a point, found straight from the cell size
+     * @param point the point in this boards coordinates
+     * @return the cell with the column as x and the row as y, null if the point is outside the board
+     */
+    public Point cellAt(Point point) {
+        if (point.x < 0 || point.y < 0 || point.x >= this.getWidth() || point.y >= this.getHeight()) {
+            return null;
+        }
+        return new Point(this.columnAt(point.x), this.rowAt(point.y));
+    }
+
+    /**
+     * Gets the tile kind a cell shows
+     * @param row the row of the cell
+     * @param column the column of the cell
+     * @return the tile kind, use TileAtlas.TILE and so on
+     */
+    public int getTile(int row, int column) {
+        return this.kinds[row * CELLS + column];
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+
+        // only the cells inside the area being repainted are drawn
+        Rectangle clip = g.getClipBounds();
+        if (clip == null) {
+            clip = new Rectangle(0, 0, this.getWidth(), this.getHeight());
+        }
+        int firstColumn = Math.max(0, this.columnAt(clip.x));
+        int lastColumn = Math.min(CELLS - 1, this.columnAt(clip.x + clip.width - 1));
+        int firstRow = Math.max(0, this.rowAt(clip.y));
+        int lastRow = Math.min(CELLS - 1, this.rowAt(clip.y + clip.height - 1));
+        g.setColor(this.getBackground());
+        g.fillRect(clip.x, clip.y, clip.width, clip.height);
+
+        for (int i = firstRow; i <= lastRow; i++) {
+            for (int j = firstColumn; j <= lastColumn; j++) {
+                int x = this.cellX(j), y = this.cellY(i);
+                int w = this.cellX(j + 1) - x, h = this.cellY(i + 1) - y;
+                g.drawImage(this.tiles.getIcon(this.kinds[i * CELLS + j]).getImage(), x, y, w, h, null);
+                Border border = (i * CELLS + j == this.hovered) ? HOVER_BORDER : CELL_BORDER;
+                border.paintBorder(this, g, x, y, w, h);
+            }
+        }
+    }
+
+    // repaints a single cell
+    private void repaintCell(int cell) {
+        if (cell == NO_CELL) {
+            return;
+        }
+        int i = cell / CELLS, j = cell % CELLS;
+        int x = this.cellX(j), y = this.cellY(i);
+        this.repaint(x, y, this.cellX(j + 1) - x, this.cellY(i + 1) - y);
+    }
+
+    // left edge of a column, columns split the width evenly so the last one ends at the edge
+    private int cellX(int column) {
+        return column * this.getWidth() / CELLS;
+    }
+
+    // top edge of a row
+    private int cellY(int row) {
+        return row * this.getHeight() / CELLS;
+    }
+
+    // column under an x position
+    private int columnAt(int x) {
+        return (this.getWidth() <= 0) ? 0 : x * CELLS / this.getWidth();
+    }
+
+    // row under a y position
+    private int rowAt(int y) {
+        return (this.getHeight() <= 0) ? 0 : y * CELLS / this.getHeight();
+    }
+
+    // tile for a cell of the opponents board, showing this players shots
+    private static int opponentTile(GridCell cell) {
+        if (cell.hasSharkP1()) {
+            return TileAtlas.SHARK;
+        }
+        if (cell.hasShipP2() && cell.hasSunkP2() && cell.hasShotP1()) {
+            return TileAtlas.SHIP_HIT;
+        }
+        if (cell.hasShipP2() && cell.hasShotP1()) {
+            return TileAtlas.HIT;
+        }
+        if (cell.hasShotP1()) {
+            return TileAtlas.MISS;
+        }
+        return TileAtlas.TILE;
+    }
+
+    // tile for a cell of the players own board, showing the opponents shots
+    private static int playerTile(GridCell cell) {
+        if (cell.hasShipP1() && cell.hasShotP2()) {
+            return TileAtlas.SHIP_HIT;
+        }
+        if (cell.hasShipP1()) {
+            return TileAtlas.SHIP;
+        }
+        if (cell.hasShotP2()) {
+            return TileAtlas.MISS;
+        }
+        return TileAtlas.TILE;
+    }
+}
@@ -5,6 +5,7 @@ import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.Socket;
+import java.util.Arrays;
 
 import javax.swing.ImageIcon;
 
@@ -19,6 +20,15 @@ public class ClientConnectionManager implements Runnable{
 
     Socket connectionSocket;
 
+    // Last board received from the server, deltas are applied on top of it
+    private Grid board;
+    private volatile int boardVersion;
+
+    // Asset being downloaded, null when there is none
+    private byte[] assetHash;
+    private byte[] assetData;
+    private int assetReceived;
+
     public ClientConnectionManager(GameWindow game) {
         this.game = game;
     }
@@ -48,6 +58,8 @@ public class ClientConnectionManager implements Runnable{
                     case Packet.PACKET_TYPE_GRID -> this.getGridPacket(packet);
                     case Packet.PACKET_TYPE_FLAGS -> this.getFlags(packet);
                     case Packet.PACKET_TYPE_IMAGE -> this.getImage(packet);
+                    case Packet.PACKET_TYPE_DELTA -> this.getDeltaPacket(packet);
+                    case Packet.PACKET_TYPE_ASSET -> this.getAssetPacket(packet);
                 }
             } catch (IOException e) {
                 break;
@@ -60,6 +72,10 @@ public class ClientConnectionManager implements Runnable{
         Grid grid = packet.getGrid();
         boolean turn = packet.isTurn();
 
+        // Full grids start the board versions over
+        board = new Grid(grid);
+        boardVersion = 0;
+
         if (!game.isGameStarted()) {
             game.startGame(grid);
         }
@@ -70,6 +86,26 @@ public class ClientConnectionManager implements Runnable{
         game.updatePlayerBoard(newGrid);
     }
 
+    private void getDeltaPacket(Packet packet) throws IOException {
+
+        // Deltas only apply to the board right before them, otherwise ask for a full grid
+        int version = packet.getVersion();
+        if (board == null || version != ((boardVersion + 1) & Packet.DELTA_VERSION_MASK)) {
+            this.sendResyncRequest();
+            return;
+        }
+        Grid grid = new Grid(board);
+        if (!packet.applyDelta(grid)) {
+            this.sendResyncRequest();
+            return;
+        }
+        board = grid;
+        boardVersion = version;
+
+        game.setTurn(packet.isTurn());
+        game.updatePlayerBoard(new Grid(grid));
+    }
+
     private void getImage(Packet packet) {
 
         ImageIcon background = packet.getImage();
@@ -77,6 +113,68 @@ public class ClientConnectionManager implements Runnable{
 
     }
 
+    private void getAssetPacket(Packet packet) throws IOException {
+
+        if (packet.hasFlag(Packet.PACKET_FLAG_ASSET_OFFER)) {
+            this.getAssetOffer(packet);
+        }
+        else if (packet.hasFlag(Packet.PACKET_FLAG_ASSET_CHUNK)) {
+            this.getAssetChunk(packet);
+        }
+    }
+
+    private void getAssetOffer(Packet packet) throws IOException {
+
+        // Assets already held, from this session or an earlier one, are never downloaded again
+        byte[] hash = packet.getAssetHash();
+        ImageIcon held = AssetCache.shared().get(hash);
+        if (held != null) {
+            this.game.setGameBackground(held);
+            return;
+        }
+
+        assetHash = hash;
+        assetData = new byte[packet.getAssetSize()];
+        assetReceived = 0;
+        this.sendAssetRequest(hash);
+    }
+
+    private void getAssetChunk(Packet packet) {
+
+        // Ignore chunks of anything but the asset being downloaded
+        if (assetData == null || !Arrays.equals(assetHash, packet.getAssetHash())) {
+            return;
+        }
+        int offset = packet.getAssetOffset();
+        int length = packet.getAssetLength();
+        if (offset < 0 || length < 0 || offset + length > assetData.length) {
+            return;
+        }
+        packet.copyAssetData(assetData);
+        assetReceived += length;
+        if (assetReceived < assetData.length) {
+            return;
+        }
+
+        // Whole asset is here, only use it if it is what was offered
+        byte[] data = assetData;
+        assetData = null;
+        if (!Arrays.equals(assetHash, AssetCache.hash(data))) {
+            System.out.println("Downloaded asset did not match its hash");
+            return;
+        }
+        ImageIcon background = AssetCache.shared().put(assetHash, data);
+        this.game.setGameBackground(background);
+    }
+
+    public void sendAssetRequest(byte[] hash) throws IOException {
+        Packet packet = new Packet();
+        packet.serialize(hash);
+
+        var output = new DataOutputStream(connectionSocket.getOutputStream());
+        output.write(packet.getBuffer());
+    }
+
     public void sendGridToServer(Grid grid) throws IOException {
         Packet packet = new Packet();
         packet.serialize(grid);
@@ -85,6 +183,23 @@ public class ClientConnectionManager implements Runnable{
         output.write(packet.getBuffer());
     }
 
+    public void sendShotToServer(int row, int column, byte cell) throws IOException {
+        Packet packet = new Packet();
+        packet.serialize(boardVersion, row * Grid.GRID_SIZE + column, cell);
+
+        var output = new DataOutputStream(connectionSocket.getOutputStream());
+        output.write(packet.getBuffer());
+    }
+
+    public void sendResyncRequest() throws IOException {
+        Packet packet = new Packet();
+        packet.addFlag(Packet.PACKET_FLAG_RESYNC);
+        packet.serialize(boardVersion);
+
+        var output = new DataOutputStream(connectionSocket.getOutputStream());
+        output.write(packet.getBuffer());
+    }
+
     public void sendGridRefreshRequest(Grid grid) throws IOException {
         Packet packet = new Packet();
         packet.addFlag(Packet.PACKET_FLAG_REFRESH);
@@ -2,8 +2,6 @@ package com.belgianwaffles.battleship;
 
 import java.awt.Color;
 import java.awt.Font;
-import java.awt.GridLayout;
-import java.awt.MouseInfo;
 import java.awt.Point;
 import java.awt.Toolkit;
 import java.awt.Canvas;
@@ -14,6 +12,7 @@ import java.awt.event.ComponentAdapter;
 import java.awt.event.ComponentEvent;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
+import java.awt.event.MouseMotionAdapter;
 import java.io.IOException;
 import java.util.ArrayList;
 
@@ -23,8 +22,8 @@ import javax.swing.JButton;
 import javax.swing.JComponent;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
-import javax.swing.JPanel;
 import javax.swing.SwingConstants;
+import javax.swing.SwingUtilities;
 import javax.swing.Timer;
 import javax.swing.WindowConstants;
 
@@ -33,9 +32,10 @@ import com.belgianwaffles.battleship.Grid.GridCell;
 public class GameWindow extends JFrame implements ActionListener {
 
     // window specfic constants
-    private int REFRESH_RATE = 10;
-    private int LOADING_DISPLAY_DELAY = 50;
-    private int SELECTED_BORDER_WIDTH = 4;
+    // time between each step of the waiting animation
+    private int LOADING_DISPLAY_DELAY = 500;
+    // images are only rescaled once the window has stopped changing size for this long
+    private int RESCALE_DELAY = 150;
 
     // button definitions
     private JComponent b_Connect;
@@ -44,26 +44,21 @@ public class GameWindow extends JFrame implements ActionListener {
     private JButton b_Ready;
 
     // label definitions
-    private JLabel[][] playerBoardButtons;
-    private JLabel[][] opponentBoardButtons;
     private JLabel l_title;
     private JLabel l_wait;
     private JLabel l_turnDisplay;
 
-    // board panel definitions
-    private JPanel playerBoard = new JPanel();
-    private JPanel opBoard = new JPanel();
+    // board definitions
+    private BoardView playerBoard;
+    private BoardView opBoard;
     private JLabel background;
 
 
     // image definitions
-    private AssetImage tileImg;
-    private AssetImage shipImg;
-    private AssetImage shipShotImg;
-    private AssetImage missImg;
-    private AssetImage sugarSharkImg;
-    private AssetImage shotImg;
+    private transient TileAtlas tiles;
+    private AssetImage backgroundImg;
     private ImageIcon back;
+    private Timer rescaleTimer;
 
     // game variables
     private Grid board;
@@ -128,14 +123,14 @@ public class GameWindow extends JFrame implements ActionListener {
         this.setDefaultCloseOperation(WindowConstants.EXIT_ON_CLOSE);
         this.inGame = false;
 
-        ImageIcon back = new ImageIcon(Constants.ASSET_PATH+"home_page.png");
+        ImageIcon back = AssetCache.shared().load(Constants.ASSET_PATH + "home_page.png");
 
         this.setGameBackground(back);
         this.setContentPane(this.background);
 
         /////// Buttons ////////
-        AssetImage connectImage = new AssetImage(new ImageIcon(Constants.ASSET_PATH + "start_button.png"), 0.4, 0.15, this.Width(), this.Height());
-        AssetImage exitImage = new AssetImage(new ImageIcon(Constants.ASSET_PATH + "exit_button.png"), 0.4, 0.15, this.Width(), this.Height());
+        AssetImage connectImage = new AssetImage(AssetCache.shared().load(Constants.ASSET_PATH + "start_button.png"), 0.4, 0.15, this.Width(), this.Height());
+        AssetImage exitImage = new AssetImage(AssetCache.shared().load(Constants.ASSET_PATH + "exit_button.png"), 0.4, 0.15, this.Width(), this.Height());
         b_Connect = new JLabel(connectImage);
         // b_Connect.setBorder(BorderFactory.createLineBorder(Color.black, 10));
         b_Connect.setFont(new Font(Constants.FONT, Font.PLAIN, 60));
@@ -159,22 +154,15 @@ public class GameWindow extends JFrame implements ActionListener {
         buttonInit(b_Ready, 1 - (boardXBound + boardWidth) + (boardWidth/4), 0.75, boardWidth / 2, 0.1);
 
 
-        playerBoardButtons = new JLabel[Constants.BOARD_DIMENSIONS][Constants.BOARD_DIMENSIONS];
-        opponentBoardButtons = new JLabel[Constants.BOARD_DIMENSIONS][Constants.BOARD_DIMENSIONS];
-        for (int x = 0; x < Constants.BOARD_DIMENSIONS; x++) {
-        for (int y = 0; y < Constants.BOARD_DIMENSIONS; y++) {
-            opponentBoardButtons[x][y] = new JLabel();
-            playerBoardButtons[x][y] = new JLabel();
-        }}
-
+        /////// Player Boards /////////
 
+        // both boards paint their cells from the same tile images
+        tiles = new TileAtlas();
 
-        /////// Player Boards /////////
-        
-        opBoard.setLayout(new GridLayout(Constants.BOARD_DIMENSIONS, Constants.BOARD_DIMENSIONS));
+        opBoard = new BoardView(tiles, true);
         componentInit(opBoard, boardXBound, boardYBound, boardWidth, boardHeight);
 
-        playerBoard.setLayout(new GridLayout(Constants.BOARD_DIMENSIONS, Constants.BOARD_DIMENSIONS));
+        playerBoard = new BoardView(tiles, false);
         componentInit(playerBoard, 1 - boardXBound - boardWidth, boardYBound, boardWidth, boardHeight);
 
 
@@ -192,9 +180,19 @@ public class GameWindow extends JFrame implements ActionListener {
         componentInit(l_turnDisplay, 0.1, 0.75, 0.8, 0.1);
         l_turnDisplay.setFont(new Font(Constants.FONT, Font.BOLD, 100));
 
+        // components follow the window right away, images are rescaled once resizing stops
+        rescaleTimer = new Timer(RESCALE_DELAY, new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                rescaleImages();
+            }
+        });
+        rescaleTimer.setRepeats(false);
+
         getContentPane().addComponentListener(new ComponentAdapter() {
             public void componentResized(ComponentEvent e) {
-                resize();
+                resizeComponents();
+                rescaleTimer.restart();
             }
         });
 
@@ -206,30 +204,25 @@ public class GameWindow extends JFrame implements ActionListener {
 
                 // if player is in game and its their turn, check to see if they have clicked a tile that has not been shot to shoot
                 if (inGame && isTurn) {
-                    for (int x = 0; x < Constants.BOARD_DIMENSIONS; x++) {
-                    for (int y = 0; y < Constants.BOARD_DIMENSIONS; y++) {
-
-                        // get location of mouse click
-                        if (e.getPoint().getX() >= (boardXBound + (x * ((float)opBoard.getSize().getWidth() / getWidth() / Constants.BOARD_DIMENSIONS))) * getWidth() &&
-                            e.getPoint().getX() < (boardXBound + ((x + 1) * ((float)opBoard.getSize().getWidth() / getWidth() / Constants.BOARD_DIMENSIONS))) * getWidth() &&
-                            e.getPoint().getY() >= (boardYBound + (y * ((float)opBoard.getSize().getHeight() / getHeight() / Constants.BOARD_DIMENSIONS))) * getHeight() &&
-                            e.getPoint().getY() < (boardYBound + ((y + 1) * ((float)opBoard.getSize().getHeight() / getHeight() / Constants.BOARD_DIMENSIONS))) * getHeight()) 
-                        {
-
-                            //get gridcells
-                            GridCell[][] cells = board.getCells();
-
-                            // shoot grid and send to server, also setTurn to false
-                            if (!cells[y][x].hasShotP1()) {
-                                cells[y][x].setShotP1(true);
-                                Grid updated = new Grid(cells);
-                                try {
-                                    connection.sendGridToServer(updated);
-                                } catch (IOException bozo) {}
-                                setTurn(false);
-                            }
-                            System.out.println(x+", "+y);
-                    }}}
+
+                    // the same cell the hover highlights
+                    Point cell = opBoard.cellAt(SwingUtilities.convertPoint(GameWindow.this, e.getPoint(), opBoard));
+                    if (cell != null) {
+                        int x = cell.x, y = cell.y;
+
+                        //get gridcells
+                        GridCell[][] cells = board.getCells();
+
+                        // shoot grid and send to server, also setTurn to false
+                        if (!cells[y][x].hasShotP1()) {
+                            cells[y][x].setShotP1(true);
+                            try {
+                                connection.sendShotToServer(y, x, cells[y][x].getCell());
+                            } catch (IOException bozo) {}
+                            setTurn(false);
+                        }
+                        System.out.println(x+", "+y);
+                    }
                 }
 
                 if (clicked(getWindowComponent(b_Connect), e.getPoint())) {
@@ -238,54 +231,43 @@ public class GameWindow extends JFrame implements ActionListener {
                 else if (clicked(getWindowComponent(b_Exit), e.getPoint())) {
                     System.exit(1);
                 }
+            }
+
+            @Override
+            public void mouseExited(MouseEvent e) {
+
+                // nothing is hovered once the mouse leaves the window
+                opBoard.setHover(-1, -1);
         }}); // end addMouseListener();
 
+        /////// Hover Listener ////////
+        // highlights the opponent tile under the mouse, only the old and new tiles are repainted
+        this.addMouseMotionListener(new MouseMotionAdapter() {
+
+            @Override
+            public void mouseMoved(MouseEvent e) {
+                opBoard.setHoverAt(SwingUtilities.convertPoint(GameWindow.this, e.getPoint(), opBoard));
+            }
+
+            @Override
+            public void mouseDragged(MouseEvent e) {
+                mouseMoved(e);
+        }}); // end addMouseMotionListener();
+
         Timer onRefresh;
-        onRefresh = new Timer((int)(REFRESH_RATE), 
+        onRefresh = new Timer((int)(LOADING_DISPLAY_DELAY), 
                 
-                // calls every time timer refreshes (once per refreshRate/1000)
+                // calls every time timer refreshes, only the waiting display is animated
                 new ActionListener() {
                     
                     @Override
                     public void actionPerformed(ActionEvent e) {
 
-
                         // change waiting for opponent display
                         // makes for the tiny animation of the dots going from . .. ...
-                        frameCounter++;
-                        l_wait.setText("Waiting for Opponent.");
-                        if (frameCounter >= LOADING_DISPLAY_DELAY) {
-                            l_wait.setText("Waiting for Opponent..");
-                        }
-                        if (frameCounter >= LOADING_DISPLAY_DELAY * 2) {
-                            l_wait.setText("Waiting for Opponent...");
-                        }
-                        if (frameCounter >= LOADING_DISPLAY_DELAY * 3) {
-                            frameCounter = 0;
-                        }
-
-
-                        // highlight hovered tile
-                        resetBorders();
-                        if (true) {
-
-                            // get mouses current position
-                            Point mousePosition = MouseInfo.getPointerInfo().getLocation();
-                            for (int y = 0; y < Constants.BOARD_DIMENSIONS; y++) {
-                                for (int x = 0; x < Constants.BOARD_DIMENSIONS; x++) {
-
-                                    // check if mouse hovered over tile
-                                    if (mousePosition.getX() >= (boardXBound + (x * ((float)opBoard.getSize().getWidth() / getWidth() / Constants.BOARD_DIMENSIONS))) * getWidth() &&
-                                        mousePosition.getX() < (boardXBound + ((x + 1) * ((float)opBoard.getSize().getWidth() / getWidth() / Constants.BOARD_DIMENSIONS))) * getWidth() &&
-                                        mousePosition.getY() >= (boardYBound + (y * ((float)opBoard.getSize().getHeight() / getHeight() / Constants.BOARD_DIMENSIONS))) * getHeight() &&
-                                        mousePosition.getY() < (boardYBound + ((y + 1) * ((float)opBoard.getSize().getHeight() / getHeight() / Constants.BOARD_DIMENSIONS))) * getHeight()) 
-                                    {
-                                        // set border color to blue
-                                        opponentBoardButtons[y][x].setBorder(BorderFactory.createLineBorder(Color.blue, SELECTED_BORDER_WIDTH));
-                                    }
-                                    // set border to default
-                                    else {opponentBoardButtons[y][x].setBorder(BorderFactory.createLineBorder(Color.black));
-        }}}}}}); // end timer();
+                        frameCounter = (frameCounter + 1) % 3;
+                        l_wait.setText("Waiting for Opponent" + ".".repeat(frameCounter + 1));
+        }}); // end timer();
         onRefresh.start();
 
 
@@ -309,12 +291,14 @@ public class GameWindow extends JFrame implements ActionListener {
 
         clearScreen();
 
-        AssetImage back = new AssetImage(background, 1, 1, getWidth(), getHeight());
-        imageInit(back);
+        // only the current background is rescaled
+        loadedImages.remove(backgroundImg);
+        backgroundImg = new AssetImage(background, 1, 1, getWidth(), getHeight());
+        imageInit(backgroundImg);
         if (this.background == null) {
             this.background = new JLabel();
         }
-        this.background.setIcon(back);
+        this.background.setIcon(backgroundImg);
     }
 
 
@@ -385,94 +369,20 @@ public class GameWindow extends JFrame implements ActionListener {
         playerBoard.setVisible(true);
         opBoard.setVisible(true);
 
-        // load images for tile assets
-        tileImg = new AssetImage(new ImageIcon(Constants.ASSET_PATH + "CoffeeTile.png"), boardWidth / Constants.BOARD_DIMENSIONS, boardHeight / Constants.BOARD_DIMENSIONS, getWidth(), getHeight());
-        shipImg = new AssetImage(new ImageIcon(Constants.ASSET_PATH + "ShipTile.png"), boardWidth / Constants.BOARD_DIMENSIONS, boardHeight / Constants.BOARD_DIMENSIONS, getWidth(), getHeight());
-        shipShotImg = new AssetImage(new ImageIcon(Constants.ASSET_PATH + "ShipHit.png"), boardWidth / Constants.BOARD_DIMENSIONS, boardHeight / Constants.BOARD_DIMENSIONS, getWidth(), getHeight());
-        missImg = new AssetImage(new ImageIcon(Constants.ASSET_PATH + "Miss.png"), boardWidth / Constants.BOARD_DIMENSIONS, boardHeight / Constants.BOARD_DIMENSIONS, getWidth(), getHeight());
-        sugarSharkImg = new AssetImage(new ImageIcon(Constants.ASSET_PATH + "SugarShark.png"), boardWidth / Constants.BOARD_DIMENSIONS, boardHeight / Constants.BOARD_DIMENSIONS, getWidth(), getHeight());
-        shotImg = new AssetImage(new ImageIcon(Constants.ASSET_PATH + "Hit.png"), boardWidth / Constants.BOARD_DIMENSIONS, boardHeight / Constants.BOARD_DIMENSIONS, getWidth(), getHeight());
-
-        imageInit(tileImg);
-        imageInit(shipImg);
-        imageInit(shipShotImg);
-        imageInit(missImg);
-        imageInit(sugarSharkImg);
-        imageInit(shotImg);
-
-        // First board
-        for (int i = 0; i < Constants.BOARD_DIMENSIONS; i++) {
-            for (int j = 0; j < Constants.BOARD_DIMENSIONS; j++) {
-
-                // initialize player board tiles
-                playerBoardButtons[i][j] = new JLabel(tileImg);
-                playerBoardButtons[i][j].setBorder(BorderFactory.createLineBorder(Color.black));
-                playerBoardButtons[i][j].setVisible(true);
-                playerBoard.add(playerBoardButtons[i][j]);
-
-                // initialize opponent board tiles
-                opponentBoardButtons[i][j] = new JLabel(tileImg);
-                opponentBoardButtons[i][j].setBorder(BorderFactory.createLineBorder(Color.black));
-                opponentBoardButtons[i][j].setVisible(true);
-                opBoard.add(opponentBoardButtons[i][j]);
-
-            }
-        }
+        // tile images are drawn once, and again only if the window changed size since the last game
+        rescaleTiles();
 
         updatePlayerBoard(grid);
-        resize();
+        resizeComponents();
     }
 
-    // updates the board displays based on the state of the grid passed 
+    // updates the board displays based on the state of the grid passed, only changed cells are repainted
     public void updatePlayerBoard(Grid grid) {
 
         // set the board to the new grid passed in
         board = grid;
-        Grid.GridCell[][] cells = grid.getCells();
-        for (int i = 0; i < Constants.BOARD_DIMENSIONS; i++) {
-            for (int j = 0; j < Constants.BOARD_DIMENSIONS; j++) {
-
-                // change displays on the opponent board
-                if (cells[i][j].hasSharkP1()) {
-                    // sugar shark
-                    opponentBoardButtons[i][j].setIcon(sugarSharkImg);
-                }
-                else if (cells[i][j].hasShipP2() && cells[i][j].hasSunkP2() && cells[i][j].hasShotP1()) {
-                    // sunk shit
-                    opponentBoardButtons[i][j].setIcon(shipShotImg);
-                }
-                else if (cells[i][j].hasShipP2() && cells[i][j].hasShotP1()) {
-                    // landed shot
-                    opponentBoardButtons[i][j].setIcon(shotImg);
-                }
-                else if (cells[i][j].hasShotP1()) {
-                    // missed shot
-                    opponentBoardButtons[i][j].setIcon(missImg);
-                }
-                else {
-                    // normal tile
-                    opponentBoardButtons[i][j].setIcon(tileImg);
-                }
-
-                // change displays on the player's board
-                if (cells[i][j].hasShipP1() && cells[i][j].hasShotP2()) {
-                    // display shot ship
-                    playerBoardButtons[i][j].setIcon(shipShotImg);
-                }
-                else if (cells[i][j].hasShipP1()) {
-                    // display unhit ship
-                    playerBoardButtons[i][j].setIcon(shipImg);
-                }
-                else if (cells[i][j].hasShotP2()) {
-                    // display missed shot
-                    playerBoardButtons[i][j].setIcon(missImg);
-                }
-                else {
-                    // display normal tile
-                    playerBoardButtons[i][j].setIcon(tileImg);
-                }
-            }
-        }
+        opBoard.setGrid(grid);
+        playerBoard.setGrid(grid);
     }
 
 
@@ -505,7 +415,6 @@ public class GameWindow extends JFrame implements ActionListener {
         isTurn = false;
         inGame = true;
         setBoardScreen(grid);
-        resize();
     }
 
     // ends game
@@ -521,8 +430,8 @@ public class GameWindow extends JFrame implements ActionListener {
             l_turnDisplay.setText("You Lose!");
         }
 
-        playerBoard.removeAll();
-        opBoard.removeAll();
+        playerBoard.clear();
+        opBoard.clear();
         
         Timer onRefresh;
         onRefresh = new Timer((int)(3000), 
@@ -597,13 +506,20 @@ public class GameWindow extends JFrame implements ActionListener {
 
     // called when screen is resized, resizes all components according to there relative size
     private void resize() {
+        rescaleImages();
+        resizeComponents();
+    }
 
-        // resize all images/assets
+    // resize all images/assets, the slow part of resizing so it waits until resizing stops
+    private void rescaleImages() {
         for (AssetImage img : loadedImages) {
             img.resizeImage(getWidth(), getHeight());
         }
+        rescaleTiles();
+    }
 
-        // resize all screen components i.e. buttons, labels, text fields, etc.
+    // resize all screen components i.e. buttons, labels, text fields, etc.
+    private void resizeComponents() {
         for (WindowComponent comp : elements) {
             comp.resize(getWidth(), getHeight());
         }
@@ -611,6 +527,19 @@ public class GameWindow extends JFrame implements ActionListener {
         revalidate();
     }
 
+    // draws the tiles at the size of a board cell, nothing is drawn if that size has not changed
+    private void rescaleTiles() {
+        if (tiles == null) {
+            return;
+        }
+        int tileWidth = (int)(boardWidth / Constants.BOARD_DIMENSIONS * getWidth());
+        int tileHeight = (int)(boardHeight / Constants.BOARD_DIMENSIONS * getHeight());
+        if (tiles.resize(tileWidth, tileHeight)) {
+            playerBoard.repaint();
+            opBoard.repaint();
+        }
+    }
+
     private int Width() {
         try {
             return this.getWidth();
@@ -624,18 +553,6 @@ public class GameWindow extends JFrame implements ActionListener {
         } catch (Exception e) {
             return Constants.WINDOW_HEIGHT;
         }
-    } 
-
-    // resets all the boarders of boards to there default
-    public void resetBorders() {
-
-        // gor through each board tile
-        for (int x = 0; x < Constants.BOARD_DIMENSIONS; x++) {
-        for (int y = 0; y < Constants.BOARD_DIMENSIONS; y++) {
-            opponentBoardButtons[x][y].setBorder(BorderFactory.createLineBorder(Color.black));
-            playerBoardButtons[x][y].setBorder(BorderFactory.createLineBorder(Color.black));
-        }}
-
     }
 
 }
@@ -1,5 +1,7 @@
 package com.belgianwaffles.battleship;
 
+import java.util.function.Consumer;
+
 public final class Grid {
 
     // ----- Subclasses -----
@@ -22,8 +24,11 @@ public final class Grid {
 
         // ----- Data -----
 
-        // If you want to know what the stuff means, refer to masks
-        byte mCell;
+        // Position in the grids data, -1 if the cell holds its own value
+        private int mIndex;
+
+        // Value of a cell not backed by a grid, if you want to know what the stuff means, refer to masks
+        private byte mCell;
 
 
 
@@ -33,6 +38,7 @@ public final class Grid {
          * Creates an empty gridcell
          */
         public GridCell() {
+            this.mIndex = -1;
             this.mCell = 0;
         }
 
@@ -41,6 +47,7 @@ public final class Grid {
          * @param val the value for the cell
          */
         public GridCell(byte val) {
+            this.mIndex = -1;
             this.mCell = val;
         }
 
@@ -49,7 +56,41 @@ public final class Grid {
          * @param gc the gridcell to copy
          */
         public GridCell(GridCell gc) {
-            this.mCell = gc.mCell;
+            this.mIndex = -1;
+            this.mCell = gc.getCell();
+        }
+
+        /**
+         * Creates a view of a cell in this grid, changes to the view change the grid
+         * @param row the row of the cell
+         * @param column the column of the cell
+         */
+        private GridCell(int row, int column) {
+            this.mIndex = row * GRID_SIZE + column;
+            this.mCell = 0;
+        }
+
+        /**
+         * Reads the cell data from the grid, or from the cell when not backed by a grid
+         * @return the cell data
+         */
+        private byte get() {
+            if (this.mIndex < 0) {
+                return this.mCell;
+            }
+            return Grid.this.mData[this.mIndex];
+        }
+
+        /**
+         * Writes the cell data to the grid, or to the cell when not backed by a grid
+         * @param value the new cell data
+         */
+        private void set(byte value) {
+            if (this.mIndex < 0) {
+                this.mCell = value;
+                return;
+            }
+            Grid.this.mData[this.mIndex] = value;
         }
 
         /**
@@ -59,10 +100,10 @@ public final class Grid {
          */
         private void bitManipulate(byte mask, boolean turnOn) {
             if (turnOn) {
-                this.mCell |= mask;
+                this.set((byte)(this.get() | mask));
             }
             else {
-                this.mCell &= mask ^ MASK_ALL;
+                this.set((byte)(this.get() & (mask ^ MASK_ALL)));
             }
         }
 
@@ -147,7 +188,7 @@ public final class Grid {
          * @return true if bit is set, false if not
          */
         private boolean getBit(byte mask) {
-            return (this.mCell & mask) == mask;
+            return (this.get() & mask) == mask;
         }
 
         /**
@@ -155,7 +196,7 @@ public final class Grid {
          * @return the held cell data
          */
         public byte getCell() {
-            return this.mCell;
+            return this.get();
         }
 
         /**
@@ -226,6 +267,8 @@ public final class Grid {
          * Converts the cells data from p1 to p2
          */
         public void translateP1toP2() {
+            byte cell = this.get();
+
             // Save shot bit
             byte bit = (byte)(this.hasShotP2() ? MASK_SHOT_2 : 0);
             if (bit != 0) {
@@ -233,24 +276,30 @@ public final class Grid {
             }
             
             // Only have player 1 data, alt+f4 player 2 data
-            this.mCell = (byte)(this.mCell & GRID_CELL_P1);
+            cell = (byte)(cell & GRID_CELL_P1);
             
             // Swap flags
-            this.mCell = (byte)((this.mCell >> 4) | (bit << 4));
+            cell = (byte)((cell >> 4) | (bit << 4));
+            this.set(cell);
         }
         
         /**
          * Converts the cell data from p2 to p1
          */
         public void translateP2toP1() {
+            byte cell = this.get();
+
             // Only have player 1 data, alt+f4 player 2 data
-            this.mCell = (byte)(this.mCell & GRID_CELL_P2);
+            cell = (byte)(cell & GRID_CELL_P2);
     
             // Swap flags
-            this.mCell = (byte)((this.mCell << 4));
+            cell = (byte)((cell << 4));
+            this.set(cell);
         }
 
         public void getPlayer1() {
+            byte cell = this.get();
+
             // Save important bits
             byte bits = (byte)(this.hasShotP2() ? MASK_SHOT_2 : 0);
             if (this.hasShotP1() && this.hasShipP2()) {
@@ -258,13 +307,16 @@ public final class Grid {
             }
 
             // Remove bits
-            this.mCell &= GRID_CELL_P1;
+            cell &= GRID_CELL_P1;
             
             // Save this cells data and important p2 data
-            this.mCell = (byte)((this.mCell & GRID_CELL_P1) | bits);
+            cell = (byte)((cell & GRID_CELL_P1) | bits);
+            this.set(cell);
         }
         
         public void getPlayer2() {
+            byte cell = this.get();
+
             // Save important bits
             byte bits = (byte)(this.hasShotP1() ? MASK_SHOT_1 : 0);
             if (this.hasShotP2() && this.hasShipP1()) {
@@ -272,10 +324,11 @@ public final class Grid {
             }
 
             // Remove bits
-            this.mCell &= GRID_CELL_P2;
+            cell &= GRID_CELL_P2;
             
             // Save this cells data and important p2 data
-            this.mCell = (byte)(((this.mCell & GRID_CELL_P2) << 4) | (bits >> 4));
+            cell = (byte)(((cell & GRID_CELL_P2) << 4) | (bits >> 4));
+            this.set(cell);
         }
         
         /**
@@ -313,7 +366,12 @@ public final class Grid {
 
     // ----- Data -----
 
-    private GridCell[][] mCells;
+    // Cell at row i, column j is stored at i * GRID_SIZE + j
+    private final byte[] mData;
+    // Views handed out by getCells, created the first time they are needed
+    private GridCell[] mViews;
+    // Single view moved over every cell by whole grid operations
+    private GridCell mCursor;
 
 
 
@@ -323,12 +381,7 @@ public final class Grid {
      * Creates a blank grid
      */
     public Grid() {
-        this.mCells = new GridCell[GRID_SIZE][GRID_SIZE];
-        for (int i = 0; i < GRID_SIZE; i++) {
-            for (int j = 0; j < GRID_SIZE; j++) {
-                this.mCells[i][j] = new GridCell();
-            }
-        }
+        this.mData = new byte[GRID_SIZE * GRID_SIZE];
     }
     
     /**
@@ -336,12 +389,8 @@ public final class Grid {
      * @param data <code>byte[]</code> that has the grid information loaded
      */
     public Grid(byte[] data) {
-        this.mCells = new GridCell[GRID_SIZE][GRID_SIZE];
-        for (int i = 0; i < GRID_SIZE; i++) {
-            for (int j = 0; j < GRID_SIZE; j++) {
-                this.mCells[i][j] = new GridCell(data[i * GRID_SIZE + j]);
-            }
-        }
+        this.mData = new byte[GRID_SIZE * GRID_SIZE];
+        System.arraycopy(data, 0, this.mData, 0, this.mData.length);
     }
     
     /**
@@ -349,12 +398,16 @@ public final class Grid {
      * @param cells the cells from another grid
      */
     public Grid(GridCell[][] cells) {
-        this.mCells = new GridCell[GRID_SIZE][GRID_SIZE];
-        for (int i = 0; i < GRID_SIZE; i++) {
-            for (int j = 0; j < GRID_SIZE; j++) {
-                this.mCells[i][j] = new GridCell(cells[i][j].getCell());
-            }
-        }
+        this.mData = new byte[GRID_SIZE * GRID_SIZE];
+        this.setCells(cells);
+    }
+
+    /**
+     * Creates a copy of another grids cells
+     * @param other the grid to copy
+     */
+    public Grid(Grid other) {
+        this.mData = other.getData();
     }
     
     /**
@@ -364,20 +417,32 @@ public final class Grid {
      */
     public synchronized void combine(Grid g1, Grid g2) {
         // Combine cells
-        for (int i = 0; i < GRID_SIZE; i++) {
-            for (int j = 0; j < GRID_SIZE; j++) {
-                this.mCells[i][j] = new GridCell((byte)((g1.mCells[i][j].getCell() & GRID_CELL_P1) | (g2.mCells[i][j].getCell() & GRID_CELL_P2)));
-            }
+        for (int i = 0; i < this.mData.length; i++) {
+            this.mData[i] = (byte)((g1.mData[i] & GRID_CELL_P1) | (g2.mData[i] & GRID_CELL_P2));
         }
     }
 
     /**
      * Gets the cell contents of the grid.
-     * Can create a new grid with the changed data.
+     * Cells are views, changing them changes this grid.
      * @return 2D array with all gridcells
      */
     public GridCell[][] getCells() {
-        return this.mCells;
+        if (this.mViews == null) {
+            this.mViews = new GridCell[GRID_SIZE * GRID_SIZE];
+            for (int i = 0; i < GRID_SIZE; i++) {
+                for (int j = 0; j < GRID_SIZE; j++) {
+                    this.mViews[i * GRID_SIZE + j] = new GridCell(i, j);
+                }
+            }
+        }
+
+        // Fresh rows so callers replacing cells never break the views
+        GridCell[][] cells = new GridCell[GRID_SIZE][GRID_SIZE];
+        for (int i = 0; i < GRID_SIZE; i++) {
+            System.arraycopy(this.mViews, i * GRID_SIZE, cells[i], 0, GRID_SIZE);
+        }
+        return cells;
     }
 
     /**
@@ -385,73 +450,96 @@ public final class Grid {
      * @param cells the new cells to put into grid
      */
     public void setCells(GridCell[][] cells) {
-        this.mCells = new GridCell[GRID_SIZE][GRID_SIZE];
         for (int i = 0; i < GRID_SIZE; i++) {
             for (int j = 0; j < GRID_SIZE; j++) {
-                this.mCells[i][j] = new GridCell(cells[i][j].getCell());
+                this.mData[i * GRID_SIZE + j] = cells[i][j].getCell();
             }
         }
     }
 
+    /**
+     * Gets a copy of the raw cell data
+     * @return the cells with row i, column j at i * GRID_SIZE + j
+     */
+    public byte[] getData() {
+        return this.mData.clone();
+    }
+
+    /**
+     * Gets the data of a single cell
+     * @param row the row of the cell
+     * @param column the column of the cell
+     * @return the cell data
+     */
+    public byte getCell(int row, int column) {
+        return this.mData[row * GRID_SIZE + column];
+    }
+
+    /**
+     * Sets the data of a single cell
+     * @param row the row of the cell
+     * @param column the column of the cell
+     * @param value the new cell data
+     */
+    public void setCell(int row, int column, byte value) {
+        this.mData[row * GRID_SIZE + column] = value;
+    }
+
     /**
      * Changes the grid data from being in player 1 positions to player 2 positions
      */
     public void translateP1toP2() {
-        for (int i = 0; i < GRID_SIZE; i++) {
-            for (int j = 0; j < GRID_SIZE; j++) {
-                this.mCells[i][j].translateP1toP2();
-            }
-        }
+        this.forEachCell(GridCell::translateP1toP2);
     }
     
     /**
      * Changes the grid data from being in player 1 positions to player 2 positions
      */
     public void translateP2toP1() {
-        for (int i = 0; i < GRID_SIZE; i++) {
-            for (int j = 0; j < GRID_SIZE; j++) {
-                this.mCells[i][j].translateP2toP1();
-            }
-        }
+        this.forEachCell(GridCell::translateP2toP1);
     }
     
     /**
      * Changes the grid data from being in player 1 positions to player 2 positions
      */
     public void getGridP1() {
-        for (int i = 0; i < GRID_SIZE; i++) {
-            for (int j = 0; j < GRID_SIZE; j++) {
-                this.mCells[i][j].getPlayer1();
-            }
-        }
+        this.forEachCell(GridCell::getPlayer1);
     }
     
     /**
      * Changes the grid data from being in player 1 positions to player 2 positions
      */
     public void getGridP2() {
-        for (int i = 0; i < GRID_SIZE; i++) {
-            for (int j = 0; j < GRID_SIZE; j++) {
-                this.mCells[i][j].getPlayer2();
-            }
+        this.forEachCell(GridCell::getPlayer2);
+    }
+
+    /**
+     * Runs a cell operation over every cell of the grid without creating any cells
+     * @param operation the operation to run on each cell
+     */
+    private void forEachCell(Consumer<GridCell> operation) {
+        if (this.mCursor == null) {
+            this.mCursor = new GridCell(0, 0);
+        }
+        for (int i = 0; i < this.mData.length; i++) {
+            this.mCursor.mIndex = i;
+            operation.accept(this.mCursor);
         }
     }
     
     /**
      * Allows for comparing of 2 grids to see how many differences there are
+     * @param other the grid to compare with
      * @return the number of differences in the grid
      */
     public int checkDifferences(Grid other) {
-        return 1;
-        // int diff = 0;
-        // for (int i = 0; i < GRID_SIZE; i++) {
-        //     for (int j = 0; j < GRID_SIZE; j++) {
-        //         if (this.mCells[i][j] != other.mCells[i][j]) {
-        //             diff++;
-        //         }
-        //     }
-        // }
-        // return diff;
+        int diff = 0;
+        for (int i = 0; i < this.mData.length; i++) {
+            if (this.mData[i] != other.mData[i]) {
+                diff++;
+            }
+        }
+        return diff;
     }
 
 
@@ -465,10 +553,11 @@ public final class Grid {
     @Override
     public String toString() {
         String str = "";
+        GridCell[][] cells = this.getCells();
         
         for (int y = 0; y < GRID_SIZE; y++) {
             for (int x = 0; x < GRID_SIZE; x++) {
-                str += this.mCells[x][y].toString() + " ";
+                str += cells[x][y].toString() + " ";
             }
             str += '\n';
         }
@@ -3,6 +3,8 @@ package com.belgianwaffles.battleship;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HexFormat;
 
 import javax.swing.ImageIcon;
 
@@ -207,6 +209,8 @@ public final class Packet {
                 case PACKET_TYPE_PING -> str += "Ping";
                 case PACKET_TYPE_GRID -> str += "Grid";
                 case PACKET_TYPE_IMAGE-> str += "Image";
+                case PACKET_TYPE_DELTA-> str += "Delta";
+                case PACKET_TYPE_ASSET-> str += "Asset";
             }
 
             // Length
@@ -240,6 +244,20 @@ public final class Packet {
     public static final byte PACKET_FLAG_CONFIRM    = (byte)0b01000000;
     public static final byte PACKET_FLAG_SHIP_SUNK  = (byte)0b00100000;
 
+    // ----- Delta ----- Flags -----
+
+    // Sent by a client whose board is out of date, asks for a full grid
+    public static final byte PACKET_FLAG_RESYNC     = (byte)0b10000000;
+
+    // ----- Asset ----- Flags -----
+
+    // Server tells the client which asset to show, by hash and size
+    public static final byte PACKET_FLAG_ASSET_OFFER   = (byte)0b10000000;
+    // Client does not hold the offered asset and asks for it
+    public static final byte PACKET_FLAG_ASSET_REQUEST = (byte)0b01000000;
+    // Part of an asset, at an offset into the whole file
+    public static final byte PACKET_FLAG_ASSET_CHUNK   = (byte)0b00100000;
+
     // ----- Flags ----- Flags -----
 
     public static final byte PACKET_FLAG_WINNER     = (byte)0b10000000;
@@ -251,8 +269,24 @@ public final class Packet {
     public static final byte PACKET_TYPE_GRID       = 2;
     public static final byte PACKET_TYPE_IMAGE      = 3;
     public static final byte PACKET_TYPE_FLAGS      = 4;
+    public static final byte PACKET_TYPE_DELTA      = 5;
+    public static final byte PACKET_TYPE_ASSET      = 6;
     public static final int  PACKET_TAIL_SIZE       = 1;
 
+    // Delta body is a 2 byte board version, then a cell index and cell value for each changed cell
+    private static final int DELTA_VERSION_SIZE     = 2;
+    private static final int DELTA_CELL_SIZE        = 2;
+    // Board versions wrap around after this
+    public static final int  DELTA_VERSION_MASK     = 0xFFFF;
+    // Past this many cells a full grid is smaller
+    public static final int  MAX_DELTA_CELLS        = (Grid.GRID_SIZE * Grid.GRID_SIZE - DELTA_VERSION_SIZE) / DELTA_CELL_SIZE;
+
+    // Asset bodies start with the SHA-256 of the whole file, offers then hold the file size and chunks an offset and data
+    public static final int  ASSET_HASH_SIZE        = 32;
+    private static final int ASSET_INT_SIZE         = 4;
+    public static final int  ASSET_CHUNK_HEADER     = ASSET_HASH_SIZE + ASSET_INT_SIZE;
+
+
     private static final String PACKET_IMAGE_PATH   = "../Assets/";
     
 
@@ -378,17 +412,84 @@ public final class Packet {
         // Setup header
         this.mHeader.addType(PACKET_TYPE_GRID);
         
-        // Setup body with gridcell information
-        this.mBody = new byte[Grid.GRID_SIZE * Grid.GRID_SIZE];
-        var cells = grid.getCells();
-        for (int i = 0; i < this.mBody.length; i++) {
-            this.setByte(i, cells[i / Grid.GRID_SIZE][i % Grid.GRID_SIZE].getCell());
-        }
+        // Setup body with gridcell information, already laid out row by row
+        this.mBody = grid.getData();
         
         // Pack data to packet
         this.pack();
     }
 
+    /**
+     * Serializes a delta packet with the cells that changed between two grids
+     * @param version the board version the client has after applying the delta
+     * @param previous the grid the client last received
+     * @param grid the grid the client should have
+     */
+    public void serialize(int version, Grid previous, Grid grid) {
+        // Setup header
+        this.mHeader.addType(PACKET_TYPE_DELTA);
+
+        // Setup body with each changed cell
+        byte[] before = previous.getData(), after = grid.getData();
+        this.mBody = new byte[DELTA_VERSION_SIZE + grid.checkDifferences(previous) * DELTA_CELL_SIZE];
+        this.setVersion(version);
+        int index = DELTA_VERSION_SIZE;
+        for (int i = 0; i < after.length; i++) {
+            if (before[i] != after[i]) {
+                this.setByte(index++, (byte)i);
+                this.setByte(index++, after[i]);
+            }
+        }
+
+        // Pack data to packet
+        this.pack();
+    }
+
+    /**
+     * Serializes a delta packet with a single changed cell, such as a shot
+     * @param version the board version the change was made on
+     * @param index the cell, row i, column j at i * GRID_SIZE + j
+     * @param cell the new cell value
+     */
+    public void serialize(int version, int index, byte cell) {
+        // Setup header
+        this.mHeader.addType(PACKET_TYPE_DELTA);
+
+        // Setup body with the one cell
+        this.mBody = new byte[DELTA_VERSION_SIZE + DELTA_CELL_SIZE];
+        this.setVersion(version);
+        this.setByte(DELTA_VERSION_SIZE, (byte)index);
+        this.setByte(DELTA_VERSION_SIZE + 1, cell);
+
+        // Pack data to packet
+        this.pack();
+    }
+
+    /**
+     * Serializes a delta packet without any cells, used with PACKET_FLAG_RESYNC
+     * @param version the board version the client has
+     */
+    public void serialize(int version) {
+        // Setup header
+        this.mHeader.addType(PACKET_TYPE_DELTA);
+
+        // Setup body with only the version
+        this.mBody = new byte[DELTA_VERSION_SIZE];
+        this.setVersion(version);
+
+        // Pack data to packet
+        this.pack();
+    }
+
+    /**
+     * Writes the board version to the start of the body
+     * @param version the version, wrapped to 2 bytes
+     */
+    private void setVersion(int version) {
+        this.setByte(0, (byte)(version >> 8));
+        this.setByte(1, (byte)version);
+    }
+
     /**
      * Serialized an image packet to send assets to the client
      * Recommended to set the flag for type after serializing
@@ -409,6 +510,75 @@ public final class Packet {
         this.pack();
     }
 
+    /**
+     * Serializes an asset offer, the client answers with a request if it does not hold the asset
+     * @param hash the SHA-256 of the asset
+     * @param size the size of the asset in bytes
+     */
+    public void serialize(byte[] hash, int size) {
+        // Setup header
+        this.mHeader.addType(PACKET_TYPE_ASSET);
+        this.addFlag(PACKET_FLAG_ASSET_OFFER);
+
+        // Setup body with the hash and size
+        this.mBody = new byte[ASSET_HASH_SIZE + ASSET_INT_SIZE];
+        System.arraycopy(hash, 0, this.mBody, 0, ASSET_HASH_SIZE);
+        this.setInt(ASSET_HASH_SIZE, size);
+
+        // Pack data to packet
+        this.pack();
+    }
+
+    /**
+     * Serializes an asset request for an offered asset
+     * @param hash the SHA-256 from the offer
+     */
+    public void serialize(byte[] hash) {
+        // Setup header
+        this.mHeader.addType(PACKET_TYPE_ASSET);
+        this.addFlag(PACKET_FLAG_ASSET_REQUEST);
+
+        // Setup body with only the hash
+        this.mBody = Arrays.copyOf(hash, ASSET_HASH_SIZE);
+
+        // Pack data to packet
+        this.pack();
+    }
+
+    /**
+     * Serializes one chunk of an asset
+     * @param hash the SHA-256 of the whole asset
+     * @param asset the whole asset
+     * @param offset where the chunk starts in the asset
+     * @param length the size of the chunk
+     */
+    public void serialize(byte[] hash, byte[] asset, int offset, int length) {
+        // Setup header
+        this.mHeader.addType(PACKET_TYPE_ASSET);
+        this.addFlag(PACKET_FLAG_ASSET_CHUNK);
+
+        // Setup body with the hash, offset and data
+        this.mBody = new byte[ASSET_CHUNK_HEADER + length];
+        System.arraycopy(hash, 0, this.mBody, 0, ASSET_HASH_SIZE);
+        this.setInt(ASSET_HASH_SIZE, offset);
+        System.arraycopy(asset, offset, this.mBody, ASSET_CHUNK_HEADER, length);
+
+        // Pack data to packet
+        this.pack();
+    }
+
+    /**
+     * Writes a big endian int into the body
+     * @param index where the int starts in the body
+     * @param value the int
+     */
+    private void setInt(int index, int value) {
+        this.setByte(index,     (byte)(value >> 24));
+        this.setByte(index + 1, (byte)(value >> 16));
+        this.setByte(index + 2, (byte)(value >> 8));
+        this.setByte(index + 3, (byte)value);
+    }
+
     /**
      * Takes an array of bytes from socket
      * @param <code>byte[]</code> array of bytes from socket
@@ -523,6 +693,83 @@ public final class Packet {
         return new Grid(this.mBody);
     }
 
+    /**
+     * Gets the board version of a delta packet
+     * @return the version, from 0 to DELTA_VERSION_MASK
+     * @throws IllegalStateException if not of type PACKET_TYPE_DELTA
+     */
+    public int getVersion() throws IllegalStateException {
+        this.checkDelta();
+        return (this.bodyByte(0) << 8) | this.bodyByte(1);
+    }
+
+    /**
+     * Gets the amount of cells in a delta packet
+     * @return the cell count
+     * @throws IllegalStateException if not of type PACKET_TYPE_DELTA
+     */
+    public int getDeltaCount() throws IllegalStateException {
+        this.checkDelta();
+        return Math.max(0, (this.getLength() - DELTA_VERSION_SIZE) / DELTA_CELL_SIZE);
+    }
+
+    /**
+     * Gets the index of a cell in a delta packet
+     * @param n which cell of the delta
+     * @return the cell, row i, column j at i * GRID_SIZE + j
+     */
+    public int getDeltaIndex(int n) {
+        return this.bodyByte(DELTA_VERSION_SIZE + n * DELTA_CELL_SIZE);
+    }
+
+    /**
+     * Gets the new value of a cell in a delta packet
+     * @param n which cell of the delta
+     * @return the cell value
+     */
+    public byte getDeltaCell(int n) {
+        return (byte)this.bodyByte(DELTA_VERSION_SIZE + n * DELTA_CELL_SIZE + 1);
+    }
+
+    /**
+     * Writes the cells of a delta packet into a grid
+     * @param grid the grid the delta was built against
+     * @return false if a cell is outside the grid, nothing is changed then
+     * @throws IllegalStateException if not of type PACKET_TYPE_DELTA
+     */
+    public boolean applyDelta(Grid grid) throws IllegalStateException {
+        int count = this.getDeltaCount();
+        for (int n = 0; n < count; n++) {
+            if (this.getDeltaIndex(n) >= Grid.GRID_SIZE * Grid.GRID_SIZE) {
+                return false;
+            }
+        }
+        for (int n = 0; n < count; n++) {
+            int index = this.getDeltaIndex(n);
+            grid.setCell(index / Grid.GRID_SIZE, index % Grid.GRID_SIZE, this.getDeltaCell(n));
+        }
+        return true;
+    }
+
+    /**
+     * Makes sure the packet is a delta with at least a version
+     * @throws IllegalStateException if not of type PACKET_TYPE_DELTA
+     */
+    private void checkDelta() throws IllegalStateException {
+        if ((byte)this.getType() != PACKET_TYPE_DELTA || this.getLength() < DELTA_VERSION_SIZE) {
+            throw new IllegalStateException();
+        }
+    }
+
+    /**
+     * Reads a byte of the body, works for wrapped and serialized packets
+     * @param index the index in the body
+     * @return the byte, from 0 to 255
+     */
+    private int bodyByte(int index) {
+        return this.mData[HEADER_SIZE + index] & 0xFF;
+    }
+
     /**
      * Gets an image object from a packet
      * @return Image from packet body
@@ -535,6 +782,76 @@ public final class Packet {
         return new ImageIcon(this.mBody);
     }
 
+    /**
+     * Gets the hash of the asset an asset packet is about
+     * @return the SHA-256 of the asset
+     * @throws IllegalStateException if not of type PACKET_TYPE_ASSET
+     */
+    public byte[] getAssetHash() throws IllegalStateException {
+        this.checkAsset(ASSET_HASH_SIZE);
+        return Arrays.copyOfRange(this.mData, HEADER_SIZE, HEADER_SIZE + ASSET_HASH_SIZE);
+    }
+
+    /**
+     * Gets the size of an offered asset
+     * @return the size in bytes
+     * @throws IllegalStateException if not an asset offer
+     */
+    public int getAssetSize() throws IllegalStateException {
+        this.checkAsset(ASSET_CHUNK_HEADER);
+        return this.bodyInt(ASSET_HASH_SIZE);
+    }
+
+    /**
+     * Gets where an asset chunk starts in the whole asset
+     * @return the offset in bytes
+     * @throws IllegalStateException if not an asset chunk
+     */
+    public int getAssetOffset() throws IllegalStateException {
+        this.checkAsset(ASSET_CHUNK_HEADER);
+        return this.bodyInt(ASSET_HASH_SIZE);
+    }
+
+    /**
+     * Gets the amount of asset data in a chunk
+     * @return the chunk size in bytes
+     * @throws IllegalStateException if not an asset chunk
+     */
+    public int getAssetLength() throws IllegalStateException {
+        this.checkAsset(ASSET_CHUNK_HEADER);
+        return this.getLength() - ASSET_CHUNK_HEADER;
+    }
+
+    /**
+     * Copies the data of an asset chunk into the whole asset
+     * @param asset the whole asset, must be large enough for the chunk at its offset
+     * @throws IllegalStateException if not an asset chunk
+     */
+    public void copyAssetData(byte[] asset) throws IllegalStateException {
+        System.arraycopy(this.mData, HEADER_SIZE + ASSET_CHUNK_HEADER, asset, this.getAssetOffset(), this.getAssetLength());
+    }
+
+    /**
+     * Makes sure the packet is an asset packet with a long enough body
+     * @param length the least body length needed
+     * @throws IllegalStateException if not of type PACKET_TYPE_ASSET
+     */
+    private void checkAsset(int length) throws IllegalStateException {
+        if ((byte)this.getType() != PACKET_TYPE_ASSET || this.getLength() < length) {
+            throw new IllegalStateException();
+        }
+    }
+
+    /**
+     * Reads a big endian int from the body
+     * @param index where the int starts in the body
+     * @return the int
+     */
+    private int bodyInt(int index) {
+        return (this.bodyByte(index) << 24) | (this.bodyByte(index + 1) << 16)
+             | (this.bodyByte(index + 2) << 8) | this.bodyByte(index + 3);
+    }
+
     /**
      * Allows for the packet to easily be printed to a file
      * @return a formatted string for a file
@@ -547,6 +864,8 @@ public final class Packet {
             case PACKET_TYPE_PING -> str += this.pingString();
             case PACKET_TYPE_GRID -> str += this.gridString();
             case PACKET_TYPE_IMAGE-> str += this.assetString();
+            case PACKET_TYPE_DELTA-> str += this.deltaString();
+            case PACKET_TYPE_ASSET-> str += this.assetTransferString();
         }
         return str;
     }
@@ -577,6 +896,21 @@ public final class Packet {
         return this.getGrid().toString();
     }
     
+    /**
+     * Formatted string for packet of type delta
+     * @return string for delta
+     */
+    private String deltaString() {
+        if (this.getLength() < DELTA_VERSION_SIZE) {
+            return "Malformed delta\n";
+        }
+        String str = "Version: " + this.getVersion();
+        for (int n = 0; n < this.getDeltaCount(); n++) {
+            str += ", " + this.getDeltaIndex(n) + "=" + (this.getDeltaCell(n) & 0xFF);
+        }
+        return str + "\n";
+    }
+    
     /**
      * Formatted string for packet of type image
      * @return string for image
@@ -597,4 +931,25 @@ public final class Packet {
         }
         return str;
     }
+
+    /**
+     * Formatted string for packet of type asset
+     * @return string for asset
+     */
+    private String assetTransferString() {
+        if (this.getLength() < ASSET_HASH_SIZE) {
+            return "Malformed asset\n";
+        }
+        String str = "Hash: " + HexFormat.of().formatHex(this.getAssetHash());
+        if (this.hasFlag(PACKET_FLAG_ASSET_OFFER) && this.getLength() >= ASSET_CHUNK_HEADER) {
+            str += ", offer of " + this.getAssetSize() + " bytes";
+        }
+        else if (this.hasFlag(PACKET_FLAG_ASSET_CHUNK) && this.getLength() >= ASSET_CHUNK_HEADER) {
+            str += ", chunk of " + this.getAssetLength() + " bytes at " + this.getAssetOffset();
+        }
+        else if (this.hasFlag(PACKET_FLAG_ASSET_REQUEST)) {
+            str += ", request";
+        }
+        return str + "\n";
+    }
 }
@@ -0,0 +1,135 @@
+package com.belgianwaffles.battleship;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.GraphicsEnvironment;
+import java.awt.Image;
+import java.awt.RenderingHints;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+
+import javax.swing.ImageIcon;
+
+/**
+ * Every board tile drawn once at the current tile size, side by side in a single image.
+ * The icons handed out never change, so labels keep showing them across rescales,
+ * and rescaling to the size the atlas already has does nothing.
+ */
+public class TileAtlas {
+
+    // Tile kinds, in the order they sit in the atlas
+    public static final int TILE = 0;
+    public static final int SHIP = 1;
+    public static final int SHIP_HIT = 2;
+    public static final int MISS = 3;
+    public static final int SHARK = 4;
+    public static final int HIT = 5;
+
+    private static final String[] FILES = {
+        "CoffeeTile.png", "ShipTile.png", "ShipHit.png", "Miss.png", "SugarShark.png", "Hit.png"
+    };
+
+    private final Image[] sources;
+    private final ImageIcon[] icons;
+    private int tileWidth;
+    private int tileHeight;
+
+    /**
+     * Loads the tile images, call <code>resize</code> before showing them
+     */
+    public TileAtlas() {
+        this.sources = new Image[FILES.length];
+        this.icons = new ImageIcon[FILES.length];
+        for (int i = 0; i < FILES.length; i++) {
+            this.sources[i] = AssetCache.shared().load(Constants.ASSET_PATH + FILES[i]).getImage();
+            this.icons[i] = new ImageIcon();
+        }
+        this.tileWidth = 0;
+        this.tileHeight = 0;
+    }
+
+    /**
+     * Draws every tile at a new size
+     * @param width the width of a tile in pixels
+     * @param height the height of a tile in pixels
+     * @return false if the tiles were already this size and nothing was drawn
+     */
+    public boolean resize(int width, int height) {
+        width = Math.max(1, width);
+        height = Math.max(1, height);
+        if (width == this.tileWidth && height == this.tileHeight) {
+            return false;
+        }
+
+        BufferedImage atlas = createImage(width * FILES.length, height);
+        Graphics2D g = atlas.createGraphics();
+        g.setComposite(AlphaComposite.Src);
+        for (int i = 0; i < FILES.length; i++) {
+            g.drawImage(scale(this.sources[i], width, height), i * width, 0, null);
+        }
+        g.dispose();
+
+        // Same icons, new pixels
+        for (int i = 0; i < FILES.length; i++) {
+            this.icons[i].setImage(atlas.getSubimage(i * width, 0, width, height));
+        }
+        this.tileWidth = width;
+        this.tileHeight = height;
+        return true;
+    }
+
+    /**
+     * Gets the icon for a kind of tile
+     * @param kind the tile kind, use TileAtlas.TILE and so on
+     * @return the icon, the same one for the life of the atlas
+     */
+    public ImageIcon getIcon(int kind) {
+        return this.icons[kind];
+    }
+
+    /**
+     * Gets the width of a tile
+     * @return the tile width in pixels, 0 before the first resize
+     */
+    public int getTileWidth() {
+        return this.tileWidth;
+    }
+
+    /**
+     * Gets the height of a tile
+     * @return the tile height in pixels, 0 before the first resize
+     */
+    public int getTileHeight() {
+        return this.tileHeight;
+    }
+
+    // scales an image down by halves, then to the exact size, which looks close to smooth scaling at a fraction of the cost
+    private static BufferedImage scale(Image source, int width, int height) {
+        int w = Math.max(1, source.getWidth(null));
+        int h = Math.max(1, source.getHeight(null));
+        Image current = source;
+        do {
+            w = Math.max(width, w / 2);
+            h = Math.max(height, h / 2);
+            BufferedImage next = createImage(w, h);
+            Graphics2D g = next.createGraphics();
+            g.setComposite(AlphaComposite.Src);
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.drawImage(current, 0, 0, w, h, null);
+            g.dispose();
+            current = next;
+        } while (w != width || h != height);
+        return (BufferedImage)current;
+    }
+
+    // creates an image in the screens own pixel format so drawing it needs no conversion
+    private static BufferedImage createImage(int width, int height) {
+        if (!GraphicsEnvironment.isHeadless()) {
+            GraphicsConfiguration config = GraphicsEnvironment.getLocalGraphicsEnvironment()
+                .getDefaultScreenDevice().getDefaultConfiguration();
+            return config.createCompatibleImage(width, height, Transparency.TRANSLUCENT);
+        }
+        return new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+    }
+}
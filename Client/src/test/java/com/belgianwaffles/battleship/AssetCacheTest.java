@@ -0,0 +1,63 @@
+package com.belgianwaffles.battleship;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HexFormat;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class AssetCacheTest {
+
+    @Test
+    public void storedAssetFoundByNextSession(@TempDir Path directory) throws IOException {
+
+        byte[] data = Files.readAllBytes(Path.of(Constants.ASSET_PATH + "Miss.png"));
+        byte[] hash = AssetCache.hash(data);
+
+        // first session downloads the asset
+        AssetCache first = new AssetCache(directory, 1 << 20, 4);
+        assertNull(first.get(hash));
+        first.put(hash, data);
+
+        // next session finds it on disk without downloading
+        AssetCache next = new AssetCache(directory, 1 << 20, 4);
+        assertEquals(data.length, next.getTotalBytes());
+        assertNotNull(next.get(hash));
+        assertTrue(Files.exists(directory.resolve(HexFormat.of().formatHex(hash))));
+
+        // files from the assets folder are only decoded once
+        assertSame(next.load(Constants.ASSET_PATH + "Hit.png"), next.load(Constants.ASSET_PATH + "Hit.png"));
+    }
+
+    @Test
+    public void leastRecentlyUsedAssetEvicted(@TempDir Path directory) {
+
+        byte[] a = new byte[40];
+        byte[] b = new byte[40];
+        byte[] c = new byte[40];
+        a[0] = 1;
+        b[0] = 2;
+        c[0] = 3;
+
+        // room for 2 assets, a is used again so b is the oldest when c arrives
+        AssetCache cache = new AssetCache(directory, 100, 4);
+        cache.put(AssetCache.hash(a), a);
+        cache.put(AssetCache.hash(b), b);
+        cache.get(AssetCache.hash(a));
+        cache.put(AssetCache.hash(c), c);
+
+        assertEquals(80, cache.getTotalBytes());
+        assertTrue(Files.exists(directory.resolve(HexFormat.of().formatHex(AssetCache.hash(a)))));
+        assertFalse(Files.exists(directory.resolve(HexFormat.of().formatHex(AssetCache.hash(b)))));
+        assertTrue(Files.exists(directory.resolve(HexFormat.of().formatHex(AssetCache.hash(c)))));
+    }
+}
@@ -0,0 +1,52 @@
+package com.belgianwaffles.battleship;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.awt.Point;
+
+import org.junit.jupiter.api.Test;
+
+public class BoardViewTest {
+
+    @Test
+    public void boardsShowTheirOwnSideOfTheGrid() {
+
+        TileAtlas tiles = new TileAtlas();
+        BoardView player = new BoardView(tiles, false);
+        BoardView opponent = new BoardView(tiles, true);
+
+        // player 1 ship at 0,0 shot by player 2, player 1 missed at 1,1
+        Grid grid = new Grid();
+        grid.getCells()[0][0].setShipP1(true);
+        grid.getCells()[0][0].setShotP2(true);
+        grid.getCells()[1][1].setShotP1(true);
+        player.setGrid(grid);
+        opponent.setGrid(grid);
+
+        assertEquals(TileAtlas.SHIP_HIT, player.getTile(0, 0));
+        assertEquals(TileAtlas.TILE, player.getTile(1, 1));
+        assertEquals(TileAtlas.TILE, opponent.getTile(0, 0));
+        assertEquals(TileAtlas.MISS, opponent.getTile(1, 1));
+
+        // a new game starts from empty tiles
+        player.clear();
+        assertEquals(TileAtlas.TILE, player.getTile(0, 0));
+    }
+
+    @Test
+    public void cellAtMatchesTheHighlightedCell() {
+
+        BoardView board = new BoardView(new TileAtlas(), true);
+        board.setSize(200, 100);
+
+        // columns are 20 pixels wide and rows 10 pixels high
+        assertEquals(new Point(0, 0), board.cellAt(new Point(0, 0)));
+        assertEquals(new Point(3, 7), board.cellAt(new Point(65, 79)));
+        assertEquals(new Point(9, 9), board.cellAt(new Point(199, 99)));
+
+        // outside the board is no cell
+        assertNull(board.cellAt(new Point(-1, 5)));
+        assertNull(board.cellAt(new Point(200, 5)));
+    }
+}
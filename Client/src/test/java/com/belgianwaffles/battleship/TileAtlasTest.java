@@ -0,0 +1,34 @@
+package com.belgianwaffles.battleship;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import javax.swing.ImageIcon;
+
+import org.junit.jupiter.api.Test;
+
+public class TileAtlasTest {
+
+    @Test
+    public void tilesOnlyRedrawnForNewSize() {
+
+        TileAtlas atlas = new TileAtlas();
+        ImageIcon tile = atlas.getIcon(TileAtlas.TILE);
+
+        // first size draws every tile
+        assertTrue(atlas.resize(43, 38));
+        assertEquals(43, tile.getIconWidth());
+        assertEquals(38, tile.getIconHeight());
+
+        // same size again does nothing
+        assertFalse(atlas.resize(43, 38));
+
+        // a new size redraws into the same icons
+        assertTrue(atlas.resize(60, 50));
+        assertSame(tile, atlas.getIcon(TileAtlas.TILE));
+        assertEquals(60, atlas.getIcon(TileAtlas.SHARK).getIconWidth());
+        assertEquals(50, atlas.getIcon(TileAtlas.SHARK).getIconHeight());
+    }
+}
@@ -0,0 +1,234 @@
+package com.belgianwaffles.battleshipserver;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.Random;
+
+/**
+ * A headless player that speaks the same packets as the Swing client.
+ * It answers pings, confirms the first layout it is given, and shoots a random open cell each turn after thinking,
+ * then joins a new game once the last one ends.
+ */
+final class BotClient implements Runnable {
+
+    // ----- Constants -----
+
+    // Longest to wait on the server, the server pings well within this
+    private static final int READ_TIMEOUT    = ConnectionManager.DEFAULT_TIMEOUT * 2;
+    private static final int CONNECT_TIMEOUT = 5000;
+    // Wait after a failed connection before trying again
+    private static final long RETRY_TIME     = 100;
+
+    // Bots always see themselves as player 1
+    private static final byte SHOT           = (byte)0b00100000;
+
+
+
+    // ----- Data -----
+
+    private final InetSocketAddress mServer;
+    private final long mThinkTime;
+    private final LoadStats mStats;
+    private final Random mRng;
+    private volatile Socket mSocket;
+    private volatile boolean mStopped;
+
+    // Current game, only touched by the bots thread
+    private Grid mBoard;
+    private int mVersion;
+    private long mMoveSent;
+
+
+
+    // ----- Methods -----
+
+    /**
+     * Creates a bot
+     * @param server the address of the server
+     * @param thinkTime average milliseconds to wait before each shot, 0 to shoot straight away
+     * @param stats the results to record into
+     * @param seed seed for thinking and choosing cells
+     */
+    public BotClient(InetSocketAddress server, long thinkTime, LoadStats stats, long seed) {
+        this.mServer = server;
+        this.mThinkTime = thinkTime;
+        this.mStats = stats;
+        this.mRng = new Random(seed);
+        this.mStopped = false;
+    }
+
+    /**
+     * Plays games until stopped
+     */
+    @Override
+    public void run() {
+        while (!this.mStopped) {
+            Socket socket = new Socket();
+            try {
+                socket.connect(this.mServer, CONNECT_TIMEOUT);
+            } catch (IOException e) {
+                closeQuietly(socket);
+                if (this.mStopped) {
+                    return;
+                }
+                this.mStats.connectFailed();
+                if (!this.pause(RETRY_TIME)) {
+                    return;
+                }
+                continue;
+            }
+
+            this.mSocket = socket;
+            try (socket) {
+                socket.setTcpNoDelay(true);
+                socket.setSoTimeout(READ_TIMEOUT);
+                this.play(socket);
+                this.mStats.gameFinished();
+            } catch (IOException e) {
+                if (!this.mStopped) {
+                    this.mStats.dropped();
+                }
+            }
+        }
+    }
+
+    /**
+     * Stops the bot, closing its connection
+     */
+    public void stop() {
+        this.mStopped = true;
+        Socket socket = this.mSocket;
+        if (socket != null) {
+            closeQuietly(socket);
+        }
+    }
+
+    /**
+     * Plays a single game to the end
+     * @param socket connection to the server
+     * @throws IOException if the connection closes before the game ends
+     */
+    private void play(Socket socket) throws IOException {
+        DataInputStream input = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        OutputStream output = socket.getOutputStream();
+        byte[] header = new byte[Packet.HEADER_SIZE];
+        boolean placed = false;
+        this.mBoard = null;
+        this.mMoveSent = 0;
+
+        while (!this.mStopped) {
+            // Read a whole packet
+            input.readFully(header);
+            byte[] frame = new byte[Packet.frameLength(header)];
+            System.arraycopy(header, 0, frame, 0, Packet.HEADER_SIZE);
+            input.readFully(frame, Packet.HEADER_SIZE, frame.length - Packet.HEADER_SIZE);
+            Packet packet = new Packet();
+            packet.wrap(frame);
+
+            switch (packet.getType()) {
+                case Packet.PACKET_TYPE_PING -> output.write(Packet.sharedPing().getBuffer());
+                case Packet.PACKET_TYPE_GRID -> {
+                    // The first grid is the layout to confirm
+                    if (!placed) {
+                        placed = true;
+                        Packet confirm = new Packet();
+                        confirm.addFlag(Packet.PACKET_FLAG_CONFIRM);
+                        confirm.serialize(packet.getGrid());
+                        output.write(confirm.getBuffer());
+                        continue;
+                    }
+                    this.mBoard = packet.getGrid();
+                    this.mVersion = 0;
+                    this.onBoard(output, packet.isTurn());
+                }
+                case Packet.PACKET_TYPE_DELTA -> {
+                    int version = packet.getVersion();
+                    if (this.mBoard == null || version != ((this.mVersion + 1) & Packet.DELTA_VERSION_MASK)) {
+                        Packet resync = new Packet();
+                        resync.addFlag(Packet.PACKET_FLAG_RESYNC);
+                        resync.serialize(this.mVersion);
+                        output.write(resync.getBuffer());
+                        continue;
+                    }
+                    packet.applyDelta(this.mBoard);
+                    this.mVersion = version;
+                    this.onBoard(output, packet.isTurn());
+                }
+                case Packet.PACKET_TYPE_FLAGS -> {
+                    return;
+                }
+                default -> {
+                    // Images are not needed, leaving asset offers unanswered skips the download
+                }
+            }
+        }
+        throw new IOException("Bot stopped");
+    }
+
+    /**
+     * Records the answer to the last move and, if it is this bots turn, thinks and shoots again
+     * @param output stream to the server
+     * @param turn true if it is this bots turn
+     * @throws IOException if the move could not be sent
+     */
+    private void onBoard(OutputStream output, boolean turn) throws IOException {
+        if (this.mMoveSent != 0) {
+            this.mStats.moveAnswered(System.nanoTime() - this.mMoveSent);
+            this.mMoveSent = 0;
+        }
+        if (!turn) {
+            return;
+        }
+
+        // Think for half to one and a half times the think time, so bots drift out of step
+        if (this.mThinkTime > 0 && !this.pause(this.mThinkTime / 2 + this.mRng.nextLong(this.mThinkTime + 1))) {
+            return;
+        }
+
+        // Random open cell, scanning on from there if it was already shot
+        int cells = Grid.GRID_SIZE * Grid.GRID_SIZE;
+        int start = this.mRng.nextInt(cells);
+        for (int i = 0; i < cells; i++) {
+            int index = (start + i) % cells;
+            byte cell = this.mBoard.getCell(index / Grid.GRID_SIZE, index % Grid.GRID_SIZE);
+            if ((cell & SHOT) == 0) {
+                Packet move = new Packet();
+                move.serialize(this.mVersion, index, (byte)(cell | SHOT));
+                this.mMoveSent = System.nanoTime();
+                output.write(move.getBuffer());
+                return;
+            }
+        }
+    }
+
+    /**
+     * Sleeps unless the bot is stopped
+     * @param millis time to sleep in milliseconds
+     * @return false if the bot was stopped or interrupted
+     */
+    private boolean pause(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        return !this.mStopped;
+    }
+
+    /**
+     * Closes a socket, ignoring sockets that are already closed
+     * @param socket the socket to close
+     */
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // Already closed
+        }
+    }
+}
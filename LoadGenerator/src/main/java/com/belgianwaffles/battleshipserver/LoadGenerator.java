@@ -0,0 +1,134 @@
+package com.belgianwaffles.battleshipserver;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Puts load on a running server with headless bots, each on its own virtual thread.
+ * Bots are paired by the server like any other client and play whole games, then join new ones until time is up.
+ * Reports games per second, connection failures and turn latency percentiles.
+ * Arguments: [bots] [seconds], then any of --host name, --port number, --think ms and --ramp ms
+ */
+public final class LoadGenerator {
+
+    // ----- Constants -----
+
+    public static final String ARG_HOST       = "--host";
+    public static final String ARG_PORT       = "--port";
+    public static final String ARG_THINK      = "--think";
+    public static final String ARG_RAMP       = "--ramp";
+
+    private static final int DEFAULT_BOTS     = 16;
+    private static final int DEFAULT_SECONDS  = 30;
+    private static final String DEFAULT_HOST  = "localhost";
+    private static final long DEFAULT_THINK   = 100;
+    private static final long DEFAULT_RAMP    = 10;
+
+    // Seconds between progress lines
+    private static final int REPORT_INTERVAL  = 5;
+    // Longest to wait for bots to notice the end
+    private static final long JOIN_TIME       = 5000;
+
+
+
+    // ----- Methods -----
+
+    public static void main(String[] args) throws InterruptedException {
+        int bots = DEFAULT_BOTS;
+        int seconds = DEFAULT_SECONDS;
+        String host = DEFAULT_HOST;
+        int port = ConnectionManager.DEFAULT_PORT;
+        long think = DEFAULT_THINK;
+        long ramp = DEFAULT_RAMP;
+
+        int first = 0;
+        if (first < args.length && parseCount(args[first]) > 0) {
+            bots = (int)parseCount(args[first++]);
+        }
+        if (first < args.length && parseCount(args[first]) > 0) {
+            seconds = (int)parseCount(args[first++]);
+        }
+        for (int i = first; i < args.length; i++) {
+            boolean hasValue = i + 1 < args.length;
+            switch (args[i]) {
+                case ARG_HOST -> host = hasValue ? args[++i] : host;
+                case ARG_PORT -> port = (hasValue && parseCount(args[i + 1]) > 0) ? (int)parseCount(args[++i]) : port;
+                case ARG_THINK -> think = (hasValue && parseCount(args[i + 1]) >= 0) ? parseCount(args[++i]) : think;
+                case ARG_RAMP -> ramp = (hasValue && parseCount(args[i + 1]) >= 0) ? parseCount(args[++i]) : ramp;
+                default -> System.err.println("Unknown argument: " + args[i]);
+            }
+        }
+
+        // Packets log their errors, so the logger has to exist
+        FileLogger.initLogger();
+
+        System.out.printf("Running %d bots against %s:%d for %d s, thinking %d ms%n", bots, host, port, seconds, think);
+        InetSocketAddress server = new InetSocketAddress(host, port);
+        LoadStats stats = new LoadStats();
+        BotClient[] clients = new BotClient[bots];
+        ExecutorService threads = Executors.newVirtualThreadPerTaskExecutor();
+
+        // Spread connections out, so the run measures games and not the accept backlog
+        long start = System.nanoTime();
+        for (int i = 0; i < bots; i++) {
+            clients[i] = new BotClient(server, think, stats, i);
+            threads.execute(clients[i]);
+            if (ramp > 0) {
+                Thread.sleep(ramp);
+            }
+        }
+
+        // Print progress until time is up
+        long deadline = start + TimeUnit.SECONDS.toNanos(seconds);
+        long now;
+        while ((now = System.nanoTime()) < deadline) {
+            Thread.sleep(Math.min(TimeUnit.SECONDS.toMillis(REPORT_INTERVAL), TimeUnit.NANOSECONDS.toMillis(deadline - now) + 1));
+            System.out.printf("%5.1f s: %d games, %d moves, %d connection failures, %d dropped%n",
+            (System.nanoTime() - start) / 1e9, stats.getGames(), stats.getMoves(), stats.getConnectFailures(), stats.getDropped());
+        }
+        long elapsed = System.nanoTime() - start;
+
+        for (BotClient client : clients) {
+            client.stop();
+        }
+        threads.shutdown();
+        threads.awaitTermination(JOIN_TIME, TimeUnit.MILLISECONDS);
+
+        report(stats, elapsed);
+    }
+
+    /**
+     * Prints the results of a run
+     * @param stats the results of every bot
+     * @param elapsed nanoseconds the bots played for
+     */
+    private static void report(LoadStats stats, long elapsed) {
+        double secs = elapsed / 1e9;
+        LatencyHistogram latency = stats.getTurnLatency();
+        System.out.println("Games finished: " + stats.getGames());
+        System.out.printf("Games/second: %.2f%n", stats.getGames() / secs);
+        System.out.printf("Moves/second: %.1f%n", stats.getMoves() / secs);
+        System.out.println("Connection failures: " + stats.getConnectFailures());
+        System.out.println("Dropped games: " + stats.getDropped());
+        if (latency.getCount() > 0) {
+            System.out.printf("Turn latency p50: %.3f ms, p99: %.3f ms, p99.9: %.3f ms, max: %.3f ms%n",
+            latency.percentile(0.50) / 1e6, latency.percentile(0.99) / 1e6,
+            latency.percentile(0.999) / 1e6, latency.getMax() / 1e6);
+        }
+    }
+
+    /**
+     * Reads a whole number argument
+     * @param arg the argument
+     * @return the number, -1 if it is not one
+     */
+    private static long parseCount(String arg) {
+        try {
+            return Long.parseLong(arg);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.belgianwaffles.battleshipserver;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Results shared by every bot of a load run.
+ * Bots record straight into it from their own threads, nothing here locks.
+ */
+final class LoadStats {
+
+    // ----- Data -----
+
+    // Games played to the end, counted once by each of the two bots in it
+    private final LongAdder mGames;
+    private final LongAdder mMoves;
+    // Connections the server refused or never answered
+    private final LongAdder mConnectFailures;
+    // Connections lost part way through a game
+    private final LongAdder mDropped;
+
+    // Time from sending a move to the board that answers it, in nanoseconds
+    private final LatencyHistogram mTurnLatency;
+
+
+
+    // ----- Methods -----
+
+    /**
+     * Creates empty results
+     */
+    public LoadStats() {
+        this.mGames = new LongAdder();
+        this.mMoves = new LongAdder();
+        this.mConnectFailures = new LongAdder();
+        this.mDropped = new LongAdder();
+        this.mTurnLatency = new LatencyHistogram();
+    }
+
+    /**
+     * Counts a game a bot played to the end
+     */
+    public void gameFinished() {
+        this.mGames.increment();
+    }
+
+    /**
+     * Counts a move and the time the server took to answer it
+     * @param nanos the turn latency in nanoseconds
+     */
+    public void moveAnswered(long nanos) {
+        this.mMoves.increment();
+        this.mTurnLatency.record(nanos);
+    }
+
+    /**
+     * Counts a connection that could not be opened
+     */
+    public void connectFailed() {
+        this.mConnectFailures.increment();
+    }
+
+    /**
+     * Counts a connection lost before its game ended
+     */
+    public void dropped() {
+        this.mDropped.increment();
+    }
+
+
+
+    // ----- Getters -----
+
+    /**
+     * Gets the amount of finished games, each game is played by two bots
+     * @return the game count
+     */
+    public long getGames() {
+        return this.mGames.sum() / 2;
+    }
+
+    /**
+     * Gets the amount of answered moves
+     * @return the move count
+     */
+    public long getMoves() {
+        return this.mMoves.sum();
+    }
+
+    /**
+     * Gets the amount of connections that could not be opened
+     * @return the failure count
+     */
+    public long getConnectFailures() {
+        return this.mConnectFailures.sum();
+    }
+
+    /**
+     * Gets the amount of connections lost part way through a game
+     * @return the drop count
+     */
+    public long getDropped() {
+        return this.mDropped.sum();
+    }
+
+    /**
+     * Gets the turn latencies of every bot
+     * @return the latencies in nanoseconds
+     */
+    public LatencyHistogram getTurnLatency() {
+        return this.mTurnLatency;
+    }
+}
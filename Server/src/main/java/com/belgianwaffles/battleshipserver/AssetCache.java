@@ -0,0 +1,196 @@
+package com.belgianwaffles.battleshipserver;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Server wide cache of the images sent to clients.
+ * Each file is read and hashed once, and its offer and chunk packets are packed once and shared by every game.
+ * A file that changes on disk is loaded again the next time it is asked for.
+ */
+final class AssetCache {
+
+    // ----- Constants -----
+
+    public static final String DEFAULT_DIRECTORY = "../Assets";
+    // Small enough that pings and moves are not stuck behind a whole image
+    public static final int DEFAULT_CHUNK_SIZE   = 1 << 16;
+
+    private static final String HASH_ALGORITHM   = "SHA-256";
+
+    private static final AssetCache sCache = new AssetCache(Path.of(DEFAULT_DIRECTORY), DEFAULT_CHUNK_SIZE);
+
+
+
+    // ----- Data -----
+
+    private final Path mDirectory;
+    private final int mChunkSize;
+    private final ConcurrentHashMap<String, Asset> mAssets;
+
+
+
+    // ----- Methods -----
+
+    /**
+     * Creates an empty cache
+     * @param directory folder the assets are read from
+     * @param chunkSize most asset bytes in a single chunk packet
+     */
+    AssetCache(Path directory, int chunkSize) {
+        this.mDirectory = directory;
+        this.mChunkSize = Math.max(1, chunkSize);
+        this.mAssets = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Gets an asset, loading it if it is not cached yet or the file changed since
+     * @param name the file name of the asset
+     * @return the asset, null if the file could not be read
+     */
+    Asset get(String name) {
+        Path path = this.mDirectory.resolve(name);
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (IOException e) {
+            this.mAssets.remove(name);
+            FileLogger.logError(AssetCache.class, "get(String)", "Could not find asset " + path);
+            System.err.println("Could not find asset " + name);
+            return null;
+        }
+
+        // Cached and unchanged, the usual case
+        FileTime modified = attributes.lastModifiedTime();
+        long size = attributes.size();
+        Asset cached = this.mAssets.get(name);
+        if (cached != null && cached.isCurrent(modified, size)) {
+            return cached;
+        }
+
+        // Games starting at once wait on the same load instead of each reading the file
+        return this.mAssets.compute(name, (key, old) ->
+            (old != null && old.isCurrent(modified, size)) ? old : this.load(path, modified, size));
+    }
+
+    /**
+     * Reads, hashes and packs an asset
+     * @param path the file
+     * @param modified when the file was last changed
+     * @param size the file size
+     * @return the asset, null if the file could not be read
+     */
+    private Asset load(Path path, FileTime modified, long size) {
+        byte[] bytes;
+        byte[] hash;
+        try {
+            bytes = Files.readAllBytes(path);
+            hash = MessageDigest.getInstance(HASH_ALGORITHM).digest(bytes);
+        } catch (IOException | NoSuchAlgorithmException e) {
+            FileLogger.logError(AssetCache.class, "load(Path, FileTime, long)", "Could not read asset " + path);
+            System.err.println("Could not read image from file");
+            return null;
+        }
+
+        // Offer first, then the file split into chunks
+        Packet offer = new Packet();
+        offer.serialize(hash, bytes.length);
+        Packet[] chunks = new Packet[(bytes.length + this.mChunkSize - 1) / this.mChunkSize];
+        for (int i = 0; i < chunks.length; i++) {
+            int offset = i * this.mChunkSize;
+            chunks[i] = new Packet();
+            chunks[i].serialize(hash, bytes, offset, Math.min(this.mChunkSize, bytes.length - offset));
+        }
+        FileLogger.logMessage("Loaded asset " + path + " in " + chunks.length + " chunks");
+        return new Asset(hash, modified, size, offer, List.of(chunks));
+    }
+
+    /**
+     * Gets an asset from the server wide cache
+     * @param name the file name of the asset
+     * @return the asset, null if the file could not be read
+     */
+    static Asset getAsset(String name) {
+        return sCache.get(name);
+    }
+
+
+
+    // ----- Subclasses -----
+
+    /**
+     * A loaded asset, its packets are shared and must not be changed
+     */
+    static final class Asset {
+
+        // ----- Data -----
+
+        private final byte[] mHash;
+        private final FileTime mModified;
+        private final long mSize;
+        private final Packet mOffer;
+        private final List<Packet> mChunks;
+
+
+
+        // ----- Methods -----
+
+        /**
+         * Creates a loaded asset
+         * @param hash the SHA-256 of the file
+         * @param modified when the file was last changed
+         * @param size the file size
+         * @param offer the packed offer
+         * @param chunks the packed chunks in order
+         */
+        private Asset(byte[] hash, FileTime modified, long size, Packet offer, List<Packet> chunks) {
+            this.mHash = hash;
+            this.mModified = modified;
+            this.mSize = size;
+            this.mOffer = offer;
+            this.mChunks = chunks;
+        }
+
+        /**
+         * Checks if the asset still matches its file
+         * @param modified when the file was last changed
+         * @param size the file size
+         * @return true if the file has not changed since it was loaded
+         */
+        private boolean isCurrent(FileTime modified, long size) {
+            return this.mModified.equals(modified) && this.mSize == size;
+        }
+
+        /**
+         * Checks if a hash is the hash of this asset
+         * @param hash the hash to check
+         * @return true if they are the same
+         */
+        boolean hasHash(byte[] hash) {
+            return MessageDigest.isEqual(this.mHash, hash);
+        }
+
+        /**
+         * Gets the packet that offers the asset to a client
+         * @return the shared offer packet
+         */
+        Packet getOffer() {
+            return this.mOffer;
+        }
+
+        /**
+         * Gets the packets that carry the asset, to be sent in order
+         * @return the shared chunk packets
+         */
+        List<Packet> getChunks() {
+            return this.mChunks;
+        }
+    }
+}
@@ -0,0 +1,249 @@
+package com.belgianwaffles.battleshipserver;
+
+import java.time.Instant;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+import java.util.logging.Formatter;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.SimpleFormatter;
+
+/**
+ * Writes log records for <code>FileLogger</code> on a single background thread.
+ * Callers only add a record to a ring buffer, messages are built and written later in batches,
+ * so nothing is formatted for records that get dropped.
+ */
+final class AsyncLogWriter implements Runnable {
+
+    // ----- Constants -----
+
+    // Most records written to the files at once
+    private static final int BATCH_SIZE    = 256;
+    // Longest the writer sleeps while the ring is empty
+    private static final long PARK_NANOS   = 10_000_000L;
+    private static final String LOGGER_NAME = "FileLogger";
+
+    // Handlers are given whole batches that are already formatted
+    private static final Formatter RAW_FORMATTER = new Formatter() {
+        @Override
+        public String format(LogRecord record) {
+            return record.getMessage();
+        }
+    };
+
+    /**
+     * A single record waiting to be written
+     */
+    private static final class Entry {
+        private final Handler mTarget;
+        private final Level mLevel;
+        private final String mSourceClass, mSourceMethod;
+        private final Supplier<String> mMessage;
+        private final long mMillis;
+
+        private Entry(Handler target, Level level, String sourceClass, String sourceMethod, Supplier<String> message) {
+            this.mTarget = target;
+            this.mLevel = level;
+            this.mSourceClass = sourceClass;
+            this.mSourceMethod = sourceMethod;
+            this.mMessage = message;
+            this.mMillis = System.currentTimeMillis();
+        }
+    }
+
+
+
+    // ----- Data -----
+
+    private final LogRing<Entry> mRing;
+    private final int mPolicy;
+    private final Handler mErrorLog;
+    private final Handler[] mHandlers;
+    private final Formatter[] mFormatters;
+    private final SimpleFormatter mFormatter;
+    private final Map<Handler, StringBuilder> mBatches;
+    private final AtomicLong mDropped;
+
+    private final Thread mThread;
+    private volatile boolean mRunning;
+
+
+
+    // ----- Methods -----
+
+    /**
+     * Creates the writer, call <code>start</code> to begin writing
+     * @param capacity amount of records that can wait at once
+     * @param policy what to do when full, use FileLogger.POLICY_####
+     * @param errorLog handler dropped record counts are reported to
+     * @param handlers every handler records are written to
+     */
+    public AsyncLogWriter(int capacity, int policy, Handler errorLog, Handler... handlers) {
+        this.mRing = new LogRing<>(capacity);
+        this.mPolicy = policy;
+        this.mErrorLog = errorLog;
+        this.mHandlers = handlers;
+        this.mFormatters = new Formatter[handlers.length];
+        this.mFormatter = new SimpleFormatter();
+        this.mBatches = new IdentityHashMap<>();
+        for (Handler handler : handlers) {
+            this.mBatches.put(handler, new StringBuilder());
+        }
+        this.mDropped = new AtomicLong(0);
+
+        this.mThread = new Thread(this, "file-logger");
+        this.mThread.setDaemon(true);
+        this.mRunning = false;
+    }
+
+    /**
+     * Starts the writer thread, handlers are written to raw until <code>stop</code>
+     */
+    public void start() {
+        for (int i = 0; i < this.mHandlers.length; i++) {
+            this.mFormatters[i] = this.mHandlers[i].getFormatter();
+            this.mHandlers[i].setFormatter(RAW_FORMATTER);
+        }
+        this.mRunning = true;
+        this.mThread.start();
+    }
+
+    /**
+     * Writes everything still waiting and stops the writer thread
+     */
+    public void stop() {
+        this.mRunning = false;
+        LockSupport.unpark(this.mThread);
+        try {
+            this.mThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (int i = 0; i < this.mHandlers.length; i++) {
+            this.mHandlers[i].setFormatter(this.mFormatters[i]);
+        }
+    }
+
+
+
+    // ----- Producers -----
+
+    /**
+     * Queues a record, safe to call from any thread
+     * @param target the handler for the log file
+     * @param level the level of the record
+     * @param sourceClass class the record came from, null if unknown
+     * @param sourceMethod method the record came from, null if unknown
+     * @param message builds the message, only called if the record is written
+     * @return false if the record was dropped
+     */
+    public boolean log(Handler target, Level level, String sourceClass, String sourceMethod, Supplier<String> message) {
+        Entry entry = new Entry(target, level, sourceClass, sourceMethod, message);
+        while (!this.mRing.offer(entry)) {
+            // Full, either lose the record or wait for the writer to catch up
+            if (this.mPolicy == FileLogger.POLICY_DROP || !this.mRunning) {
+                this.mDropped.incrementAndGet();
+                return false;
+            }
+            LockSupport.unpark(this.mThread);
+            Thread.yield();
+        }
+        return true;
+    }
+
+    /**
+     * Gets the amount of records waiting to be written
+     * @return queued record count
+     */
+    public int getQueued() {
+        return this.mRing.size();
+    }
+
+    /**
+     * Gets the amount of records dropped since last reported
+     * @return dropped record count
+     */
+    public long getDropped() {
+        return this.mDropped.get();
+    }
+
+
+
+    // ----- Consumer -----
+
+    /**
+     * Writer thread, drains the ring in batches until stopped
+     */
+    @Override
+    public void run() {
+        while (true) {
+            boolean running = this.mRunning;
+            int written = this.writeBatch();
+
+            // Stop only once everything queued before stopping is written
+            if (written == 0) {
+                if (!running) {
+                    return;
+                }
+                LockSupport.parkNanos(this, PARK_NANOS);
+            }
+        }
+    }
+
+    /**
+     * Formats up to a batch of records and hands each file its text at once
+     * @return amount of records written
+     */
+    private int writeBatch() {
+        int written = 0;
+        Entry entry;
+        while (written < BATCH_SIZE && (entry = this.mRing.poll()) != null) {
+            this.mBatches.get(entry.mTarget).append(this.format(entry));
+            written++;
+        }
+
+        // Let the error log know records went missing
+        long dropped = this.mDropped.getAndSet(0);
+        if (dropped > 0) {
+            Entry report = new Entry(this.mErrorLog, Level.WARNING, AsyncLogWriter.class.getName(), "log",
+            () -> "Dropped " + dropped + " log records, logger was full\n");
+            this.mBatches.get(this.mErrorLog).append(this.format(report));
+        }
+
+        // One write per file for the whole batch
+        for (Handler handler : this.mHandlers) {
+            StringBuilder batch = this.mBatches.get(handler);
+            if (batch.length() > 0) {
+                handler.publish(new LogRecord(Level.INFO, batch.toString()));
+                batch.setLength(0);
+            }
+        }
+        return written;
+    }
+
+    /**
+     * Builds the text for a record the same way the synchronous logger would
+     * @param entry the record to format
+     * @return the formatted text
+     */
+    private String format(Entry entry) {
+        LogRecord record = new LogRecord(entry.mLevel, "{0}");
+        // A bad message must not stop the writer
+        String message;
+        try {
+            message = entry.mMessage.get();
+        } catch (RuntimeException e) {
+            message = "Failed to build log message: " + e + "\n";
+        }
+        record.setParameters(new Object[] { message });
+        record.setInstant(Instant.ofEpochMilli(entry.mMillis));
+        record.setLoggerName(LOGGER_NAME);
+        record.setSourceClassName(entry.mSourceClass);
+        record.setSourceMethodName(entry.mSourceMethod);
+        return this.mFormatter.format(record);
+    }
+}
@@ -0,0 +1,265 @@
+package com.belgianwaffles.battleshipserver;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * State for a single client connected through the selector loop.
+ * Holds the partially read packet data and any writes the socket could not take yet.
+ */
+final class ChannelSession {
+
+    // ----- Constants -----
+
+    private static final int READ_BUFFER_SIZE = 1024;
+
+
+
+    // ----- Data -----
+
+    // Lets blocking style senders find the session for a socket
+    private static final Map<Socket, ChannelSession> sSessions = new ConcurrentHashMap<>();
+
+    private final SocketChannel mChannel;
+    private final SelectionKey mKey;
+    private final Socket mSocket;
+
+    private ByteBuffer mReadBuffer;
+    private final ArrayDeque<ByteBuffer> mWrites;
+
+    private volatile GameManager mGame;
+
+
+
+    // ----- Methods -----
+
+    /**
+     * Registers a newly accepted channel with the selector
+     * @param channel the accepted client channel
+     * @param selector the selector the server is running
+     * @throws IOException if the channel could not be registered
+     */
+    public ChannelSession(SocketChannel channel, Selector selector) throws IOException {
+        this.mChannel = channel;
+        this.mChannel.configureBlocking(false);
+        this.mSocket = channel.socket();
+        // Direct so socket reads land without an extra copy in the channel
+        this.mReadBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+        this.mWrites = new ArrayDeque<>();
+        this.mKey = channel.register(selector, SelectionKey.OP_READ, this);
+        sSessions.put(this.mSocket, this);
+    }
+
+    /**
+     * Finds the session that owns the given socket
+     * @param socket the socket to look up
+     * @return the session, null if the socket is not selector managed
+     */
+    public static ChannelSession find(Socket socket) {
+        if (socket == null) {
+            return null;
+        }
+        return sSessions.get(socket);
+    }
+
+    /**
+     * Closes the channel and informs the game the client is gone
+     */
+    public void close() {
+        // Only the first close informs the game
+        if (sSessions.remove(this.mSocket) == null) {
+            return;
+        }
+        ServerMetrics.clientClosed(this.mSocket);
+        this.mKey.cancel();
+        try {
+            this.mChannel.close();
+        } catch (IOException e) {
+            FileLogger.logError(ChannelSession.class, "close()", "Failed to close client channel");
+        }
+
+        // Null packets tell the game a client disconnected
+        GameManager game = this.mGame;
+        this.mGame = null;
+        if (game != null) {
+            game.deliverPacket(this.mSocket, null);
+        }
+    }
+
+
+
+    // ----- Reading -----
+
+    /**
+     * Reads whatever is available on the channel and hands complete packets to the game.
+     * Only called from the selector thread.
+     * @return false if the client has disconnected
+     */
+    public boolean read() {
+        try {
+            if (this.mChannel.read(this.mReadBuffer) < 0) {
+                return false;
+            }
+        } catch (IOException e) {
+            return false;
+        }
+
+        // Pull every complete packet out of the buffer
+        this.mReadBuffer.flip();
+        while (true) {
+            int frame = Packet.frameLength(this.mReadBuffer);
+            if (frame < 0) {
+                break;
+            }
+
+            // Clients never send packets larger than a grid
+            if (frame > Packet.MAX_CLIENT_PACKET_SIZE || frame < Packet.HEADER_SIZE) {
+                FileLogger.logError(ChannelSession.class, "read()", "Received packet with invalid length " + frame);
+                return false;
+            }
+
+            // Wait for the rest of the packet
+            if (this.mReadBuffer.remaining() < frame) {
+                this.growReadBuffer(frame);
+                break;
+            }
+
+            // Single copy out of the buffer, the packet keeps the array.
+            // The array and Packet are new each time, games step the packet after the buffer is read again.
+            byte[] bytes = new byte[frame];
+            this.mReadBuffer.get(bytes);
+            Packet packet = new Packet();
+            packet.wrap(bytes);
+            // Games are in the binary journal when it is on, the text dumps are left out
+            if (!GameJournal.isJournaling()) {
+                FileLogger.logMessage(packet::toString);
+            }
+            ServerMetrics.packetIn(packet.getType(), frame);
+            this.dispatch(packet);
+        }
+        this.mReadBuffer.compact();
+        return true;
+    }
+
+    /**
+     * Makes sure the read buffer can hold a full packet of the given size
+     * @param frame the size of the packet being received
+     */
+    private void growReadBuffer(int frame) {
+        if (this.mReadBuffer.capacity() >= frame) {
+            return;
+        }
+        ByteBuffer larger = ByteBuffer.allocateDirect(frame);
+        larger.put(this.mReadBuffer);
+        larger.flip();
+        this.mReadBuffer = larger;
+    }
+
+    /**
+     * Passes a received packet on to the game this client is playing
+     * @param packet the received packet
+     */
+    private void dispatch(Packet packet) {
+        if (this.mGame == null) {
+            FileLogger.logError(ChannelSession.class, "dispatch(Packet)", "Received packet before game started");
+            return;
+        }
+        this.mGame.deliverPacket(this.mSocket, packet);
+    }
+
+
+
+    // ----- Writing -----
+
+    /**
+     * Queues a packet for sending, writing as much as the socket takes right away.
+     * Safe to call from any thread.
+     * @param packet the packet to send
+     * @return false if the channel is closed
+     */
+    public boolean send(Packet packet) {
+        if (!this.mChannel.isOpen()) {
+            return false;
+        }
+        synchronized (this.mWrites) {
+            this.mWrites.add(ByteBuffer.wrap(packet.getBuffer()));
+
+            // Only write directly if nothing is waiting, otherwise order breaks
+            if (this.mWrites.size() == 1 && this.flush()) {
+                return true;
+            }
+
+            // Let the selector finish the write when the socket drains
+            if (!this.mKey.isValid()) {
+                return false;
+            }
+            this.mKey.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+            this.mKey.selector().wakeup();
+        }
+        return true;
+    }
+
+    /**
+     * Writes queued data until the socket is full
+     * @return true if all queued data has been written
+     */
+    public boolean flush() {
+        synchronized (this.mWrites) {
+            try {
+                while (!this.mWrites.isEmpty()) {
+                    ByteBuffer buffer = this.mWrites.peek();
+                    this.mChannel.write(buffer);
+                    if (buffer.hasRemaining()) {
+                        return false;
+                    }
+                    this.mWrites.poll();
+                }
+            } catch (IOException e) {
+                FileLogger.logError(ChannelSession.class, "flush()", "Failed to send packet");
+                this.mWrites.clear();
+                return true;
+            }
+
+            // Nothing left, stop waiting on writes
+            if (this.mKey.isValid()) {
+                this.mKey.interestOps(SelectionKey.OP_READ);
+            }
+            return true;
+        }
+    }
+
+
+
+    // ----- Getters ----- Setters -----
+
+    /**
+     * Gets the blocking style socket for the channel, used as the client identity by games
+     * @return the socket adaptor for the channel
+     */
+    public Socket getSocket() {
+        return this.mSocket;
+    }
+
+    /**
+     * Checks the channel has not been closed
+     * @return true if the channel is still open
+     */
+    public boolean isOpen() {
+        return this.mChannel.isOpen() && this.mKey.isValid();
+    }
+
+    /**
+     * Sets which game receives this clients packets
+     * @param game the game this client is playing
+     */
+    public void setGame(GameManager game) {
+        this.mGame = game;
+    }
+}
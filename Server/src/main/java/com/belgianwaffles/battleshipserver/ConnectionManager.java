@@ -1,11 +1,16 @@
 package com.belgianwaffles.battleshipserver;
 
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public final class ConnectionManager implements Runnable {
 
@@ -14,26 +19,105 @@ public final class ConnectionManager implements Runnable {
     public static final int DEFAULT_PORT    = 27000;
     public static final int DEFAULT_TIMEOUT = 20000;
 
+    // ----- Modes -----
+
+    // One thread per client, reads block on the socket
+    public static final int MODE_BLOCKING   = 0;
+    // Single selector thread reads every client without blocking
+    public static final int MODE_SELECTOR   = 1;
+
 
 
     // ----- Data -----
 
+    // Blocking clients are each read by a single thread, so the header buffer is reused per connection
+    private static final ThreadLocal<byte[]> sHeaderBuffer = ThreadLocal.withInitial(() -> new byte[Packet.HEADER_SIZE]);
+
     private final ServerSocket mServer;
-    private Socket mClient1, mClient2;
-    private boolean mRunningServer;
+    private final int mMode;
+    
+    // Runs games on virtual threads when set, null for a platform thread per game
+    private final ExecutorService mGameExecutor;
+    // Steps games on a fixed pool of workers when set, null for a thread per game
+    private final GameScheduler mScheduler;
+    // Pings and pairs blocking clients off the accept thread
+    private final Matchmaker mMatchmaker;
+    private volatile boolean mRunningServer;
+
+    // Selector mode only
+    private ServerSocketChannel mServerChannel;
+    private Selector mSelector;
+    private ChannelSession mWaiting;
 
 
     // ----- Methods -----
 
     /**
-     * Sets up the server
+     * Sets up the server using blocking sockets
      * @param port the port for the server to listen on
      * @throws IOException from any issues when creating server
      */
     public ConnectionManager(int port) throws IOException {
-        this.mServer = new ServerSocket(port);
-        this.mClient1 = null;
-        this.mClient2 = null;
+        this(port, MODE_BLOCKING);
+    }
+
+    /**
+     * Sets up the server
+     * @param port the port for the server to listen on
+     * @param mode how clients are read from, use MODE_####
+     * @throws IOException from any issues when creating server
+     */
+    public ConnectionManager(int port, int mode) throws IOException {
+        this(port, mode, false);
+    }
+
+    /**
+     * Sets up the server from the given settings
+     * @param config the server settings
+     * @throws IOException from any issues when creating server
+     */
+    public ConnectionManager(ServerConfig config) throws IOException {
+        this(config.getPort(), config.getMode(), config.useVirtualThreads(), config.getWorkers());
+    }
+
+    /**
+     * Sets up the server
+     * @param port the port for the server to listen on
+     * @param mode how clients are read from, use MODE_####
+     * @param virtualThreads true to run every game task on a virtual thread
+     * @throws IOException from any issues when creating server
+     */
+    public ConnectionManager(int port, int mode, boolean virtualThreads) throws IOException {
+        this(port, mode, virtualThreads, 0);
+    }
+
+    /**
+     * Sets up the server
+     * @param port the port for the server to listen on
+     * @param mode how clients are read from, use MODE_####
+     * @param virtualThreads true to run every game task on a virtual thread
+     * @param workers amount of threads stepping games, 0 to give every game its own thread
+     * @throws IOException from any issues when creating server
+     */
+    public ConnectionManager(int port, int mode, boolean virtualThreads, int workers) throws IOException {
+        GameManager.openServer();
+        this.mMode = mode;
+        this.mGameExecutor = virtualThreads ? Executors.newVirtualThreadPerTaskExecutor() : null;
+        this.mScheduler = (workers > 0) ? new GameScheduler(workers) : null;
+        if (mode == MODE_SELECTOR) {
+            this.mSelector = Selector.open();
+            this.mServerChannel = ServerSocketChannel.open();
+            this.mServerChannel.socket().setReuseAddress(true);
+            this.mServerChannel.bind(new InetSocketAddress(port));
+            this.mServerChannel.configureBlocking(false);
+            this.mServerChannel.register(this.mSelector, SelectionKey.OP_ACCEPT);
+            this.mServer = this.mServerChannel.socket();
+        }
+        else {
+            this.mServer = new ServerSocket(port);
+        }
+        this.mMatchmaker = new Matchmaker(this::startGame);
+        this.mWaiting = null;
         this.mRunningServer = true;
     }
 
@@ -44,9 +128,19 @@ public final class ConnectionManager implements Runnable {
     public boolean close() {
         // Closes server sockets and ends all games in progress
         this.mRunningServer = false;
+        this.mMatchmaker.close();
         GameManager.endAllGames();
+        if (this.mGameExecutor != null) {
+            this.mGameExecutor.shutdown();
+        }
+        if (this.mScheduler != null) {
+            this.mScheduler.close();
+        }
         try {
             this.mServer.close();
+            if (this.mSelector != null) {
+                this.mSelector.wakeup();
+            }
             return true;
         } catch (IOException e) {
             FileLogger.logError(ConnectionManager.class, "close()", "Failed to close server");
@@ -65,21 +159,26 @@ public final class ConnectionManager implements Runnable {
     @Override
     public void run() {
         System.out.println("Server is awaiting connections");
+        if (this.mMode == MODE_SELECTOR) {
+            this.runSelector();
+        }
+        else {
+            this.runBlocking();
+        }
+    }
+
+    /**
+     * Accepts clients one at a time, each game reads its own clients.
+     * Clients are handed to the matchmaker straight away, so accepting never waits on a ping.
+     */
+    private void runBlocking() {
         while (this.mRunningServer) {
-            Socket newClient;
             try {
-                newClient = this.mServer.accept();
+                Socket newClient = this.mServer.accept();
                 newClient.setSoTimeout(DEFAULT_TIMEOUT);
-                
-                // Choose which client this is
-                if (!this.checkConnection(this.mClient1)) {
-                    System.out.println("Client 1 connected");
-                    this.mClient1 = newClient;
-                }
-                else {
-                    System.out.println("Client 2 connected");
-                    this.mClient2 = newClient;
-                }
+                System.out.println("Client connected");
+                ServerMetrics.clientConnected(newClient);
+                this.mMatchmaker.add(newClient);
             }
             catch (IOException e) {
                 // Prevent error messages on server close
@@ -92,65 +191,144 @@ public final class ConnectionManager implements Runnable {
                 "Something went wrong when connecting clients");
                 System.err.println("Something went wrong when connecting clients");
             }
+        }
+    }
+
+    /**
+     * Accepts and reads every client from one thread, packets are handed to games as they arrive
+     */
+    private void runSelector() {
+        while (this.mRunningServer) {
+            try {
+                this.mSelector.select();
+            } catch (IOException e) {
+                FileLogger.logError(ConnectionManager.class, "runSelector()", "Selector failed");
+                System.err.println("Selector failed");
+                break;
+            }
 
-            // Attempt to start game
-            if (this.startGame(this.mClient1, this.mClient2)) {
-                // Successfully started game
-                this.mClient1 = null;
-                this.mClient2 = null;
+            // Server closed while waiting
+            if (!this.mRunningServer) {
+                break;
             }
-            else {
-                // Failed to start game
-                System.out.println("Could not start game");
-
-                // Check if client 2 disconnected
-                if (!this.checkConnection(this.mClient2)) {
-                    System.out.println("Disconnecting client 2");
-                    this.mClient2 = null;
-                }
-                // Check if client 1 disconnected
-                // Can move client 2 in always since both will be null anyway
-                if (!this.checkConnection(this.mClient1)) {
-                    System.out.println("Disconnecting client 1");
-                    this.mClient1 = this.mClient2;
-                }
+
+            var keys = this.mSelector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                this.handleKey(key);
+            }
+        }
+
+        // Close anything still connected
+        for (SelectionKey key : this.mSelector.keys()) {
+            if (key.attachment() instanceof ChannelSession session) {
+                session.close();
             }
         }
+        try {
+            this.mSelector.close();
+        } catch (IOException e) {
+            FileLogger.logError(ConnectionManager.class, "runSelector()", "Failed to close selector");
+        }
+    }
+
+    /**
+     * Handles a single ready key from the selector
+     * @param key the key that is ready
+     */
+    private void handleKey(SelectionKey key) {
+        if (!key.isValid()) {
+            return;
+        }
+
+        // New client
+        if (key.isAcceptable()) {
+            this.acceptChannel();
+            return;
+        }
+
+        ChannelSession session = (ChannelSession)key.attachment();
+
+        // Finish writes that did not fit in the socket
+        if (key.isWritable()) {
+            session.flush();
+        }
+
+        // Read packets, close on disconnect
+        if (key.isValid() && key.isReadable() && !session.read()) {
+            if (session == this.mWaiting) {
+                System.out.println("Waiting client disconnected");
+                this.mWaiting = null;
+            }
+            session.close();
+        }
+    }
+
+    /**
+     * Accepts a client from the server channel and pairs it into a game if someone is waiting
+     */
+    private void acceptChannel() {
+        SocketChannel channel;
+        ChannelSession session;
+        try {
+            channel = this.mServerChannel.accept();
+            if (channel == null) {
+                return;
+            }
+            session = new ChannelSession(channel, this.mSelector);
+            ServerMetrics.clientConnected(session.getSocket());
+        } catch (IOException e) {
+            FileLogger.logError(ConnectionManager.class, "acceptChannel()", 
+            "Something went wrong when connecting clients");
+            System.err.println("Something went wrong when connecting clients");
+            return;
+        }
+
+        // First client waits for an opponent
+        if (this.mWaiting == null || !this.mWaiting.isOpen()) {
+            System.out.println("Client 1 connected");
+            this.mWaiting = session;
+            return;
+        }
+
+        // Second client starts the game, games do not read their own sockets in this mode
+        System.out.println("Client 2 connected");
+        GameManager gm = new GameManager(this.mWaiting.getSocket(), session.getSocket(), false, this.mGameExecutor);
+        this.mWaiting.setGame(gm);
+        session.setGame(gm);
+        this.mWaiting = null;
+        this.launchGame(gm);
     }
 
     /**
-     * Attempts to start a game with the 2 given client <code>Socket</code> classes
+     * Starts a game for 2 clients the matchmaker has checked are connected
      * @param client1 <code>Socket</code> of the first client
      * @param client2 <code>Socket</code> of the second client
-     * @return <code>boolean</code> returns <code>true</code> when a thread for a new game has been created. 
-     * Returns false if either of the clients have disconnected from the server
-     */
-    private boolean startGame(Socket client1, Socket client2) {
-        // Check state of client 1
-        if (this.checkConnection(client1) && this.checkConnection(client2)) {
-            // Create thread for game to run on
-            GameManager gm = new GameManager(client1, client2);
-            Thread gameThread = new Thread(gm);
-            gameThread.start();
-            return true;
-        }
-        return false;
+     */
+    private void startGame(Socket client1, Socket client2) {
+        // Create thread for game to run on
+        GameManager gm = new GameManager(client1, client2, true, this.mGameExecutor);
+        this.launchGame(gm);
     }
 
     /**
-     * Ensures a client is still connected to the server
-     * @param client <code>Socket</code> to send ping to
-     * @return <code>boolean</code> <code>true</code> if connection is still live
+     * Runs a game on the scheduler or a virtual thread if enabled, otherwise on its own thread
+     * @param gm the game to run
      */
-    private boolean checkConnection(Socket client) {
-        // If no client
-        if (client == null) {
-            return false;
+    private void launchGame(GameManager gm) {
+        if (this.mScheduler != null) {
+            gm.start(this.mScheduler);
+            return;
         }
-        
-        return ping(client);
+        if (this.mGameExecutor != null) {
+            this.mGameExecutor.execute(gm);
+            return;
+        }
+        Thread gameThread = new Thread(gm);
+        gameThread.start();
     }
-    
+
     /**
      * Creates a ping packet and sends it to the clients.
      * Waits for a ping packet to be sent back within DEFAULT_TIMEOUT
@@ -158,15 +336,14 @@ public final class ConnectionManager implements Runnable {
      */
     public static boolean ping(Socket client) {
         // Prepare ping packet
-        Packet packet = new Packet();
-        packet.serialize();
+        Packet packet = Packet.sharedPing();
         
         // Send ping
         if (!ConnectionManager.sendPacket(client, packet)) {
             return false;
         }
         // Create log of sent ping
-        FileLogger.logPing(packet.toString());
+        FileLogger.logPing(packet::toString);
         
         // Receive ping
         packet = ConnectionManager.receivePacket(client);
@@ -181,7 +358,7 @@ public final class ConnectionManager implements Runnable {
         }
 
         // Create log of received ping
-        FileLogger.logPing(packet.toString());
+        FileLogger.logPing(packet::toString);
 
         return true;
     }
@@ -192,9 +369,20 @@ public final class ConnectionManager implements Runnable {
      * @param packet the packet data to send
      */
     public static boolean sendPacket(Socket client, Packet packet) {
+        // Selector clients are written without blocking
+        ChannelSession session = ChannelSession.find(client);
+        if (session != null) {
+            if (!session.send(packet)) {
+                return false;
+            }
+            ServerMetrics.packetOut(packet.getType(), packet.getBuffer().length);
+            return true;
+        }
+
         try {
-            var output = new DataOutputStream(client.getOutputStream());
-            output.write(packet.getBuffer());
+            // Socket streams are unbuffered, write the packed packet in one call
+            client.getOutputStream().write(packet.getBuffer());
+            ServerMetrics.packetOut(packet.getType(), packet.getBuffer().length);
             return true;
         } catch (IOException | NullPointerException ex) {
             FileLogger.logError(ConnectionManager.class, "sendPacket(Packet, Socket)", "Failed to send packet");
@@ -203,31 +391,59 @@ public final class ConnectionManager implements Runnable {
         }
     }
 
+    /**
+     * Closes a client connection, whichever mode it was accepted with
+     * @param client the client to close
+     * @throws IOException if the socket fails to close
+     */
+    public static void closeClient(Socket client) throws IOException {
+        ChannelSession session = ChannelSession.find(client);
+        if (session != null) {
+            session.close();
+            return;
+        }
+        ServerMetrics.clientClosed(client);
+        client.close();
+    }
+
     /**
      * Awaits and receives a packet from the server
      * @return a serialized packet with data from the server
      */
     public static Packet receivePacket(Socket client) {
         try {
-            // Get socket input
-            InputStream input = new DataInputStream(client.getInputStream());
-    
-            // Read the head from the server
-            Packet packet = new Packet();
-            byte[] head = input.readNBytes(Packet.HEADER_SIZE);
-            packet.deserialize(head);
-            
-            // Get the packet body
-            byte[] body = input.readNBytes(packet.getLength() + Packet.PACKET_TAIL_SIZE);
-            
-            // Add all items to packet
-            byte[] bytes = new byte[head.length + body.length];
-            System.arraycopy(head, 0, bytes, 0, head.length);
-            System.arraycopy(body, 0, bytes, head.length, body.length);
+            InputStream input = client.getInputStream();
+
+            // Read the head into the reused buffer
+            byte[] head = sHeaderBuffer.get();
+            if (input.readNBytes(head, 0, Packet.HEADER_SIZE) < Packet.HEADER_SIZE) {
+                return null;
+            }
+
+            // Protect against garbage lengths before allocating
+            int frame = Packet.frameLength(head);
+            if (frame > Packet.MAX_CLIENT_PACKET_SIZE || frame < Packet.HEADER_SIZE) {
+                FileLogger.logError(ConnectionManager.class, "receivePacket(Socket)", "Received packet with invalid length " + frame);
+                return null;
+            }
+
+            // Read the rest straight into the array the packet keeps.
+            // Each packet still gets its own array and Packet, games hold on to them after the next read.
+            byte[] bytes = new byte[frame];
+            System.arraycopy(head, 0, bytes, 0, Packet.HEADER_SIZE);
+            int body = frame - Packet.HEADER_SIZE;
+            if (input.readNBytes(bytes, Packet.HEADER_SIZE, body) < body) {
+                return null;
+            }
 
             // Pack into packet
-            packet.deserialize(bytes);
-            FileLogger.logMessage(packet.toString());
+            Packet packet = new Packet();
+            packet.wrap(bytes);
+            // Games are in the binary journal when it is on, the text dumps are left out
+            if (!GameJournal.isJournaling()) {
+                FileLogger.logMessage(packet::toString);
+            }
+            ServerMetrics.packetIn(packet.getType(), frame);
 
             // Return the packet
             return packet;
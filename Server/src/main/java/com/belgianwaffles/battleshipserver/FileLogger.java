@@ -1,6 +1,7 @@
 package com.belgianwaffles.battleshipserver;
 
 import java.io.IOException;
+import java.util.function.Supplier;
 import java.util.logging.FileHandler;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -21,12 +22,20 @@ public class FileLogger {
 
     private static final Logger logger = Logger.getLogger("FileLogger");
 
+    // What async logging does once its buffer is full
+    public static final int POLICY_DROP  = 0;
+    public static final int POLICY_BLOCK = 1;
+    public static final int DEFAULT_CAPACITY = 8192;
+
     // Data
 
     private static FileHandler pingLog = null;
     private static FileHandler gameLog = null;
     private static FileHandler errorLog = null;
 
+    // Set while logging runs on the background writer
+    private static volatile AsyncLogWriter asyncWriter = null;
+
 
     // Methods
 
@@ -73,13 +82,78 @@ public class FileLogger {
         return true;
     }
 
+    // Async mode
+
+    /**
+     * Moves writing onto a single background thread, logging calls only queue records from then on.
+     * Must be called after the logger is initialized
+     * @param capacity <code>int</code> Amount of records that can wait to be written
+     * @param policy <code>int</code> What to do when full, use POLICY_####
+     * @return <code>boolean</code> false if not initialized or already async
+     */
+    public static synchronized boolean startAsync(int capacity, int policy) {
+        if (pingLog == null || gameLog == null || errorLog == null || asyncWriter != null) {
+            return false;
+        }
+        AsyncLogWriter writer = new AsyncLogWriter(capacity, policy, errorLog, pingLog, gameLog, errorLog);
+        writer.start();
+        asyncWriter = writer;
+        return true;
+    }
+
+    /**
+     * Writes any queued records and goes back to logging on the calling thread
+     */
+    public static synchronized void stopAsync() {
+        AsyncLogWriter writer = asyncWriter;
+        if (writer == null) {
+            return;
+        }
+        asyncWriter = null;
+        writer.stop();
+    }
+
+    /**
+     * Checks if records are written on the background thread
+     * @return <code>boolean</code> true if async
+     */
+    public static boolean isAsync() {
+        return asyncWriter != null;
+    }
+
+    /**
+     * Gets the amount of records waiting on the background thread
+     * @return <code>int</code> queued record count, 0 if not async
+     */
+    public static int getQueueDepth() {
+        AsyncLogWriter writer = asyncWriter;
+        return (writer == null) ? 0 : writer.getQueued();
+    }
+
     // Logging methods
 
+    /**
+     * Logs a message being transmitted or received to the game log.
+     * In async mode the message is built later on the writer thread, so it must only read values that never change
+     * @param message <code>Supplier</code> Builds the message, only called if the record is written
+     */
+    public static boolean logMessage(Supplier<String> message) {
+        AsyncLogWriter writer = asyncWriter;
+        if (writer != null) {
+            return writer.log(gameLog, Level.INFO, null, null, () -> message.get() + "\n");
+        }
+        return logMessage(message.get());
+    }
+
     /**
      * Logs a message being transmitted or received to the game log
      * @param message <code>String</code> Message to be written to the log
      */
     public static boolean logMessage(String message) {
+        AsyncLogWriter writer = asyncWriter;
+        if (writer != null) {
+            return writer.log(gameLog, Level.INFO, null, null, () -> message + "\n");
+        }
         // logger is pain and this is how you have to manage multiple files
         logger.addHandler(gameLog);
         logger.log(Level.INFO, "{0}\n", message);
@@ -94,7 +168,24 @@ public class FileLogger {
      * @param sourceMethod <code>String</code> Class the error came from
      * @param message <code>String</code> Message to be written to the log
      */
-    public static synchronized <T> boolean logError(Class <T> sourceClass, String sourceMethod, String message) {
+    public static <T> boolean logError(Class <T> sourceClass, String sourceMethod, String message) {
+        AsyncLogWriter writer = asyncWriter;
+        if (writer != null) {
+            return writer.log(errorLog, Level.WARNING, sourceClass.getName(), sourceMethod, () -> 
+            "Error in class " + sourceClass.getName() + " in method " + sourceMethod + 
+            "\nmessage: " + message + "\n");
+        }
+        return logErrorNow(sourceClass, sourceMethod, message);
+    }
+
+    /**
+     * Logs an error to the error log on the calling thread
+     * @param <T>
+     * @param sourceClass <code>Class</code> Class the error came from
+     * @param sourceMethod <code>String</code> Class the error came from
+     * @param message <code>String</code> Message to be written to the log
+     */
+    private static synchronized <T> boolean logErrorNow(Class <T> sourceClass, String sourceMethod, String message) {
         // this is why logger got deprecated
         logger.addHandler(errorLog);
         logger.logp(Level.WARNING, sourceClass.getName(), sourceMethod, 
@@ -104,11 +195,28 @@ public class FileLogger {
         return true;
     }
 
+    /**
+     * Logs a ping to the ping log.
+     * In async mode the ping is built later on the writer thread, so it must only read values that never change
+     * @param message <code>Supplier</code> Builds the ping, only called if the record is written
+     */
+    public static boolean logPing(Supplier<String> message) {
+        AsyncLogWriter writer = asyncWriter;
+        if (writer != null) {
+            return writer.log(pingLog, Level.INFO, null, null, () -> message.get() + "\n");
+        }
+        return logPing(message.get());
+    }
+
     /**
      * Logs a ping to the ping log
      * @param message <code>String</code> Ping to be written to the log
      */
     public static boolean logPing(String message) {
+        AsyncLogWriter writer = asyncWriter;
+        if (writer != null) {
+            return writer.log(pingLog, Level.INFO, null, null, () -> message + "\n");
+        }
         logger.addHandler(pingLog);
         logger.log(Level.INFO, "{0}\n", message);
         logger.removeHandler(pingLog);
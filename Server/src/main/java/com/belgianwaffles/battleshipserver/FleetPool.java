@@ -0,0 +1,209 @@
+package com.belgianwaffles.battleshipserver;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Server wide pool of ready player 1 boards.
+ * A background thread keeps the pool topped up, so refreshes and new games never wait on ship placement.
+ * Boards are handed out once, whoever takes one owns it.
+ */
+final class FleetPool implements Runnable {
+
+    // ----- Constants -----
+
+    public static final int DEFAULT_SIZE      = 64;
+    public static final int DEFAULT_WATERMARK = 16;
+
+    // Longest the producer sleeps while the pool is full enough
+    private static final long PARK_NANOS      = 100_000_000L;
+
+    // Cells a whole fleet covers
+    private static final int FLEET_CELLS;
+    static {
+        int cells = 0;
+        for (int length : ShipPlacer.FLEET) {
+            cells += length;
+        }
+        FLEET_CELLS = cells;
+    }
+
+    // Pool used by the server, null when boards are made on request
+    private static volatile FleetPool sPool = null;
+
+
+
+    // ----- Data -----
+
+    private final ArrayBlockingQueue<Grid> mGrids;
+    private final int mWatermark;
+    private final AtomicLong mMisses;
+
+    private final Thread mThread;
+    private volatile boolean mRunning;
+
+
+
+    // ----- Methods -----
+
+    /**
+     * Creates a pool, call <code>start</code> to begin filling it
+     * @param size most boards held at once
+     * @param watermark the pool is filled back up once this many boards or fewer are left
+     */
+    FleetPool(int size, int watermark) {
+        this.mGrids = new ArrayBlockingQueue<>(Math.max(1, size));
+        this.mWatermark = Math.max(0, Math.min(watermark, size - 1));
+        this.mMisses = new AtomicLong(0);
+
+        this.mThread = new Thread(this, "fleet-pool");
+        this.mThread.setDaemon(true);
+        this.mRunning = false;
+    }
+
+    /**
+     * Starts the producer thread
+     */
+    void start() {
+        this.mRunning = true;
+        this.mThread.start();
+    }
+
+    /**
+     * Stops the producer thread, boards left in the pool can still be taken
+     */
+    void stop() {
+        this.mRunning = false;
+        LockSupport.unpark(this.mThread);
+        try {
+            this.mThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Takes a board from the pool, making one on the spot if the pool is empty
+     * @return a grid with a full player 1 fleet
+     */
+    Grid take() {
+        Grid grid = this.mGrids.poll();
+        if (this.mGrids.size() <= this.mWatermark) {
+            LockSupport.unpark(this.mThread);
+        }
+        if (grid == null) {
+            this.mMisses.incrementAndGet();
+            grid = generate();
+        }
+        return grid;
+    }
+
+    /**
+     * Gets the amount of boards ready to take
+     * @return the pool size
+     */
+    int available() {
+        return this.mGrids.size();
+    }
+
+    /**
+     * Gets the amount of boards that had to be made on request
+     * @return the miss count
+     */
+    long getMisses() {
+        return this.mMisses.get();
+    }
+
+
+
+    // ----- Producer -----
+
+    /**
+     * Producer thread, fills the pool whenever it drops to the watermark
+     */
+    @Override
+    public void run() {
+        while (this.mRunning) {
+            // Fill all the way so the producer wakes up once per batch, not once per board
+            while (this.mRunning && this.mGrids.remainingCapacity() > 0) {
+                Grid grid = createGrid();
+                if (grid != null) {
+                    this.mGrids.offer(grid);
+                }
+            }
+            while (this.mRunning && this.mGrids.size() > this.mWatermark) {
+                LockSupport.parkNanos(this, PARK_NANOS);
+            }
+        }
+    }
+
+    /**
+     * Makes a board and checks the whole fleet made it on
+     * @return the grid, null if the fleet was not placed properly
+     */
+    private static Grid createGrid() {
+        Grid grid = generate();
+        if (grid.shipCellsLeftP1() != FLEET_CELLS || grid.checkShipCount(1) != ShipPlacer.FLEET.length) {
+            FileLogger.logError(FleetPool.class, "createGrid()", "Generated fleet was not valid");
+            return null;
+        }
+        return grid;
+    }
+
+    /**
+     * Makes a board on the calling thread
+     * @return a grid with a player 1 fleet
+     */
+    private static Grid generate() {
+        long start = System.nanoTime();
+        Grid grid = new Grid();
+        grid.generateShipsPlayer1();
+        ServerMetrics.shipGeneration(System.nanoTime() - start);
+        return grid;
+    }
+
+
+
+    // ----- Server Pool -----
+
+    /**
+     * Starts the server wide pool
+     * @param size most boards held at once, 0 or less leaves the pool off
+     * @param watermark the pool is filled back up once this many boards or fewer are left
+     * @return false if the size is 0 or the pool is already running
+     */
+    public static synchronized boolean startPool(int size, int watermark) {
+        if (size <= 0 || sPool != null) {
+            return false;
+        }
+        FleetPool pool = new FleetPool(size, watermark);
+        pool.start();
+        sPool = pool;
+        return true;
+    }
+
+    /**
+     * Stops the server wide pool, boards are made on request from then on
+     */
+    public static synchronized void stopPool() {
+        FleetPool pool = sPool;
+        if (pool == null) {
+            return;
+        }
+        sPool = null;
+        pool.stop();
+    }
+
+    /**
+     * Gets a new player 1 board, from the server pool if it is running
+     * @return a grid with a full player 1 fleet
+     */
+    public static Grid takeGrid() {
+        FleetPool pool = sPool;
+        if (pool != null) {
+            return pool.take();
+        }
+        return generate();
+    }
+}
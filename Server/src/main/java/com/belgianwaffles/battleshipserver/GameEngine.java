@@ -0,0 +1,173 @@
+package com.belgianwaffles.battleshipserver;
+
+import java.util.random.RandomGenerator;
+
+/**
+ * The rules of a game with no networking, shots go in and results come out.
+ * Works on a combined grid that already holds both fleets. The only randomness is where sugar sharks go,
+ * so an engine given the same seed and the same moves always plays out the same game.
+ */
+public final class GameEngine {
+
+    // ----- Constants -----
+
+    // Results of a shot
+    public static final int SHOT_INVALID   = 0;
+    public static final int SHOT_MISS      = 1;
+    public static final int SHOT_HIT       = 2;
+    public static final int SHOT_WIN       = 3;
+
+    public static final int SHARK_COUNT    = 3;
+
+
+
+    // ----- Data -----
+
+    private final Grid mGrid;
+    private final RandomGenerator mRng;
+    private Listener mListener;
+
+    private int mCurrentPlayer;
+    private int mWinner;
+    private int mMoves;
+
+
+
+    // ----- Methods -----
+
+    /**
+     * Creates an engine, player 1 shoots first
+     * @param grid the combined grid with both fleets, changed by every shot
+     * @param rng picks where sugar sharks go
+     */
+    public GameEngine(Grid grid, RandomGenerator rng) {
+        this.mGrid = grid;
+        this.mRng = rng;
+        this.mListener = null;
+        this.mCurrentPlayer = 1;
+        this.mWinner = 0;
+        this.mMoves = 0;
+    }
+
+    /**
+     * Sets who is told about every shot and shark move
+     * @param listener the listener, null for none
+     */
+    public void setListener(Listener listener) {
+        this.mListener = listener;
+    }
+
+    /**
+     * Takes a shot. A hit lets the player shoot again, a miss passes the turn,
+     * and sharks move whenever player 2 misses.
+     * @param player player 1 or player 2
+     * @param index the cell shot at, row * GRID_SIZE + column
+     * @return SHOT_INVALID if the move is not allowed, otherwise the result, use GameEngine.SHOT_####
+     */
+    public int shoot(int player, int index) {
+        if (this.mWinner != 0 || player != this.mCurrentPlayer
+        || index < 0 || index >= Grid.GRID_SIZE * Grid.GRID_SIZE) {
+            return SHOT_INVALID;
+        }
+        if (this.mGrid.hasShot(player, index)) {
+            return SHOT_INVALID;
+        }
+
+        // Mark the shot
+        boolean hit = this.mGrid.markShot(player, index);
+        int shipsLeft = (player == 1) ? this.mGrid.shipCellsLeftP2() : this.mGrid.shipCellsLeftP1();
+        this.mMoves++;
+
+        // Sinking the last ship wins, hitting keeps the turn
+        int result;
+        if (shipsLeft <= 0) {
+            this.mWinner = player;
+            result = SHOT_WIN;
+        }
+        else if (hit) {
+            result = SHOT_HIT;
+        }
+        else {
+            this.mCurrentPlayer = 3 - player;
+            result = SHOT_MISS;
+        }
+        if (this.mListener != null) {
+            this.mListener.onShot(player, index, result);
+        }
+
+        // Sharks move at the start of every round
+        if (result == SHOT_MISS && this.mCurrentPlayer == 1) {
+            this.mGrid.placeSharks(SHARK_COUNT, this.mRng);
+            if (this.mListener != null) {
+                this.mListener.onSharksMoved();
+            }
+        }
+        return result;
+    }
+
+
+
+    // ----- Getters -----
+
+    /**
+     * Gets the player whose turn it is
+     * @return player 1 or player 2
+     */
+    public int getCurrentPlayer() {
+        return this.mCurrentPlayer;
+    }
+
+    /**
+     * Checks if the game is over
+     * @return true once a player has sunk every ship
+     */
+    public boolean isOver() {
+        return this.mWinner != 0;
+    }
+
+    /**
+     * Gets the winner
+     * @return player 1 or player 2, 0 while the game is still going
+     */
+    public int getWinner() {
+        return this.mWinner;
+    }
+
+    /**
+     * Gets the amount of valid shots taken
+     * @return the move count
+     */
+    public int getMoves() {
+        return this.mMoves;
+    }
+
+    /**
+     * Gets the grid the engine plays on
+     * @return the combined grid
+     */
+    public Grid getGrid() {
+        return this.mGrid;
+    }
+
+
+
+    // ----- Subclasses -----
+
+    /**
+     * Told about everything the engine does, on the thread that took the shot
+     */
+    public interface Listener {
+        /**
+         * Called after a valid shot
+         * @param player the player that shot
+         * @param index the cell shot at
+         * @param result the result, use GameEngine.SHOT_####
+         */
+        void onShot(int player, int index, int result);
+
+        /**
+         * Called after the sugar sharks moved
+         */
+        void onSharksMoved();
+    }
+}
@@ -0,0 +1,367 @@
+package com.belgianwaffles.battleshipserver;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Binary journal of game events, a compact stand in for the grid dumps in the text game log.
+ * Every event is a fixed size record written straight into a memory mapped segment file,
+ * and a new segment is started whenever one fills up. Each server run gets its own series of segments.
+ * <code>JournalReader</code> turns the records back into games.
+ */
+final class GameJournal {
+
+    // ----- Constants -----
+
+    public static final String DEFAULT_DIRECTORY = "Logs/Journal";
+    public static final String FILE_PREFIX       = "journal-";
+    public static final String FILE_SUFFIX       = ".bin";
+
+    // First record of every segment
+    public static final int MAGIC                = 0x42534A31;
+    public static final short VERSION            = 1;
+
+    // Record layout, every field at a fixed offset
+    public static final int RECORD_SIZE          = 24;
+    public static final int OFFSET_TIME          = 0;
+    public static final int OFFSET_GAME          = 8;
+    public static final int OFFSET_PLAYER        = 16;
+    public static final int OFFSET_TYPE          = 17;
+    public static final int OFFSET_FLAGS         = 18;
+    public static final int OFFSET_INDEX         = 19;
+    public static final int OFFSET_CELL          = 20;
+
+    // Header layout
+    public static final int OFFSET_MAGIC         = 0;
+    public static final int OFFSET_VERSION       = 4;
+    public static final int OFFSET_RECORD_SIZE   = 6;
+    public static final int OFFSET_SEGMENT       = 8;
+    public static final int OFFSET_RUN           = 12;
+
+    // Records for events that are not about a single cell
+    public static final byte NO_CELL             = -1;
+    // Flag on an end record when the loser disconnected
+    public static final byte FLAG_FORFEIT        = (byte)0b00000001;
+    // Flag on the first cell record of a grid or move, the rest of it follows straight after
+    public static final byte FLAG_FIRST          = (byte)0b00000010;
+
+    // About 1.5MB per segment
+    public static final int DEFAULT_RECORDS      = 1 << 16;
+
+    private static final DateTimeFormatter RUN_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+    private static volatile GameJournal sJournal = null;
+
+
+
+    // ----- Data -----
+
+    private final Path mDirectory;
+    private final String mRun;
+    private final long mRunStart;
+    private final int mSegmentSize;
+
+    // Appends and segment rolls are serialized by the lock
+    private final ReentrantLock mLock;
+    private MappedByteBuffer mSegment;
+    private int mSegmentNumber;
+
+
+
+    // ----- Methods -----
+
+    /**
+     * Opens a journal, starting the first segment of a new run
+     * @param directory folder to write segments to, created if missing
+     * @param records amount of records per segment, the header included
+     * @throws IOException if the first segment could not be created
+     */
+    public GameJournal(Path directory, int records) throws IOException {
+        this.mDirectory = directory;
+        this.mRunStart = System.currentTimeMillis();
+        this.mRun = LocalDateTime.now().format(RUN_FORMAT);
+        this.mSegmentSize = Math.max(2, records) * RECORD_SIZE;
+        this.mLock = new ReentrantLock();
+        this.mSegmentNumber = 0;
+
+        Files.createDirectories(directory);
+        this.mSegment = this.map(this.mSegmentNumber);
+    }
+
+    /**
+     * Writes one record
+     * @param game the game id
+     * @param player player 1 or player 2, 0 for the whole game
+     * @param type the packet type the event came from, use Packet.PACKET_TYPE_####
+     * @param flags flags of the event
+     * @param index the cell the event is about, NO_CELL if it is not about one
+     * @param cell the new cell data
+     */
+    public void append(long game, int player, int type, byte flags, int index, byte cell) {
+        long time = System.currentTimeMillis();
+        this.mLock.lock();
+        try {
+            this.put(time, game, player, type, flags, index, cell);
+        } finally {
+            this.mLock.unlock();
+        }
+    }
+
+    /**
+     * Writes a record for every cell that changed between two grids, all in one go
+     * @param game the game id
+     * @param player the player whose move caused the changes
+     * @param type the packet type the changes came from, use Packet.PACKET_TYPE_####
+     * @param before the grid before the move
+     * @param after the grid after the move
+     */
+    public void appendChanges(long game, int player, int type, Grid before, Grid after) {
+        long time = System.currentTimeMillis();
+        this.mLock.lock();
+        try {
+            byte flags = FLAG_FIRST;
+            for (int i = 0; i < Grid.GRID_SIZE * Grid.GRID_SIZE; i++) {
+                byte cell = after.getCell(i / Grid.GRID_SIZE, i % Grid.GRID_SIZE);
+                if (before.getCell(i / Grid.GRID_SIZE, i % Grid.GRID_SIZE) != cell) {
+                    this.put(time, game, player, type, flags, i, cell);
+                    flags = Packet.PACKET_FLAG_NONE;
+                }
+            }
+        } finally {
+            this.mLock.unlock();
+        }
+    }
+
+    /**
+     * Writes the whole grid, only cells with data in them get a record
+     * @param game the game id
+     * @param grid the grid
+     */
+    public void appendGrid(long game, Grid grid) {
+        this.appendChanges(game, 0, Packet.PACKET_TYPE_GRID, new Grid(), grid);
+    }
+
+    /**
+     * Flushes the current segment to disk, no more records can be written
+     */
+    public void close() {
+        this.mLock.lock();
+        try {
+            if (this.mSegment != null) {
+                this.mSegment.force();
+                this.mSegment = null;
+            }
+        } finally {
+            this.mLock.unlock();
+        }
+    }
+
+    /**
+     * Gets the name the segments of this run start with
+     * @return the run name
+     */
+    public String getRun() {
+        return this.mRun;
+    }
+
+
+
+    // ----- Segments -----
+
+    /**
+     * Puts a record in the current segment, moving on to a new segment when it is full.
+     * Must be called holding the lock.
+     * @param time the time of the event in epoch milliseconds
+     * @param game the game id
+     * @param player player 1 or player 2, 0 for the whole game
+     * @param type the packet type the event came from
+     * @param flags flags of the event
+     * @param index the cell the event is about, NO_CELL if it is not about one
+     * @param cell the new cell data
+     */
+    private void put(long time, long game, int player, int type, byte flags, int index, byte cell) {
+        if (this.mSegment == null) {
+            return;
+        }
+        if (this.mSegment.remaining() < RECORD_SIZE && !this.roll()) {
+            return;
+        }
+        int at = this.mSegment.position();
+        this.mSegment.putLong(at + OFFSET_TIME, time);
+        this.mSegment.putLong(at + OFFSET_GAME, game);
+        this.mSegment.put(at + OFFSET_PLAYER, (byte)player);
+        this.mSegment.put(at + OFFSET_TYPE, (byte)type);
+        this.mSegment.put(at + OFFSET_FLAGS, flags);
+        this.mSegment.put(at + OFFSET_INDEX, (byte)index);
+        this.mSegment.put(at + OFFSET_CELL, cell);
+        this.mSegment.position(at + RECORD_SIZE);
+    }
+
+    /**
+     * Flushes the full segment and maps the next one.
+     * Must be called holding the lock.
+     * @return false if the next segment could not be created, the journal is closed
+     */
+    private boolean roll() {
+        this.mSegment.force();
+        try {
+            this.mSegment = this.map(++this.mSegmentNumber);
+            return true;
+        } catch (IOException e) {
+            this.mSegment = null;
+            FileLogger.logError(GameJournal.class, "roll()", "Could not create journal segment " + this.mSegmentNumber);
+            System.err.println("Could not create journal segment, journal closed");
+            return false;
+        }
+    }
+
+    /**
+     * Creates a segment file, maps it and writes its header
+     * @param number the segment number within the run
+     * @return the mapped segment, positioned after the header
+     * @throws IOException if the file could not be created or mapped
+     */
+    private MappedByteBuffer map(int number) throws IOException {
+        Path path = this.mDirectory.resolve(segmentName(this.mRun, number));
+        MappedByteBuffer segment;
+        try (FileChannel channel = FileChannel.open(path,
+        StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // The mapping stays valid once the channel is closed
+            segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, this.mSegmentSize);
+        }
+        segment.putInt(OFFSET_MAGIC, MAGIC);
+        segment.putShort(OFFSET_VERSION, VERSION);
+        segment.putShort(OFFSET_RECORD_SIZE, (short)RECORD_SIZE);
+        segment.putInt(OFFSET_SEGMENT, number);
+        segment.putLong(OFFSET_RUN, this.mRunStart);
+        segment.position(RECORD_SIZE);
+        return segment;
+    }
+
+    /**
+     * Gets the file name of a segment
+     * @param run the run name
+     * @param number the segment number within the run
+     * @return the file name
+     */
+    static String segmentName(String run, int number) {
+        return String.format("%s%s-%04d%s", FILE_PREFIX, run, number, FILE_SUFFIX);
+    }
+
+    /**
+     * Checks that a segment starts with a valid header
+     * @param segment the segment, from the start of the file
+     * @return true if the segment can be read
+     */
+    static boolean isSegment(ByteBuffer segment) {
+        return segment.limit() >= RECORD_SIZE
+        && segment.getInt(OFFSET_MAGIC) == MAGIC
+        && segment.getShort(OFFSET_VERSION) == VERSION
+        && segment.getShort(OFFSET_RECORD_SIZE) == RECORD_SIZE;
+    }
+
+
+
+    // ----- Server Journal -----
+
+    /**
+     * Starts the server wide journal
+     * @param directory folder to write segments to
+     * @return false if it could not be started or is already running
+     */
+    public static synchronized boolean startJournal(Path directory) {
+        if (sJournal != null) {
+            return false;
+        }
+        try {
+            sJournal = new GameJournal(directory, DEFAULT_RECORDS);
+            return true;
+        } catch (IOException e) {
+            FileLogger.logError(GameJournal.class, "startJournal(Path)", "Could not open journal in " + directory);
+            System.err.println("Could not open journal in " + directory);
+            return false;
+        }
+    }
+
+    /**
+     * Stops the server wide journal, flushing what has been written
+     */
+    public static synchronized void stopJournal() {
+        GameJournal journal = sJournal;
+        if (journal == null) {
+            return;
+        }
+        sJournal = null;
+        journal.close();
+    }
+
+    /**
+     * Checks if games are being journaled
+     * @return true if the server wide journal is running
+     */
+    public static boolean isJournaling() {
+        return sJournal != null;
+    }
+
+    /**
+     * Journals a game starting
+     * @param game the game id
+     */
+    public static void logStart(long game) {
+        GameJournal journal = sJournal;
+        if (journal != null) {
+            journal.append(game, 0, Packet.PACKET_TYPE_NONE, Packet.PACKET_FLAG_NONE, NO_CELL, (byte)0);
+        }
+    }
+
+    /**
+     * Journals the grid both players confirmed
+     * @param game the game id
+     * @param grid the combined grid
+     */
+    public static void logGrid(long game, Grid grid) {
+        GameJournal journal = sJournal;
+        if (journal != null) {
+            journal.appendGrid(game, grid);
+        }
+    }
+
+    /**
+     * Journals the cells a move changed
+     * @param game the game id
+     * @param player the player that moved
+     * @param before the grid before the move
+     * @param after the grid after the move
+     */
+    public static void logMove(long game, int player, Grid before, Grid after) {
+        GameJournal journal = sJournal;
+        if (journal != null) {
+            journal.appendChanges(game, player, Packet.PACKET_TYPE_DELTA, before, after);
+        }
+    }
+
+    /**
+     * Journals a game ending
+     * @param game the game id
+     * @param winner the player that won
+     * @param forfeit true if the loser disconnected
+     */
+    public static void logEnd(long game, int winner, boolean forfeit) {
+        GameJournal journal = sJournal;
+        if (journal != null) {
+            byte flags = Packet.PACKET_FLAG_WINNER;
+            if (forfeit) {
+                flags |= FLAG_FORFEIT;
+            }
+            journal.append(game, winner, Packet.PACKET_TYPE_FLAGS, flags, NO_CELL, (byte)0);
+        }
+    }
+}
@@ -2,474 +2,689 @@ package com.belgianwaffles.battleshipserver;
 
 import java.io.IOException;
 import java.net.Socket;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Random;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
 
-public class GameManager implements Runnable {
+public class GameManager implements Runnable, HeartbeatWheel.Listener {
 
-    // ----- Subclasses -----
-
-    private record PacketMap(Socket client, Packet packet) {}
-    
     // ----- Constants -----
-    
-    private static final int SLEEP_TIME = ConnectionManager.DEFAULT_TIMEOUT / 2;
+
     private static final int DEFAULT_ID = -1;
 
+    // Longest a single wait for a packet, waits are also cut short when the game ends
+    private static final int WAIT_TIME  = 500;
+
+    // Mailbox queues a game on its own thread takes packets from, pings are answered as they arrive
+    private static final int[] PUMPED_TYPES = {
+        Packet.PACKET_TYPE_GRID, Packet.PACKET_TYPE_DELTA, Packet.PACKET_TYPE_ASSET
+    };
+
+    // Backgrounds offered to each player
+    private static final String BACKGROUND_P1 = "p1Background.png";
+    private static final String BACKGROUND_P2 = "p2Background.png";
+
+    // ----- States -----
+
+    // Sending the opening boards
+    public static final int STATE_SETUP     = 0;
+    // Players are choosing their ship layouts
+    public static final int STATE_PLACEMENT = 1;
+    // Players take turns shooting
+    public static final int STATE_TURNS     = 2;
+    // Game is over, no more packets are handled
+    public static final int STATE_END       = 3;
+    // Results are sent and the clients closed
+    public static final int STATE_CLOSED    = 4;
+
 
 
     // ----- Data -----
-    
+
+    private final int mId;
     private final Socket mClient1, mClient2;
+    private final boolean mReceiveOwnPackets;
+    private final ExecutorService mExecutor;
     private final Grid mGrid;
+    // Rules of the game, created once both layouts are in
+    private GameEngine mEngine;
     private int mUserId1, mUserId2;
 
-    // For easy swapping
-    private Socket mCurrentSocket;
+    // For easy swapping, only changed by steps but read by the game loop
+    private volatile Socket mCurrentSocket;
+    private volatile boolean mCurrentPlayerIsOne;
 
-    // Packet thread
-    private List<PacketMap> mPackets;
+    // State machine, steps are serialized by the lock.
+    // Moving to STATE_END or STATE_CLOSED is a compare and set, so any thread can end the game exactly once.
+    private final AtomicInteger mState;
+    private final ReentrantLock mStepLock;
+    private boolean mConfirmedP1, mConfirmedP2;
 
-    // Ending games
-    private boolean mGameOver;
-    private boolean mCurrentPlayerIsOne;
+    // Last board each player was sent, deltas are built against it, null until the first full grid
+    private Grid mSentP1, mSentP2;
+    private int mVersionP1, mVersionP2;
 
+    // Background offered to each player, null once sent or if there was none to offer
+    private AssetCache.Asset mAssetP1, mAssetP2;
 
+    // Packet thread
+    private final PacketMailbox mMailbox;
 
-    private static boolean sServerClosed;
-    static {
-        sServerClosed = false;
-    }
+    // Scheduler only, null when the game runs on its own thread
+    private GameScheduler mScheduler;
+
+    // Each client in the servers heartbeat wheel, null until the game starts
+    private volatile HeartbeatWheel.Entry mHeartbeatP1, mHeartbeatP2;
+    // Client the heartbeat gave up on, set by the wheel for a game on its own thread to forfeit
+    private volatile Socket mTimedOut;
+
+    private static final AtomicInteger sNextId = new AtomicInteger(0);
+    // Set once when the server closes, every game stops playing from then on
+    private static volatile boolean sServerClosed = false;
+    // Games that have started and not yet closed their clients, so the server can end them all
+    private static final Set<GameManager> sGames = ConcurrentHashMap.newKeySet();
 
 
 
     // ----- Methods -----
-    
+
     /**
      * Creates a new game with the passed clients
      * @param s1 first client
      * @param s2 second client
      */
     public GameManager(Socket s1, Socket s2) {
+        this(s1, s2, true);
+    }
+
+    /**
+     * Creates a new game with the passed clients
+     * @param s1 first client
+     * @param s2 second client
+     * @param receiveOwnPackets true if the game should read its own sockets,
+     * false if packets will be passed in with <code>deliverPacket</code>
+     */
+    public GameManager(Socket s1, Socket s2, boolean receiveOwnPackets) {
+        this(s1, s2, receiveOwnPackets, null);
+    }
+
+    /**
+     * Creates a new game with the passed clients
+     * @param s1 first client
+     * @param s2 second client
+     * @param receiveOwnPackets true if the game should read its own sockets,
+     * false if packets will be passed in with <code>deliverPacket</code>
+     * @param executor runs the games helper tasks (receiving, pinging, grid setup),
+     * null to give each task its own platform thread
+     */
+    public GameManager(Socket s1, Socket s2, boolean receiveOwnPackets, ExecutorService executor) {
+        this.mId = sNextId.getAndIncrement();
         this.mClient1 = s1;
         this.mClient2 = s2;
+        this.mReceiveOwnPackets = receiveOwnPackets;
+        this.mExecutor = executor;
         this.mCurrentSocket = this.mClient1;
 
-        this.mGameOver = false;
+        this.mState = new AtomicInteger(STATE_SETUP);
+        this.mStepLock = new ReentrantLock();
+        this.mConfirmedP1 = false;
+        this.mConfirmedP2 = false;
+
+        this.mSentP1 = null;
+        this.mSentP2 = null;
+        this.mVersionP1 = 0;
+        this.mVersionP2 = 0;
+        this.mAssetP1 = null;
+        this.mAssetP2 = null;
+
+        this.mScheduler = null;
+        this.mHeartbeatP1 = null;
+        this.mHeartbeatP2 = null;
+        this.mTimedOut = null;
+
         this.mCurrentPlayerIsOne = true;
 
         this.mGrid = new Grid();
-        this.mPackets = new ArrayList<>();
+        this.mEngine = null;
+        this.mMailbox = new PacketMailbox(s1, s2);
     }
-    
-    
-    
+
+
+
     // ----- Threading -----
-    
+
     /**
-     * Main thread for game to run on
+     * Runs the whole game on the calling thread, waiting on the mailbox between steps
      */
     @Override
-    @SuppressWarnings("ConvertToTryWithResources")
     public void run() {
-        // Create thread for pinging clients
-        Runnable pingThread = () -> {
-            if (!this.mGameOver && !sServerClosed) {
-                GameManager.this.pingClients();
-            }
-        };
-        // Ping every SLEEP_TIME seconds
-        ScheduledExecutorService executor = Executors.newScheduledThreadPool(1);
-        executor.scheduleAtFixedRate(pingThread, 0, SLEEP_TIME, TimeUnit.MILLISECONDS);
-
-        // Setup game state
-        this.startGame();
-
-        // Main loop
-        boolean gridSent = false;
-        while (this.play()) {
-            // Send grid on first run
-            if (!gridSent) {
-                this.sendGridsToPlayers();
-                gridSent = true;
-            }
-            
-            // Receive packet from player
-            Packet received = this.findPacket(this.mCurrentSocket, Packet.PACKET_TYPE_GRID);
-            if (received == null) {
-                continue;
-            }
+        // Clients are pinged by the server wide wheel, not a thread of this game
+        this.register();
+        this.startHeartbeats();
 
-            // Check packet data
-            Grid grid = received.getGrid();
-            if (this.mGrid.checkDifferences(grid) != 1) {
-                System.err.println("Too many grid changes received");
-                this.sendGridsToPlayers();
-                continue;
-            }
+        try {
+            // Setup game state
+            this.setup();
 
-            // Update grid
-            boolean hitShip = false;
-            if (this.mCurrentPlayerIsOne) {
-                int prevHits = this.mGrid.hitCountP1();
-                this.mGrid.combine(grid, this.mGrid);
-                if (prevHits < this.mGrid.hitCountP1()) {
-                    hitShip = true;
-                }
-            }
-            else {
-                grid.translateP1toP2();
-                int prevHits = this.mGrid.hitCountP2();
-                this.mGrid.combine(this.mGrid, grid);
-                if (prevHits < this.mGrid.hitCountP2()) {
-                    hitShip = true;
+            // Main loop, woken by anything from either client so a drop is seen whoever's turn it is
+            while (this.play()) {
+                this.awaitEvent(WAIT_TIME);
+
+                // A client that stopped answering pings forfeits, whoever's turn it is
+                Socket timedOut = this.mTimedOut;
+                if (timedOut != null) {
+                    this.onPacket(timedOut, PacketMailbox.DISCONNECTED);
+                    break;
                 }
-            }
-            
-            // Swap players
-            this.swapPlayers();
-            gridSent = false;
-            
-            // Checks if there are ships remaining
-            if (this.getShipsRemaining() <= 0) {
-                this.sendGridsToPlayers();
-                this.mGameOver = true;
-            }
 
-            // Swap back if ship was hit
-            if (hitShip) {
-                this.swapPlayers();
-            }
-            else if (this.mCurrentPlayerIsOne) {
-                this.generateSugarSharks();
+                // A move hands the turn over, so keep stepping until neither client has anything to do
+                boolean stepped;
+                do {
+                    stepped = this.pump(this.mClient1);
+                    stepped = this.pump(this.mClient2) || stepped;
+                } while (stepped && this.play());
             }
+        } finally {
+            // Actions for game end, even if a step failed
+            this.end();
         }
-        
-        // Actions for game end
-        executor.close();
-        this.endGame();
         System.out.println("Closed thread id=" + Thread.currentThread().threadId());
     }
-    
-    
-    
-    // ----- Game ----- Methods -----
-    
-    // now obsolete from Grid.checkShipsCount()?
-    /**
-     * Checks for how many ships are left in the grid
-     * @return number of ships remaining
-     */
-    private int getShipsRemaining() {
-        Grid.GridCell[][] matrix = this.mGrid.getCells();
-        int shipsLeft = 0;
-        // Check player 1
-        if (this.mCurrentPlayerIsOne){
-            for (int i = 0; i < Grid.GRID_SIZE; i++) {
-                for (int j = 0; j < Grid.GRID_SIZE; j++) {
-                    if (matrix[i][j].hasShipP1() && !(matrix[i][j].hasShotP2())) {
-                        shipsLeft++;
-                    }
-                }
-            }
+
+    /**
+     * Feeds the game every packet a client has waiting that it can act on now.
+     * Both players send layouts at once, but in turns only the current players moves are taken,
+     * moves sent early wait in the mailbox until it is their turn.
+     * Resyncs and asset requests are answered straight away whoever's turn it is.
+     * @param client the client to check
+     * @return true if any packet was handled
+     */
+    private boolean pump(Socket client) {
+        // A client that is gone ends the game whatever state it is in
+        if (this.mMailbox.isDisconnected(client)) {
+            this.onPacket(client, PacketMailbox.DISCONNECTED);
+            return false;
         }
-        // Check player 2
-        else {
-            for (int i = 0; i < Grid.GRID_SIZE; i++) {
-                for (int j = 0; j < Grid.GRID_SIZE; j++) {
-                    if (matrix[i][j].hasShipP2() && !(matrix[i][j].hasShotP1())) {
-                        shipsLeft++;
-                    }
-                }
+
+        boolean stepped = false;
+        for (int type : PUMPED_TYPES) {
+            Packet packet;
+            while (this.play() && (packet = this.nextPacket(client, type)) != null) {
+                this.onPacket(client, packet);
+                stepped = true;
             }
-        } 
-        return shipsLeft;
+        }
+        return stepped;
     }
 
     /**
-     * Generates sugar sharks for held grid
+     * Takes the next packet of a type from a client if the game can act on it now
+     * @param client the client to check
+     * @param type the type of packet, use Packet.PACKET_TYPE_####
+     * @return the packet, null if there is none or it is a move that has to wait for the players turn
      */
-    private void generateSugarSharks() {
-        // ----- Method ----- Constants -----
-
-        final int amountOfSharks = 3, maxattepts = 50;
-        
-        // ----- Data ----- Prep -----
-
-        this.mGrid.removeSharks();
-        
-        // ----- Main ----- Logic -----
-        
-        // Create sharks for player 1
-        for (int i = 0; i < amountOfSharks; i++) {
-            this.generateSingleSugarShark(1, maxattepts);
+    private Packet nextPacket(Socket client, int type) {
+        // Only the game thread takes packets, so the one looked at is the one taken
+        Packet packet = this.mMailbox.peek(client, type);
+        if (packet == null) {
+            return null;
+        }
+        if (isMove(packet) && !this.isPlacing(client) && !this.isCurrent(client)) {
+            return null;
         }
+        return this.awaitPacket(client, type, 0);
+    }
 
-        // Create sharks for player 2
-        for (int i = 0; i < amountOfSharks; i++) {
-            this.generateSingleSugarShark(2, maxattepts);
+    /**
+     * Checks if a packet is a layout or a shot, which only count in the senders turn
+     * @param packet the packet to check
+     * @return true for grids and deltas that are not resyncs
+     */
+    private static boolean isMove(Packet packet) {
+        if (packet == PacketMailbox.DISCONNECTED) {
+            return false;
         }
+        return packet.getType() == Packet.PACKET_TYPE_GRID
+        || (packet.getType() == Packet.PACKET_TYPE_DELTA && !packet.hasFlag(Packet.PACKET_FLAG_RESYNC));
     }
 
     /**
-     * Generates a single sugar shark for a given grid
-     * @param player the player to add a shark to
-     * @param maxAttempts the amount of cells to try randomly before brute forcing
+     * Runs the game on a scheduler instead of its own thread.
+     * Packets are stepped on the games worker as they are delivered.
+     * @param scheduler the scheduler to run on
      */
-    private void generateSingleSugarShark(int player, int maxAttempts) {
-        final Random rng = new Random(System.currentTimeMillis());
+    void start(GameScheduler scheduler) {
+        this.mScheduler = scheduler;
+
+        // Clients are pinged by the server wide wheel, not a task of this game
+        this.startHeartbeats();
+        this.register();
+        scheduler.execute(this.mId, () -> this.step(this::setup));
+    }
+
+    /**
+     * Runs one step of a scheduled game on its worker.
+     * A step that throws still ends the game, so the clients are never left waiting on it.
+     * @param step the step to run
+     */
+    private void step(Runnable step) {
+        boolean stepped = false;
+        try {
+            step.run();
+            stepped = true;
+        } finally {
+            if (!stepped) {
+                this.finishGame();
+            }
+            this.endIfOver();
+        }
+    }
 
-        // Gets cells to update
-        var cells = this.mGrid.getCells();
 
-        // First, attempt to randomly place shark
-        for (int i = 0; i < maxAttempts; i++) {
-            // Setup indexing
-            int index = rng.nextInt(0, Grid.GRID_SIZE * Grid.GRID_SIZE);
-            int x = index % Grid.GRID_SIZE, y = index / Grid.GRID_SIZE;
-            
-            // Check if cell has ship or has been shot
-            if (this.checkCell(player, cells[x][y])) {
-                // Determine which player to set
-                if (player == 1) {
-                    cells[x][y].setSharkP1(true);
-                }
-                else {
-                    cells[x][y].setSharkP2(true);
-                }
 
-                // Update cells
-                this.mGrid.setCells(cells);
+    // ----- State ----- Machine -----
+
+    /**
+     * Advances the game with a packet from a client.
+     * Only grid packets from the right player in the right state change the game.
+     * @param client the client the packet came from
+     * @param packet the packet, null or <code>PacketMailbox.DISCONNECTED</code> if the client is gone
+     */
+    void onPacket(Socket client, Packet packet) {
+        this.mStepLock.lock();
+        try {
+            if (!this.play()) {
+                return;
+            }
+            if (packet == null || packet == PacketMailbox.DISCONNECTED) {
+                this.forfeit(client);
                 return;
             }
-        }
 
-        // First attempt failed, brute force from top left to bottom right
-        for (int i = 0; i < Grid.GRID_SIZE * Grid.GRID_SIZE; i++) {
-            // Setup indexing
-            int index = i;
-            int x = index % Grid.GRID_SIZE, y = index / Grid.GRID_SIZE;
-            
-            // Check if cell has ship or has been shot
-            if (this.checkCell(player, cells[x][y])) {
-                // Determine which player to set
-                if (player == 1) {
-                    cells[x][y].setSharkP1(true);
+            switch (packet.getType()) {
+                case Packet.PACKET_TYPE_PING -> this.receivePing(client, packet);
+                case Packet.PACKET_TYPE_GRID -> {
+                    if (this.mState.get() == STATE_PLACEMENT) {
+                        this.placePlayerGrid(client, packet);
+                    }
+                    else if (this.mState.get() == STATE_TURNS && client == this.mCurrentSocket) {
+                        this.takeTimedTurn(packet);
+                    }
                 }
-                else {
-                    cells[x][y].setSharkP2(true);
+                case Packet.PACKET_TYPE_DELTA -> {
+                    if (this.mState.get() == STATE_TURNS && packet.hasFlag(Packet.PACKET_FLAG_RESYNC)) {
+                        this.resync((client == this.mClient1) ? 1 : 2);
+                    }
+                    else if (this.mState.get() == STATE_TURNS && client == this.mCurrentSocket) {
+                        this.takeTimedTurn(packet);
+                    }
                 }
+                case Packet.PACKET_TYPE_ASSET -> this.sendAsset(client, packet);
+                default -> FileLogger.logError(GameManager.class, "onPacket(Socket, Packet)",
+                "Ignored packet of type " + packet.getType());
+            }
+        } finally {
+            this.mStepLock.unlock();
+        }
+    }
 
-                // Update cells
-                this.mGrid.setCells(cells);
+    /**
+     * Sends an offered asset to a client that asked for it, each asset is sent at most once
+     * @param client the client that asked
+     * @param packet the asset request
+     */
+    private void sendAsset(Socket client, Packet packet) {
+        AssetCache.Asset asset = (client == this.mClient1) ? this.mAssetP1 : this.mAssetP2;
+        if (asset == null || !packet.hasFlag(Packet.PACKET_FLAG_ASSET_REQUEST)
+        || packet.getLength() < Packet.ASSET_HASH_SIZE || !asset.hasHash(packet.getAssetHash())) {
+            return;
+        }
+        if (client == this.mClient1) {
+            this.mAssetP1 = null;
+        }
+        else {
+            this.mAssetP2 = null;
+        }
+
+        // Chunks are packed once for every game
+        for (Packet chunk : asset.getChunks()) {
+            if (!ConnectionManager.sendPacket(client, chunk)) {
                 return;
             }
         }
     }
-    
+
     /**
-     * Checks the flags in cell for if a shark can be placed
-     * @param player player 1 or player 2
-     * @param cell the cell to check
-     * @return true if cell does not have invalid flags in positions
+     * Handles a grid packet while players choose their layouts
+     * @param client the client that sent the grid
+     * @param packet the grid packet
      */
-    private boolean checkCell(int player, Grid.GridCell cell) {
-        if (player == 1) {
-            // Cannot have shark
-            if (cell.hasSharkP1()) {
-                return false;
-            }
-        
-            // Cannot be shot
-            if (cell.hasShotP1()) {
-                return false;
+    private void placePlayerGrid(Socket client, Packet packet) {
+        int player = (client == this.mClient1) ? 1 : 2;
+        if (!this.isPlacing(client)) {
+            return;
+        }
+
+        // Check for refresh
+        if (packet.hasFlag(Packet.PACKET_FLAG_REFRESH)) {
+            // Send another board, ready made by the pool.
+            // The reply is a new packet, the received one may still be waiting to be logged
+            Packet reply = new Packet();
+            reply.serialize(FleetPool.takeGrid());
+            ConnectionManager.sendPacket(client, reply);
+            return;
+        }
+
+        // A confirmed grid too short to hold every cell is ignored, the player can send it again
+        if (packet.hasFlag(Packet.PACKET_FLAG_CONFIRM) && packet.getLength() < Packet.GRID_BODY_SIZE) {
+            System.err.println("Malformed grid received");
+            return;
+        }
+
+        // Grid confirmed
+        if (packet.hasFlag(Packet.PACKET_FLAG_CONFIRM)) {
+            Grid g = packet.getGrid();
+            // Change grid based on player number
+            if (player == 1) {
+                this.mGrid.combine(g, this.mGrid);
             }
-        
-            // Cannot have ship
-            if (cell.hasShipP2()) {
-                return false;
+            else {
+                g.translateP1toP2();
+                this.mGrid.combine(this.mGrid, g);
             }
-            return true;
         }
-        if (player == 2) {
-            // Cannot have shark
-            if (cell.hasSharkP2()) {
-                return false;
-            }
 
-            // Cannot be shot
-            if (cell.hasShotP2()) {
-                return false;
-            }
+        // Any other grid also ends this players placement
+        if (player == 1) {
+            this.mConfirmedP1 = true;
+        }
+        else {
+            this.mConfirmedP2 = true;
+        }
 
-            // Cannot have ship
-            if (cell.hasShipP1()) {
-                return false;
-            }
-            return true;
+        // Start turns once both are done
+        if (this.mConfirmedP1 && this.mConfirmedP2 && this.mState.compareAndSet(STATE_PLACEMENT, STATE_TURNS)) {
+            this.mEngine = new GameEngine(this.mGrid, ThreadLocalRandom.current());
+            GameJournal.logGrid(this.mId, this.mGrid);
+            this.sendGridsToPlayers();
         }
+    }
 
-        // Something went wrong
-        return false;
+    /**
+     * Handles a shot from the current player, timing it for the metrics
+     * @param packet the grid or delta packet with the shot
+     */
+    private void takeTimedTurn(Packet packet) {
+        long start = System.nanoTime();
+        this.takeTurn(packet);
+        ServerMetrics.turnLatency(System.nanoTime() - start);
     }
 
     /**
-     * Sends the grids to each of the clients with required flags and data
+     * Handles a shot from the current player
+     * @param packet the grid or delta packet with the shot
      */
-    private void sendGridsToPlayers() {
-        // Get client grids
-        Grid g1 = new Grid(this.mGrid.getCells());
-        Grid g2 = new Grid(this.mGrid.getCells());
+    private void takeTurn(Packet packet) {
+        // Check packet data against the board the player was sent
+        int player = this.mCurrentPlayerIsOne ? 1 : 2;
+        Grid sent = (player == 1) ? this.mSentP1 : this.mSentP2;
+        int index;
+        if (packet.getType() == Packet.PACKET_TYPE_DELTA) {
+            // A shot made on an old board means the player missed an update
+            int version = (player == 1) ? this.mVersionP1 : this.mVersionP2;
+            if (sent == null || packet.getLength() < Packet.DELTA_SHOT_SIZE || packet.getVersion() != version || packet.getDeltaCount() != 1
+            || !sent.checkShot(packet.getDeltaIndex(0), packet.getDeltaCell(0))) {
+                System.err.println("Invalid move received");
+                this.resync(player);
+                return;
+            }
+            index = packet.getDeltaIndex(0);
+        }
+        else {
+            index = (sent == null || packet.getLength() < Packet.GRID_BODY_SIZE) ? -1 : shotIndex(sent, packet.getGrid());
+            if (index < 0) {
+                System.err.println("Too many grid changes received");
+                this.resync(player);
+                return;
+            }
+        }
 
-        // Setup packets
-        g1.getGridP1();
-        g2.getGridP2();
-        
-        // Setup packets
-        Packet p1 = new Packet();
-        Packet p2 = new Packet();
+        // Rules are all in the engine, keep the old grid for the journal
+        Grid before = GameJournal.isJournaling() ? new Grid(this.mGrid) : null;
+        int result = this.mEngine.shoot(player, index);
+        if (result == GameEngine.SHOT_INVALID) {
+            this.resync(player);
+            return;
+        }
+        if ((this.mEngine.getCurrentPlayer() == 1) != this.mCurrentPlayerIsOne) {
+            this.swapPlayers();
+        }
 
-        // Base flags off of current player
-        if (this.mCurrentPlayerIsOne) {
-            p1.addTurn(Packet.PACKET_TURN_TRUE);
+        // Journal every cell the move changed
+        if (before != null) {
+            GameJournal.logMove(this.mId, player, before, this.mGrid);
         }
-        else {
-            p2.addTurn(Packet.PACKET_TURN_TRUE);
+
+        // Last ship sunk
+        if (result == GameEngine.SHOT_WIN) {
+            GameJournal.logEnd(this.mId, player, false);
+            this.sendGridsToPlayers();
+            this.finishGame();
         }
 
-        // Serialize grids
-        p1.serialize(g1);
-        p2.serialize(g2);
+        // Next turn
+        if (this.play()) {
+            this.sendGridsToPlayers();
+        }
+    }
 
-        // Send grids
-        ConnectionManager.sendPacket(this.mClient1, p1);
-        ConnectionManager.sendPacket(this.mClient2, p2);
+    /**
+     * Finds the shot in a full grid sent back by a player
+     * @param sent the board the player was sent
+     * @param grid the board the player sent back
+     * @return the cell shot at, -1 if the grids do not differ by exactly one new shot
+     */
+    private static int shotIndex(Grid sent, Grid grid) {
+        if (sent.checkDifferences(grid) != 1) {
+            return -1;
+        }
+        for (int i = 0; i < Grid.GRID_SIZE * Grid.GRID_SIZE; i++) {
+            byte cell = grid.getCell(i / Grid.GRID_SIZE, i % Grid.GRID_SIZE);
+            if (sent.getCell(i / Grid.GRID_SIZE, i % Grid.GRID_SIZE) != cell) {
+                return sent.checkShot(i, cell) ? i : -1;
+            }
+        }
+        return -1;
     }
 
+    /**
+     * Checks if a client still has to choose a layout
+     * @param client the client to check
+     * @return true if the game is in placement and the client has not confirmed
+     */
+    private boolean isPlacing(Socket client) {
+        this.mStepLock.lock();
+        try {
+            if (this.mState.get() != STATE_PLACEMENT) {
+                return false;
+            }
+            return (client == this.mClient1) ? !this.mConfirmedP1 : !this.mConfirmedP2;
+        } finally {
+            this.mStepLock.unlock();
+        }
+    }
     
     
-    // ----- Start ----- End -----
+    
+    /**
+     * Checks if a client is the one taking their turn
+     * @param client the client to check
+     * @return true if the game is in turns and it is this clients move
+     */
+    private boolean isCurrent(Socket client) {
+        return this.mState.get() == STATE_TURNS && client == this.mCurrentSocket;
+    }
+    
+    
+    
+    // ----- Game ----- Methods -----
+    
+    /**
+     * Sends the grids to each of the clients with required flags and data.
+     * Only changed cells are sent once a client has a full grid.
+     */
+    private void sendGridsToPlayers() {
+        this.sendGrid(1, this.mCurrentPlayerIsOne);
+        this.sendGrid(2, !this.mCurrentPlayerIsOne);
+    }
 
     /**
-     * Allows client to get a grid to begin the game
-     * @param client the client socket to check
-     * @param player the player number, either 1 or 2
+     * Sends a player a full grid, used when their board is out of date
+     * @param player player 1 or player 2
      */
-    private void generatePlayerGrid(Socket client, int player) {
-        Packet packet = null;
-        while (this.play() && packet == null) {
-            // Find the grid packet from client
-            packet = this.findPacket(client, Packet.PACKET_TYPE_GRID);
-            if (packet == null) {
-                continue;
-            }
+    private void resync(int player) {
+        if (player == 1) {
+            this.mSentP1 = null;
+        }
+        else {
+            this.mSentP2 = null;
+        }
+        this.sendGrid(player, (player == 1) == this.mCurrentPlayerIsOne);
+    }
 
-            // Check for refresh
-            if (packet.hasFlag(Packet.PACKET_FLAG_REFRESH)) {
-                // Send another board
-                Grid g = new Grid();
-                g.generateShipsPlayer1();
-                packet.serialize(g);
-                ConnectionManager.sendPacket(client, packet);
-                packet = null;
-                continue;
-            }
-            
-            // Grid confirmed
-            if (packet.hasFlag(Packet.PACKET_FLAG_CONFIRM)) {
-                Grid g = packet.getGrid();
-                // Change grid based on player number
-                if (player == 1) {
-                    this.mGrid.combine(g, this.mGrid);
-                }
-                else {
-                    g.translateP1toP2();
-                    this.mGrid.combine(this.mGrid, g);
-                }
-            }
+    /**
+     * Sends a player their view of the grid, as a delta against the last board sent when possible
+     * @param player player 1 or player 2
+     * @param turn true if it is this players turn
+     */
+    private void sendGrid(int player, boolean turn) {
+        // Get client grid
+        Grid grid = new Grid(this.mGrid);
+        if (player == 1) {
+            grid.getGridP1();
+        }
+        else {
+            grid.getGridP2();
+        }
+        Grid sent = (player == 1) ? this.mSentP1 : this.mSentP2;
+        int version = (player == 1) ? this.mVersionP1 : this.mVersionP2;
+
+        // Setup packet, full grids start the versions over
+        Packet packet = new Packet();
+        if (turn) {
+            packet.addTurn(Packet.PACKET_TURN_TRUE);
+        }
+        if (sent == null || grid.checkDifferences(sent) > Packet.MAX_DELTA_CELLS) {
+            version = 0;
+            packet.serialize(grid);
+        }
+        else {
+            version = (version + 1) & Packet.DELTA_VERSION_MASK;
+            packet.serialize(version, sent, grid);
+        }
+
+        // Remember what the client now has
+        if (player == 1) {
+            this.mSentP1 = grid;
+            this.mVersionP1 = version;
+            ConnectionManager.sendPacket(this.mClient1, packet);
+        }
+        else {
+            this.mSentP2 = grid;
+            this.mVersionP2 = version;
+            ConnectionManager.sendPacket(this.mClient2, packet);
         }
     }
+
     
+    
+    // ----- Start ----- End -----
+
     /**
      * Sets up game and sends some packets to clients with board information
      */
-    private void startGame() {
+    private void setup() {
         System.out.println("Starting game on thread id=" + Thread.currentThread().threadId());
+        ServerMetrics.gameStarted();
+        GameJournal.logStart(this.mId);
 
         // Create threads for receiving from each client
-        Runnable receiveP1 = () -> {
-            while (this.play()) {
-                this.receivePacket(this.mClient1);
-            }
-        };
-        Thread receiveThreadP1 = new Thread(receiveP1);
-        receiveThreadP1.setDaemon(true);
-        receiveThreadP1.start();
-        Runnable receiveP2 = () -> {
-            while (this.play()) {
-                this.receivePacket(this.mClient2);
-            }
-        };
-        Thread receiveThreadP2 = new Thread(receiveP2);
-        receiveThreadP2.setDaemon(true);
-        receiveThreadP2.start();
+        if (this.mReceiveOwnPackets) {
+            this.startReceiving();
+        }
         
-        // Send image packets
-        Packet packetBackgroundP1 = new Packet();
-        Packet packetBackgroundP2 = new Packet();
-        packetBackgroundP1.serialize("p1Background.png");
-        packetBackgroundP2.serialize("p2Background.png");
-
-        // Send packets, end game if fail
-        ConnectionManager.sendPacket(this.mClient1, packetBackgroundP1);
-        ConnectionManager.sendPacket(this.mClient2, packetBackgroundP2);
+        // Offer backgrounds, they are only sent to clients that ask for them
+        this.mAssetP1 = this.offerAsset(this.mClient1, BACKGROUND_P1);
+        this.mAssetP2 = this.offerAsset(this.mClient2, BACKGROUND_P2);
 
         // Setup game states
         Packet packetGrid1 = new Packet();
         Packet packetGrid2 = new Packet();
-        Grid gridGenerated1 = new Grid();
-        Grid gridGenerated2 = new Grid();
-        gridGenerated1.generateShipsPlayer1();
-        gridGenerated2.generateShipsPlayer1();
-        packetGrid1.serialize(gridGenerated1);
-        packetGrid2.serialize(gridGenerated2);
+        packetGrid1.serialize(FleetPool.takeGrid());
+        packetGrid2.serialize(FleetPool.takeGrid());
 
         // Send packets, end game if fail
         if (!ConnectionManager.sendPacket(this.mClient1, packetGrid1)) {
-            this.mGameOver = true;
+            this.finishGame();
         }
 
         if (!ConnectionManager.sendPacket(this.mClient2, packetGrid2)) {
-            this.mGameOver = true;
+            this.finishGame();
         }
 
-        // Receive packets with grid data
+        // Players now send back their chosen grids, unless sending failed and the game already ended
+        this.mState.compareAndSet(STATE_SETUP, STATE_PLACEMENT);
+    }
+    
+    /**
+     * Offers an asset to a client, the client asks for it if it does not already hold it
+     * @param client the client
+     * @param name the file name of the asset
+     * @return the offered asset, null if it could not be loaded
+     */
+    private AssetCache.Asset offerAsset(Socket client, String name) {
+        AssetCache.Asset asset = AssetCache.getAsset(name);
+        if (asset != null) {
+            ConnectionManager.sendPacket(client, asset.getOffer());
+        }
+        return asset;
+    }
 
-        // Create runnables
-        Runnable getGridP1 = () -> {
-            this.generatePlayerGrid(this.mClient1, 1);
+    /**
+     * Starts the threads that read packets from each client
+     */
+    private void startReceiving() {
+        // Stop reading once a client disconnects, closed sockets never block
+        Runnable receiveP1 = () -> {
+            while (this.play() && this.receivePacket(this.mClient1)) {}
         };
-        Runnable getGridP2 = () -> {
-            this.generatePlayerGrid(this.mClient2, 2);
+        this.spawn(receiveP1, true);
+        Runnable receiveP2 = () -> {
+            while (this.play() && this.receivePacket(this.mClient2)) {}
         };
+        this.spawn(receiveP2, true);
+    }
 
-        // Setup threads
-        Thread checkGridP1 = new Thread(getGridP1);
-        checkGridP1.start();
-        Thread checkGridP2 = new Thread(getGridP2);
-        checkGridP2.start();
-
-        // Join the threads to ensure completion
-        try {
-            checkGridP1.join();
-            checkGridP2.join();
-        } catch (InterruptedException e) {
-            System.err.println("Thread was interrupted");
+    /**
+     * Runs a task for this game on the games executor, or a new thread if there is none
+     * @param task the task to run
+     * @param daemon if a created thread should not keep the server alive
+     * @return a future to wait on the task with
+     */
+    private Future<?> spawn(Runnable task, boolean daemon) {
+        if (this.mExecutor != null) {
+            return this.mExecutor.submit(task);
         }
+        FutureTask<?> future = new FutureTask<>(task, null);
+        Thread thread = new Thread(future);
+        thread.setDaemon(daemon);
+        thread.start();
+        return future;
     }
     
     /**
@@ -500,7 +715,7 @@ public class GameManager implements Runnable {
 
         // Close client1
         try {
-            this.mClient1.close();
+            ConnectionManager.closeClient(this.mClient1);
         } catch (IOException | NullPointerException e) {
             FileLogger.logError(GameManager.class, "endGame()", 
             "Failed to close clients on thread id=" + Thread.currentThread().threadId());
@@ -508,7 +723,7 @@ public class GameManager implements Runnable {
         }
         // Close client 2
         try {
-            this.mClient2.close();
+            ConnectionManager.closeClient(this.mClient2);
         } catch (IOException | NullPointerException e) {
             FileLogger.logError(GameManager.class, "endGame()", 
             "Failed to close clients on thread id=" + Thread.currentThread().threadId());
@@ -517,112 +732,156 @@ public class GameManager implements Runnable {
     }
 
     /**
-     * Allows for ending all games simultaneously on all threads
+     * Marks the game as over and wakes every task waiting on it, only the first call has any effect
      */
-    public static synchronized void endAllGames() {
-        sServerClosed = true;
+    private void finishGame() {
+        int state;
+        do {
+            state = this.mState.get();
+            if (state >= STATE_END) {
+                return;
+            }
+        } while (!this.mState.compareAndSet(state, STATE_END));
+        this.mMailbox.close();
     }
 
+    /**
+     * Ends the game when a client drops, the other client is told they won
+     * @param loser the client that can no longer play
+     */
+    private void forfeit(Socket loser) {
+        // Game already ended, nothing to report
+        if (!this.play()) {
+            return;
+        }
+        Socket winner = (loser == this.mClient1) ? this.mClient2 : this.mClient1;
+        System.err.println("Client disconnected on thread=" + Thread.currentThread().threadId());
+        FileLogger.logMessage("Client disconnected");
+        GameJournal.logEnd(this.mId, (winner == this.mClient1) ? 1 : 2, true);
+        this.finishGame();
 
+        // Send packet to other player, stating their win
+        Packet packet = new Packet();
+        packet.serialize(true);
+        ConnectionManager.sendPacket(winner, packet);
+    }
 
-    // ----- Read -----
+    /**
+     * Sends the results and closes the clients, only the first call has any effect
+     */
+    private void end() {
+        this.finishGame();
+        if (this.mState.getAndSet(STATE_CLOSED) == STATE_CLOSED) {
+            return;
+        }
+        sGames.remove(this);
+        ServerMetrics.gameEnded();
+        this.cancelHeartbeats();
+        this.endGame();
+    }
 
     /**
-     * Checks if game is still able to be playing
-     * @return true if game is still valid
+     * Ends a scheduled game once it is no longer playing, games on their own thread end in <code>run</code>
      */
-    private synchronized boolean play() {
-        return (!this.mGameOver && !sServerClosed);
+    private void endIfOver() {
+        if (this.mScheduler != null && !this.play()) {
+            this.end();
+        }
     }
 
     /**
-     * Pings clients to ensure connections have not been severed
+     * Ends every game on all threads at once, waking anything waiting on them
      */
-    private void pingClients() {
-        // Check client 1 hasn't disconnected
-        if (!this.ping(this.mClient1)) {
-            FileLogger.logError(GameManager.class, "pingClients()", 
-            "Failed to ping client 1 on thread=" + Thread.currentThread().threadId());
-            System.err.println("Failed to ping client 2 on thread=" + Thread.currentThread().threadId());
-            this.mGameOver = true;
-            
-            // Send packet to other player, stating their win
-            Packet packet = new Packet();
-            packet.serialize(true);
-            ConnectionManager.sendPacket(this.mClient2, packet);
+    public static void endAllGames() {
+        sServerClosed = true;
+        for (GameManager game : sGames) {
+            game.shutdown();
         }
-        
-        // Check client 1 hasn't disconnected
-        if (!this.ping(this.mClient2)) {
-            FileLogger.logError(GameManager.class, "pingClients()", 
-            "Failed to ping client 2 on thread=" + Thread.currentThread().threadId());
-            System.err.println("Failed to ping client 2 on thread=" + Thread.currentThread().threadId());
-            this.mGameOver = true;
-
-            // Send packet to other player, stating their win
-            Packet packet = new Packet();
-            packet.serialize(true);
-            ConnectionManager.sendPacket(this.mClient1, packet);
+    }
+
+    /**
+     * Lets games play again after <code>endAllGames</code>, called when a new server starts.
+     * Games of the closed server were already ended and stay ended.
+     */
+    static void openServer() {
+        sServerClosed = false;
+    }
+
+    /**
+     * Ends the game because the server is closing
+     */
+    private void shutdown() {
+        this.finishGame();
+
+        // Scheduled games have no thread waiting to notice, they end on their worker
+        if (this.mScheduler != null) {
+            this.mScheduler.execute(this.mId, this::endIfOver);
         }
     }
 
     /**
-     * Pings clients and checks packet type. If not a ping, adds to packet list
-     * @param client the client to ping
+     * Lets the server end the game, a game started after the server closed ends straight away
      */
-    private boolean ping(Socket client) {
-        
-        // ----- Send ----- Ping -----
-        
-        // Prepare ping packet
-        Packet packet = new Packet();
-        packet.serialize();
-        
-        // Send ping
-        if (!ConnectionManager.sendPacket(client, packet)) {
-            return false;
+    private void register() {
+        sGames.add(this);
+        if (sServerClosed) {
+            this.shutdown();
         }
-        
-        // Create log of sent ping
-        FileLogger.logPing(packet.toString());
-        
-        
-        
-        // ----- Receive ----- Ping -----
+    }
 
-        do {
-            // Try to find a ping packet
-            packet = this.findPacket(client, Packet.PACKET_TYPE_PING);
-            
-            // Check if packet is received
-            if (packet != null) {
-                break;
-            }
 
-            // Try to find a null packet
-            packet = this.findPacket(client, Packet.PACKET_TYPE_NONE);
-            if (packet != null) {
-                System.err.println("Client disconnected");
-                FileLogger.logMessage("Client disconnected");
-                return false;
-            }
-        } while (packet == null);
-        
-        // Create log of received ping
-        FileLogger.logPing(packet.toString());
-        
-        return true;
+
+    // ----- Read -----
+
+    /**
+     * Checks if game is still able to be playing, never blocks
+     * @return true if game is still valid
+     */
+    private boolean play() {
+        return this.mState.get() < STATE_END && !sServerClosed;
     }
-    
+
     /**
      * Receive packets from given client
      * @param client the client to receive packets from
+     * @return false if the client has disconnected
      */
-    private void receivePacket(Socket client) {
-        // Receive and add packet to list
+    private boolean receivePacket(Socket client) {
+        // Scheduled games are stepped by their worker, nothing takes packets out of the mailbox for them
         Packet packet = ConnectionManager.receivePacket(client);
+        this.deliverPacket(client, packet);
+        return packet != null;
+    }
+    
+    /**
+     * Hands the game a received packet, stepping scheduled games on their worker
+     * and leaving it in the mailbox for games on their own thread
+     * @param client the client the packet came from
+     * @param packet the received packet, null if the client disconnected
+     */
+    void deliverPacket(Socket client, Packet packet) {
+        // Scheduled games step on their worker right away
+        if (this.mScheduler != null) {
+            if (this.verifyUserId(client, packet)) {
+                this.mScheduler.execute(this.mId, () -> this.step(() -> this.onPacket(client, packet)));
+            }
+            return;
+        }
         this.addPacket(client, packet);
     }
+
+    /**
+     * Marks a clients last ping as answered
+     * @param client the client that answered
+     * @param packet the ping packet
+     */
+    private void receivePing(Socket client, Packet packet) {
+        FileLogger.logPing(packet::toString);
+        HeartbeatWheel.Entry heartbeat = (client == this.mClient1) ? this.mHeartbeatP1 : this.mHeartbeatP2;
+        if (heartbeat != null) {
+            heartbeat.answered();
+        }
+    }
     
     /**
      * Checks the userId from received packet
@@ -667,7 +926,7 @@ public class GameManager implements Runnable {
         }
         // Not verified
         else {
-            this.mGameOver = true;
+            this.finishGame();
         }
         return false;
     }
@@ -677,57 +936,141 @@ public class GameManager implements Runnable {
      * @param client the client that received the packet
      * @param packet the received packet
      */
-    private synchronized void addPacket(Socket client, Packet packet) {
+    private void addPacket(Socket client, Packet packet) {
         // Verify the packet before adding
-        if (this.verifyUserId(client, packet)) {
-            this.mPackets.add(new PacketMap(client, packet));
+        if (!this.verifyUserId(client, packet)) {
+            return;
+        }
+
+        // Nothing waits on pings, answer them as they come
+        if (packet != null && packet.getType() == Packet.PACKET_TYPE_PING) {
+            this.receivePing(client, packet);
+            return;
+        }
+        this.mMailbox.offer(client, packet);
+    }
+
+    /**
+     * Waits until anything arrives from either client, or the game ends or is woken
+     * @param timeout longest time to wait in milliseconds
+     */
+    private void awaitEvent(long timeout) {
+        if (!this.play()) {
+            return;
+        }
+        try {
+            // Ending the game closes the mailbox, which wakes this straight away
+            this.mMailbox.await(timeout);
+        } catch (InterruptedException e) {
+            // Thread is being shut down, the game can not go on without it
+            this.finishGame();
         }
     }
 
     /**
-     * Allows for reading and removal of items from list. This is a non-blocking method and will return immediately if no packet is found.
+     * Waits for a packet of the given type from the client without spinning.
+     * Waits are cut short when the game ends.
      * @param client the client to check packets for
-     * @param type the desired type of packet. PACKET_TYPE_NONE to find a null packet for termination
-     * @return the desired packet. Null otherwise
-     */
-    private synchronized Packet findPacket(Socket client, int type) {
-        // Check packet list
-        for (int i = 0; i < this.mPackets.size(); i++) {
-            PacketMap pm = this.mPackets.get(i);
-
-            // Check for nulls if wanted
-            if (pm.packet == null && type == Packet.PACKET_TYPE_NONE) {
-                this.removePacket(i);
-                return new Packet();
-            }
+     * @param type the desired type of packet
+     * @param timeout longest time to wait in milliseconds
+     * @return the desired packet, <code>PacketMailbox.DISCONNECTED</code> if the client is gone, null if none arrived in time
+     */
+    private Packet awaitPacket(Socket client, int type, long timeout) {
+        if (!this.play()) {
+            return null;
+        }
+        try {
+            // Ending the game closes the mailbox, which wakes this straight away
+            return this.mMailbox.poll(client, type, timeout);
+        } catch (InterruptedException e) {
+            return null;
+        }
+    }
 
-            // Ensure no null before accessing data
-            if (pm.packet == null) {
-                continue;
-            }
-            
-            // Checks for specified params
-            if (pm.client == client && pm.packet.getType() == type) {
-                Packet packet = this.mPackets.get(i).packet;
-                this.removePacket(i);
-                return packet;
-            }
+
+
+    // ----- Heartbeat -----
+
+    /**
+     * Adds both clients to the servers heartbeat wheel
+     */
+    private void startHeartbeats() {
+        HeartbeatWheel wheel = HeartbeatWheel.shared();
+        this.mHeartbeatP2 = wheel.register(this.mClient2, this);
+        this.mHeartbeatP1 = wheel.register(this.mClient1, this);
+
+        // A game that closed before its clients were added cancels them here instead
+        if (this.mState.get() == STATE_CLOSED) {
+            this.cancelHeartbeats();
         }
-        
-        // No packet found for that client with set params
-        return null;
     }
-    
+
     /**
-     * Removes packet from list
-     * @param index the index of the item to remove
+     * Stops pinging both clients, either side may get here first so it is safe to call twice
      */
-    private synchronized void removePacket(int index) {
-        this.mPackets.remove(index);
+    private void cancelHeartbeats() {
+        HeartbeatWheel.Entry heartbeat = this.mHeartbeatP1;
+        if (heartbeat != null) {
+            heartbeat.cancel();
+        }
+        heartbeat = this.mHeartbeatP2;
+        if (heartbeat != null) {
+            heartbeat.cancel();
+        }
+    }
+
+    /**
+     * Called by the heartbeat wheel after a client is pinged, nothing to do since closing the server ends games directly
+     * @param client the client that was pinged
+     */
+    @Override
+    public void onHeartbeat(Socket client) {}
+
+    /**
+     * Called by the heartbeat wheel when a client stops answering, the game is told it disconnected.
+     * The game itself is woken to forfeit the client, so the wheel thread never waits on a game.
+     * @param client the client that timed out
+     */
+    @Override
+    public void onTimeout(Socket client) {
+        FileLogger.logError(GameManager.class, "onTimeout(Socket)",
+        "Client did not answer ping in game " + this.mId);
+
+        // Handled the same as the client closing its connection
+        if (this.mScheduler != null) {
+            this.mScheduler.execute(this.mId, () -> this.step(() -> this.onPacket(client, PacketMailbox.DISCONNECTED)));
+        }
+        else {
+            this.mTimedOut = client;
+            this.mMailbox.wake();
+        }
     }
     
     
 
+    // ----- Getters -----
+
+    /**
+     * Gets the id of the game, used to pick its scheduler worker
+     * @return the game id
+     */
+    int getId() {
+        return this.mId;
+    }
+
+    /**
+     * Gets the current state of the game
+     * @return use GameManager.STATE_####
+     */
+    int getState() {
+        if (!this.play()) {
+            return STATE_END;
+        }
+        return this.mState.get();
+    }
+
+
+
     // ----- Update -----
 
     /**
@@ -0,0 +1,91 @@
+package com.belgianwaffles.battleshipserver;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Steps games on a fixed set of worker threads.
+ * Each game is pinned to one worker by its id, so the steps of a game run in order and never overlap,
+ * and a game only holds a thread while it is handling a packet.
+ */
+public final class GameScheduler {
+
+    // ----- Constants -----
+
+    public static final int DEFAULT_WORKERS = Runtime.getRuntime().availableProcessors();
+
+
+
+    // ----- Data -----
+
+    // Each worker is a single thread so games on it never run in parallel
+    private final ExecutorService[] mWorkers;
+
+
+
+    // ----- Methods -----
+
+    /**
+     * Creates the worker threads
+     * @param workers amount of worker threads, at least 1
+     */
+    public GameScheduler(int workers) {
+        this.mWorkers = new ExecutorService[Math.max(1, workers)];
+        for (int i = 0; i < this.mWorkers.length; i++) {
+            this.mWorkers[i] = Executors.newSingleThreadExecutor(
+                Thread.ofPlatform().name("game-worker-" + i).daemon().factory());
+        }
+    }
+
+    /**
+     * Stops the workers, tasks already queued are still run
+     */
+    public void close() {
+        for (ExecutorService worker : this.mWorkers) {
+            worker.shutdown();
+        }
+    }
+
+
+
+    // ----- Scheduling -----
+
+    /**
+     * Runs a task on the worker that owns the game
+     * @param gameId the id of the game the task belongs to
+     * @param task the task to run
+     * @return false if the scheduler has been closed
+     */
+    public boolean execute(int gameId, Runnable task) {
+        try {
+            this.mWorkers[this.workerOf(gameId)].execute(task);
+            return true;
+        } catch (RejectedExecutionException e) {
+            FileLogger.logError(GameScheduler.class, "execute(int, Runnable)",
+            "Scheduler closed, dropped task for game " + gameId);
+            return false;
+        }
+    }
+
+
+
+    // ----- Getters -----
+
+    /**
+     * Finds the worker a game is pinned to
+     * @param gameId the id of the game
+     * @return index of the worker
+     */
+    private int workerOf(int gameId) {
+        return Math.floorMod(gameId, this.mWorkers.length);
+    }
+
+    /**
+     * Gets the amount of worker threads
+     * @return the worker count
+     */
+    public int getWorkerCount() {
+        return this.mWorkers.length;
+    }
+}
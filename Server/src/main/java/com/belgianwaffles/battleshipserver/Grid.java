@@ -1,6 +1,9 @@
 package com.belgianwaffles.battleshipserver;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.function.Consumer;
+import java.util.random.RandomGenerator;
 
 public final class Grid {
 
@@ -24,8 +27,11 @@ public final class Grid {
 
         // ----- Data -----
 
-        // If you want to know what the stuff means, refer to masks
-        byte mCell;
+        // Position in the grids data, -1 if the cell holds its own value
+        private int mIndex;
+
+        // Value of a cell not backed by a grid, if you want to know what the stuff means, refer to masks
+        private byte mCell;
 
 
 
@@ -35,6 +41,7 @@ public final class Grid {
          * Creates an empty gridcell
          */
         public GridCell() {
+            this.mIndex = -1;
             this.mCell = 0;
         }
 
@@ -43,6 +50,7 @@ public final class Grid {
          * @param val the value for the cell
          */
         public GridCell(byte val) {
+            this.mIndex = -1;
             this.mCell = val;
         }
 
@@ -51,7 +59,41 @@ public final class Grid {
          * @param gc the gridcell to copy
          */
         public GridCell(GridCell gc) {
-            this.mCell = gc.mCell;
+            this.mIndex = -1;
+            this.mCell = gc.getCell();
+        }
+
+        /**
+         * Creates a view of a cell in this grid, changes to the view change the grid
+         * @param row the row of the cell
+         * @param column the column of the cell
+         */
+        private GridCell(int row, int column) {
+            this.mIndex = row * GRID_SIZE + column;
+            this.mCell = 0;
+        }
+
+        /**
+         * Reads the cell data from the grid, or from the cell when not backed by a grid
+         * @return the cell data
+         */
+        private byte get() {
+            if (this.mIndex < 0) {
+                return this.mCell;
+            }
+            return Grid.this.mData[this.mIndex];
+        }
+
+        /**
+         * Writes the cell data to the grid, or to the cell when not backed by a grid
+         * @param value the new cell data
+         */
+        private void set(byte value) {
+            if (this.mIndex < 0) {
+                this.mCell = value;
+                return;
+            }
+            Grid.this.write(this.mIndex, value);
         }
 
         /**
@@ -61,10 +103,10 @@ public final class Grid {
          */
         private void bitManipulate(byte mask, boolean turnOn) {
             if (turnOn) {
-                this.mCell |= mask;
+                this.set((byte)(this.get() | mask));
             }
             else {
-                this.mCell &= mask ^ MASK_ALL;
+                this.set((byte)(this.get() & (mask ^ MASK_ALL)));
             }
         }
 
@@ -149,7 +191,7 @@ public final class Grid {
          * @return true if bit is set, false if not
          */
         private boolean getBit(byte mask) {
-            return (this.mCell & mask) == mask;
+            return (this.get() & mask) == mask;
         }
 
         /**
@@ -157,7 +199,7 @@ public final class Grid {
          * @return the held cell data
          */
         public byte getCell() {
-            return this.mCell;
+            return this.get();
         }
 
         /**
@@ -228,28 +270,36 @@ public final class Grid {
          * Converts the cells data from p1 to p2
          */
         public void translateP1toP2() {
+            byte cell = this.get();
+
             // Swap flags
-            this.mCell = (byte)((this.mCell >> 4));
+            cell = (byte)((cell >> 4));
             
             // Only have player 1 data, alt+f4 player 2 data
-            this.mCell = (byte)(this.mCell & GRID_CELL_P2);
+            cell = (byte)(cell & GRID_CELL_P2);
+            this.set(cell);
         }
         
         /**
          * Converts the cell data from p2 to p1
          */
         public void translateP2toP1() {
+            byte cell = this.get();
+
             // Swap flags
-            this.mCell = (byte)((this.mCell << 4));
+            cell = (byte)((cell << 4));
             
             // Only have player 2 data, alt+f4 player 1 data
-            this.mCell = (byte)(this.mCell & GRID_CELL_P1);
+            cell = (byte)(cell & GRID_CELL_P1);
+            this.set(cell);
         }
 
         /**
          * Removes unnecessary data from grid, use before sending
          */
         public void getPlayer1() {
+            byte cell = this.get();
+
             // Save important bits
             byte bits = (byte)(this.hasShotP2() ? MASK_SHOT_2 : 0);
             if (this.hasShotP1() && this.hasShipP2()) {
@@ -257,16 +307,19 @@ public final class Grid {
             }
 
             // Remove bits
-            this.mCell &= GRID_CELL_P1;
+            cell &= GRID_CELL_P1;
             
             // Save this cells data and important p2 data
-            this.mCell = (byte)((this.mCell & GRID_CELL_P1) | bits);
+            cell = (byte)((cell & GRID_CELL_P1) | bits);
+            this.set(cell);
         }
         
         /**
          * Removes unnecessary data from grid for player 2, use before sending
          */
         public void getPlayer2() {
+            byte cell = this.get();
+
             // Save important bits
             byte bits = (byte)(this.hasShotP1() ? MASK_SHOT_1 : 0);
             if (this.hasShotP2() && this.hasShipP1()) {
@@ -274,10 +327,11 @@ public final class Grid {
             }
 
             // Remove bits
-            this.mCell &= GRID_CELL_P2;
+            cell &= GRID_CELL_P2;
             
             // Save this cells data and important p2 data
-            this.mCell = (byte)(((this.mCell & GRID_CELL_P2) << 4) | (bits >> 4));
+            cell = (byte)(((cell & GRID_CELL_P2) << 4) | (bits >> 4));
+            this.set(cell);
         }
         
         /**
@@ -309,12 +363,37 @@ public final class Grid {
     public static final int GRID_SIZE       = 10;
     private static final byte GRID_CELL_P1  = (byte)0b11110000;
     private static final byte GRID_CELL_P2  = (byte)0b00001111;
-    
+
+    // ----- Bitboards -----
+
+    // Cells 0 to 63 are in the low word, 64 to 99 in the high word
+    private static final int WORD_BITS      = Long.SIZE;
+    private static final long HIGH_CELLS    = (1L << (GRID_SIZE * GRID_SIZE - WORD_BITS)) - 1;
+    // Cells that are not in the first or last column, so shifting by one never wraps rows
+    private static final long[] NOT_FIRST_COLUMN = new long[2];
+    private static final long[] NOT_LAST_COLUMN  = new long[2];
+    static {
+        for (int i = 0; i < GRID_SIZE * GRID_SIZE; i++) {
+            if (i % GRID_SIZE != 0) {
+                NOT_FIRST_COLUMN[i / WORD_BITS] |= 1L << i;
+            }
+            if (i % GRID_SIZE != GRID_SIZE - 1) {
+                NOT_LAST_COLUMN[i / WORD_BITS] |= 1L << i;
+            }
+        }
+    }
 
 
     // ----- Data -----
 
-    private GridCell[][] mCells;
+    // Cell at row i, column j is stored at i * GRID_SIZE + j
+    private final byte[] mData;
+    // Views handed out by getCells, created the first time they are needed
+    private GridCell[] mViews;
+    // Single view moved over every cell by whole grid operations
+    private GridCell mCursor;
+    // One pair of words per cell flag, flag bit b is at [b] low and [b + 8] high
+    private final long[] mBoards;
     private ArrayList <Ship> p1Ships;
     private ArrayList <Ship> p2Ships;
 
@@ -326,12 +405,8 @@ public final class Grid {
      * Creates a blank grid
      */
     public Grid() {
-        this.mCells = new GridCell[GRID_SIZE][GRID_SIZE];
-        for (int i = 0; i < GRID_SIZE; i++) {
-            for (int j = 0; j < GRID_SIZE; j++) {
-                this.mCells[i][j] = new GridCell();
-            }
-        }
+        this.mData = new byte[GRID_SIZE * GRID_SIZE];
+        this.mBoards = new long[Byte.SIZE * 2];
         this.p1Ships = new ArrayList<>();
         this.p2Ships = new ArrayList<>();
     }
@@ -341,12 +416,18 @@ public final class Grid {
      * @param data <code>byte[]</code> that has the grid information loaded
      */
     public Grid(byte[] data) {
-        this.mCells = new GridCell[GRID_SIZE][GRID_SIZE];
-        for (int i = 0; i < GRID_SIZE; i++) {
-            for (int j = 0; j < GRID_SIZE; j++) {
-                this.mCells[i][j] = new GridCell(data[i * GRID_SIZE + j]);
-            }
-        }
+        this(data, 0);
+    }
+
+    /**
+     * Creates a grid from bytes inside a larger array, such as a received packet
+     * @param data <code>byte[]</code> that has the grid information loaded
+     * @param offset index of the first cell in the array
+     */
+    public Grid(byte[] data, int offset) {
+        this();
+        System.arraycopy(data, offset, this.mData, 0, this.mData.length);
+        this.rebuildBoards();
     }
     
     /**
@@ -354,12 +435,18 @@ public final class Grid {
      * @param cells the cells from another grid
      */
     public Grid(GridCell[][] cells) {
-        this.mCells = new GridCell[GRID_SIZE][GRID_SIZE];
-        for (int i = 0; i < GRID_SIZE; i++) {
-            for (int j = 0; j < GRID_SIZE; j++) {
-                this.mCells[i][j] = new GridCell(cells[i][j].getCell());
-            }
-        }
+        this();
+        this.setCells(cells);
+    }
+
+    /**
+     * Creates a copy of another grids cells, the copy starts with no ships of its own to regenerate
+     * @param other the grid to copy
+     */
+    public Grid(Grid other) {
+        this();
+        System.arraycopy(other.mData, 0, this.mData, 0, this.mData.length);
+        System.arraycopy(other.mBoards, 0, this.mBoards, 0, this.mBoards.length);
     }
     
     /**
@@ -369,20 +456,39 @@ public final class Grid {
      */
     public synchronized void combine(Grid g1, Grid g2) {
         // Combine cells
-        for (int i = 0; i < GRID_SIZE; i++) {
-            for (int j = 0; j < GRID_SIZE; j++) {
-                this.mCells[i][j] = new GridCell((byte)((g1.mCells[i][j].getCell() & GRID_CELL_P1) | (g2.mCells[i][j].getCell() & GRID_CELL_P2)));
-            }
+        for (int i = 0; i < this.mData.length; i++) {
+            this.mData[i] = (byte)((g1.mData[i] & GRID_CELL_P1) | (g2.mData[i] & GRID_CELL_P2));
+        }
+
+        // Each half of the boards comes from one grid
+        for (int b = 0; b < Byte.SIZE; b++) {
+            Grid from = (b >= 4) ? g1 : g2;
+            this.mBoards[b] = from.mBoards[b];
+            this.mBoards[b + Byte.SIZE] = from.mBoards[b + Byte.SIZE];
         }
     }
 
     /**
      * Gets the cell contents of the grid.
-     * Can create a new grid with the changed data.
+     * Cells are views, changing them changes this grid.
      * @return 2D array with all gridcells
      */
     public GridCell[][] getCells() {
-        return this.mCells;
+        if (this.mViews == null) {
+            this.mViews = new GridCell[GRID_SIZE * GRID_SIZE];
+            for (int i = 0; i < GRID_SIZE; i++) {
+                for (int j = 0; j < GRID_SIZE; j++) {
+                    this.mViews[i * GRID_SIZE + j] = new GridCell(i, j);
+                }
+            }
+        }
+
+        // Fresh rows so callers replacing cells never break the views
+        GridCell[][] cells = new GridCell[GRID_SIZE][GRID_SIZE];
+        for (int i = 0; i < GRID_SIZE; i++) {
+            System.arraycopy(this.mViews, i * GRID_SIZE, cells[i], 0, GRID_SIZE);
+        }
+        return cells;
     }
 
     /**
@@ -390,107 +496,370 @@ public final class Grid {
      * @param cells the new cells to put into grid
      */
     public void setCells(GridCell[][] cells) {
-        this.mCells = new GridCell[GRID_SIZE][GRID_SIZE];
         for (int i = 0; i < GRID_SIZE; i++) {
             for (int j = 0; j < GRID_SIZE; j++) {
-                this.mCells[i][j] = new GridCell(cells[i][j].getCell());
+                this.mData[i * GRID_SIZE + j] = cells[i][j].getCell();
             }
         }
+        this.rebuildBoards();
+    }
+
+    /**
+     * Gets a copy of the raw cell data
+     * @return the cells with row i, column j at i * GRID_SIZE + j
+     */
+    public byte[] getData() {
+        return this.mData.clone();
+    }
+
+    /**
+     * Gets the data of a single cell
+     * @param row the row of the cell
+     * @param column the column of the cell
+     * @return the cell data
+     */
+    public byte getCell(int row, int column) {
+        return this.mData[row * GRID_SIZE + column];
+    }
+
+    /**
+     * Sets the data of a single cell
+     * @param row the row of the cell
+     * @param column the column of the cell
+     * @param value the new cell data
+     */
+    public void setCell(int row, int column, byte value) {
+        this.write(row * GRID_SIZE + column, value);
     }
 
     /**
      * Changes the grid data from being in player 1 positions to player 2 positions
      */
     public void translateP1toP2() {
-        for (int i = 0; i < GRID_SIZE; i++) {
-            for (int j = 0; j < GRID_SIZE; j++) {
-                this.mCells[i][j].translateP1toP2();
-            }
-        }
+        this.forEachCell(GridCell::translateP1toP2);
     }
     
     /**
      * Changes the grid data from being in player 1 positions to player 2 positions
      */
     public void translateP2toP1() {
-        for (int i = 0; i < GRID_SIZE; i++) {
-            for (int j = 0; j < GRID_SIZE; j++) {
-                this.mCells[i][j].translateP2toP1();
-            }
-        }
+        this.forEachCell(GridCell::translateP2toP1);
     }
     
     /**
      * Changes the grid data from being in player 1 positions to player 2 positions
      */
     public void getGridP1() {
-        for (int i = 0; i < GRID_SIZE; i++) {
-            for (int j = 0; j < GRID_SIZE; j++) {
-                this.mCells[i][j].getPlayer1();
-            }
-        }
+        this.forEachCell(GridCell::getPlayer1);
     }
     
     /**
      * Changes the grid data from being in player 1 positions to player 2 positions
      */
     public void getGridP2() {
-        for (int i = 0; i < GRID_SIZE; i++) {
-            for (int j = 0; j < GRID_SIZE; j++) {
-                this.mCells[i][j].getPlayer2();
-            }
+        this.forEachCell(GridCell::getPlayer2);
+    }
+
+    /**
+     * Runs a cell operation over every cell of the grid without creating any cells
+     * @param operation the operation to run on each cell
+     */
+    private void forEachCell(Consumer<GridCell> operation) {
+        if (this.mCursor == null) {
+            this.mCursor = new GridCell(0, 0);
+        }
+        for (int i = 0; i < this.mData.length; i++) {
+            this.mCursor.mIndex = i;
+            operation.accept(this.mCursor);
         }
     }
     
     /**
      * Allows for comparing of 2 grids to see how many differences there are
+     * @param other the grid to compare with
      * @return the number of differences in the grid
      */
     public int checkDifferences(Grid other) {
-        return 1;
-        // int diff = 0;
-        // for (int i = 0; i < GRID_SIZE; i++) {
-        //     for (int j = 0; j < GRID_SIZE; j++) {
-        //         if (this.mCells[i][j] != other.mCells[i][j]) {
-        //             diff++;
-        //         }
-        //     }
-        // }
-        // return diff;
+        int diff = 0;
+        for (int i = 0; i < this.mData.length; i++) {
+            if (this.mData[i] != other.mData[i]) {
+                diff++;
+            }
+        }
+        return diff;
     }
 
+    /**
+     * Checks that a changed cell is a new shot by player 1 and nothing else
+     * @param index the cell, row i, column j at i * GRID_SIZE + j
+     * @param cell the changed cell data
+     * @return true if the cell only gained the shot flag
+     */
+    public boolean checkShot(int index, byte cell) {
+        if (index < 0 || index >= this.mData.length) {
+            return false;
+        }
+        byte current = this.mData[index];
+        return (current & GridCell.MASK_SHOT_1) == 0 && cell == (byte)(current | GridCell.MASK_SHOT_1);
+    }
+
+    /**
+     * Counts the ships a player has that are not sunk yet.
+     * Ships never touch, so every connected group of ship cells is one ship.
+     * @param player player 1 or player 2
+     * @return the amount of ships still afloat
+     */
     public int checkShipCount(int player) {
+        byte ship = (player == 1) ? GridCell.MASK_SHIP_1 : GridCell.MASK_SHIP_2;
+        byte shot = (player == 1) ? GridCell.MASK_SHOT_2 : GridCell.MASK_SHOT_1;
+        long shipsLow = this.low(ship), shipsHigh = this.high(ship);
+        long shotLow = this.low(shot), shotHigh = this.high(shot);
+
         int shipsLeft = 0;
-        if (player == 1) {
-            for (int i = 0; i < p1Ships.size(); i++) {
-                if(!p1Ships.get(i).isSunk()) {
-                    shipsLeft++;
-                }
-            }
-            
-        }
-        else {
-            for (int i = 0; i < p2Ships.size(); i++) {
-                if(!p2Ships.get(i).isSunk()) {
-                    shipsLeft++;
-                }
+        long[] ships = new long[2];
+        while ((shipsLow | shipsHigh) != 0) {
+            // Grow the lowest ship cell out to its whole ship
+            ships[0] = shipsLow;
+            ships[1] = shipsHigh;
+            long[] found = floodFill(ships);
+            shipsLow &= ~found[0];
+            shipsHigh &= ~found[1];
+
+            // Afloat as long as any of its cells was not shot
+            if (((found[0] & ~shotLow) | (found[1] & ~shotHigh)) != 0) {
+                shipsLeft++;
             }
         }
         return shipsLeft;
     }
-    
+
     /**
      * Removes all sharks from the grid
      */
     public void removeSharks() {
-        for (int i = 0; i < GRID_SIZE; i++) {
-            for (int j = 0; j < GRID_SIZE; j++) {
-                this.mCells[i][j].setSharkP1(false);
-                this.mCells[i][j].setSharkP2(false);
+        for (int i = 0; i < this.mData.length; i++) {
+            this.mData[i] &= ~(GridCell.MASK_SHARK_1 | GridCell.MASK_SHARK_2);
+        }
+        for (byte mask : new byte[] { GridCell.MASK_SHARK_1, GridCell.MASK_SHARK_2 }) {
+            int b = bit(mask);
+            this.mBoards[b] = 0;
+            this.mBoards[b + Byte.SIZE] = 0;
+        }
+    }
+
+
+
+    /**
+     * Checks a flag of a single cell
+     * @param x the row of the cell
+     * @param y the column of the cell
+     * @param mask the flag to check, use GridCell.MASK_####
+     * @return true if the flag is set
+     */
+    private boolean hasFlag(int x, int y, byte mask) {
+        return (this.mData[x * GRID_SIZE + y] & mask) == mask;
+    }
+
+    /**
+     * Turns a flag of a single cell on or off
+     * @param x the row of the cell
+     * @param y the column of the cell
+     * @param mask the flag to change, use GridCell.MASK_####
+     * @param turnOn if the flag should be turned on or off
+     */
+    private void setFlag(int x, int y, byte mask, boolean turnOn) {
+        int index = x * GRID_SIZE + y;
+        if (turnOn) {
+            this.write(index, (byte)(this.mData[index] | mask));
+        }
+        else {
+            this.write(index, (byte)(this.mData[index] & ~mask));
+        }
+    }
+
+
+
+    // ----- Bitboards -----
+
+    /**
+     * Writes a cell and flips the bitboard bits of every flag that changed
+     * @param index the cell, row i, column j at i * GRID_SIZE + j
+     * @param value the new cell data
+     */
+    private void write(int index, byte value) {
+        int changed = (this.mData[index] ^ value) & 0xFF;
+        this.mData[index] = value;
+
+        long bit = 1L << index;
+        int word = (index < WORD_BITS) ? 0 : Byte.SIZE;
+        while (changed != 0) {
+            this.mBoards[Integer.numberOfTrailingZeros(changed) + word] ^= bit;
+            changed &= changed - 1;
+        }
+    }
+
+    /**
+     * Builds every bitboard from the cell data, used after whole grid changes
+     */
+    private void rebuildBoards() {
+        Arrays.fill(this.mBoards, 0);
+        for (int i = 0; i < this.mData.length; i++) {
+            int changed = this.mData[i] & 0xFF;
+            int word = (i < WORD_BITS) ? 0 : Byte.SIZE;
+            while (changed != 0) {
+                this.mBoards[Integer.numberOfTrailingZeros(changed) + word] |= 1L << i;
+                changed &= changed - 1;
             }
         }
     }
 
+    /**
+     * Gets the position of a flag within a cell
+     * @param mask the flag, use GridCell.MASK_####
+     * @return the bit number of the flag
+     */
+    private static int bit(byte mask) {
+        return Integer.numberOfTrailingZeros(mask & 0xFF);
+    }
+
+    /**
+     * Gets the cells 0 to 63 that have a flag
+     * @param mask the flag, use GridCell.MASK_####
+     * @return a word with bit i set if cell i has the flag
+     */
+    private long low(byte mask) {
+        return this.mBoards[bit(mask)];
+    }
+
+    /**
+     * Gets the cells 64 to 99 that have a flag
+     * @param mask the flag, use GridCell.MASK_####
+     * @return a word with bit i set if cell i + 64 has the flag
+     */
+    private long high(byte mask) {
+        return this.mBoards[bit(mask) + Byte.SIZE];
+    }
+
+    /**
+     * Counts the cells that have the first flag but not the second
+     * @param has the flag cells must have
+     * @param without the flag cells must not have
+     * @return the amount of cells
+     */
+    private int countWithout(byte has, byte without) {
+        return Long.bitCount(this.low(has) & ~this.low(without))
+        + Long.bitCount(this.high(has) & ~this.high(without));
+    }
+
+    /**
+     * Counts the cells that have both flags
+     * @param first the first flag
+     * @param second the second flag
+     * @return the amount of cells
+     */
+    private int countBoth(byte first, byte second) {
+        return Long.bitCount(this.low(first) & this.low(second))
+        + Long.bitCount(this.high(first) & this.high(second));
+    }
+
+    /**
+     * Grows the lowest cell of a set out to every cell in the set connected to it
+     * @param cells the set, low word then high word
+     * @return the connected cells, low word then high word
+     */
+    private static long[] floodFill(long[] cells) {
+        long low = (cells[0] != 0) ? Long.lowestOneBit(cells[0]) : 0;
+        long high = (cells[0] != 0) ? 0 : Long.lowestOneBit(cells[1]);
+
+        while (true) {
+            // Neighbours one column over, without wrapping into the next row
+            long rightLow = low & NOT_LAST_COLUMN[0], rightHigh = high & NOT_LAST_COLUMN[1];
+            long leftLow = low & NOT_FIRST_COLUMN[0], leftHigh = high & NOT_FIRST_COLUMN[1];
+            long nextLow = low
+            | (rightLow << 1) | (leftLow >>> 1) | (leftHigh << (WORD_BITS - 1))
+            | (low << GRID_SIZE) | (low >>> GRID_SIZE) | (high << (WORD_BITS - GRID_SIZE));
+            long nextHigh = high
+            | (rightHigh << 1) | (rightLow >>> (WORD_BITS - 1)) | (leftHigh >>> 1)
+            | (high << GRID_SIZE) | (low >>> (WORD_BITS - GRID_SIZE)) | (high >>> GRID_SIZE);
+
+            nextLow &= cells[0];
+            nextHigh &= cells[1] & HIGH_CELLS;
+            if (nextLow == low && nextHigh == high) {
+                return new long[] { low, high };
+            }
+            low = nextLow;
+            high = nextHigh;
+        }
+    }
+
+    /**
+     * Counts the cells a shark can be put in for a player, cells without a shark, shot or enemy ship
+     * @param player player 1 or player 2
+     * @return the amount of open cells
+     */
+    int sharkCellCount(int player) {
+        return Long.bitCount(this.openSharkCells(player, 0)) + Long.bitCount(this.openSharkCells(player, 1));
+    }
+
+    /**
+     * Moves every shark, each player gets new sharks picked evenly from their open cells.
+     * Sharks are chosen with a partial shuffle of the open cells and written all at once.
+     * @param amount sharks per player, fewer are placed if a player has fewer open cells
+     * @param rng the generator to pick cells with
+     */
+    void placeSharks(int amount, RandomGenerator rng) {
+        this.removeSharks();
+
+        // Sharks of one player never change where the other players sharks can go
+        for (int player = 1; player <= 2; player++) {
+            byte shark = (player == 1) ? GridCell.MASK_SHARK_1 : GridCell.MASK_SHARK_2;
+            int b = bit(shark);
+
+            // List the open cells
+            int[] open = new int[GRID_SIZE * GRID_SIZE];
+            int count = 0;
+            for (int word = 0; word < 2; word++) {
+                long cells = this.openSharkCells(player, word);
+                while (cells != 0) {
+                    open[count++] = word * WORD_BITS + Long.numberOfTrailingZeros(cells);
+                    cells &= cells - 1;
+                }
+            }
+
+            // Only shuffle as far as the sharks needed
+            int sharks = Math.min(amount, count);
+            for (int i = 0; i < sharks; i++) {
+                int j = i + rng.nextInt(count - i);
+                int index = open[j];
+                open[j] = open[i];
+                open[i] = index;
+
+                this.mData[index] |= shark;
+                this.mBoards[b + ((index < WORD_BITS) ? 0 : Byte.SIZE)] |= 1L << index;
+            }
+        }
+    }
+
+    /**
+     * Gets one word of the cells a shark can be put in for a player
+     * @param player player 1 or player 2
+     * @param word 0 for cells 0 to 63, 1 for cells 64 to 99
+     * @return the open cells of the word
+     */
+    private long openSharkCells(int player, int word) {
+        int w = word * Byte.SIZE;
+        long used;
+        if (player == 1) {
+            used = this.mBoards[bit(GridCell.MASK_SHARK_1) + w] | this.mBoards[bit(GridCell.MASK_SHOT_1) + w]
+            | this.mBoards[bit(GridCell.MASK_SHIP_2) + w];
+        }
+        else {
+            used = this.mBoards[bit(GridCell.MASK_SHARK_2) + w] | this.mBoards[bit(GridCell.MASK_SHOT_2) + w]
+            | this.mBoards[bit(GridCell.MASK_SHIP_1) + w];
+        }
+        return ~used & ((word == 0) ? -1L : HIGH_CELLS);
+    }
+
 
 
     // ----- Ship ----- Creation -----
@@ -522,7 +891,7 @@ public final class Grid {
      */
     private void clearShipsPlayer1() {
         for (int i = 0; i < GRID_SIZE * GRID_SIZE; i++) {
-            this.mCells[i % GRID_SIZE][i / GRID_SIZE].setShipP1(false);
+            this.setFlag(i % GRID_SIZE, i / GRID_SIZE, GridCell.MASK_SHIP_1, false);
         }
         this.p1Ships.clear();
     }
@@ -532,7 +901,7 @@ public final class Grid {
      */
     private void clearShipsPlayer2() {
         for (int i = 0; i < GRID_SIZE * GRID_SIZE; i++) {
-            this.mCells[i % GRID_SIZE][i / GRID_SIZE].setShipP2(false);
+            this.setFlag(i % GRID_SIZE, i / GRID_SIZE, GridCell.MASK_SHIP_2, false);
         }
         this.p2Ships.clear();
     }
@@ -540,270 +909,110 @@ public final class Grid {
     
     // Ship Generation Methods
 
-    // creates and places all p1 ships
+    /**
+     * Creates and places all of player 1's ships
+     */
     private void createAllP1Ships() {
-        
-        // no need to check first ship since the board should be empty
-        Ship temp = new Ship(5);
-        this.p1Ships.add(temp);
-        this.placeShipP1(temp);
-
-        temp = createValidShipP1(4);
-        // i dont trust java
-        this.p1Ships.add(new Ship(temp));
-        this.placeShipP1(temp);
-
-        temp = createValidShipP1(3);
-        this.p1Ships.add(new Ship(temp));
-        this.placeShipP1(temp);
-
-        temp = createValidShipP1(3);
-        this.p1Ships.add(new Ship(temp));
-        this.placeShipP1(temp);
-
-        temp = createValidShipP1(2);
-        this.p1Ships.add(new Ship(temp));
-        this.placeShipP1(temp);
-    }
-
-    // im making two functions since this one is already huge
-    // checks for a valid placement for a p1 ship
-    private boolean shipPlacementIsAvailableP1(Ship s) {
-        // endpoint check
-        if(!(s.getStartX()-1 < 0)) {
-            if(this.mCells[s.getStartX()-1][s.getStartY()].hasShipP1()) {
-                return false;
-            }  
-        }
-        if(!(s.getEndX()+1 >= Grid.GRID_SIZE)) {
-            if(this.mCells[s.getEndX()+1][s.getStartY()].hasShipP1()) {
-                return false;
-            }
+        for (Ship ship : ShipPlacer.placeFleet()) {
+            this.p1Ships.add(ship);
+            this.placeShipP1(ship);
         }
-        if(!(s.getEndY()+1 >= Grid.GRID_SIZE)) {
-            if(this.mCells[s.getStartX()][s.getEndY()+1].hasShipP1()) {
-                return false;
-            }
-        }
-        if(!(s.getStartY()-1 < 0)) {
-            if(this.mCells[s.getStartX()][s.getStartY()-1].hasShipP1()) {
-                return false;
-            }
-        }
-        // body checks
+    }
 
-        // horizontal ship
-        if(s.getIsHorizontal()) {
-            
-            for (int i = s.getStartX(); i <= s.getEndX(); i++) {
-                if(this.mCells[i][s.getStartY()].hasShipP1()) {
-                    return false;
-                }
-                // prevents out of bounds checks
-                if(!(s.getStartY() == Grid.GRID_SIZE-1)) {
-                    if(this.mCells[i][s.getStartY()+1].hasShipP1()) {
-                        return false;
-                    }
-                }  
-                if(!(s.getStartY() == 0)) {
-                    if(this.mCells[i][s.getStartY()-1].hasShipP1()) {
-                        return false;
-                    }    
-                }
-            }
-        }
-        // vertical ship
-        else {
-            
-            for (int i = s.getStartY(); i <= s.getEndY(); i++) {
-                if(this.mCells[s.getStartX()][i].hasShipP1()) {
-                    return false;
-                }
-                if(!(s.getStartX() == Grid.GRID_SIZE-1)) {
-                    if(this.mCells[s.getStartX()+1][i].hasShipP1()) {
-                        return false;
-                    }  
-                }
-                if(!(s.getStartX() == 0)) {
-                    if(this.mCells[s.getStartX()-1][i].hasShipP1()) {
-                        return false;
-                    }    
-                }
-            }
+    /**
+     * Creates and places all of player 2's ships
+     */
+    private void createAllP2Ships() {
+        for (Ship ship : ShipPlacer.placeFleet()) {
+            this.p2Ships.add(ship);
+            this.placeShipP2(ship);
         }
-        return true;
     }
 
     private void placeShipP1(Ship s) {
         if(s.getIsHorizontal()) {
             for (int i = s.getStartX(); i <= s.getEndX(); i++) {
-                this.mCells[i][s.getStartY()].setShipP1(true);   
+                this.setFlag(i, s.getStartY(), GridCell.MASK_SHIP_1, true);   
             }
         }
         else {
             for (int i = s.getStartY(); i <= s.getEndY(); i++) {
-                this.mCells[s.getStartX()][i].setShipP1(true);   
+                this.setFlag(s.getStartX(), i, GridCell.MASK_SHIP_1, true);   
             }
         }
     }
 
-    // creates a valid p1 ship
-    private Ship createValidShipP1(int size) {
-        boolean isValidPlacement;
-        Ship s;
-        do {
-            s = new Ship(size);
-            isValidPlacement = this.shipPlacementIsAvailableP1(s);
-        } while(!isValidPlacement);
-        
-        return s;
-    }
-    
-    // checks for a valid placement for a p2 ship
-    private boolean shipPlacementIsAvailableP2(Ship s) {
-        // endpoint check
-        if(!(s.getStartX()-1 < 0)) {
-            if(this.mCells[s.getStartX()-1][s.getStartY()].hasShipP2()) {
-                return false;
-            }  
-        }
-        if(!(s.getEndX()+1 >= Grid.GRID_SIZE)) {
-            if(this.mCells[s.getEndX()+1][s.getStartY()].hasShipP2()) {
-                return false;
-            }
-        }
-        if(!(s.getEndY()+1 >= Grid.GRID_SIZE)) {
-            if(this.mCells[s.getStartX()][s.getEndY()+1].hasShipP2()) {
-                return false;
-            }
-        }
-        if(!(s.getStartY()-1 < 0)) {
-            if(this.mCells[s.getStartX()][s.getStartY()-1].hasShipP2()) {
-                return false;
-            }
-        }
-        // body checks
-
-        // horizontal ship
+    private void placeShipP2(Ship s) {
         if(s.getIsHorizontal()) {
-            
             for (int i = s.getStartX(); i <= s.getEndX(); i++) {
-                if(this.mCells[i][s.getStartY()].hasShipP2()) {
-                    return false;
-                }
-                // prevents out of bounds checks
-                if(!(s.getStartY() == Grid.GRID_SIZE-1)) {
-                    if(this.mCells[i][s.getStartY()+1].hasShipP2()) {
-                        return false;
-                    }
-                }  
-                if(!(s.getStartY() == 0)) {
-                    if(this.mCells[i][s.getStartY()-1].hasShipP2()) {
-                        return false;
-                    }    
-                }
+                this.setFlag(i, s.getStartY(), GridCell.MASK_SHIP_2, true);   
             }
         }
-        // vertical ship
         else {
-            
             for (int i = s.getStartY(); i <= s.getEndY(); i++) {
-                if(this.mCells[s.getStartX()][i].hasShipP2()) {
-                    return false;
-                }
-                if(!(s.getStartX() == Grid.GRID_SIZE-1)) {
-                    if(this.mCells[s.getStartX()+1][i].hasShipP2()) {
-                        return false;
-                    }  
-                }
-                if(!(s.getStartX() == 0)) {
-                    if(this.mCells[s.getStartX()-1][i].hasShipP2()) {
-                        return false;
-                    }    
-                }
+                this.setFlag(s.getStartX(), i, GridCell.MASK_SHIP_2, true);   
             }
         }
-
-        return true;
     }
 
-    // creates and places all p2 ships
-    private void createAllP2Ships() {  
-
-        // no need to check first ship since the board should be empty
-        Ship temp = new Ship(5);
-        this.p2Ships.add(temp);
-        this.placeShipP2(temp);
-
-        temp = createValidShipP2(4);
-        // i dont trust java
-        this.p2Ships.add(new Ship(temp));
-        this.placeShipP2(temp);
-
-        temp = createValidShipP2(3);
-        this.p2Ships.add(new Ship(temp));
-        this.placeShipP2(temp);
-
-        temp = createValidShipP2(3);
-        this.p2Ships.add(new Ship(temp));
-        this.placeShipP2(temp);
-
-        temp = createValidShipP2(2);
-        this.p2Ships.add(new Ship(temp));
-        this.placeShipP2(temp);
+    
+    // ----- Extras -----
 
-    }  
+    /**
+     * Counts the enemy ship cells player 1 has hit
+     * @return the amount of hits
+     */
+    int hitCountP1() {
+        return this.countBoth(GridCell.MASK_SHOT_1, GridCell.MASK_SHIP_2);
+    }
 
-    private void placeShipP2(Ship s) {
-        if(s.getIsHorizontal()) {
-            for (int i = s.getStartX(); i <= s.getEndX(); i++) {
-                this.mCells[i][s.getStartY()].setShipP2(true);   
-            }
-        }
-        else {
-            for (int i = s.getStartY(); i <= s.getEndY(); i++) {
-                this.mCells[s.getStartX()][i].setShipP2(true);   
-            }
-        }
+    /**
+     * Counts the enemy ship cells player 2 has hit
+     * @return the amount of hits
+     */
+    int hitCountP2() {
+        return this.countBoth(GridCell.MASK_SHOT_2, GridCell.MASK_SHIP_1);
     }
 
-    // creates a valid p2 ship
-    private Ship createValidShipP2(int size) {
-        boolean isValidPlacement;
-        Ship s;
-        do {
-            s = new Ship(size);
-            isValidPlacement = this.shipPlacementIsAvailableP2(s);
-        } while(!isValidPlacement);
-        
-        return s;
+    /**
+     * Counts the ship cells player 1 has left that player 2 has not shot
+     * @return the amount of cells
+     */
+    int shipCellsLeftP1() {
+        return this.countWithout(GridCell.MASK_SHIP_1, GridCell.MASK_SHOT_2);
     }
 
-    
-    // ----- Extras -----
+    /**
+     * Counts the ship cells player 2 has left that player 1 has not shot
+     * @return the amount of cells
+     */
+    int shipCellsLeftP2() {
+        return this.countWithout(GridCell.MASK_SHIP_2, GridCell.MASK_SHOT_1);
+    }
 
-    int hitCountP1() {
-        int hits = 0;
-        for (int y = 0; y < GRID_SIZE; y++) {
-            for (int x = 0; x < GRID_SIZE; x++) {
-                if (this.mCells[x][y].hasShotP1() && this.mCells[x][y].hasShipP2()) {
-                    hits++;
-                }
-            }
-        }
-        return hits;
+    /**
+     * Checks if a player has already shot a cell
+     * @param player player 1 or player 2
+     * @param index the cell, row i, column j at i * GRID_SIZE + j
+     * @return true if the shot flag is set
+     */
+    boolean hasShot(int player, int index) {
+        byte shot = (player == 1) ? GridCell.MASK_SHOT_1 : GridCell.MASK_SHOT_2;
+        return (this.mData[index] & shot) != 0;
     }
 
-    int hitCountP2() {
-        int hits = 0;
-        for (int y = 0; y < GRID_SIZE; y++) {
-            for (int x = 0; x < GRID_SIZE; x++) {
-                if (this.mCells[x][y].hasShotP2() && this.mCells[x][y].hasShipP1()) {
-                    hits++;
-                }
-            }
-        }
-        return hits;
+    /**
+     * Marks a shot by a player on a cell
+     * @param player player 1 or player 2
+     * @param index the cell, row i, column j at i * GRID_SIZE + j
+     * @return true if the cell holds a ship of the other player
+     */
+    boolean markShot(int player, int index) {
+        byte shot = (player == 1) ? GridCell.MASK_SHOT_1 : GridCell.MASK_SHOT_2;
+        byte ship = (player == 1) ? GridCell.MASK_SHIP_2 : GridCell.MASK_SHIP_1;
+        byte cell = this.mData[index];
+        this.write(index, (byte)(cell | shot));
+        return (cell & ship) != 0;
     }
 
     /**
@@ -813,10 +1022,11 @@ public final class Grid {
     @Override
     public String toString() {
         String str = "";
+        GridCell[][] cells = this.getCells();
         
         for (int y = 0; y < GRID_SIZE; y++) {
             for (int x = 0; x < GRID_SIZE; x++) {
-                str += this.mCells[x][y].toString() + " ";
+                str += cells[x][y].toString() + " ";
             }
             str += '\n';
         }
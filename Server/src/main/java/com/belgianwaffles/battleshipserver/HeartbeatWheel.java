@@ -0,0 +1,310 @@
+package com.belgianwaffles.battleshipserver;
+
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Pings every connection on the server from a single thread.
+ * Connections sit in a hashed timing wheel by the time they are next due, so each tick only looks at the
+ * connections due in it. A connection is pinged, then checked once the ping interval has passed, and is
+ * reported to its listener if its last ping went unanswered for the whole timeout.
+ * Blocking sockets are pinged from a virtual thread, so a client that stops reading only stalls its own ping.
+ */
+final class HeartbeatWheel implements Runnable {
+
+    // ----- Constants -----
+
+    public static final long DEFAULT_TICK     = 100;
+    public static final long DEFAULT_INTERVAL = ConnectionManager.DEFAULT_TIMEOUT / 2;
+    public static final long DEFAULT_TIMEOUT  = ConnectionManager.DEFAULT_TIMEOUT;
+
+    // Slots in the wheel, a power of 2, delays longer than a lap wait out whole laps
+    private static final int SLOTS            = 256;
+    private static final int SLOT_MASK        = SLOTS - 1;
+
+    // Wheel used by every game on the server
+    private static HeartbeatWheel sShared = null;
+
+    /**
+     * Told about the connections it registered, called on the wheel thread,
+     * except for a timeout found by the thread sending a ping to a blocking socket
+     */
+    interface Listener {
+        /**
+         * Called after a client is sent a ping, or after it is handed to the thread sending it
+         * @param client the client
+         */
+        void onHeartbeat(Socket client);
+
+        /**
+         * Called once when a client does not answer in time or can no longer be sent to
+         * @param client the client
+         */
+        void onTimeout(Socket client);
+    }
+
+    /**
+     * A single connection in the wheel
+     */
+    static final class Entry {
+        private final Socket mClient;
+        private final Listener mListener;
+        // Time in nanoseconds the unanswered ping was sent, 0 if none
+        private volatile long mPingSent;
+        // Time in nanoseconds a blocking send of the ping started, 0 once it has finished
+        private volatile long mSendStarted;
+        private volatile boolean mCancelled;
+        // Only touched by the wheel thread
+        private int mRounds;
+
+        private Entry(Socket client, Listener listener) {
+            this.mClient = client;
+            this.mListener = listener;
+            this.mPingSent = 0;
+            this.mSendStarted = 0;
+            this.mCancelled = false;
+            this.mRounds = 0;
+        }
+
+        /**
+         * Marks the last ping as answered, safe to call from any thread.
+         * An answer means the ping arrived, so its send has finished too.
+         */
+        void answered() {
+            long sent = this.mPingSent;
+            this.mPingSent = 0;
+            this.mSendStarted = 0;
+            if (sent != 0) {
+                ServerMetrics.pingRtt(System.nanoTime() - sent);
+            }
+        }
+
+        /**
+         * Stops pinging the connection, it leaves the wheel on its next turn
+         */
+        void cancel() {
+            this.mCancelled = true;
+        }
+
+        /**
+         * Reports the connection as timed out, only the first call from any thread has any effect
+         */
+        private synchronized void expire() {
+            if (this.mCancelled) {
+                return;
+            }
+            this.mCancelled = true;
+            this.mListener.onTimeout(this.mClient);
+        }
+    }
+
+
+
+    // ----- Data -----
+
+    private final long mTick, mInterval, mTimeout;
+    private final List<ArrayList<Entry>> mSlots;
+    // Empty list swapped in for the slot being turned
+    private ArrayList<Entry> mSpare;
+    // Connections added since the last tick, the wheel itself is only touched by its own thread
+    private final ConcurrentLinkedQueue<Entry> mAdded;
+    private long mTicks;
+
+    private final Thread mThread;
+    private volatile boolean mRunning;
+
+
+
+    // ----- Methods -----
+
+    /**
+     * Creates a wheel, call <code>start</code> to begin pinging
+     * @param tick milliseconds between turns of the wheel
+     * @param interval milliseconds between pings to a connection
+     * @param timeout milliseconds a connection has to answer a ping
+     */
+    HeartbeatWheel(long tick, long interval, long timeout) {
+        this.mTick = Math.max(1, tick);
+        this.mInterval = interval;
+        this.mTimeout = timeout;
+        this.mSlots = new ArrayList<>(SLOTS);
+        for (int i = 0; i < SLOTS; i++) {
+            this.mSlots.add(new ArrayList<>());
+        }
+        this.mSpare = new ArrayList<>();
+        this.mAdded = new ConcurrentLinkedQueue<>();
+        this.mTicks = 0;
+
+        this.mThread = new Thread(this, "heartbeat-wheel");
+        this.mThread.setDaemon(true);
+        this.mRunning = false;
+    }
+
+    /**
+     * Gets the wheel shared by the whole server, starting it on first use
+     * @return the shared wheel
+     */
+    static synchronized HeartbeatWheel shared() {
+        if (sShared == null) {
+            sShared = new HeartbeatWheel(DEFAULT_TICK, DEFAULT_INTERVAL, DEFAULT_TIMEOUT);
+            sShared.start();
+        }
+        return sShared;
+    }
+
+    /**
+     * Starts the wheel thread
+     */
+    void start() {
+        this.mRunning = true;
+        this.mThread.start();
+    }
+
+    /**
+     * Stops the wheel thread, no more pings are sent
+     */
+    void stop() {
+        this.mRunning = false;
+        LockSupport.unpark(this.mThread);
+        try {
+            this.mThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Starts pinging a connection, the first ping goes out on the next tick
+     * @param client the connection to ping
+     * @param listener told about pings and timeouts of the connection
+     * @return the entry used to mark pings answered and to stop pinging
+     */
+    Entry register(Socket client, Listener listener) {
+        Entry entry = new Entry(client, listener);
+        this.mAdded.add(entry);
+        return entry;
+    }
+
+
+
+    // ----- Wheel -----
+
+    /**
+     * Wheel thread, turns one slot every tick
+     */
+    @Override
+    public void run() {
+        long start = System.nanoTime();
+        long tickNanos = TimeUnit.MILLISECONDS.toNanos(this.mTick);
+        while (this.mRunning) {
+            // Catch up on any ticks missed while busy
+            long due = (System.nanoTime() - start) / tickNanos;
+            while (this.mTicks < due && this.mRunning) {
+                this.mTicks++;
+                this.turn();
+            }
+            LockSupport.parkNanos(this, start + (this.mTicks + 1) * tickNanos - System.nanoTime());
+        }
+    }
+
+    /**
+     * Adds new connections and handles every connection due in the current slot
+     */
+    private void turn() {
+        Entry added;
+        while ((added = this.mAdded.poll()) != null) {
+            this.schedule(added, 0);
+        }
+
+        // Take the slot so entries due again a lap later can go back in it
+        int slot = (int)(this.mTicks & SLOT_MASK);
+        ArrayList<Entry> due = this.mSlots.set(slot, this.mSpare);
+        for (Entry entry : due) {
+            if (entry.mCancelled) {
+                continue;
+            }
+            if (entry.mRounds > 0) {
+                entry.mRounds--;
+                this.mSlots.get(slot).add(entry);
+                continue;
+            }
+
+            // One bad connection must not stop every other heartbeat
+            try {
+                this.fire(entry);
+            } catch (RuntimeException e) {
+                entry.mCancelled = true;
+                System.err.println("Heartbeat failed, connection dropped from wheel: " + e);
+            }
+        }
+        due.clear();
+        this.mSpare = due;
+    }
+
+    /**
+     * Pings a connection if its last ping was answered, or times it out if it is overdue
+     * @param entry the connection
+     */
+    private void fire(Entry entry) {
+        long now = System.nanoTime();
+
+        // Still sending the last ping or waiting on its answer, a send that never finishes times out the same way
+        long sendStarted = entry.mSendStarted;
+        long waitingSince = (sendStarted != 0) ? sendStarted : entry.mPingSent;
+        if (waitingSince != 0) {
+            long waited = TimeUnit.NANOSECONDS.toMillis(now - waitingSince);
+            if (waited >= this.mTimeout) {
+                entry.expire();
+                return;
+            }
+            this.schedule(entry, this.mTimeout - waited);
+            return;
+        }
+
+        // Send the next ping, marked as sent first so a quick answer is not lost
+        entry.mPingSent = now;
+        if (ChannelSession.find(entry.mClient) != null) {
+            // Selector sessions only queue the ping, so it never blocks the wheel
+            ping(entry);
+            if (entry.mCancelled) {
+                return;
+            }
+        }
+        else {
+            // A blocking write waits for the client to read, so it gets a thread of its own
+            entry.mSendStarted = now;
+            Thread.ofVirtual().name("heartbeat-send").start(() -> ping(entry));
+        }
+        // Logged here so the sending thread only ever writes to the socket
+        FileLogger.logPing(Packet.sharedPing()::toString);
+        entry.mListener.onHeartbeat(entry.mClient);
+        this.schedule(entry, this.mInterval);
+    }
+
+    /**
+     * Sends a ping to a connection, timing it out if it can no longer be sent to
+     * @param entry the connection
+     */
+    private static void ping(Entry entry) {
+        boolean sent = ConnectionManager.sendPacket(entry.mClient, Packet.sharedPing());
+        entry.mSendStarted = 0;
+        if (!sent) {
+            entry.expire();
+        }
+    }
+
+    /**
+     * Puts a connection in the slot it is next due in
+     * @param entry the connection
+     * @param delay milliseconds until it is due
+     */
+    private void schedule(Entry entry, long delay) {
+        long ticks = Math.max(1, (delay + this.mTick - 1) / this.mTick);
+        entry.mRounds = (int)((ticks - 1) / SLOTS);
+        this.mSlots.get((int)((this.mTicks + ticks) & SLOT_MASK)).add(entry);
+    }
+}
@@ -0,0 +1,417 @@
+package com.belgianwaffles.battleshipserver;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+/**
+ * Reads games back out of the binary game journal.
+ * With no game given it lists every game of a run, otherwise it replays the game move by move.
+ * Arguments: [folder] [game] [--run name] [--boards], the latest run is used when none is given
+ */
+public final class JournalReader {
+
+    // ----- Constants -----
+
+    public static final String ARG_RUN    = "--run";
+    public static final String ARG_BOARDS = "--boards";
+
+    private static final SimpleDateFormat TIME_FORMAT = new SimpleDateFormat("HH:mm:ss.SSS");
+
+
+
+    // ----- Methods -----
+
+    public static void main(String[] args) {
+        String directory = GameJournal.DEFAULT_DIRECTORY;
+        String run = null;
+        long game = -1;
+        boolean boards = false;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case ARG_RUN -> run = (i + 1 < args.length) ? args[++i] : run;
+                case ARG_BOARDS -> boards = true;
+                default -> {
+                    try {
+                        game = Long.parseLong(args[i]);
+                    } catch (NumberFormatException e) {
+                        directory = args[i];
+                    }
+                }
+            }
+        }
+
+        try {
+            TreeMap<String, List<Path>> runs = findRuns(Path.of(directory));
+            if (runs.isEmpty()) {
+                System.out.println("No journal in " + directory);
+                return;
+            }
+            if (run == null) {
+                run = runs.lastKey();
+            }
+            if (!runs.containsKey(run)) {
+                System.out.println("No run " + run + ", runs are " + runs.keySet());
+                return;
+            }
+
+            List<Entry> entries = read(runs.get(run));
+            if (game < 0) {
+                list(run, entries);
+            }
+            else {
+                replay(run, game, entries, boards);
+            }
+        } catch (IOException e) {
+            System.err.println("Could not read journal in " + directory);
+        }
+    }
+
+
+
+    // ----- Reading -----
+
+    /**
+     * Finds the segments in a folder, grouped by run
+     * @param directory the journal folder
+     * @return every runs segments in order, runs sorted oldest first
+     * @throws IOException if the folder could not be read
+     */
+    static TreeMap<String, List<Path>> findRuns(Path directory) throws IOException {
+        TreeMap<String, List<Path>> runs = new TreeMap<>();
+        if (!Files.isDirectory(directory)) {
+            return runs;
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            files.map(Path::getFileName).map(Path::toString).sorted()
+            .filter(name -> name.startsWith(GameJournal.FILE_PREFIX) && name.endsWith(GameJournal.FILE_SUFFIX))
+            .forEach(name -> {
+                // journal-<run>-<segment>.bin
+                String run = name.substring(GameJournal.FILE_PREFIX.length(), name.lastIndexOf('-'));
+                runs.computeIfAbsent(run, r -> new ArrayList<>()).add(directory.resolve(name));
+            });
+        }
+        return runs;
+    }
+
+    /**
+     * Reads every record of a run
+     * @param segments the runs segments in order
+     * @return the records in the order they were written
+     * @throws IOException if a segment could not be read
+     */
+    static List<Entry> read(List<Path> segments) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        for (Path path : segments) {
+            MappedByteBuffer segment;
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                segment = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+            if (!GameJournal.isSegment(segment)) {
+                System.err.println("Skipped " + path.getFileName() + ", not a journal segment");
+                continue;
+            }
+
+            // Unwritten records are all zeros
+            for (int at = GameJournal.RECORD_SIZE; at + GameJournal.RECORD_SIZE <= segment.limit(); at += GameJournal.RECORD_SIZE) {
+                long time = segment.getLong(at + GameJournal.OFFSET_TIME);
+                if (time == 0) {
+                    break;
+                }
+                entries.add(new Entry(time,
+                segment.getLong(at + GameJournal.OFFSET_GAME),
+                segment.get(at + GameJournal.OFFSET_PLAYER),
+                segment.get(at + GameJournal.OFFSET_TYPE),
+                segment.get(at + GameJournal.OFFSET_FLAGS),
+                segment.get(at + GameJournal.OFFSET_INDEX),
+                segment.get(at + GameJournal.OFFSET_CELL)));
+            }
+        }
+        return entries;
+    }
+
+
+
+    // ----- Printing -----
+
+    /**
+     * Prints one line for every game in a run
+     * @param run the run name
+     * @param entries the runs records
+     */
+    private static void list(String run, List<Entry> entries) {
+        // Summarize each game in the order it started
+        Map<Long, long[]> games = new LinkedHashMap<>();
+        for (Entry entry : entries) {
+            // Start time, moves, winner, forfeit
+            long[] game = games.computeIfAbsent(entry.mGame, g -> new long[] { entry.mTime, 0, 0, 0 });
+            if (entry.mType == Packet.PACKET_TYPE_DELTA && entry.isFirst()) {
+                game[1]++;
+            }
+            else if (entry.mType == Packet.PACKET_TYPE_FLAGS) {
+                game[2] = entry.mPlayer;
+                game[3] = entry.hasFlag(GameJournal.FLAG_FORFEIT) ? 1 : 0;
+            }
+        }
+
+        System.out.println("Run " + run + ", " + games.size() + " games");
+        for (Map.Entry<Long, long[]> game : games.entrySet()) {
+            long[] info = game.getValue();
+            String result = (info[2] == 0) ? "unfinished" : "player " + info[2] + " won" + ((info[3] != 0) ? " by forfeit" : "");
+            System.out.printf("game %-6d %s  %3d moves  %s%n", game.getKey(), time(info[0]), info[1], result);
+        }
+    }
+
+    /**
+     * Rebuilds a game and prints it move by move
+     * @param run the run name
+     * @param game the game id
+     * @param entries the runs records
+     * @param boards true to print the boards after every move, not just at the start and end
+     */
+    private static void replay(String run, long game, List<Entry> entries, boolean boards) {
+        Grid grid = new Grid();
+        boolean found = false;
+        for (int i = 0; i < entries.size(); i++) {
+            Entry entry = entries.get(i);
+            if (entry.mGame != game) {
+                continue;
+            }
+            found = true;
+
+            switch (entry.mType) {
+                case Packet.PACKET_TYPE_NONE -> System.out.println(time(entry.mTime) + "  game " + game + " of run " + run + " started");
+                case Packet.PACKET_TYPE_GRID, Packet.PACKET_TYPE_DELTA -> {
+                    // Apply every cell of the grid or move, they are written together so nothing is in between
+                    Grid before = new Grid(grid);
+                    grid.setCell(entry.mIndex / Grid.GRID_SIZE, entry.mIndex % Grid.GRID_SIZE, entry.mCell);
+                    while (i + 1 < entries.size() && entries.get(i + 1).continues(entry)) {
+                        Entry cell = entries.get(++i);
+                        grid.setCell(cell.mIndex / Grid.GRID_SIZE, cell.mIndex % Grid.GRID_SIZE, cell.mCell);
+                    }
+
+                    if (entry.mType == Packet.PACKET_TYPE_GRID) {
+                        System.out.println(time(entry.mTime) + "  both layouts confirmed");
+                        System.out.print(boards(grid));
+                    }
+                    else {
+                        System.out.println(time(entry.mTime) + "  " + describeMove(entry.mPlayer, before, grid));
+                        if (boards) {
+                            System.out.print(boards(grid));
+                        }
+                    }
+                }
+                case Packet.PACKET_TYPE_FLAGS -> {
+                    System.out.println(time(entry.mTime) + "  player " + entry.mPlayer + " won"
+                    + (entry.hasFlag(GameJournal.FLAG_FORFEIT) ? ", the other player disconnected" : ""));
+                    if (!boards) {
+                        System.out.print(boards(grid));
+                    }
+                }
+                default -> System.out.println(time(entry.mTime) + "  unknown record type " + entry.mType);
+            }
+        }
+        if (!found) {
+            System.out.println("No game " + game + " in run " + run);
+        }
+    }
+
+    /**
+     * Describes a move from the cells it changed
+     * @param player the player that moved
+     * @param before the grid before the move
+     * @param after the grid after the move
+     * @return a line such as "player 1 fires at (3, 4): hit"
+     */
+    static String describeMove(int player, Grid before, Grid after) {
+        Grid.GridCell[][] was = before.getCells();
+        Grid.GridCell[][] now = after.getCells();
+        for (int x = 0; x < Grid.GRID_SIZE; x++) {
+            for (int y = 0; y < Grid.GRID_SIZE; y++) {
+                boolean shot = (player == 1) ? now[x][y].hasShotP1() : now[x][y].hasShotP2();
+                boolean wasShot = (player == 1) ? was[x][y].hasShotP1() : was[x][y].hasShotP2();
+                if (shot && !wasShot) {
+                    boolean hit = (player == 1) ? now[x][y].hasShipP2() : now[x][y].hasShipP1();
+                    return "player " + player + " fires at (" + x + ", " + y + "): " + (hit ? "hit" : "miss");
+                }
+            }
+        }
+        return "player " + player + " moved";
+    }
+
+    /**
+     * Draws both fleets side by side.
+     * S is a ship, X a hit ship, o a miss and ^ a shark.
+     * @param grid the combined grid
+     * @return the boards, one row per line
+     */
+    static String boards(Grid grid) {
+        Grid.GridCell[][] cells = grid.getCells();
+        StringBuilder text = new StringBuilder();
+        text.append(String.format("    %-22s%s%n", "Player 1 fleet", "Player 2 fleet"));
+        for (int x = 0; x < Grid.GRID_SIZE; x++) {
+            text.append("    ");
+            for (int y = 0; y < Grid.GRID_SIZE; y++) {
+                Grid.GridCell cell = cells[x][y];
+                text.append(symbol(cell.hasShipP1(), cell.hasShotP2(), cell.hasSharkP2())).append(' ');
+            }
+            text.append("  ");
+            for (int y = 0; y < Grid.GRID_SIZE; y++) {
+                Grid.GridCell cell = cells[x][y];
+                text.append(symbol(cell.hasShipP2(), cell.hasShotP1(), cell.hasSharkP1())).append(' ');
+            }
+            text.append('\n');
+        }
+        return text.toString();
+    }
+
+    /**
+     * Picks the symbol for one cell of a fleet
+     * @param ship the fleets owner has a ship here
+     * @param shot the opponent has fired here
+     * @param shark there is a shark in the opponents waters here
+     * @return the symbol
+     */
+    private static char symbol(boolean ship, boolean shot, boolean shark) {
+        if (ship) {
+            return shot ? 'X' : 'S';
+        }
+        if (shot) {
+            return 'o';
+        }
+        return shark ? '^' : '.';
+    }
+
+    /**
+     * Formats a journal time
+     * @param time epoch milliseconds
+     * @return the time of day
+     */
+    private static String time(long time) {
+        synchronized (TIME_FORMAT) {
+            return TIME_FORMAT.format(new Date(time));
+        }
+    }
+
+
+
+    // ----- Subclasses -----
+
+    /**
+     * A single record read from the journal
+     */
+    static final class Entry {
+
+        // ----- Data -----
+
+        private final long mTime;
+        private final long mGame;
+        private final int mPlayer;
+        private final int mType;
+        private final byte mFlags;
+        private final int mIndex;
+        private final byte mCell;
+
+
+
+        // ----- Methods -----
+
+        /**
+         * Creates a record
+         * @param time epoch milliseconds
+         * @param game the game id
+         * @param player player 1 or player 2, 0 for the whole game
+         * @param type the packet type the event came from
+         * @param flags flags of the event
+         * @param index the cell the event is about
+         * @param cell the new cell data
+         */
+        Entry(long time, long game, int player, int type, byte flags, int index, byte cell) {
+            this.mTime = time;
+            this.mGame = game;
+            this.mPlayer = player;
+            this.mType = type;
+            this.mFlags = flags;
+            this.mIndex = index;
+            this.mCell = cell;
+        }
+
+        /**
+         * Checks if the record has a flag
+         * @param flag the flag, use GameJournal.FLAG_####
+         * @return true if the flag is set
+         */
+        boolean hasFlag(byte flag) {
+            return (this.mFlags & flag) == flag;
+        }
+
+        /**
+         * Checks if the record starts a grid or move
+         * @return true if it is the first cell record
+         */
+        boolean isFirst() {
+            return (this.mType == Packet.PACKET_TYPE_GRID || this.mType == Packet.PACKET_TYPE_DELTA)
+            && this.hasFlag(GameJournal.FLAG_FIRST);
+        }
+
+        /**
+         * Checks if the record is another cell of the same grid or move
+         * @param first the first record of the grid or move
+         * @return true if the record belongs with it
+         */
+        boolean continues(Entry first) {
+            return this.mGame == first.mGame && this.mType == first.mType && !this.isFirst();
+        }
+
+        /**
+         * Gets the game the record is from
+         * @return the game id
+         */
+        long getGame() {
+            return this.mGame;
+        }
+
+        /**
+         * Gets the player the record is about
+         * @return player 1 or player 2, 0 for the whole game
+         */
+        int getPlayer() {
+            return this.mPlayer;
+        }
+
+        /**
+         * Gets the packet type the event came from
+         * @return the type
+         */
+        int getType() {
+            return this.mType;
+        }
+
+        /**
+         * Gets the cell the record is about
+         * @return the cell index, GameJournal.NO_CELL if it is not about one
+         */
+        int getIndex() {
+            return this.mIndex;
+        }
+
+        /**
+         * Gets the new cell data
+         * @return the cell data
+         */
+        byte getCell() {
+            return this.mCell;
+        }
+    }
+}
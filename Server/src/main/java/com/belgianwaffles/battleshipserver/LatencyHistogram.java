@@ -0,0 +1,136 @@
+package com.belgianwaffles.battleshipserver;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts recorded values in log linear buckets, the same layout HDR histograms use.
+ * Every power of 2 is split into 32 buckets, so any percentile is within about 3% of the real value.
+ * Recording never locks and never allocates, so it is safe to call from any thread on hot paths.
+ */
+final class LatencyHistogram {
+
+    // ----- Constants -----
+
+    // Buckets per power of 2 is 2 ^ SUB_BITS
+    private static final int SUB_BITS    = 5;
+    private static final int SUB_COUNT   = 1 << SUB_BITS;
+    // Values below this each get their own bucket
+    private static final int LINEAR_MAX  = SUB_COUNT * 2;
+    private static final int BUCKETS     = (Long.SIZE - SUB_BITS) * SUB_COUNT + LINEAR_MAX;
+
+
+
+    // ----- Data -----
+
+    private final AtomicLongArray mCounts;
+    private final LongAdder mCount;
+    private final LongAdder mSum;
+    private final AtomicLong mMax;
+
+
+
+    // ----- Methods -----
+
+    /**
+     * Creates an empty histogram
+     */
+    public LatencyHistogram() {
+        this.mCounts = new AtomicLongArray(BUCKETS);
+        this.mCount = new LongAdder();
+        this.mSum = new LongAdder();
+        this.mMax = new AtomicLong(0);
+    }
+
+    /**
+     * Adds a value, safe to call from any thread
+     * @param value the value, negative values are counted as 0
+     */
+    public void record(long value) {
+        value = Math.max(0, value);
+        this.mCounts.incrementAndGet(bucketOf(value));
+        this.mCount.increment();
+        this.mSum.add(value);
+        this.mMax.accumulateAndGet(value, Math::max);
+    }
+
+    /**
+     * Gets the value a fraction of all recorded values are at or below
+     * @param fraction the percentile, 0.99 for p99
+     * @return the lowest value of the bucket the percentile falls in, 0 if nothing was recorded
+     */
+    public long percentile(double fraction) {
+        long total = this.mCount.sum();
+        if (total == 0) {
+            return 0;
+        }
+
+        // Walk the buckets until enough values are counted
+        long wanted = Math.max(1, (long)Math.ceil(fraction * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += this.mCounts.get(i);
+            if (seen >= wanted) {
+                return Math.min(lowestOf(i), this.mMax.get());
+            }
+        }
+        return this.mMax.get();
+    }
+
+    /**
+     * Gets the amount of recorded values
+     * @return the count
+     */
+    public long getCount() {
+        return this.mCount.sum();
+    }
+
+    /**
+     * Gets the average recorded value
+     * @return the mean, 0 if nothing was recorded
+     */
+    public double getMean() {
+        long count = this.mCount.sum();
+        return (count == 0) ? 0 : (double)this.mSum.sum() / count;
+    }
+
+    /**
+     * Gets the largest recorded value
+     * @return the max, 0 if nothing was recorded
+     */
+    public long getMax() {
+        return this.mMax.get();
+    }
+
+
+
+    // ----- Buckets -----
+
+    /**
+     * Finds the bucket a value is counted in
+     * @param value the value, at least 0
+     * @return the bucket index
+     */
+    private static int bucketOf(long value) {
+        if (value < LINEAR_MAX) {
+            return (int)value;
+        }
+        // Keep the top SUB_BITS + 1 bits, the rest only pick the power of 2
+        int shift = (Long.SIZE - 1 - Long.numberOfLeadingZeros(value)) - SUB_BITS;
+        return shift * SUB_COUNT + (int)(value >>> shift);
+    }
+
+    /**
+     * Finds the smallest value counted in a bucket
+     * @param bucket the bucket index
+     * @return the smallest value of the bucket
+     */
+    private static long lowestOf(int bucket) {
+        if (bucket < LINEAR_MAX) {
+            return bucket;
+        }
+        int shift = bucket / SUB_COUNT - 1;
+        return (long)(bucket % SUB_COUNT + SUB_COUNT) << shift;
+    }
+}
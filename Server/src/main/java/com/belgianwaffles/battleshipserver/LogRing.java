@@ -0,0 +1,118 @@
+package com.belgianwaffles.battleshipserver;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded ring buffer for many producers and a single consumer.
+ * Producers claim slots with a compare and set, nothing ever takes a lock.
+ * @param <T> type of item held
+ */
+final class LogRing<T> {
+
+    // ----- Data -----
+
+    private final Object[] mItems;
+    // Each slot's sequence says if it is free for the producer or full for the consumer
+    private final AtomicLongArray mSequences;
+    private final int mMask;
+
+    // Next slot producers claim
+    private final AtomicLong mTail;
+    // Next slot the consumer reads, only written by the consumer, volatile so size can be read anywhere
+    private volatile long mHead;
+
+
+
+    // ----- Methods -----
+
+    /**
+     * Creates an empty ring
+     * @param capacity the smallest amount of items to hold, rounded up to a power of 2
+     */
+    public LogRing(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.mItems = new Object[size];
+        this.mSequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            this.mSequences.set(i, i);
+        }
+        this.mMask = size - 1;
+        this.mTail = new AtomicLong(0);
+        this.mHead = 0;
+    }
+
+
+
+    // ----- Producers -----
+
+    /**
+     * Adds an item if there is room, safe to call from any thread
+     * @param item the item to add
+     * @return false if the ring is full
+     */
+    public boolean offer(T item) {
+        long position = this.mTail.get();
+        while (true) {
+            int index = (int)(position & this.mMask);
+            long difference = this.mSequences.get(index) - position;
+
+            // Slot is free, try to claim it
+            if (difference == 0) {
+                if (this.mTail.compareAndSet(position, position + 1)) {
+                    this.mItems[index] = item;
+                    this.mSequences.lazySet(index, position + 1);
+                    return true;
+                }
+                position = this.mTail.get();
+            }
+            // Consumer has not freed the slot from the last lap
+            else if (difference < 0) {
+                return false;
+            }
+            // Another producer claimed it first
+            else {
+                position = this.mTail.get();
+            }
+        }
+    }
+
+
+
+    // ----- Consumer -----
+
+    /**
+     * Takes the oldest item, only called from the consumer thread
+     * @return the item, null if the ring is empty
+     */
+    @SuppressWarnings("unchecked")
+    public T poll() {
+        int index = (int)(this.mHead & this.mMask);
+        if (this.mSequences.get(index) != this.mHead + 1) {
+            return null;
+        }
+        T item = (T)this.mItems[index];
+        this.mItems[index] = null;
+
+        // Free the slot for the next lap
+        this.mSequences.lazySet(index, this.mHead + this.mItems.length);
+        this.mHead++;
+        return item;
+    }
+
+    /**
+     * Gets the amount of items waiting, may be slightly off while producers are adding
+     * @return the item count
+     */
+    public int size() {
+        return (int)Math.max(0, this.mTail.get() - this.mHead);
+    }
+
+    /**
+     * Gets the amount of slots in the ring
+     * @return the capacity
+     */
+    public int getCapacity() {
+        return this.mItems.length;
+    }
+}
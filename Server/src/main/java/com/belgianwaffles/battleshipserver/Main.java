@@ -1,6 +1,7 @@
 package com.belgianwaffles.battleshipserver;
 
 import java.io.IOException;
+import java.nio.file.Path;
 import java.util.Scanner;
 
 public class Main {
@@ -14,16 +15,49 @@ public class Main {
         // initialize logger
         FileLogger.initLogger();
 
+        // Read server settings
+        ServerConfig config = ServerConfig.parse(args);
+        if (config.useAsyncLogging()) {
+            FileLogger.startAsync(FileLogger.DEFAULT_CAPACITY, config.getLogPolicy());
+        }
+
+        // Start making boards ahead of time
+        FleetPool.startPool(config.getFleetPoolSize(), config.getFleetPoolWatermark());
+
+        // Journal games in binary instead of dumping them into the text log
+        if (config.getJournalDirectory() != null) {
+            GameJournal.startJournal(Path.of(config.getJournalDirectory()));
+        }
+
+        // Serve metrics to the local machine
+        MetricsServer metrics = null;
+        if (config.getMetricsPort() > 0) {
+            ServerMetrics.registerMBean();
+            try {
+                metrics = new MetricsServer(config.getMetricsPort());
+                System.out.println("Metrics at http://localhost:" + metrics.getPort() + MetricsServer.PATH);
+            } catch (IOException e) {
+                FileLogger.logError(Main.class, "main(String[])", "Could not open metrics port");
+                System.err.println("Could not open metrics port");
+            }
+        }
+
         // Create server and check connections on separate thread
         ConnectionManager connection;
         try {
-            connection = new ConnectionManager(ConnectionManager.DEFAULT_PORT);
+            connection = new ConnectionManager(config);
             Thread connectThread = new Thread(connection);
             connectThread.setDaemon(true);
             connectThread.start();
         } catch (IOException e) {
             FileLogger.logError(Main.class, "main(String[])", "Could not create server socket");
             System.err.println("Could not create server socket");
+            if (metrics != null) {
+                metrics.close();
+            }
+            FleetPool.stopPool();
+            GameJournal.stopJournal();
+            FileLogger.stopAsync();
             return;
         }
 
@@ -39,5 +73,14 @@ public class Main {
         if (connection.close()) {
             System.out.println("Successfully closed the server!");
         }
+
+        if (metrics != null) {
+            metrics.close();
+        }
+        FleetPool.stopPool();
+        GameJournal.stopJournal();
+
+        // Write out anything still queued
+        FileLogger.stopAsync();
     }
 }
\ No newline at end of file
@@ -0,0 +1,186 @@
+package com.belgianwaffles.battleshipserver;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+
+/**
+ * Pairs connecting clients into games.
+ * Clients are pinged on their own virtual threads, so a slow or dead client never holds up accepting others.
+ * Live clients wait in first come first served order within their bucket until an opponent arrives.
+ */
+final class Matchmaker {
+
+    // ----- Constants -----
+
+    // Bucket for clients without a rating
+    public static final int DEFAULT_BUCKET = 0;
+
+
+
+    // ----- Data -----
+
+    // Runs every ping, each one blocks until the client answers or times out
+    private final ExecutorService mChecks;
+    // Starts a game for two live clients
+    private final BiConsumer<Socket, Socket> mOnPair;
+
+    // Clients waiting for an opponent, by bucket
+    private final Map<Integer, ArrayDeque<Socket>> mWaiting;
+    private final ReentrantLock mLock;
+    private volatile boolean mOpen;
+
+
+
+    // ----- Methods -----
+
+    /**
+     * Creates a matchmaker
+     * @param onPair called with each pair of live clients, client 1 is the one that waited longest
+     */
+    public Matchmaker(BiConsumer<Socket, Socket> onPair) {
+        this.mChecks = Executors.newVirtualThreadPerTaskExecutor();
+        this.mOnPair = onPair;
+        this.mWaiting = new HashMap<>();
+        this.mLock = new ReentrantLock();
+        this.mOpen = true;
+    }
+
+    /**
+     * Adds a new client without a rating, returns straight away
+     * @param client the client that connected
+     */
+    public void add(Socket client) {
+        this.add(client, DEFAULT_BUCKET);
+    }
+
+    /**
+     * Adds a new client, it is paired once it answers a ping, returns straight away
+     * @param client the client that connected
+     * @param bucket clients are only paired with others in the same bucket
+     */
+    public void add(Socket client, int bucket) {
+        if (!this.mOpen) {
+            closeQuietly(client);
+            return;
+        }
+        this.mChecks.execute(() -> {
+            if (ConnectionManager.ping(client)) {
+                this.enqueue(client, bucket);
+            }
+            else {
+                System.out.println("Client failed to answer, disconnecting");
+                closeQuietly(client);
+            }
+        });
+    }
+
+    /**
+     * Stops pairing and disconnects every waiting client
+     */
+    public void close() {
+        this.mOpen = false;
+        this.mChecks.shutdownNow();
+
+        this.mLock.lock();
+        try {
+            for (ArrayDeque<Socket> queue : this.mWaiting.values()) {
+                for (Socket client : queue) {
+                    closeQuietly(client);
+                }
+            }
+            this.mWaiting.clear();
+        } finally {
+            this.mLock.unlock();
+        }
+    }
+
+    /**
+     * Gets the amount of live clients waiting for an opponent
+     * @return the waiting client count
+     */
+    public int waiting() {
+        this.mLock.lock();
+        try {
+            int count = 0;
+            for (ArrayDeque<Socket> queue : this.mWaiting.values()) {
+                count += queue.size();
+            }
+            return count;
+        } finally {
+            this.mLock.unlock();
+        }
+    }
+
+
+
+    // ----- Pairing -----
+
+    /**
+     * Pairs a live client with the longest waiting client of its bucket, or leaves it waiting
+     * @param client a client that just answered a ping
+     * @param bucket the clients bucket
+     */
+    private void enqueue(Socket client, int bucket) {
+        Socket opponent;
+        this.mLock.lock();
+        try {
+            if (!this.mOpen) {
+                closeQuietly(client);
+                return;
+            }
+            ArrayDeque<Socket> queue = this.mWaiting.computeIfAbsent(bucket, b -> new ArrayDeque<>());
+            opponent = queue.poll();
+            if (opponent == null) {
+                System.out.println("Client waiting for an opponent");
+                queue.add(client);
+                return;
+            }
+        } finally {
+            this.mLock.unlock();
+        }
+
+        // The waiting client may have left since its ping, check again off the lock
+        this.mChecks.execute(() -> this.match(opponent, client, bucket));
+    }
+
+    /**
+     * Starts a game for a pair once the client that waited is known to still be there
+     * @param waited the client that was waiting
+     * @param client the client that just arrived, already pinged
+     * @param bucket the bucket of both clients
+     */
+    private void match(Socket waited, Socket client, int bucket) {
+        if (!ConnectionManager.ping(waited)) {
+            System.out.println("Waiting client disconnected");
+            closeQuietly(waited);
+            this.enqueue(client, bucket);
+            return;
+        }
+        if (!this.mOpen) {
+            closeQuietly(waited);
+            closeQuietly(client);
+            return;
+        }
+        this.mOnPair.accept(waited, client);
+    }
+
+    /**
+     * Closes a client, ignoring sockets that are already closed
+     * @param client the client to close
+     */
+    private static void closeQuietly(Socket client) {
+        ServerMetrics.clientClosed(client);
+        try {
+            client.close();
+        } catch (IOException e) {
+            // Already closed
+        }
+    }
+}
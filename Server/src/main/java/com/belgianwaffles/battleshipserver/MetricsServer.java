@@ -0,0 +1,81 @@
+package com.belgianwaffles.battleshipserver;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Serves the server metrics as plain text over HTTP, only on the local machine.
+ * A single request thread is plenty for a scraper every few seconds.
+ */
+public final class MetricsServer {
+
+    // ----- Constants -----
+
+    public static final int DEFAULT_PORT = 27080;
+    public static final String PATH      = "/metrics";
+
+    private static final int OK          = 200;
+    private static final int NOT_ALLOWED = 405;
+
+
+
+    // ----- Data -----
+
+    private final HttpServer mServer;
+
+
+
+    // ----- Methods -----
+
+    /**
+     * Opens the endpoint on the loopback address
+     * @param port the port to listen on, 0 for any free port
+     * @throws IOException if the port could not be opened
+     */
+    public MetricsServer(int port) throws IOException {
+        this.mServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        this.mServer.createContext(PATH, this::handle);
+        this.mServer.start();
+    }
+
+    /**
+     * Stops serving metrics
+     */
+    public void close() {
+        this.mServer.stop(0);
+    }
+
+    /**
+     * Gets the port the endpoint listens on
+     * @return the port
+     */
+    public int getPort() {
+        return this.mServer.getAddress().getPort();
+    }
+
+    /**
+     * Answers a single request with the current metrics
+     * @param exchange the request
+     * @throws IOException if the answer could not be sent
+     */
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!exchange.getRequestMethod().equals("GET")) {
+                exchange.sendResponseHeaders(NOT_ALLOWED, -1);
+                return;
+            }
+            byte[] body = ServerMetrics.get().toText().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+            exchange.sendResponseHeaders(OK, body.length);
+            try (OutputStream output = exchange.getResponseBody()) {
+                output.write(body);
+            }
+        }
+    }
+}
@@ -2,7 +2,10 @@ package com.belgianwaffles.battleshipserver;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HexFormat;
 
 import javax.swing.ImageIcon;
 
@@ -207,6 +210,8 @@ public final class Packet {
                 case PACKET_TYPE_PING -> str += "Ping";
                 case PACKET_TYPE_GRID -> str += "Grid";
                 case PACKET_TYPE_IMAGE-> str += "Image";
+                case PACKET_TYPE_DELTA-> str += "Delta";
+                case PACKET_TYPE_ASSET-> str += "Asset";
             }
 
             // Length
@@ -240,6 +245,20 @@ public final class Packet {
     public static final byte PACKET_FLAG_CONFIRM    = (byte)0b01000000;
     public static final byte PACKET_FLAG_SHIP_SUNK  = (byte)0b00100000;
 
+    // ----- Delta ----- Flags -----
+
+    // Sent by a client whose board is out of date, asks for a full grid
+    public static final byte PACKET_FLAG_RESYNC     = (byte)0b10000000;
+
+    // ----- Asset ----- Flags -----
+
+    // Server tells the client which asset to show, by hash and size
+    public static final byte PACKET_FLAG_ASSET_OFFER   = (byte)0b10000000;
+    // Client does not hold the offered asset and asks for it
+    public static final byte PACKET_FLAG_ASSET_REQUEST = (byte)0b01000000;
+    // Part of an asset, at an offset into the whole file
+    public static final byte PACKET_FLAG_ASSET_CHUNK   = (byte)0b00100000;
+
     // ----- Flags ----- Flags -----
 
     public static final byte PACKET_FLAG_WINNER     = (byte)0b10000000;
@@ -251,8 +270,33 @@ public final class Packet {
     public static final byte PACKET_TYPE_GRID       = 2;
     public static final byte PACKET_TYPE_IMAGE      = 3;
     public static final byte PACKET_TYPE_FLAGS      = 4;
+    public static final byte PACKET_TYPE_DELTA      = 5;
+    public static final byte PACKET_TYPE_ASSET      = 6;
     public static final int  PACKET_TAIL_SIZE       = 1;
 
+    // Delta body is a 2 byte board version, then a cell index and cell value for each changed cell
+    private static final int DELTA_VERSION_SIZE     = 2;
+    private static final int DELTA_CELL_SIZE        = 2;
+    // Board versions wrap around after this
+    public static final int  DELTA_VERSION_MASK     = 0xFFFF;
+    // A single shot sent as a delta
+    public static final int  DELTA_SHOT_SIZE        = DELTA_VERSION_SIZE + DELTA_CELL_SIZE;
+    // Past this many cells a full grid is smaller
+    public static final int  MAX_DELTA_CELLS        = (Grid.GRID_SIZE * Grid.GRID_SIZE - DELTA_VERSION_SIZE) / DELTA_CELL_SIZE;
+
+    // Asset bodies start with the SHA-256 of the whole file, offers then hold the file size and chunks an offset and data
+    public static final int  ASSET_HASH_SIZE        = 32;
+    private static final int ASSET_INT_SIZE         = 4;
+    public static final int  ASSET_CHUNK_HEADER     = ASSET_HASH_SIZE + ASSET_INT_SIZE;
+
+    // Grid bodies hold one byte for every cell
+    public static final int  GRID_BODY_SIZE         = Grid.GRID_SIZE * Grid.GRID_SIZE;
+
+    // Clients never send anything larger than a grid
+    public static final int  MAX_CLIENT_PACKET_SIZE = HEADER_SIZE + GRID_BODY_SIZE + PACKET_TAIL_SIZE;
+
+    private static final byte[] PACKET_TAIL         = {'\n'};
+
     private static final String PACKET_IMAGE_PATH   = "../Assets/";
     
 
@@ -262,17 +306,23 @@ public final class Packet {
     // Data packet header
     private final Header mHeader;
     
-    // Body of packet
+    // Body of packet, null if the packet wraps received data
     private byte[] mBody;
 
-    // Tail (newline)
-    private final byte[] mTail;
-
     // Packet whole
     private byte[] mData;
 
 
 
+    // Pings never change, so every sender shares one packed copy
+    private static final Packet sPing;
+    static {
+        sPing = new Packet();
+        sPing.serialize();
+    }
+
+
+
     // ----- Methods -----
 
     // ----- Constructors -----
@@ -283,7 +333,6 @@ public final class Packet {
     public Packet() {
         this.mHeader = new Header();
         this.mBody = new byte[1];
-        this.mTail = new byte[]{'\n'};
     }
 
 
@@ -324,7 +373,7 @@ public final class Packet {
      * Adds the tail onto the end of the packet
      */
     private void setTail() {
-        System.arraycopy(this.mTail, 0, this.mData, this.mHeader.getLength() + HEADER_SIZE, this.mTail.length);
+        System.arraycopy(PACKET_TAIL, 0, this.mData, this.mHeader.getLength() + HEADER_SIZE, PACKET_TAIL_SIZE);
     }
 
     /**
@@ -379,17 +428,84 @@ public final class Packet {
         // Setup header
         this.mHeader.addType(PACKET_TYPE_GRID);
         
-        // Setup body with gridcell information
-        this.mBody = new byte[Grid.GRID_SIZE * Grid.GRID_SIZE];
-        var cells = grid.getCells();
-        for (int i = 0; i < this.mBody.length; i++) {
-            this.setByte(i, cells[i / Grid.GRID_SIZE][i % Grid.GRID_SIZE].getCell());
-        }
+        // Setup body with gridcell information, already laid out row by row
+        this.mBody = grid.getData();
         
         // Pack data to packet
         this.pack();
     }
 
+    /**
+     * Serializes a delta packet with the cells that changed between two grids
+     * @param version the board version the client has after applying the delta
+     * @param previous the grid the client last received
+     * @param grid the grid the client should have
+     */
+    public void serialize(int version, Grid previous, Grid grid) {
+        // Setup header
+        this.mHeader.addType(PACKET_TYPE_DELTA);
+
+        // Setup body with each changed cell
+        byte[] before = previous.getData(), after = grid.getData();
+        this.mBody = new byte[DELTA_VERSION_SIZE + grid.checkDifferences(previous) * DELTA_CELL_SIZE];
+        this.setVersion(version);
+        int index = DELTA_VERSION_SIZE;
+        for (int i = 0; i < after.length; i++) {
+            if (before[i] != after[i]) {
+                this.setByte(index++, (byte)i);
+                this.setByte(index++, after[i]);
+            }
+        }
+
+        // Pack data to packet
+        this.pack();
+    }
+
+    /**
+     * Serializes a delta packet with a single changed cell, such as a shot
+     * @param version the board version the change was made on
+     * @param index the cell, row i, column j at i * GRID_SIZE + j
+     * @param cell the new cell value
+     */
+    public void serialize(int version, int index, byte cell) {
+        // Setup header
+        this.mHeader.addType(PACKET_TYPE_DELTA);
+
+        // Setup body with the one cell
+        this.mBody = new byte[DELTA_VERSION_SIZE + DELTA_CELL_SIZE];
+        this.setVersion(version);
+        this.setByte(DELTA_VERSION_SIZE, (byte)index);
+        this.setByte(DELTA_VERSION_SIZE + 1, cell);
+
+        // Pack data to packet
+        this.pack();
+    }
+
+    /**
+     * Serializes a delta packet without any cells, used with PACKET_FLAG_RESYNC
+     * @param version the board version the client has
+     */
+    public void serialize(int version) {
+        // Setup header
+        this.mHeader.addType(PACKET_TYPE_DELTA);
+
+        // Setup body with only the version
+        this.mBody = new byte[DELTA_VERSION_SIZE];
+        this.setVersion(version);
+
+        // Pack data to packet
+        this.pack();
+    }
+
+    /**
+     * Writes the board version to the start of the body
+     * @param version the version, wrapped to 2 bytes
+     */
+    private void setVersion(int version) {
+        this.setByte(0, (byte)(version >> 8));
+        this.setByte(1, (byte)version);
+    }
+
     /**
      * Serialized an image packet to send assets to the client
      * Recommended to set the flag for type after serializing
@@ -412,6 +528,75 @@ public final class Packet {
         this.pack();
     }
 
+    /**
+     * Serializes an asset offer, the client answers with a request if it does not hold the asset
+     * @param hash the SHA-256 of the asset
+     * @param size the size of the asset in bytes
+     */
+    public void serialize(byte[] hash, int size) {
+        // Setup header
+        this.mHeader.addType(PACKET_TYPE_ASSET);
+        this.addFlag(PACKET_FLAG_ASSET_OFFER);
+
+        // Setup body with the hash and size
+        this.mBody = new byte[ASSET_HASH_SIZE + ASSET_INT_SIZE];
+        System.arraycopy(hash, 0, this.mBody, 0, ASSET_HASH_SIZE);
+        this.setInt(ASSET_HASH_SIZE, size);
+
+        // Pack data to packet
+        this.pack();
+    }
+
+    /**
+     * Serializes an asset request for an offered asset
+     * @param hash the SHA-256 from the offer
+     */
+    public void serialize(byte[] hash) {
+        // Setup header
+        this.mHeader.addType(PACKET_TYPE_ASSET);
+        this.addFlag(PACKET_FLAG_ASSET_REQUEST);
+
+        // Setup body with only the hash
+        this.mBody = Arrays.copyOf(hash, ASSET_HASH_SIZE);
+
+        // Pack data to packet
+        this.pack();
+    }
+
+    /**
+     * Serializes one chunk of an asset
+     * @param hash the SHA-256 of the whole asset
+     * @param asset the whole asset
+     * @param offset where the chunk starts in the asset
+     * @param length the size of the chunk
+     */
+    public void serialize(byte[] hash, byte[] asset, int offset, int length) {
+        // Setup header
+        this.mHeader.addType(PACKET_TYPE_ASSET);
+        this.addFlag(PACKET_FLAG_ASSET_CHUNK);
+
+        // Setup body with the hash, offset and data
+        this.mBody = new byte[ASSET_CHUNK_HEADER + length];
+        System.arraycopy(hash, 0, this.mBody, 0, ASSET_HASH_SIZE);
+        this.setInt(ASSET_HASH_SIZE, offset);
+        System.arraycopy(asset, offset, this.mBody, ASSET_CHUNK_HEADER, length);
+
+        // Pack data to packet
+        this.pack();
+    }
+
+    /**
+     * Writes a big endian int into the body
+     * @param index where the int starts in the body
+     * @param value the int
+     */
+    private void setInt(int index, int value) {
+        this.setByte(index,     (byte)(value >> 24));
+        this.setByte(index + 1, (byte)(value >> 16));
+        this.setByte(index + 2, (byte)(value >> 8));
+        this.setByte(index + 3, (byte)value);
+    }
+
     /**
      * Takes an array of bytes from socket
      * @param <code>byte[]</code> array of bytes from socket
@@ -433,6 +618,53 @@ public final class Packet {
         this.pack();
     }
 
+    /**
+     * Uses the bytes of a full received packet as this packets data without copying.
+     * The array belongs to the packet afterwards and must not be changed.
+     * @param frame array holding exactly one full packet
+     */
+    public void wrap(byte[] frame) {
+        this.mHeader.copy(frame);
+        this.mBody = null;
+        this.mData = frame;
+    }
+
+
+
+    /**
+     * Finds the size of the packet starting at the buffers position without consuming any bytes
+     * @param buffer buffer holding received bytes, ready for reading
+     * @return the full size of the packet in bytes, -1 if the header has not been fully received
+     */
+    public static int frameLength(ByteBuffer buffer) {
+        if (buffer.remaining() < HEADER_SIZE) {
+            return -1;
+        }
+        // Length is stored big endian after the user id
+        int length = buffer.getInt(buffer.position() + 3);
+        return HEADER_SIZE + length + PACKET_TAIL_SIZE;
+    }
+
+    /**
+     * Finds the size of the packet from its header
+     * @param header array starting with a full packet header
+     * @return the full size of the packet in bytes
+     */
+    public static int frameLength(byte[] header) {
+        // Length is stored big endian after the user id
+        int length = ((header[3] & 0xff) << 24) | ((header[4] & 0xff) << 16)
+                   | ((header[5] & 0xff) << 8)  |  (header[6] & 0xff);
+        return HEADER_SIZE + length + PACKET_TAIL_SIZE;
+    }
+
+    /**
+     * Gets the ping packet shared by every sender, it must not be changed
+     * @return a serialized ping packet
+     */
+    public static Packet sharedPing() {
+        return sPing;
+    }
+
 
 
     // ----- Setters -----
@@ -527,9 +759,90 @@ public final class Packet {
         if ((byte)this.getType() != PACKET_TYPE_GRID) {
             throw new IllegalStateException();
         }
+        // Wrapped packets read the grid straight from the received data
+        if (this.mBody == null) {
+            return new Grid(this.mData, HEADER_SIZE);
+        }
         return new Grid(this.mBody);
     }
 
+    /**
+     * Gets the board version of a delta packet
+     * @return the version, from 0 to DELTA_VERSION_MASK
+     * @throws IllegalStateException if not of type PACKET_TYPE_DELTA
+     */
+    public int getVersion() throws IllegalStateException {
+        this.checkDelta();
+        return (this.bodyByte(0) << 8) | this.bodyByte(1);
+    }
+
+    /**
+     * Gets the amount of cells in a delta packet
+     * @return the cell count
+     * @throws IllegalStateException if not of type PACKET_TYPE_DELTA
+     */
+    public int getDeltaCount() throws IllegalStateException {
+        this.checkDelta();
+        return Math.max(0, (this.getLength() - DELTA_VERSION_SIZE) / DELTA_CELL_SIZE);
+    }
+
+    /**
+     * Gets the index of a cell in a delta packet
+     * @param n which cell of the delta
+     * @return the cell, row i, column j at i * GRID_SIZE + j
+     */
+    public int getDeltaIndex(int n) {
+        return this.bodyByte(DELTA_VERSION_SIZE + n * DELTA_CELL_SIZE);
+    }
+
+    /**
+     * Gets the new value of a cell in a delta packet
+     * @param n which cell of the delta
+     * @return the cell value
+     */
+    public byte getDeltaCell(int n) {
+        return (byte)this.bodyByte(DELTA_VERSION_SIZE + n * DELTA_CELL_SIZE + 1);
+    }
+
+    /**
+     * Writes the cells of a delta packet into a grid
+     * @param grid the grid the delta was built against
+     * @return false if a cell is outside the grid, nothing is changed then
+     * @throws IllegalStateException if not of type PACKET_TYPE_DELTA
+     */
+    public boolean applyDelta(Grid grid) throws IllegalStateException {
+        int count = this.getDeltaCount();
+        for (int n = 0; n < count; n++) {
+            if (this.getDeltaIndex(n) >= Grid.GRID_SIZE * Grid.GRID_SIZE) {
+                return false;
+            }
+        }
+        for (int n = 0; n < count; n++) {
+            int index = this.getDeltaIndex(n);
+            grid.setCell(index / Grid.GRID_SIZE, index % Grid.GRID_SIZE, this.getDeltaCell(n));
+        }
+        return true;
+    }
+
+    /**
+     * Makes sure the packet is a delta with at least a version
+     * @throws IllegalStateException if not of type PACKET_TYPE_DELTA
+     */
+    private void checkDelta() throws IllegalStateException {
+        if ((byte)this.getType() != PACKET_TYPE_DELTA || this.getLength() < DELTA_VERSION_SIZE) {
+            throw new IllegalStateException();
+        }
+    }
+
+    /**
+     * Reads a byte of the body, works for wrapped and serialized packets
+     * @param index the index in the body
+     * @return the byte, from 0 to 255
+     */
+    private int bodyByte(int index) {
+        return this.mData[HEADER_SIZE + index] & 0xFF;
+    }
+
     /**
      * Gets an image object from a packet
      * @return Image from packet body
@@ -539,7 +852,88 @@ public final class Packet {
         if ((byte)this.getType() != PACKET_TYPE_IMAGE) {
             throw new IllegalStateException();
         }
-        return new ImageIcon(this.mBody);
+        return new ImageIcon(this.getBody());
+    }
+
+    /**
+     * Gets the packet body, copying it out of the data for wrapped packets
+     * @return the body bytes
+     */
+    private byte[] getBody() {
+        if (this.mBody == null) {
+            this.mBody = Arrays.copyOfRange(this.mData, HEADER_SIZE, HEADER_SIZE + this.getLength());
+        }
+        return this.mBody;
+    }
+
+    /**
+     * Gets the hash of the asset an asset packet is about
+     * @return the SHA-256 of the asset
+     * @throws IllegalStateException if not of type PACKET_TYPE_ASSET
+     */
+    public byte[] getAssetHash() throws IllegalStateException {
+        this.checkAsset(ASSET_HASH_SIZE);
+        return Arrays.copyOfRange(this.mData, HEADER_SIZE, HEADER_SIZE + ASSET_HASH_SIZE);
+    }
+
+    /**
+     * Gets the size of an offered asset
+     * @return the size in bytes
+     * @throws IllegalStateException if not an asset offer
+     */
+    public int getAssetSize() throws IllegalStateException {
+        this.checkAsset(ASSET_CHUNK_HEADER);
+        return this.bodyInt(ASSET_HASH_SIZE);
+    }
+
+    /**
+     * Gets where an asset chunk starts in the whole asset
+     * @return the offset in bytes
+     * @throws IllegalStateException if not an asset chunk
+     */
+    public int getAssetOffset() throws IllegalStateException {
+        this.checkAsset(ASSET_CHUNK_HEADER);
+        return this.bodyInt(ASSET_HASH_SIZE);
+    }
+
+    /**
+     * Gets the amount of asset data in a chunk
+     * @return the chunk size in bytes
+     * @throws IllegalStateException if not an asset chunk
+     */
+    public int getAssetLength() throws IllegalStateException {
+        this.checkAsset(ASSET_CHUNK_HEADER);
+        return this.getLength() - ASSET_CHUNK_HEADER;
+    }
+
+    /**
+     * Copies the data of an asset chunk into the whole asset
+     * @param asset the whole asset, must be large enough for the chunk at its offset
+     * @throws IllegalStateException if not an asset chunk
+     */
+    public void copyAssetData(byte[] asset) throws IllegalStateException {
+        System.arraycopy(this.mData, HEADER_SIZE + ASSET_CHUNK_HEADER, asset, this.getAssetOffset(), this.getAssetLength());
+    }
+
+    /**
+     * Makes sure the packet is an asset packet with a long enough body
+     * @param length the least body length needed
+     * @throws IllegalStateException if not of type PACKET_TYPE_ASSET
+     */
+    private void checkAsset(int length) throws IllegalStateException {
+        if ((byte)this.getType() != PACKET_TYPE_ASSET || this.getLength() < length) {
+            throw new IllegalStateException();
+        }
+    }
+
+    /**
+     * Reads a big endian int from the body
+     * @param index where the int starts in the body
+     * @return the int
+     */
+    private int bodyInt(int index) {
+        return (this.bodyByte(index) << 24) | (this.bodyByte(index + 1) << 16)
+             | (this.bodyByte(index + 2) << 8) | this.bodyByte(index + 3);
     }
 
     /**
@@ -554,6 +948,8 @@ public final class Packet {
             case PACKET_TYPE_PING -> str += this.pingString();
             case PACKET_TYPE_GRID -> str += this.gridString();
             case PACKET_TYPE_IMAGE-> str += this.assetString();
+            case PACKET_TYPE_DELTA-> str += this.deltaString();
+            case PACKET_TYPE_ASSET-> str += this.assetTransferString();
         }
         return str;
     }
@@ -581,9 +977,27 @@ public final class Packet {
      * @return string for grid
      */
     private String gridString() {
+        if (this.getLength() < GRID_BODY_SIZE) {
+            return "Malformed grid\n";
+        }
         return this.getGrid().toString();
     }
     
+    /**
+     * Formatted string for packet of type delta
+     * @return string for delta
+     */
+    private String deltaString() {
+        if (this.getLength() < DELTA_VERSION_SIZE) {
+            return "Malformed delta\n";
+        }
+        String str = "Version: " + this.getVersion();
+        for (int n = 0; n < this.getDeltaCount(); n++) {
+            str += ", " + this.getDeltaIndex(n) + "=" + (this.getDeltaCell(n) & 0xFF);
+        }
+        return str + "\n";
+    }
+    
     /**
      * Formatted string for packet of type image
      * @return string for image
@@ -604,4 +1018,25 @@ public final class Packet {
         }
         return str;
     }
+
+    /**
+     * Formatted string for packet of type asset
+     * @return string for asset
+     */
+    private String assetTransferString() {
+        if (this.getLength() < ASSET_HASH_SIZE) {
+            return "Malformed asset\n";
+        }
+        String str = "Hash: " + HexFormat.of().formatHex(this.getAssetHash());
+        if (this.hasFlag(PACKET_FLAG_ASSET_OFFER) && this.getLength() >= ASSET_CHUNK_HEADER) {
+            str += ", offer of " + this.getAssetSize() + " bytes";
+        }
+        else if (this.hasFlag(PACKET_FLAG_ASSET_CHUNK) && this.getLength() >= ASSET_CHUNK_HEADER) {
+            str += ", chunk of " + this.getAssetLength() + " bytes at " + this.getAssetOffset();
+        }
+        else if (this.hasFlag(PACKET_FLAG_ASSET_REQUEST)) {
+            str += ", request";
+        }
+        return str + "\n";
+    }
 }
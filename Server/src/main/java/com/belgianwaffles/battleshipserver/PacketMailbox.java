@@ -0,0 +1,230 @@
+package com.belgianwaffles.battleshipserver;
+
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Holds received packets for a game, indexed by client and packet type.
+ * Receivers and the game thread only meet on the single queue they share,
+ * and waiting for a packet blocks instead of scanning.
+ * Every arrival, disconnect and close also wakes the games shared signal, so a game can wait on both clients at once.
+ */
+final class PacketMailbox {
+
+    // ----- Constants -----
+
+    // Packet types fit in 3 header bits
+    private static final int TYPE_COUNT   = 8;
+    private static final int CLIENT_COUNT = 2;
+
+    // Returned once a client has disconnected or the mailbox has been closed
+    public static final Packet DISCONNECTED = new Packet();
+
+
+
+    // ----- Data -----
+
+    private final Socket mClient1, mClient2;
+    // Queue of each client and type, at client * TYPE_COUNT + type
+    private final List<LinkedBlockingQueue<Packet>> mQueues;
+    // Released for everything that arrives, a game waiting on it checks every queue it cares about
+    private final Semaphore mSignal;
+    // Bit per client, set once that client disconnects
+    private final AtomicInteger mDisconnected;
+    private volatile boolean mClosed;
+
+
+
+    // ----- Methods -----
+
+    /**
+     * Creates an empty mailbox for the 2 clients of a game
+     * @param client1 first client
+     * @param client2 second client
+     */
+    public PacketMailbox(Socket client1, Socket client2) {
+        this.mClient1 = client1;
+        this.mClient2 = client2;
+        this.mQueues = new ArrayList<>(CLIENT_COUNT * TYPE_COUNT);
+        for (int i = 0; i < CLIENT_COUNT * TYPE_COUNT; i++) {
+            this.mQueues.add(new LinkedBlockingQueue<>());
+        }
+        this.mSignal = new Semaphore(0);
+        this.mDisconnected = new AtomicInteger(0);
+        this.mClosed = false;
+    }
+
+    /**
+     * Finds the queue index for a client
+     * @param client the client socket
+     * @return 0 or 1, -1 if the client is not part of this game
+     */
+    private int indexOf(Socket client) {
+        if (client == this.mClient1) {
+            return 0;
+        }
+        if (client == this.mClient2) {
+            return 1;
+        }
+        return -1;
+    }
+
+    /**
+     * Gets the queue a client keeps a type of packet in
+     * @param index the client index
+     * @param type the type of packet, use Packet.PACKET_TYPE_####
+     * @return the queue
+     */
+    private LinkedBlockingQueue<Packet> queue(int index, int type) {
+        return this.mQueues.get(index * TYPE_COUNT + type);
+    }
+
+
+
+    // ----- Adding -----
+
+    /**
+     * Stores a received packet
+     * @param client the client that sent the packet
+     * @param packet the packet, null if the client disconnected
+     * @return false if the client is not part of this game
+     */
+    public boolean offer(Socket client, Packet packet) {
+        int index = this.indexOf(client);
+        if (index < 0) {
+            return false;
+        }
+
+        // Disconnects wake everything waiting on this client
+        if (packet == null) {
+            this.mDisconnected.getAndUpdate(mask -> mask | (1 << index));
+            for (int type = 0; type < TYPE_COUNT; type++) {
+                this.mQueues.get(index * TYPE_COUNT + type).offer(DISCONNECTED);
+            }
+            this.mSignal.release();
+            return true;
+        }
+
+        this.queue(index, packet.getType()).offer(packet);
+        this.mSignal.release();
+        return true;
+    }
+
+    /**
+     * Wakes every waiter, all waits return <code>DISCONNECTED</code> from now on
+     */
+    public void close() {
+        this.mClosed = true;
+        for (LinkedBlockingQueue<Packet> queue : this.mQueues) {
+            queue.offer(DISCONNECTED);
+        }
+        this.mSignal.release();
+    }
+
+    /**
+     * Wakes a game waiting in <code>await</code> without adding a packet, used for events from outside the mailbox
+     */
+    public void wake() {
+        this.mSignal.release();
+    }
+
+
+
+    // ----- Taking -----
+
+    /**
+     * Waits for a packet of the given type from the client
+     * @param client the client to wait on
+     * @param type the type of packet, use Packet.PACKET_TYPE_####
+     * @param timeout longest time to wait in milliseconds
+     * @return the packet, <code>DISCONNECTED</code> if the client is gone, null on timeout
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public Packet poll(Socket client, int type, long timeout) throws InterruptedException {
+        int index = this.indexOf(client);
+        if (index < 0 || this.isDisconnected(index)) {
+            return DISCONNECTED;
+        }
+
+        Packet packet = this.queue(index, type).poll(timeout, TimeUnit.MILLISECONDS);
+
+        // Wake up packets are only markers, state is checked again
+        if (packet == DISCONNECTED || (packet == null && this.isDisconnected(index))) {
+            return DISCONNECTED;
+        }
+        return packet;
+    }
+
+    /**
+     * Looks at the next packet of the given type from the client without taking it
+     * @param client the client to check
+     * @param type the type of packet, use Packet.PACKET_TYPE_####
+     * @return the packet, <code>DISCONNECTED</code> if the client is gone, null if there is none
+     */
+    public Packet peek(Socket client, int type) {
+        int index = this.indexOf(client);
+        if (index < 0 || this.isDisconnected(index)) {
+            return DISCONNECTED;
+        }
+        return this.queue(index, type).peek();
+    }
+
+    /**
+     * Waits as long as needed for a packet of the given type from the client
+     * @param client the client to wait on
+     * @param type the type of packet, use Packet.PACKET_TYPE_####
+     * @return the packet, <code>DISCONNECTED</code> if the client is gone
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public Packet take(Socket client, int type) throws InterruptedException {
+        int index = this.indexOf(client);
+        if (index < 0 || this.isDisconnected(index)) {
+            return DISCONNECTED;
+        }
+
+        Packet packet = this.queue(index, type).take();
+        if (packet == DISCONNECTED) {
+            return DISCONNECTED;
+        }
+        return packet;
+    }
+
+    /**
+     * Waits until anything arrives from either client, the mailbox is closed or it is woken.
+     * Wake ups that came since the last wait are used up, so nothing that arrived before is missed.
+     * @param timeout longest time to wait in milliseconds
+     * @return true if woken, false on timeout
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean await(long timeout) throws InterruptedException {
+        if (!this.mSignal.tryAcquire(timeout, TimeUnit.MILLISECONDS)) {
+            return false;
+        }
+        this.mSignal.drainPermits();
+        return true;
+    }
+
+    /**
+     * Checks if a client can no longer send packets
+     * @param client the client to check
+     * @return true if disconnected, not part of this game or the mailbox is closed
+     */
+    public boolean isDisconnected(Socket client) {
+        int index = this.indexOf(client);
+        return index < 0 || this.isDisconnected(index);
+    }
+
+    /**
+     * Checks if a client can no longer send packets
+     * @param index the client index
+     * @return true if disconnected or the mailbox is closed
+     */
+    private boolean isDisconnected(int index) {
+        return this.mClosed || (this.mDisconnected.get() & (1 << index)) != 0;
+    }
+}
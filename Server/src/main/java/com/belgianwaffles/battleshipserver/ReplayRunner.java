@@ -0,0 +1,302 @@
+package com.belgianwaffles.battleshipserver;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.SplittableRandom;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Plays the games in the game journal back through <code>GameEngine</code> as fast as the CPU allows.
+ * Every recorded move has to be accepted, and the engine has to end up with the same shots, ships and winner
+ * the server recorded, so a rule change that plays out differently shows up as a mismatch.
+ * Arguments: [folder] [--run name] [--threads count] [--repeat count], every run is replayed when none is given
+ */
+public final class ReplayRunner {
+
+    // ----- Constants -----
+
+    public static final String ARG_RUN     = "--run";
+    public static final String ARG_THREADS = "--threads";
+    public static final String ARG_REPEAT  = "--repeat";
+
+    // Sharks move at random, only the other bits are compared
+    private static final int NO_SHARKS     = 0b01110111;
+    // Mismatches printed in full
+    private static final int MAX_REPORTED  = 10;
+    // Chunks per thread, so threads that finish early can take more
+    private static final int CHUNKS        = 4;
+
+
+
+    // ----- Methods -----
+
+    public static void main(String[] args) throws InterruptedException {
+        String directory = GameJournal.DEFAULT_DIRECTORY;
+        String run = null;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int repeat = 1;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case ARG_RUN -> run = (i + 1 < args.length) ? args[++i] : run;
+                case ARG_THREADS -> threads = (i + 1 < args.length) ? Math.max(1, Integer.parseInt(args[++i])) : threads;
+                case ARG_REPEAT -> repeat = (i + 1 < args.length) ? Math.max(1, Integer.parseInt(args[++i])) : repeat;
+                default -> directory = args[i];
+            }
+        }
+
+        // Load every game before timing starts
+        List<ReplayGame> games = new ArrayList<>();
+        try {
+            TreeMap<String, List<Path>> runs = JournalReader.findRuns(Path.of(directory));
+            for (Map.Entry<String, List<Path>> segments : runs.entrySet()) {
+                if (run == null || run.equals(segments.getKey())) {
+                    games.addAll(load(segments.getKey(), JournalReader.read(segments.getValue())));
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Could not read journal in " + directory);
+            return;
+        }
+        if (games.isEmpty()) {
+            System.out.println("No finished games in " + directory);
+            return;
+        }
+
+        // Replay in chunks across the pool
+        LongAdder replayed = new LongAdder();
+        LongAdder moves = new LongAdder();
+        Queue<String> mismatches = new ConcurrentLinkedQueue<>();
+        int chunks = Math.min(games.size(), threads * CHUNKS);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        long start = System.nanoTime();
+        for (int c = 0; c < chunks; c++) {
+            List<ReplayGame> chunk = games.subList(c * games.size() / chunks, (c + 1) * games.size() / chunks);
+            int times = repeat;
+            pool.execute(() -> {
+                for (int r = 0; r < times; r++) {
+                    for (ReplayGame game : chunk) {
+                        String mismatch = replay(game, r);
+                        if (mismatch != null && r == 0) {
+                            mismatches.add(mismatch);
+                        }
+                        moves.add(game.mCells.length);
+                    }
+                    replayed.add(chunk.size());
+                }
+            });
+        }
+        pool.shutdown();
+        pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        double secs = (System.nanoTime() - start) / 1e9;
+
+        // Report
+        System.out.println("Games loaded: " + games.size() + ", replayed: " + replayed.sum() + " on " + threads + " threads");
+        System.out.printf("Games/second: %.0f, moves/second: %.0f%n", replayed.sum() / secs, moves.sum() / secs);
+        System.out.println("Mismatches: " + mismatches.size());
+        mismatches.stream().limit(MAX_REPORTED).forEach(m -> System.out.println("  " + m));
+    }
+
+
+
+    // ----- Replay -----
+
+    /**
+     * Pulls every finished game out of a runs records.
+     * Games that never got past placement have no moves and are left out.
+     * @param run the run name, used to label mismatches
+     * @param entries the runs records in order
+     * @return the games in the order they started
+     */
+    static List<ReplayGame> load(String run, List<JournalReader.Entry> entries) {
+        Map<Long, GameBuilder> builders = new LinkedHashMap<>();
+        for (JournalReader.Entry entry : entries) {
+            GameBuilder builder = builders.computeIfAbsent(entry.getGame(), g -> new GameBuilder());
+            builder.add(entry);
+        }
+
+        List<ReplayGame> games = new ArrayList<>();
+        for (Map.Entry<Long, GameBuilder> builder : builders.entrySet()) {
+            ReplayGame game = builder.getValue().build(run + "/" + builder.getKey());
+            if (game != null) {
+                games.add(game);
+            }
+        }
+        return games;
+    }
+
+    /**
+     * Plays a game through a new engine and checks it ends the way it was recorded
+     * @param game the recorded game
+     * @param seed seed for the sharks, they never change the outcome
+     * @return null if the replay matches, otherwise what went wrong
+     */
+    static String replay(ReplayGame game, long seed) {
+        GameEngine engine = new GameEngine(new Grid(game.mLayout), new SplittableRandom(seed));
+        for (int i = 0; i < game.mCells.length; i++) {
+            if (engine.shoot(game.mPlayers[i], game.mCells[i]) == GameEngine.SHOT_INVALID) {
+                return "game " + game.mName + ": move " + (i + 1) + " by player " + game.mPlayers[i] + " was rejected";
+            }
+        }
+        if (engine.getWinner() != game.mWinner) {
+            return "game " + game.mName + ": player " + engine.getWinner() + " won, recorded " + game.mWinner;
+        }
+        for (int i = 0; i < Grid.GRID_SIZE * Grid.GRID_SIZE; i++) {
+            int x = i / Grid.GRID_SIZE, y = i % Grid.GRID_SIZE;
+            if (((engine.getGrid().getCell(x, y) ^ game.mFinal.getCell(x, y)) & NO_SHARKS) != 0) {
+                return "game " + game.mName + ": cell (" + x + ", " + y + ") differs at the end";
+            }
+        }
+        return null;
+    }
+
+
+
+    // ----- Subclasses -----
+
+    /**
+     * The moves of one recorded game and how it ended
+     */
+    static final class ReplayGame {
+
+        // ----- Data -----
+
+        private final String mName;
+        private final Grid mLayout;
+        private final int[] mPlayers;
+        private final int[] mCells;
+        // 0 if the game ended by forfeit, the engine never sees that
+        private final int mWinner;
+        private final Grid mFinal;
+
+
+
+        // ----- Methods -----
+
+        /**
+         * Creates a recorded game
+         * @param name the run and game id
+         * @param layout the grid both players confirmed
+         * @param players the player of every move
+         * @param cells the cell of every move
+         * @param winner the player that sank every ship, 0 if nobody did
+         * @param end the grid after the last move
+         */
+        ReplayGame(String name, Grid layout, int[] players, int[] cells, int winner, Grid end) {
+            this.mName = name;
+            this.mLayout = layout;
+            this.mPlayers = players;
+            this.mCells = cells;
+            this.mWinner = winner;
+            this.mFinal = end;
+        }
+    }
+
+    /**
+     * Rebuilds a game one record at a time
+     */
+    private static final class GameBuilder {
+
+        // ----- Data -----
+
+        private final Grid mGrid;
+        private Grid mLayout;
+        private Grid mBefore;
+        private int mMovePlayer;
+        private final List<int[]> mMoves;
+        private int mWinner;
+
+
+
+        // ----- Methods -----
+
+        private GameBuilder() {
+            this.mGrid = new Grid();
+            this.mLayout = null;
+            this.mBefore = null;
+            this.mMovePlayer = 0;
+            this.mMoves = new ArrayList<>();
+            this.mWinner = 0;
+        }
+
+        /**
+         * Applies the next record of the game
+         * @param entry the record
+         */
+        private void add(JournalReader.Entry entry) {
+            switch (entry.getType()) {
+                case Packet.PACKET_TYPE_GRID, Packet.PACKET_TYPE_DELTA -> {
+                    if (entry.isFirst()) {
+                        this.finishMove();
+                        if (entry.getType() == Packet.PACKET_TYPE_DELTA) {
+                            this.mBefore = new Grid(this.mGrid);
+                            this.mMovePlayer = entry.getPlayer();
+                        }
+                    }
+                    int index = entry.getIndex();
+                    this.mGrid.setCell(index / Grid.GRID_SIZE, index % Grid.GRID_SIZE, entry.getCell());
+                }
+                case Packet.PACKET_TYPE_FLAGS -> {
+                    this.finishMove();
+                    // Forfeits are not decided by the rules
+                    this.mWinner = entry.hasFlag(GameJournal.FLAG_FORFEIT) ? 0 : entry.getPlayer();
+                }
+                default -> this.finishMove();
+            }
+        }
+
+        /**
+         * Turns the cells of the last move into a shot, or keeps the layout once it is complete
+         */
+        private void finishMove() {
+            if (this.mBefore == null) {
+                if (this.mLayout == null && this.mGrid.checkDifferences(new Grid()) > 0) {
+                    this.mLayout = new Grid(this.mGrid);
+                }
+                return;
+            }
+
+            // The shot is the one cell the player newly fired at
+            Grid.GridCell[][] was = this.mBefore.getCells();
+            Grid.GridCell[][] now = this.mGrid.getCells();
+            for (int i = 0; i < Grid.GRID_SIZE * Grid.GRID_SIZE; i++) {
+                Grid.GridCell a = was[i / Grid.GRID_SIZE][i % Grid.GRID_SIZE];
+                Grid.GridCell b = now[i / Grid.GRID_SIZE][i % Grid.GRID_SIZE];
+                boolean shot = (this.mMovePlayer == 1) ? (b.hasShotP1() && !a.hasShotP1()) : (b.hasShotP2() && !a.hasShotP2());
+                if (shot) {
+                    this.mMoves.add(new int[] { this.mMovePlayer, i });
+                    break;
+                }
+            }
+            this.mBefore = null;
+        }
+
+        /**
+         * Finishes the game
+         * @param name the run and game id
+         * @return the game, null if it has no layout or moves
+         */
+        private ReplayGame build(String name) {
+            this.finishMove();
+            if (this.mLayout == null || this.mMoves.isEmpty()) {
+                return null;
+            }
+            int[] players = new int[this.mMoves.size()];
+            int[] cells = new int[this.mMoves.size()];
+            for (int i = 0; i < players.length; i++) {
+                players[i] = this.mMoves.get(i)[0];
+                cells[i] = this.mMoves.get(i)[1];
+            }
+            return new ReplayGame(name, this.mLayout, players, cells, this.mWinner, new Grid(this.mGrid));
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package com.belgianwaffles.battleshipserver;
+
+public final class ServerConfig {
+
+    // ----- Constants -----
+
+    public static final String ARG_SELECTOR        = "--selector";
+    public static final String ARG_VIRTUAL_THREADS = "--virtual-threads";
+    public static final String ARG_WORKERS         = "--workers";
+    public static final String ARG_ASYNC_LOG       = "--async-log";
+    public static final String ARG_FLEET_POOL      = "--fleet-pool";
+    public static final String ARG_METRICS         = "--metrics";
+    public static final String ARG_JOURNAL         = "--journal";
+
+    // Values for the async log policy
+    public static final String LOG_POLICY_DROP     = "drop";
+    public static final String LOG_POLICY_BLOCK    = "block";
+
+
+
+    // ----- Data -----
+
+    private int mPort;
+    private int mMode;
+    private boolean mVirtualThreads;
+    // Amount of scheduler workers, 0 gives every game its own thread
+    private int mWorkers;
+    private boolean mAsyncLogging;
+    private int mLogPolicy;
+    // Boards kept ready for new games and refreshes, 0 makes them on request
+    private int mFleetPoolSize;
+    private int mFleetPoolWatermark;
+    // Port of the local metrics endpoint, 0 if metrics are not served
+    private int mMetricsPort;
+    // Folder for the binary game journal, null if games are not journaled
+    private String mJournalDirectory;
+
+
+
+    // ----- Methods -----
+
+    /**
+     * Creates a config with the default server settings
+     */
+    public ServerConfig() {
+        this.mPort = ConnectionManager.DEFAULT_PORT;
+        this.mMode = ConnectionManager.MODE_BLOCKING;
+        this.mVirtualThreads = false;
+        this.mWorkers = 0;
+        this.mAsyncLogging = false;
+        this.mLogPolicy = FileLogger.POLICY_DROP;
+        this.mFleetPoolSize = FleetPool.DEFAULT_SIZE;
+        this.mFleetPoolWatermark = FleetPool.DEFAULT_WATERMARK;
+        this.mMetricsPort = 0;
+        this.mJournalDirectory = null;
+    }
+
+    /**
+     * Reads server settings from the command line, unknown arguments are ignored
+     * @param args the arguments passed to main
+     * @return the parsed config
+     */
+    public static ServerConfig parse(String[] args) {
+        ServerConfig config = new ServerConfig();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case ARG_SELECTOR -> config.mMode = ConnectionManager.MODE_SELECTOR;
+                case ARG_VIRTUAL_THREADS -> config.mVirtualThreads = true;
+                case ARG_WORKERS -> {
+                    // Worker count is optional, defaults to one per core
+                    config.mWorkers = GameScheduler.DEFAULT_WORKERS;
+                    if (i + 1 < args.length && parseCount(args[i + 1]) > 0) {
+                        config.mWorkers = parseCount(args[++i]);
+                    }
+                }
+                case ARG_ASYNC_LOG -> {
+                    // Policy is optional, records are dropped when full by default
+                    config.mAsyncLogging = true;
+                    if (i + 1 < args.length && args[i + 1].equals(LOG_POLICY_BLOCK)) {
+                        config.mLogPolicy = FileLogger.POLICY_BLOCK;
+                        i++;
+                    }
+                    else if (i + 1 < args.length && args[i + 1].equals(LOG_POLICY_DROP)) {
+                        i++;
+                    }
+                }
+                case ARG_FLEET_POOL -> {
+                    // Size, then an optional watermark, a size of 0 turns the pool off
+                    if (i + 1 < args.length && parseCount(args[i + 1]) >= 0) {
+                        config.mFleetPoolSize = parseCount(args[++i]);
+                        config.mFleetPoolWatermark = Math.min(config.mFleetPoolWatermark, config.mFleetPoolSize / 2);
+                    }
+                    if (i + 1 < args.length && parseCount(args[i + 1]) >= 0) {
+                        config.mFleetPoolWatermark = parseCount(args[++i]);
+                    }
+                }
+                case ARG_METRICS -> {
+                    // Port is optional
+                    config.mMetricsPort = MetricsServer.DEFAULT_PORT;
+                    if (i + 1 < args.length && parseCount(args[i + 1]) > 0) {
+                        config.mMetricsPort = parseCount(args[++i]);
+                    }
+                }
+                case ARG_JOURNAL -> {
+                    // Folder is optional, anything that is not another option is taken as one
+                    config.mJournalDirectory = GameJournal.DEFAULT_DIRECTORY;
+                    if (i + 1 < args.length && !args[i + 1].startsWith("--")) {
+                        config.mJournalDirectory = args[++i];
+                    }
+                }
+                default -> System.err.println("Unknown argument: " + args[i]);
+            }
+        }
+        return config;
+    }
+
+    /**
+     * Reads a positive count from an argument
+     * @param arg the argument to read
+     * @return the count, -1 if the argument is not a count
+     */
+    private static int parseCount(String arg) {
+        try {
+            return Integer.parseInt(arg);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+
+
+    // ----- Getters -----
+
+    /**
+     * Gets the port the server listens on
+     * @return the server port
+     */
+    public int getPort() {
+        return this.mPort;
+    }
+
+    /**
+     * Gets the connection mode for the server
+     * @return use ConnectionManager.MODE_####
+     */
+    public int getMode() {
+        return this.mMode;
+    }
+
+    /**
+     * Checks if games and their helper tasks run on virtual threads
+     * @return true if virtual threads are used
+     */
+    public boolean useVirtualThreads() {
+        return this.mVirtualThreads;
+    }
+
+    /**
+     * Gets the amount of workers stepping games
+     * @return the worker count, 0 if every game runs on its own thread
+     */
+    public int getWorkers() {
+        return this.mWorkers;
+    }
+
+    /**
+     * Checks if logs are written on a background thread
+     * @return true if logging is async
+     */
+    public boolean useAsyncLogging() {
+        return this.mAsyncLogging;
+    }
+
+    /**
+     * Gets what async logging does when it falls behind
+     * @return use FileLogger.POLICY_####
+     */
+    public int getLogPolicy() {
+        return this.mLogPolicy;
+    }
+
+    /**
+     * Gets the amount of boards kept ready for new games and refreshes
+     * @return the pool size, 0 if boards are made on request
+     */
+    public int getFleetPoolSize() {
+        return this.mFleetPoolSize;
+    }
+
+    /**
+     * Gets how low the board pool gets before it is filled back up
+     * @return the refill watermark
+     */
+    public int getFleetPoolWatermark() {
+        return this.mFleetPoolWatermark;
+    }
+
+    /**
+     * Gets the port metrics are served on, they are also registered with JMX when set
+     * @return the port, 0 if metrics are not served
+     */
+    public int getMetricsPort() {
+        return this.mMetricsPort;
+    }
+
+    /**
+     * Gets the folder games are journaled to
+     * @return the folder, null if games are not journaled
+     */
+    public String getJournalDirectory() {
+        return this.mJournalDirectory;
+    }
+}
@@ -0,0 +1,335 @@
+package com.belgianwaffles.battleshipserver;
+
+import java.lang.management.ManagementFactory;
+import java.net.Socket;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Counts what the server is doing, for JMX and the metrics endpoint.
+ * Recording is a few adds with no locks, so it is called straight from the packet and game paths.
+ */
+public final class ServerMetrics implements ServerMetricsMBean {
+
+    // ----- Constants -----
+
+    public static final String OBJECT_NAME = "com.belgianwaffles.battleshipserver:type=ServerMetrics";
+
+    // Packet types fit in the low 4 bits of the header
+    private static final int TYPES = 16;
+    private static final String[] TYPE_NAMES = { "none", "ping", "grid", "image", "flags", "delta", "asset" };
+
+    private static final ServerMetrics sMetrics = new ServerMetrics();
+
+
+
+    // ----- Data -----
+
+    private final AtomicInteger mActiveGames;
+    // Open client sockets, a set so closing the same client twice only counts once
+    private final Set<Socket> mClients;
+
+    private final LongAdder[] mPacketsIn, mPacketsOut;
+    private final LongAdder mBytesIn, mBytesOut;
+
+    // Times in nanoseconds
+    private final LatencyHistogram mPingRtt;
+    private final LatencyHistogram mTurnLatency;
+    private final LatencyHistogram mShipGeneration;
+
+
+
+    // ----- Methods -----
+
+    private ServerMetrics() {
+        this.mActiveGames = new AtomicInteger(0);
+        this.mClients = ConcurrentHashMap.newKeySet();
+        this.mPacketsIn = new LongAdder[TYPES];
+        this.mPacketsOut = new LongAdder[TYPES];
+        for (int i = 0; i < TYPES; i++) {
+            this.mPacketsIn[i] = new LongAdder();
+            this.mPacketsOut[i] = new LongAdder();
+        }
+        this.mBytesIn = new LongAdder();
+        this.mBytesOut = new LongAdder();
+        this.mPingRtt = new LatencyHistogram();
+        this.mTurnLatency = new LatencyHistogram();
+        this.mShipGeneration = new LatencyHistogram();
+    }
+
+    /**
+     * Gets the metrics of the server
+     * @return the metrics
+     */
+    public static ServerMetrics get() {
+        return sMetrics;
+    }
+
+    /**
+     * Makes the metrics visible through the platform MBean server
+     * @return false if they could not be registered or already are
+     */
+    public static boolean registerMBean() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) {
+                return false;
+            }
+            server.registerMBean(sMetrics, name);
+            return true;
+        } catch (JMException e) {
+            FileLogger.logError(ServerMetrics.class, "registerMBean()", "Failed to register metrics MBean");
+            System.err.println("Failed to register metrics MBean");
+            return false;
+        }
+    }
+
+
+
+    // ----- Recording -----
+
+    /**
+     * Counts a game starting
+     */
+    public static void gameStarted() {
+        sMetrics.mActiveGames.incrementAndGet();
+    }
+
+    /**
+     * Counts a game ending
+     */
+    public static void gameEnded() {
+        sMetrics.mActiveGames.decrementAndGet();
+    }
+
+    /**
+     * Counts a client connecting
+     * @param client the clients socket
+     */
+    public static void clientConnected(Socket client) {
+        sMetrics.mClients.add(client);
+    }
+
+    /**
+     * Counts a client being closed, closing the same client again does nothing
+     * @param client the clients socket
+     */
+    public static void clientClosed(Socket client) {
+        sMetrics.mClients.remove(client);
+    }
+
+    /**
+     * Counts a packet received from a client
+     * @param type the packet type, use Packet.PACKET_TYPE_####
+     * @param bytes the size of the packet
+     */
+    public static void packetIn(int type, int bytes) {
+        sMetrics.mPacketsIn[typeIndex(type)].increment();
+        sMetrics.mBytesIn.add(bytes);
+    }
+
+    /**
+     * Counts a packet sent to a client
+     * @param type the packet type, use Packet.PACKET_TYPE_####
+     * @param bytes the size of the packet
+     */
+    public static void packetOut(int type, int bytes) {
+        sMetrics.mPacketsOut[typeIndex(type)].increment();
+        sMetrics.mBytesOut.add(bytes);
+    }
+
+    /**
+     * Records the time a client took to answer a ping
+     * @param nanos the round trip in nanoseconds
+     */
+    public static void pingRtt(long nanos) {
+        sMetrics.mPingRtt.record(nanos);
+    }
+
+    /**
+     * Records the time the server took to handle a move
+     * @param nanos the time in nanoseconds
+     */
+    public static void turnLatency(long nanos) {
+        sMetrics.mTurnLatency.record(nanos);
+    }
+
+    /**
+     * Records the time placing a fleet took
+     * @param nanos the time in nanoseconds
+     */
+    public static void shipGeneration(long nanos) {
+        sMetrics.mShipGeneration.record(nanos);
+    }
+
+    /**
+     * Keeps unknown packet types in range
+     * @param type the packet type
+     * @return the counter index for the type
+     */
+    private static int typeIndex(int type) {
+        return (type >= 0 && type < TYPES) ? type : Packet.PACKET_TYPE_NONE;
+    }
+
+
+
+    // ----- Getters -----
+
+    @Override
+    public int getActiveGames() {
+        return this.mActiveGames.get();
+    }
+
+    @Override
+    public int getConnectedClients() {
+        return this.mClients.size();
+    }
+
+    @Override
+    public long getPacketsIn() {
+        return sum(this.mPacketsIn);
+    }
+
+    @Override
+    public long getPacketsOut() {
+        return sum(this.mPacketsOut);
+    }
+
+    /**
+     * Gets the amount of packets of one type received
+     * @param type the packet type, use Packet.PACKET_TYPE_####
+     * @return the packet count
+     */
+    public long getPacketsIn(int type) {
+        return this.mPacketsIn[typeIndex(type)].sum();
+    }
+
+    /**
+     * Gets the amount of packets of one type sent
+     * @param type the packet type, use Packet.PACKET_TYPE_####
+     * @return the packet count
+     */
+    public long getPacketsOut(int type) {
+        return this.mPacketsOut[typeIndex(type)].sum();
+    }
+
+    @Override
+    public long getBytesIn() {
+        return this.mBytesIn.sum();
+    }
+
+    @Override
+    public long getBytesOut() {
+        return this.mBytesOut.sum();
+    }
+
+    @Override
+    public long getPingRttP50() {
+        return this.mPingRtt.percentile(0.50) / 1000;
+    }
+
+    @Override
+    public long getPingRttP99() {
+        return this.mPingRtt.percentile(0.99) / 1000;
+    }
+
+    @Override
+    public long getTurnLatencyP50() {
+        return this.mTurnLatency.percentile(0.50) / 1000;
+    }
+
+    @Override
+    public long getTurnLatencyP99() {
+        return this.mTurnLatency.percentile(0.99) / 1000;
+    }
+
+    @Override
+    public long getShipGenerationP50() {
+        return this.mShipGeneration.percentile(0.50) / 1000;
+    }
+
+    @Override
+    public long getShipGenerationP99() {
+        return this.mShipGeneration.percentile(0.99) / 1000;
+    }
+
+    @Override
+    public long getLogQueueDepth() {
+        return FileLogger.getQueueDepth();
+    }
+
+    /**
+     * Adds up a set of counters
+     * @param counters the counters
+     * @return the total
+     */
+    private static long sum(LongAdder[] counters) {
+        long total = 0;
+        for (LongAdder counter : counters) {
+            total += counter.sum();
+        }
+        return total;
+    }
+
+
+
+    // ----- Text -----
+
+    /**
+     * Writes every metric as plain text, one <code>name value</code> pair per line.
+     * Times are in microseconds.
+     * @return the metrics text
+     */
+    public String toText() {
+        StringBuilder text = new StringBuilder();
+        line(text, "battleship_active_games", this.getActiveGames());
+        line(text, "battleship_connected_clients", this.getConnectedClients());
+        for (int i = 0; i < TYPES; i++) {
+            long in = this.mPacketsIn[i].sum(), out = this.mPacketsOut[i].sum();
+            if (in == 0 && out == 0 && i >= TYPE_NAMES.length) {
+                continue;
+            }
+            String name = (i < TYPE_NAMES.length) ? TYPE_NAMES[i] : Integer.toString(i);
+            line(text, "battleship_packets_in{type=\"" + name + "\"}", in);
+            line(text, "battleship_packets_out{type=\"" + name + "\"}", out);
+        }
+        line(text, "battleship_bytes_in", this.getBytesIn());
+        line(text, "battleship_bytes_out", this.getBytesOut());
+        histogram(text, "battleship_ping_rtt_us", this.mPingRtt);
+        histogram(text, "battleship_turn_latency_us", this.mTurnLatency);
+        histogram(text, "battleship_ship_generation_us", this.mShipGeneration);
+        line(text, "battleship_log_queue_depth", this.getLogQueueDepth());
+        return text.toString();
+    }
+
+    /**
+     * Writes a single metric line
+     * @param text the text being built
+     * @param name the metric name
+     * @param value the metric value
+     */
+    private static void line(StringBuilder text, String name, long value) {
+        text.append(name).append(' ').append(value).append('\n');
+    }
+
+    /**
+     * Writes the count, percentiles and max of a histogram in microseconds
+     * @param text the text being built
+     * @param name the metric name
+     * @param histogram the histogram in nanoseconds
+     */
+    private static void histogram(StringBuilder text, String name, LatencyHistogram histogram) {
+        line(text, name + "_count", histogram.getCount());
+        line(text, name + "{quantile=\"0.5\"}", histogram.percentile(0.50) / 1000);
+        line(text, name + "{quantile=\"0.99\"}", histogram.percentile(0.99) / 1000);
+        line(text, name + "{quantile=\"0.999\"}", histogram.percentile(0.999) / 1000);
+        line(text, name + "_max", histogram.getMax() / 1000);
+    }
+}
@@ -0,0 +1,20 @@
+package com.belgianwaffles.battleshipserver;
+
+/**
+ * Server metrics as seen through JMX, times are in microseconds
+ */
+public interface ServerMetricsMBean {
+    int getActiveGames();
+    int getConnectedClients();
+    long getPacketsIn();
+    long getPacketsOut();
+    long getBytesIn();
+    long getBytesOut();
+    long getPingRttP50();
+    long getPingRttP99();
+    long getTurnLatencyP50();
+    long getTurnLatencyP99();
+    long getShipGenerationP50();
+    long getShipGenerationP99();
+    long getLogQueueDepth();
+}
@@ -1,6 +1,6 @@
 package com.belgianwaffles.battleshipserver;
 
-import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
 
 public class Ship {
 
@@ -115,7 +115,7 @@ public class Ship {
     }
 
     private Ship createRandomShip(int sizeOfShip) {
-        final Random rng = new Random(System.currentTimeMillis());
+        final ThreadLocalRandom rng = ThreadLocalRandom.current();
 
         int index = rng.nextInt(0, Grid.GRID_SIZE * Grid.GRID_SIZE);
         int x = index % Grid.GRID_SIZE;
@@ -0,0 +1,222 @@
+package com.belgianwaffles.battleshipserver;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.random.RandomGenerator;
+
+/**
+ * Places whole fleets without retrying random ships.
+ * Every possible placement of each ship length is worked out once as a bitmask,
+ * ships are then picked evenly from the placements that are still legal.
+ */
+final class ShipPlacer {
+
+    // ----- Constants -----
+
+    // Ship lengths of a fleet, in the order they are placed
+    public static final int[] FLEET = { 5, 4, 3, 3, 2 };
+
+    private static final int WORD_BITS    = Long.SIZE;
+    private static final int MAX_LENGTH   = 5;
+
+    // Fleets that run out of room start over, this many times at most
+    private static final int MAX_RESTARTS = 16;
+
+    /**
+     * Every placement of one ship length
+     */
+    private static final class Placements {
+        private final int mCount;
+        private final int[] mX, mY;
+        private final boolean[] mHorizontal;
+        // Cells of the ship
+        private final long[] mShipLow, mShipHigh;
+        // Cells of the ship and every cell next to it, no other ship may use these
+        private final long[] mHaloLow, mHaloHigh;
+
+        private Placements(int length) {
+            int count = 2 * (Grid.GRID_SIZE - length + 1) * Grid.GRID_SIZE;
+            this.mCount = count;
+            this.mX = new int[count];
+            this.mY = new int[count];
+            this.mHorizontal = new boolean[count];
+            this.mShipLow = new long[count];
+            this.mShipHigh = new long[count];
+            this.mHaloLow = new long[count];
+            this.mHaloHigh = new long[count];
+
+            int n = 0;
+            for (int h = 0; h < 2; h++) {
+                boolean horizontal = (h == 0);
+                // Horizontal ships run along x, vertical ships along y
+                int maxX = horizontal ? Grid.GRID_SIZE - length : Grid.GRID_SIZE - 1;
+                int maxY = horizontal ? Grid.GRID_SIZE - 1 : Grid.GRID_SIZE - length;
+                for (int x = 0; x <= maxX; x++) {
+                    for (int y = 0; y <= maxY; y++) {
+                        this.mX[n] = x;
+                        this.mY[n] = y;
+                        this.mHorizontal[n] = horizontal;
+                        long[] ship = new long[2];
+                        long[] halo = new long[2];
+                        for (int k = 0; k < length; k++) {
+                            int cx = horizontal ? x + k : x;
+                            int cy = horizontal ? y : y + k;
+                            addCell(ship, cx, cy);
+                            addCell(halo, cx, cy);
+                            addCell(halo, cx - 1, cy);
+                            addCell(halo, cx + 1, cy);
+                            addCell(halo, cx, cy - 1);
+                            addCell(halo, cx, cy + 1);
+                        }
+                        this.mShipLow[n] = ship[0];
+                        this.mShipHigh[n] = ship[1];
+                        this.mHaloLow[n] = halo[0];
+                        this.mHaloHigh[n] = halo[1];
+                        n++;
+                    }
+                }
+            }
+        }
+    }
+
+    // Placements by ship length
+    private static final Placements[] PLACEMENTS = new Placements[MAX_LENGTH + 1];
+    static {
+        for (int length = 2; length <= MAX_LENGTH; length++) {
+            PLACEMENTS[length] = new Placements(length);
+        }
+    }
+
+
+
+    // ----- Methods -----
+
+    private ShipPlacer() {}
+
+    /**
+     * Places a fleet using the calling threads random generator
+     * @return the ships, one for each length in <code>FLEET</code>
+     */
+    public static Ship[] placeFleet() {
+        return placeFleet(ThreadLocalRandom.current());
+    }
+
+    /**
+     * Places a fleet, every legal layout can come up.
+     * Work is bounded, each ship checks a fixed list of placements.
+     * @param rng the generator to choose placements with, seed it for repeatable fleets
+     * @return the ships, one for each length in <code>FLEET</code>
+     */
+    public static Ship[] placeFleet(RandomGenerator rng) {
+        int[] chosen = new int[FLEET.length];
+        for (int attempt = 0; attempt < MAX_RESTARTS; attempt++) {
+            if (tryFleet(rng, chosen)) {
+                return toShips(chosen);
+            }
+        }
+
+        // Never seen in practice, but the fleet must still come out in bounded time
+        FileLogger.logError(ShipPlacer.class, "placeFleet(RandomGenerator)", "Ran out of room placing ships, using fixed fleet");
+        for (int i = 0; i < FLEET.length; i++) {
+            chosen[i] = fixedPlacement(FLEET[i], i);
+        }
+        return toShips(chosen);
+    }
+
+    /**
+     * Tries to place every ship of a fleet
+     * @param rng the generator to choose placements with
+     * @param chosen filled with the chosen placement of each ship
+     * @return false if a ship had nowhere left to go
+     */
+    private static boolean tryFleet(RandomGenerator rng, int[] chosen) {
+        long usedLow = 0, usedHigh = 0;
+        for (int i = 0; i < FLEET.length; i++) {
+            Placements placements = PLACEMENTS[FLEET[i]];
+
+            // Count the placements that stay clear of every placed ship
+            int legal = 0;
+            for (int p = 0; p < placements.mCount; p++) {
+                if ((placements.mShipLow[p] & usedLow) == 0 && (placements.mShipHigh[p] & usedHigh) == 0) {
+                    legal++;
+                }
+            }
+            if (legal == 0) {
+                return false;
+            }
+
+            // Take the picked one
+            int pick = rng.nextInt(legal);
+            for (int p = 0; p < placements.mCount; p++) {
+                if ((placements.mShipLow[p] & usedLow) == 0 && (placements.mShipHigh[p] & usedHigh) == 0 && pick-- == 0) {
+                    chosen[i] = p;
+                    usedLow |= placements.mHaloLow[p];
+                    usedHigh |= placements.mHaloHigh[p];
+                    break;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Gets a placement of a fixed fleet, each ship along its own column
+     * @param length the ship length
+     * @param ship which ship of the fleet
+     * @return the placement
+     */
+    private static int fixedPlacement(int length, int ship) {
+        Placements placements = PLACEMENTS[length];
+        for (int p = 0; p < placements.mCount; p++) {
+            if (!placements.mHorizontal[p] && placements.mX[p] == ship * 2 && placements.mY[p] == 0) {
+                return p;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Builds the ships for chosen placements
+     * @param chosen the placement of each ship
+     * @return the ships
+     */
+    private static Ship[] toShips(int[] chosen) {
+        Ship[] ships = new Ship[FLEET.length];
+        for (int i = 0; i < FLEET.length; i++) {
+            int length = FLEET[i];
+            Placements placements = PLACEMENTS[length];
+            int p = chosen[i];
+            int x = placements.mX[p], y = placements.mY[p];
+            if (placements.mHorizontal[p]) {
+                ships[i] = new Ship(x, y, x + length - 1, y);
+            }
+            else {
+                ships[i] = new Ship(x, y, x, y + length - 1);
+            }
+        }
+        return ships;
+    }
+
+    /**
+     * Gets the amount of placements for a ship length
+     * @param length the ship length, 2 to 5
+     * @return the amount of placements
+     */
+    static int placementCount(int length) {
+        return PLACEMENTS[length].mCount;
+    }
+
+    /**
+     * Adds a cell to a mask, cells outside the grid are skipped
+     * @param mask the mask, low word then high word
+     * @param x the x coordinate
+     * @param y the y coordinate
+     */
+    private static void addCell(long[] mask, int x, int y) {
+        if (x < 0 || y < 0 || x >= Grid.GRID_SIZE || y >= Grid.GRID_SIZE) {
+            return;
+        }
+        // Same layout as the grid, x * GRID_SIZE + y
+        int index = x * Grid.GRID_SIZE + y;
+        mask[index / WORD_BITS] |= 1L << index;
+    }
+}
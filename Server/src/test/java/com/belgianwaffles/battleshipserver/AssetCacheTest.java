@@ -0,0 +1,82 @@
+package com.belgianwaffles.battleshipserver;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class AssetCacheTest {
+    /**
+     * Tests that an asset is loaded once and its chunks rebuild the file
+     * SVR-ASSET-001
+     */
+    @Test
+    public void ChunksRebuildCachedAsset(@TempDir Path directory) throws IOException {
+        // Arrange, 100 bytes in chunks of 32
+        FileLogger.initLoggerTest();
+        byte[] file = new byte[100];
+        for (int i = 0; i < file.length; i++) {
+            file[i] = (byte)(i * 7);
+        }
+        Files.write(directory.resolve("asset.png"), file);
+        AssetCache cache = new AssetCache(directory, 32);
+
+        // Act
+        AssetCache.Asset asset = cache.get("asset.png");
+        AssetCache.Asset again = cache.get("asset.png");
+        Packet offer = new Packet();
+        offer.deserialize(asset.getOffer().getBuffer());
+        byte[] rebuilt = new byte[offer.getAssetSize()];
+        for (Packet chunk : asset.getChunks()) {
+            Packet recv = new Packet();
+            recv.deserialize(chunk.getBuffer());
+            recv.copyAssetData(rebuilt);
+        }
+
+        // Assert
+        assertSame(asset, again);
+        assertEquals(Packet.PACKET_TYPE_ASSET, offer.getType());
+        assertTrue(offer.hasFlag(Packet.PACKET_FLAG_ASSET_OFFER));
+        assertTrue(asset.hasHash(offer.getAssetHash()));
+        assertEquals(4, asset.getChunks().size());
+        assertArrayEquals(file, rebuilt);
+    }
+    /**
+     * Tests that changing the file loads it again with a new hash
+     * SVR-ASSET-002
+     */
+    @Test
+    public void ChangedFileIsReloaded(@TempDir Path directory) throws IOException {
+        // Arrange
+        FileLogger.initLoggerTest();
+        Path path = directory.resolve("asset.png");
+        Files.write(path, new byte[] { 1, 2, 3 });
+        Files.setLastModifiedTime(path, FileTime.fromMillis(1000));
+        AssetCache cache = new AssetCache(directory, 32);
+        AssetCache.Asset before = cache.get("asset.png");
+        byte[] oldOffer = before.getOffer().getBuffer().clone();
+
+        // Act
+        Files.write(path, new byte[] { 1, 2, 3, 4 });
+        Files.setLastModifiedTime(path, FileTime.fromMillis(2000));
+        AssetCache.Asset after = cache.get("asset.png");
+        Packet offer = new Packet();
+        offer.deserialize(oldOffer);
+
+        // Assert
+        assertNotSame(before, after);
+        assertFalse(after.hasHash(offer.getAssetHash()));
+        assertNull(cache.get("missing.png"));
+    }
+}
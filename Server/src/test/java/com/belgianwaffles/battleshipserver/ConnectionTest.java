@@ -2,6 +2,8 @@ package com.belgianwaffles.battleshipserver;
 
 import static org.junit.jupiter.api.Assertions.*;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.Socket;
 
 import org.junit.jupiter.api.Test;
@@ -48,4 +50,159 @@ public class ConnectionTest {
         }
         assertTrue(cm.close());
     }
+    /**
+     * Connects 2 clients to a selector server and checks the game sends them packets
+     * SVR-CON-003
+     */
+    @Test
+    public void SelectorServerStartsGame() {
+        ConnectionManager cm = null;
+        try {
+            // Server creation
+            cm = new ConnectionManager(ConnectionManager.DEFAULT_PORT, ConnectionManager.MODE_SELECTOR);
+            Thread serverThread = new Thread(cm);
+            serverThread.setDaemon(true);
+            serverThread.start();
+
+            // Add clients
+            Socket s1 = new Socket("localhost", ConnectionManager.DEFAULT_PORT);
+            Socket s2 = new Socket("localhost", ConnectionManager.DEFAULT_PORT);
+            s1.setSoTimeout(ConnectionManager.DEFAULT_TIMEOUT);
+
+            // Game should send a packet with a known type
+            InputStream input = s1.getInputStream();
+            byte[] head = input.readNBytes(Packet.HEADER_SIZE);
+            Packet packet = new Packet();
+            packet.deserialize(head);
+            assertEquals(Packet.HEADER_SIZE, head.length);
+            assertTrue(packet.getType() >= Packet.PACKET_TYPE_PING && packet.getType() <= Packet.PACKET_TYPE_ASSET);
+            
+            // Close clients
+            s1.close();
+            s2.close();
+        } catch (IOException e) {
+            if (cm != null) {
+                cm.close();
+            }
+            fail("Selector server threw exception");
+        }
+        assertTrue(cm.close());
+    }
+    /**
+     * Plays a whole game on a blocking server whose games are stepped by scheduler workers
+     * SVR-CON-004
+     */
+    @Test
+    public void BlockingServerWithWorkersPlaysGame() throws IOException, InterruptedException {
+        // Server creation
+        FileLogger.initLoggerTest();
+        ConnectionManager cm = new ConnectionManager(ConnectionManager.DEFAULT_PORT + 1, ConnectionManager.MODE_BLOCKING, false, 2);
+        Thread serverThread = new Thread(cm);
+        serverThread.setDaemon(true);
+        serverThread.start();
+
+        // Each client plays on its own thread, both have to answer the matchmakers ping
+        int[] moves = {-1, -1};
+        Thread[] players = new Thread[2];
+        for (int i = 0; i < players.length; i++) {
+            int player = i;
+            players[i] = new Thread(() -> {
+                try (Socket client = new Socket("localhost", ConnectionManager.DEFAULT_PORT + 1)) {
+                    client.setSoTimeout(ConnectionManager.DEFAULT_TIMEOUT);
+                    moves[player] = playGame(client);
+                } catch (IOException e) {
+                    // Left at -1, the game did not finish
+                }
+            });
+            players[i].start();
+        }
+        for (Thread player : players) {
+            player.join(ConnectionManager.DEFAULT_TIMEOUT);
+        }
+        assertTrue(cm.close());
+
+        // Both clients were told the result, and moves were taken
+        assertTrue(moves[0] >= 0 && moves[1] >= 0);
+        assertTrue(moves[0] + moves[1] > 0);
+    }
+
+    /**
+     * Confirms the first layout given, then shoots the first open cell whenever it is this clients turn
+     * @param client the client side socket
+     * @return the amount of moves made once the game ended
+     * @throws IOException if the connection fails before the game ends
+     */
+    private static int playGame(Socket client) throws IOException {
+        InputStream input = client.getInputStream();
+        OutputStream output = client.getOutputStream();
+        boolean placed = false;
+        Grid board = null;
+        int version = 0;
+        int moves = 0;
+
+        while (true) {
+            // Read a whole packet
+            byte[] head = input.readNBytes(Packet.HEADER_SIZE);
+            if (head.length < Packet.HEADER_SIZE) {
+                throw new IOException("Connection closed");
+            }
+            byte[] frame = new byte[Packet.frameLength(head)];
+            System.arraycopy(head, 0, frame, 0, Packet.HEADER_SIZE);
+            input.readNBytes(frame, Packet.HEADER_SIZE, frame.length - Packet.HEADER_SIZE);
+            Packet packet = new Packet();
+            packet.wrap(frame);
+
+            // Pick up the latest board
+            switch (packet.getType()) {
+                case Packet.PACKET_TYPE_PING -> {
+                    output.write(Packet.sharedPing().getBuffer());
+                    continue;
+                }
+                case Packet.PACKET_TYPE_GRID -> {
+                    if (!placed) {
+                        placed = true;
+                        Packet confirm = new Packet();
+                        confirm.addFlag(Packet.PACKET_FLAG_CONFIRM);
+                        confirm.serialize(packet.getGrid());
+                        output.write(confirm.getBuffer());
+                        continue;
+                    }
+                    board = packet.getGrid();
+                    version = 0;
+                }
+                case Packet.PACKET_TYPE_DELTA -> {
+                    if (board == null || packet.getVersion() != ((version + 1) & Packet.DELTA_VERSION_MASK)) {
+                        Packet resync = new Packet();
+                        resync.addFlag(Packet.PACKET_FLAG_RESYNC);
+                        resync.serialize(version);
+                        output.write(resync.getBuffer());
+                        continue;
+                    }
+                    packet.applyDelta(board);
+                    version = packet.getVersion();
+                }
+                case Packet.PACKET_TYPE_FLAGS -> {
+                    return moves;
+                }
+                default -> {
+                    continue;
+                }
+            }
+
+            // Shoot the first open cell, clients always see themselves as player 1
+            if (!packet.isTurn()) {
+                continue;
+            }
+            for (int i = 0; i < Grid.GRID_SIZE * Grid.GRID_SIZE; i++) {
+                byte cell = board.getCell(i / Grid.GRID_SIZE, i % Grid.GRID_SIZE);
+                if ((cell & 0b00100000) == 0) {
+                    Packet move = new Packet();
+                    move.serialize(version, i, (byte)(cell | 0b00100000));
+                    output.write(move.getBuffer());
+                    moves++;
+                    break;
+                }
+            }
+        }
+    }
 }
@@ -1,6 +1,11 @@
 package com.belgianwaffles.battleshipserver;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.junit.jupiter.api.Test;
 
 public class FileLoggerTest {
@@ -43,4 +48,23 @@ public class FileLoggerTest {
         p.serialize();
         assertTrue(FileLogger.logPing("Ping: " + p.toString()));
     }
+    /**
+     * tests that async logging builds messages on the writer and writes them all before stopping
+     */
+    @Test
+    public void asyncLoggingTest() {
+        assertTrue(FileLogger.initLoggerTest());
+        AtomicInteger built = new AtomicInteger(0);
+        assertTrue(FileLogger.startAsync(FileLogger.DEFAULT_CAPACITY, FileLogger.POLICY_BLOCK));
+        try {
+            assertTrue(FileLogger.isAsync());
+            for (int i = 0; i < 100; i++) {
+                assertTrue(FileLogger.logMessage(() -> "Async message " + built.incrementAndGet()));
+            }
+        } finally {
+            FileLogger.stopAsync();
+        }
+        assertFalse(FileLogger.isAsync());
+        assertEquals(100, built.get());
+    }
 }
@@ -0,0 +1,60 @@
+package com.belgianwaffles.battleshipserver;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import org.junit.jupiter.api.Test;
+
+public class FleetPoolTest {
+    /**
+     * Tests that the pool fills up in the background and hands out whole fleets
+     * SVR-POOL-001
+     */
+    @Test
+    public void PoolFillsAndServesFleets() throws InterruptedException {
+        // Arrange
+        FleetPool pool = new FleetPool(8, 2);
+        pool.start();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (pool.available() < 8 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        // Act
+        Grid[] grids = new Grid[6];
+        for (int i = 0; i < grids.length; i++) {
+            grids[i] = pool.take();
+        }
+        // Dropping to the watermark wakes the producer to fill back up
+        deadline = System.currentTimeMillis() + 5000;
+        while (pool.available() < 8 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        pool.stop();
+
+        // Assert
+        for (Grid grid : grids) {
+            assertEquals(17, grid.shipCellsLeftP1());
+            assertEquals(ShipPlacer.FLEET.length, grid.checkShipCount(1));
+        }
+        assertEquals(0, pool.getMisses());
+        assertEquals(8, pool.available());
+    }
+    /**
+     * Tests that an empty or stopped pool still gives out boards
+     * SVR-POOL-002
+     */
+    @Test
+    public void EmptyPoolMakesFleets() {
+        // Arrange
+        FleetPool pool = new FleetPool(4, 1);
+
+        // Act
+        Grid fromPool = pool.take();
+        Grid noPool = FleetPool.takeGrid();
+
+        // Assert
+        assertEquals(1, pool.getMisses());
+        assertEquals(17, fromPool.shipCellsLeftP1());
+        assertEquals(17, noPool.shipCellsLeftP1());
+        assertEquals(ShipPlacer.FLEET.length, noPool.checkShipCount(1));
+    }
+}
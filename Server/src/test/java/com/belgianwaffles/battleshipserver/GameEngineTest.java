@@ -0,0 +1,119 @@
+package com.belgianwaffles.battleshipserver;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class GameEngineTest {
+    /**
+     * Tests that hits keep the turn, misses pass it and bad moves are rejected
+     * SVR-ENGINE-001
+     */
+    @Test
+    public void TurnsFollowTheRules() {
+        // Arrange, one player 2 ship cell at (0, 0), one player 1 ship cell at (9, 9)
+        Grid grid = new Grid();
+        grid.getCells()[0][0].setShipP2(true);
+        grid.getCells()[0][1].setShipP2(true);
+        grid.getCells()[9][9].setShipP1(true);
+        GameEngine engine = new GameEngine(grid, new SplittableRandom(1));
+
+        // Act and Assert
+        assertEquals(GameEngine.SHOT_INVALID, engine.shoot(2, 5));
+        assertEquals(GameEngine.SHOT_HIT, engine.shoot(1, 0));
+        assertEquals(1, engine.getCurrentPlayer());
+        assertEquals(GameEngine.SHOT_INVALID, engine.shoot(1, 0));
+        assertEquals(GameEngine.SHOT_MISS, engine.shoot(1, 50));
+        assertEquals(2, engine.getCurrentPlayer());
+        assertEquals(GameEngine.SHOT_MISS, engine.shoot(2, 50));
+        assertEquals(1, engine.getCurrentPlayer());
+        assertEquals(GameEngine.SHOT_WIN, engine.shoot(1, 1));
+        assertTrue(engine.isOver());
+        assertEquals(1, engine.getWinner());
+        assertEquals(GameEngine.SHOT_INVALID, engine.shoot(1, 2));
+        assertEquals(4, engine.getMoves());
+    }
+    /**
+     * Tests that the same seed and moves give the same game, sharks included
+     * SVR-ENGINE-002
+     */
+    @Test
+    public void SameSeedSameGame() {
+        // Arrange
+        Grid layout = new Grid();
+        layout.combine(FleetPool.takeGrid(), layout);
+        Grid p2 = FleetPool.takeGrid();
+        p2.translateP1toP2();
+        layout.combine(layout, p2);
+
+        // Act
+        GameEngine first = playRandomly(layout, 42);
+        GameEngine second = playRandomly(layout, 42);
+
+        // Assert
+        assertTrue(first.isOver());
+        assertEquals(first.getWinner(), second.getWinner());
+        assertEquals(first.getMoves(), second.getMoves());
+        assertEquals(0, first.getGrid().checkDifferences(second.getGrid()));
+    }
+    /**
+     * Tests that a journaled game replays through the engine without mismatches
+     * SVR-ENGINE-003
+     */
+    @Test
+    public void JournaledGameReplays(@TempDir Path directory) throws IOException {
+        // Arrange, journal a game the way the server does
+        FileLogger.initLoggerTest();
+        Grid layout = new Grid();
+        layout.combine(FleetPool.takeGrid(), layout);
+        Grid p2 = FleetPool.takeGrid();
+        p2.translateP1toP2();
+        layout.combine(layout, p2);
+        GameJournal journal = new GameJournal(directory, GameJournal.DEFAULT_RECORDS);
+        journal.append(3, 0, Packet.PACKET_TYPE_NONE, Packet.PACKET_FLAG_NONE, GameJournal.NO_CELL, (byte)0);
+        journal.appendGrid(3, layout);
+        GameEngine engine = new GameEngine(new Grid(layout), new SplittableRandom(7));
+        SplittableRandom moves = new SplittableRandom(7);
+        while (!engine.isOver()) {
+            Grid before = new Grid(engine.getGrid());
+            int player = engine.getCurrentPlayer();
+            if (engine.shoot(player, moves.nextInt(100)) != GameEngine.SHOT_INVALID) {
+                journal.appendChanges(3, player, Packet.PACKET_TYPE_DELTA, before, engine.getGrid());
+            }
+        }
+        journal.append(3, engine.getWinner(), Packet.PACKET_TYPE_FLAGS, Packet.PACKET_FLAG_WINNER, GameJournal.NO_CELL, (byte)0);
+        journal.close();
+
+        // Act
+        List<JournalReader.Entry> entries = JournalReader.read(JournalReader.findRuns(directory).firstEntry().getValue());
+        List<ReplayRunner.ReplayGame> games = ReplayRunner.load("test", entries);
+        String mismatch = ReplayRunner.replay(games.get(0), 99);
+
+        // Assert
+        assertEquals(1, games.size());
+        assertNull(mismatch);
+    }
+
+    /**
+     * Plays a game with random shots until someone wins
+     * @param layout the combined grid to start from
+     * @param seed seed for the engine and the shots
+     * @return the finished engine
+     */
+    private static GameEngine playRandomly(Grid layout, long seed) {
+        GameEngine engine = new GameEngine(new Grid(layout), new SplittableRandom(seed));
+        SplittableRandom moves = new SplittableRandom(seed);
+        while (!engine.isOver()) {
+            engine.shoot(engine.getCurrentPlayer(), moves.nextInt(100));
+        }
+        return engine;
+    }
+}
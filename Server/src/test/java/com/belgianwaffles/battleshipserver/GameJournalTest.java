@@ -0,0 +1,72 @@
+package com.belgianwaffles.battleshipserver;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class GameJournalTest {
+    /**
+     * Tests that records come back in order across segment rolls and rebuild the grid
+     * SVR-JRNL-001
+     */
+    @Test
+    public void RecordsSurviveSegmentRolls(@TempDir Path directory) throws IOException {
+        // Arrange, 8 records per segment so the fleet alone fills several
+        FileLogger.initLoggerTest();
+        Grid grid = FleetPool.takeGrid();
+        Grid after = new Grid(grid);
+        after.setCell(3, 4, (byte)(after.getCell(3, 4) | 0b00100000));
+        GameJournal journal = new GameJournal(directory, 8);
+
+        // Act
+        journal.append(7, 0, Packet.PACKET_TYPE_NONE, Packet.PACKET_FLAG_NONE, GameJournal.NO_CELL, (byte)0);
+        journal.appendGrid(7, grid);
+        journal.appendChanges(7, 1, Packet.PACKET_TYPE_DELTA, grid, after);
+        journal.close();
+        TreeMap<String, List<Path>> runs = JournalReader.findRuns(directory);
+        List<JournalReader.Entry> entries = JournalReader.read(runs.firstEntry().getValue());
+
+        // Assert, one start, 17 ship cells and the shot
+        assertEquals(1, runs.size());
+        assertTrue(runs.firstEntry().getValue().size() > 1);
+        assertEquals(19, entries.size());
+        Grid rebuilt = new Grid();
+        for (JournalReader.Entry entry : entries) {
+            assertEquals(7, entry.getGame());
+            if (entry.getIndex() != GameJournal.NO_CELL) {
+                rebuilt.setCell(entry.getIndex() / Grid.GRID_SIZE, entry.getIndex() % Grid.GRID_SIZE, entry.getCell());
+            }
+        }
+        assertEquals(Packet.PACKET_TYPE_DELTA, entries.get(18).getType());
+        assertEquals(0, rebuilt.checkDifferences(after));
+    }
+    /**
+     * Tests that a move is described from the cells it changed
+     * SVR-JRNL-002
+     */
+    @Test
+    public void DescribeMoveFromChanges() {
+        // Arrange
+        Grid before = new Grid();
+        Grid hit = new Grid();
+        Grid miss = new Grid();
+        before.setCell(2, 5, (byte)0b00000100);
+        hit.setCell(2, 5, (byte)0b00100100);
+        miss.setCell(6, 1, (byte)0b00000010);
+
+        // Act
+        String hitText = JournalReader.describeMove(1, before, hit);
+        String missText = JournalReader.describeMove(2, new Grid(), miss);
+
+        // Assert
+        assertEquals("player 1 fires at (2, 5): hit", hitText);
+        assertEquals("player 2 fires at (6, 1): miss", missText);
+    }
+}
@@ -0,0 +1,66 @@
+package com.belgianwaffles.battleshipserver;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+public class GameSchedulerTest {
+    /**
+     * Tests that tasks for one game run in order on a single worker
+     * SVR-SCHED-001
+     */
+    @Test
+    public void TasksForGameRunInOrder() throws InterruptedException {
+        // Arrange
+        GameScheduler scheduler = new GameScheduler(4);
+        List<Integer> order = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        CountDownLatch done = new CountDownLatch(100);
+
+        // Act
+        for (int i = 0; i < 100; i++) {
+            int task = i;
+            scheduler.execute(7, () -> {
+                order.add(task);
+                threads.add(Thread.currentThread());
+                done.countDown();
+            });
+        }
+
+        // Assert
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i, order.get(i));
+            assertEquals(threads.get(0), threads.get(i));
+        }
+        scheduler.close();
+    }
+    /**
+     * Tests that a scheduled game ends on its own since the clients are not connected
+     * SVR-SCHED-002
+     */
+    @Test
+    public void ScheduledGameEnds() throws InterruptedException {
+        // Arrange
+        GameScheduler scheduler = new GameScheduler(2);
+        GameManager gm = new GameManager(new Socket(), new Socket(), false);
+
+        // Act
+        gm.start(scheduler);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (gm.getState() != GameManager.STATE_END && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        // Assert
+        assertEquals(GameManager.STATE_END, gm.getState());
+        scheduler.close();
+    }
+}
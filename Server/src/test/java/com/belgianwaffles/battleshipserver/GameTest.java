@@ -1,6 +1,20 @@
 package com.belgianwaffles.battleshipserver;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
 import java.net.Socket;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.jupiter.api.Test;
 
@@ -47,4 +61,248 @@ public class GameTest {
         // End all games before pings are sent so clients
         GameManager.endAllGames();
     }
+    /**
+     * Tests that a game and all of its helper tasks can run on virtual threads,
+     * the game ends on its own since the clients are not connected
+     * SVR-GAME-003
+     */
+    @Test
+    public void RunGameOnVirtualThreads() {
+        ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+        GameManager gm = new GameManager(new Socket(), new Socket(), true, executor);
+        Future<?> game = executor.submit(gm);
+        try {
+            game.get(5, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            fail("Game did not end on virtual threads");
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+    /**
+     * Tests that the player waiting for their turn dropping ends the game straight away,
+     * instead of only once it would have been their turn
+     * SVR-GAME-004
+     */
+    @Test
+    public void WaitingPlayerDisconnectEndsGame() throws IOException, InterruptedException {
+        // Arrange
+        FileLogger.initLoggerTest();
+        GameManager.openServer();
+        try (ServerSocket server = new ServerSocket(0, 2, InetAddress.getLoopbackAddress());
+        Socket c1 = new Socket(server.getInetAddress(), server.getLocalPort());
+        Socket a1 = server.accept();
+        Socket c2 = new Socket(server.getInetAddress(), server.getLocalPort());
+        Socket a2 = server.accept()) {
+            c1.setSoTimeout(5000);
+            c2.setSoTimeout(5000);
+            Thread game = new Thread(new GameManager(a1, a2));
+            game.start();
+
+            // Both confirm their layouts, player 1 goes first
+            confirmLayout(c1);
+            confirmLayout(c2);
+            Packet board = readPacket(c1.getInputStream(), Packet.PACKET_TYPE_GRID);
+            assertTrue(board.isTurn());
+
+            // Act, player 2 leaves while player 1 is thinking
+            c2.close();
+            Packet result = readPacket(c1.getInputStream(), Packet.PACKET_TYPE_FLAGS);
+
+            // Assert
+            assertTrue(result.hasFlag(Packet.PACKET_FLAG_WINNER));
+            game.join(5000);
+            assertFalse(game.isAlive());
+        }
+    }
+    /**
+     * Tests that the waiting player timing out on pings ends the game straight away
+     * SVR-GAME-005
+     */
+    @Test
+    public void WaitingPlayerTimeoutEndsGame() throws IOException, InterruptedException {
+        // Arrange
+        FileLogger.initLoggerTest();
+        GameManager.openServer();
+        try (ServerSocket server = new ServerSocket(0, 2, InetAddress.getLoopbackAddress());
+        Socket c1 = new Socket(server.getInetAddress(), server.getLocalPort());
+        Socket a1 = server.accept();
+        Socket c2 = new Socket(server.getInetAddress(), server.getLocalPort());
+        Socket a2 = server.accept()) {
+            c1.setSoTimeout(5000);
+            c2.setSoTimeout(5000);
+            GameManager gm = new GameManager(a1, a2);
+            Thread game = new Thread(gm);
+            game.start();
+            confirmLayout(c1);
+            confirmLayout(c2);
+            readPacket(c1.getInputStream(), Packet.PACKET_TYPE_GRID);
+
+            // Act, the wheel gives up on player 2 while it is player 1's turn
+            gm.onTimeout(a2);
+            Packet result = readPacket(c1.getInputStream(), Packet.PACKET_TYPE_FLAGS);
+
+            // Assert
+            assertTrue(result.hasFlag(Packet.PACKET_FLAG_WINNER));
+            game.join(5000);
+            assertFalse(game.isAlive());
+        }
+    }
+    /**
+     * Tests that a move with no body is treated as an invalid move and answered with a fresh board,
+     * and that the game still ends cleanly afterwards
+     * SVR-GAME-006
+     */
+    @Test
+    public void EmptyDeltaIsInvalidMove() throws IOException, InterruptedException {
+        // Arrange
+        FileLogger.initLoggerTest();
+        GameManager.openServer();
+        try (ServerSocket server = new ServerSocket(0, 2, InetAddress.getLoopbackAddress());
+        Socket c1 = new Socket(server.getInetAddress(), server.getLocalPort());
+        Socket a1 = server.accept();
+        Socket c2 = new Socket(server.getInetAddress(), server.getLocalPort());
+        Socket a2 = server.accept()) {
+            c1.setSoTimeout(5000);
+            c2.setSoTimeout(5000);
+            Thread game = new Thread(new GameManager(a1, a2));
+            game.start();
+            confirmLayout(c1);
+            confirmLayout(c2);
+            readPacket(c1.getInputStream(), Packet.PACKET_TYPE_GRID);
+
+            // Act, player 1 sends a delta header with a zero length body
+            Packet delta = new Packet();
+            delta.serialize(0);
+            byte[] frame = new byte[Packet.HEADER_SIZE + Packet.PACKET_TAIL_SIZE];
+            System.arraycopy(delta.getBuffer(), 0, frame, 0, Packet.HEADER_SIZE);
+            Arrays.fill(frame, 3, Packet.HEADER_SIZE, (byte)0);
+            frame[Packet.HEADER_SIZE] = '\n';
+            c1.getOutputStream().write(frame);
+
+            // Assert, player 1 is resynced and keeps the turn
+            Packet board = readPacket(c1.getInputStream(), Packet.PACKET_TYPE_GRID);
+            assertTrue(board.isTurn());
+
+            // The game is still running, so player 1 leaving hands player 2 the win
+            c1.close();
+            Packet result = readPacket(c2.getInputStream(), Packet.PACKET_TYPE_FLAGS);
+            assertTrue(result.hasFlag(Packet.PACKET_FLAG_WINNER));
+            game.join(5000);
+            assertFalse(game.isAlive());
+        }
+    }
+    /**
+     * Tests that a resync from the player waiting for their turn is answered straight away
+     * SVR-GAME-007
+     */
+    @Test
+    public void WaitingPlayerResyncAnswered() throws IOException, InterruptedException {
+        // Arrange
+        FileLogger.initLoggerTest();
+        GameManager.openServer();
+        try (ServerSocket server = new ServerSocket(0, 2, InetAddress.getLoopbackAddress());
+        Socket c1 = new Socket(server.getInetAddress(), server.getLocalPort());
+        Socket a1 = server.accept();
+        Socket c2 = new Socket(server.getInetAddress(), server.getLocalPort());
+        Socket a2 = server.accept()) {
+            c1.setSoTimeout(5000);
+            c2.setSoTimeout(5000);
+            Thread game = new Thread(new GameManager(a1, a2));
+            game.start();
+            confirmLayout(c1);
+            confirmLayout(c2);
+            readPacket(c2.getInputStream(), Packet.PACKET_TYPE_GRID);
+
+            // Act, player 2 asks for its board again while player 1 is thinking
+            Packet resync = new Packet();
+            resync.addFlag(Packet.PACKET_FLAG_RESYNC);
+            resync.serialize(0);
+            c2.getOutputStream().write(resync.getBuffer());
+
+            // Assert
+            Packet board = readPacket(c2.getInputStream(), Packet.PACKET_TYPE_GRID);
+            assertFalse(board.isTurn());
+            c1.close();
+            game.join(5000);
+            assertFalse(game.isAlive());
+        }
+    }
+    /**
+     * Tests that a refresh is answered with a new packet, so the received one can still be logged as it came
+     * SVR-GAME-008
+     */
+    @Test
+    public void RefreshLeavesReceivedPacket() throws IOException, InterruptedException {
+        // Arrange
+        FileLogger.initLoggerTest();
+        GameManager.openServer();
+        try (ServerSocket server = new ServerSocket(0, 2, InetAddress.getLoopbackAddress());
+        Socket c1 = new Socket(server.getInetAddress(), server.getLocalPort());
+        Socket a1 = server.accept();
+        Socket c2 = new Socket(server.getInetAddress(), server.getLocalPort());
+        Socket a2 = server.accept()) {
+            c1.setSoTimeout(5000);
+            c2.setSoTimeout(5000);
+            GameManager gm = new GameManager(a1, a2);
+            Thread game = new Thread(gm);
+            game.start();
+            Packet layout = readPacket(c1.getInputStream(), Packet.PACKET_TYPE_GRID);
+            readPacket(c2.getInputStream(), Packet.PACKET_TYPE_GRID);
+            for (int i = 0; i < 100 && gm.getState() != GameManager.STATE_PLACEMENT; i++) {
+                Thread.sleep(10);
+            }
+
+            // Act, player 1 asks for another layout
+            Packet refresh = new Packet();
+            refresh.addFlag(Packet.PACKET_FLAG_REFRESH);
+            refresh.serialize(layout.getGrid());
+            byte[] received = refresh.getBuffer().clone();
+            gm.onPacket(a1, refresh);
+
+            // Assert
+            readPacket(c1.getInputStream(), Packet.PACKET_TYPE_GRID);
+            assertArrayEquals(received, refresh.getBuffer());
+            c1.close();
+            game.join(5000);
+            assertFalse(game.isAlive());
+        }
+    }
+
+    /**
+     * Sends back the first layout a client is given
+     * @param client the client side socket
+     * @throws IOException if the socket fails
+     */
+    private static void confirmLayout(Socket client) throws IOException {
+        Packet layout = readPacket(client.getInputStream(), Packet.PACKET_TYPE_GRID);
+        Packet confirm = new Packet();
+        confirm.addFlag(Packet.PACKET_FLAG_CONFIRM);
+        confirm.serialize(layout.getGrid());
+        client.getOutputStream().write(confirm.getBuffer());
+    }
+
+    /**
+     * Reads packets until one of the given type arrives, anything else such as pings is skipped
+     * @param input the client side stream
+     * @param type the type to wait for, use Packet.PACKET_TYPE_####
+     * @return the packet
+     * @throws IOException if the socket fails or times out
+     */
+    private static Packet readPacket(InputStream input, int type) throws IOException {
+        while (true) {
+            byte[] head = input.readNBytes(Packet.HEADER_SIZE);
+            if (head.length < Packet.HEADER_SIZE) {
+                throw new IOException("Connection closed");
+            }
+            byte[] frame = new byte[Packet.frameLength(head)];
+            System.arraycopy(head, 0, frame, 0, Packet.HEADER_SIZE);
+            input.readNBytes(frame, Packet.HEADER_SIZE, frame.length - Packet.HEADER_SIZE);
+            Packet packet = new Packet();
+            packet.wrap(frame);
+            if (packet.getType() == type) {
+                return packet;
+            }
+        }
+    }
 }
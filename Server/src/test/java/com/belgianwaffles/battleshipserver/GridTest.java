@@ -1,5 +1,7 @@
 package com.belgianwaffles.battleshipserver;
 
+import java.util.SplittableRandom;
+
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
@@ -222,4 +224,186 @@ public class GridTest {
             }
         }
     }
+    /**
+     * Tests that cells from getCells change the grid they came from, while copies stay separate
+     * SVR-GRID-008
+     */
+    @Test
+    public void CellViewsWriteThroughAndCopiesDoNot() {
+        // Arrange
+        Grid grid = new Grid();
+        Grid copy = new Grid(grid);
+
+        // Act
+        grid.getCells()[2][7].setShipP1(true);
+        var detached = grid.new GridCell((byte)0);
+        detached.setShotP2(true);
+
+        // Assert
+        assertTrue(grid.getCells()[2][7].hasShipP1());
+        assertEquals(grid.getCells()[2][7].getCell(), grid.getCell(2, 7));
+        assertEquals(grid.getCell(2, 7), grid.getData()[2 * Grid.GRID_SIZE + 7]);
+        assertFalse(copy.getCells()[2][7].hasShipP1());
+        assertTrue(detached.hasShotP2());
+        assertFalse(grid.getCells()[0][0].hasShotP2());
+    }
+    /**
+     * Tests that counts from the bitboards match the cells after single cell and whole grid changes
+     * SVR-GRID-009
+     */
+    @Test
+    public void BitboardCountsMatchCells() {
+        // Arrange
+        Grid grid = new Grid();
+        grid.generateShipsPlayer1();
+        grid.generateShipsPlayer2();
+        int shipsBefore = grid.checkShipCount(1);
+        var cells = grid.getCells();
+
+        // Act, player 2 shoots the first 6 rows, player 1 shoots the last row
+        for (int i = 0; i < Grid.GRID_SIZE; i++) {
+            for (int j = 0; j < Grid.GRID_SIZE; j++) {
+                cells[i][j].setShotP2(i < 6);
+                cells[i][j].setShotP1(i == Grid.GRID_SIZE - 1);
+            }
+        }
+        cells[3][3].setSharkP1(true);
+        Grid copy = new Grid(grid.getData());
+
+        // Assert
+        int hits1 = 0, hits2 = 0, left1 = 0, left2 = 0, open1 = 0;
+        for (var row : grid.getCells()) {
+            for (var cell : row) {
+                hits1 += (cell.hasShotP1() && cell.hasShipP2()) ? 1 : 0;
+                hits2 += (cell.hasShotP2() && cell.hasShipP1()) ? 1 : 0;
+                left1 += (cell.hasShipP1() && !cell.hasShotP2()) ? 1 : 0;
+                left2 += (cell.hasShipP2() && !cell.hasShotP1()) ? 1 : 0;
+                open1 += (!cell.hasSharkP1() && !cell.hasShotP1() && !cell.hasShipP2()) ? 1 : 0;
+            }
+        }
+        assertEquals(5, shipsBefore);
+        for (Grid g : new Grid[] { grid, copy }) {
+            assertEquals(hits1, g.hitCountP1());
+            assertEquals(hits2, g.hitCountP2());
+            assertEquals(left1, g.shipCellsLeftP1());
+            assertEquals(left2, g.shipCellsLeftP2());
+            assertEquals(open1, g.sharkCellCount(1));
+        }
+    }
+    /**
+     * Tests that a ship only stops counting once every one of its cells is shot
+     * SVR-GRID-010
+     */
+    @Test
+    public void ShipCountDropsWhenShipSunk() {
+        // Arrange, a ship across the word break at cells 62 to 65 and one in the last column
+        Grid grid = new Grid();
+        var cells = grid.getCells();
+        for (int j = 2; j <= 5; j++) {
+            cells[6][j].setShipP1(true);
+        }
+        cells[8][9].setShipP1(true);
+        cells[9][9].setShipP1(true);
+
+        // Act
+        for (int j = 2; j <= 4; j++) {
+            cells[6][j].setShotP2(true);
+        }
+        int afterThreeShots = grid.checkShipCount(1);
+        cells[6][5].setShotP2(true);
+        int afterFourShots = grid.checkShipCount(1);
+
+        // Assert
+        assertEquals(2, afterThreeShots);
+        assertEquals(1, afterFourShots);
+        assertEquals(2, grid.shipCellsLeftP1());
+    }
+    /**
+     * Tests that differences are counted per cell and that only a new shot passes as a move
+     * SVR-GRID-011
+     */
+    @Test
+    public void CheckDifferencesAndShots() {
+        // Arrange
+        Grid grid = new Grid();
+        grid.getCells()[0][4].setShipP2(true);
+        grid.getCells()[2][2].setShotP1(true);
+        Grid moved = new Grid(grid);
+
+        // Act
+        moved.getCells()[0][4].setShotP1(true);
+        byte shot = moved.getCell(0, 4);
+
+        // Assert
+        assertEquals(1, grid.checkDifferences(moved));
+        assertEquals(0, grid.checkDifferences(grid));
+        assertTrue(grid.checkShot(4, shot));
+        assertFalse(grid.checkShot(22, grid.getCell(2, 2)));
+        assertFalse(grid.checkShot(4, (byte)(shot | 0b10000000)));
+        assertFalse(grid.checkShot(Grid.GRID_SIZE * Grid.GRID_SIZE, shot));
+    }
+    /**
+     * Tests that sharks replace the old ones and only go in open cells, with the bitboards kept up
+     * SVR-GRID-012
+     */
+    @Test
+    public void PlaceSharksInOpenCells() {
+        // Arrange, player 1 has shot everything but the last two rows
+        Grid grid = new Grid();
+        grid.generateShipsPlayer1();
+        grid.generateShipsPlayer2();
+        var cells = grid.getCells();
+        for (int i = 0; i < Grid.GRID_SIZE - 2; i++) {
+            for (int j = 0; j < Grid.GRID_SIZE; j++) {
+                cells[i][j].setShotP1(true);
+            }
+        }
+        cells[0][0].setSharkP2(true);
+
+        // Act
+        grid.placeSharks(3, new SplittableRandom(3));
+        grid.placeSharks(3, new SplittableRandom(4));
+
+        // Assert
+        int sharks1 = 0, sharks2 = 0;
+        for (var row : grid.getCells()) {
+            for (var cell : row) {
+                if (cell.hasSharkP1()) {
+                    sharks1++;
+                    assertFalse(cell.hasShotP1() || cell.hasShipP2());
+                }
+                if (cell.hasSharkP2()) {
+                    sharks2++;
+                    assertFalse(cell.hasShotP2() || cell.hasShipP1());
+                }
+            }
+        }
+        assertEquals(3, sharks1);
+        assertEquals(3, sharks2);
+        assertEquals(new Grid(grid.getData()).sharkCellCount(1), grid.sharkCellCount(1));
+        assertEquals(new Grid(grid.getData()).sharkCellCount(2), grid.sharkCellCount(2));
+    }
+    /**
+     * Tests that grids made from bytes, cells or another grid can still generate ships
+     * SVR-GRID-013
+     */
+    @Test
+    public void EveryConstructorCanGenerateShips() {
+        // Arrange
+        Grid original = new Grid();
+        Grid[] grids = {
+            new Grid(original.getData()),
+            new Grid(original.getData(), 0),
+            new Grid(original.getCells()),
+            new Grid(original)
+        };
+
+        // Act, assert
+        for (Grid grid : grids) {
+            grid.generateShipsPlayer1();
+            grid.generateShipsPlayer2();
+            assertTrue(grid.shipCellsLeftP1() > 0);
+            assertTrue(grid.checkShipCount(2) > 0);
+        }
+    }
 }
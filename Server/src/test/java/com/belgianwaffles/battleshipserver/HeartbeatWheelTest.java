@@ -0,0 +1,165 @@
+package com.belgianwaffles.battleshipserver;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+public class HeartbeatWheelTest {
+    /**
+     * Tests that a client that answers its pings keeps being pinged and never times out
+     * SVR-BEAT-001
+     */
+    @Test
+    public void AnsweredPingsKeepClientAlive() throws IOException, InterruptedException {
+        // Arrange
+        FileLogger.initLoggerTest();
+        HeartbeatWheel wheel = new HeartbeatWheel(5, 20, 60);
+        AtomicInteger pings = new AtomicInteger(0);
+        AtomicInteger timeouts = new AtomicInteger(0);
+        try (ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        Socket client = new Socket(server.getInetAddress(), server.getLocalPort());
+        Socket accepted = server.accept()) {
+            wheel.start();
+            HeartbeatWheel.Entry[] entry = new HeartbeatWheel.Entry[1];
+            entry[0] = wheel.register(accepted, new HeartbeatWheel.Listener() {
+                @Override
+                public void onHeartbeat(Socket c) {
+                    pings.incrementAndGet();
+                }
+                @Override
+                public void onTimeout(Socket c) {
+                    timeouts.incrementAndGet();
+                }
+            });
+
+            // Act, answer every ping as it arrives
+            InputStream input = client.getInputStream();
+            client.setSoTimeout(1000);
+            for (int i = 0; i < 5; i++) {
+                byte[] head = input.readNBytes(Packet.HEADER_SIZE);
+                input.readNBytes(Packet.frameLength(head) - Packet.HEADER_SIZE);
+                Packet packet = new Packet();
+                packet.deserialize(head);
+                assertEquals(Packet.PACKET_TYPE_PING, packet.getType());
+                entry[0].answered();
+            }
+            entry[0].cancel();
+            wheel.stop();
+        }
+
+        // Assert
+        assertTrue(pings.get() >= 5);
+        assertEquals(0, timeouts.get());
+    }
+    /**
+     * Tests that a client that never answers is reported once after the timeout
+     * SVR-BEAT-002
+     */
+    @Test
+    public void UnansweredPingTimesOut() throws IOException, InterruptedException {
+        // Arrange
+        FileLogger.initLoggerTest();
+        HeartbeatWheel wheel = new HeartbeatWheel(5, 20, 60);
+        BlockingQueue<Socket> timeouts = new ArrayBlockingQueue<>(4);
+        try (ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        Socket client = new Socket(server.getInetAddress(), server.getLocalPort());
+        Socket accepted = server.accept()) {
+            wheel.start();
+            long start = System.currentTimeMillis();
+
+            // Act
+            wheel.register(accepted, new HeartbeatWheel.Listener() {
+                @Override
+                public void onHeartbeat(Socket c) {}
+                @Override
+                public void onTimeout(Socket c) {
+                    timeouts.add(c);
+                }
+            });
+            Socket timedOut = timeouts.poll(5, TimeUnit.SECONDS);
+            long waited = System.currentTimeMillis() - start;
+            Thread.sleep(200);
+            wheel.stop();
+
+            // Assert
+            assertSame(accepted, timedOut);
+            assertTrue(waited >= 60);
+            assertEquals(0, timeouts.size());
+        }
+    }
+    /**
+     * Tests that a client that stops reading only times out itself,
+     * the wheel keeps pinging every other client while a ping to it is stuck
+     * SVR-BEAT-003
+     */
+    @Test
+    public void StalledClientDoesNotBlockWheel() throws IOException, InterruptedException {
+        // Arrange
+        FileLogger.initLoggerTest();
+        HeartbeatWheel wheel = new HeartbeatWheel(5, 20, 200);
+        AtomicInteger pings = new AtomicInteger(0);
+        BlockingQueue<Socket> timeouts = new ArrayBlockingQueue<>(4);
+        HeartbeatWheel.Listener listener = new HeartbeatWheel.Listener() {
+            @Override
+            public void onHeartbeat(Socket c) {
+                pings.incrementAndGet();
+            }
+            @Override
+            public void onTimeout(Socket c) {
+                timeouts.add(c);
+            }
+        };
+        try (ServerSocket server = new ServerSocket(0, 2, InetAddress.getLoopbackAddress());
+        Socket stalled = new Socket(server.getInetAddress(), server.getLocalPort());
+        Socket stalledAccepted = server.accept();
+        Socket healthy = new Socket(server.getInetAddress(), server.getLocalPort());
+        Socket healthyAccepted = server.accept()) {
+
+            // Fill the stalled clients buffers so every later write to it blocks
+            Thread filler = new Thread(() -> {
+                try {
+                    stalledAccepted.getOutputStream().write(new byte[16 * 1024 * 1024]);
+                } catch (IOException e) {
+                    // Closed at the end of the test
+                }
+            });
+            filler.setDaemon(true);
+            filler.start();
+            Thread.sleep(200);
+            wheel.start();
+
+            // Act, the healthy client answers every ping while the stalled one never reads
+            wheel.register(stalledAccepted, listener);
+            HeartbeatWheel.Entry entry = wheel.register(healthyAccepted, listener);
+            InputStream input = healthy.getInputStream();
+            healthy.setSoTimeout(1000);
+            for (int i = 0; i < 5; i++) {
+                byte[] head = input.readNBytes(Packet.HEADER_SIZE);
+                input.readNBytes(Packet.frameLength(head) - Packet.HEADER_SIZE);
+                entry.answered();
+            }
+            Socket timedOut = timeouts.poll(5, TimeUnit.SECONDS);
+            entry.cancel();
+            wheel.stop();
+
+            // Assert
+            assertSame(stalledAccepted, timedOut);
+            assertEquals(0, timeouts.size());
+        }
+
+        // Only the healthy client finished its pings
+        assertTrue(pings.get() >= 5);
+    }
+}
@@ -0,0 +1,56 @@
+package com.belgianwaffles.battleshipserver;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+public class LatencyHistogramTest {
+    /**
+     * Tests that percentiles land within the bucket error of the real values
+     * SVR-HIST-001
+     */
+    @Test
+    public void PercentilesWithinBucketError() {
+        // Arrange
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        // Act, 1 to 100000 once each
+        for (long i = 1; i <= 100_000; i++) {
+            histogram.record(i);
+        }
+
+        // Assert
+        assertEquals(100_000, histogram.getCount());
+        assertEquals(100_000, histogram.getMax());
+        assertEquals(50_000.5, histogram.getMean(), 0.001);
+        long p50 = histogram.percentile(0.50);
+        long p99 = histogram.percentile(0.99);
+        assertTrue(Math.abs(p50 - 50_000) <= 50_000 / 32, "p50 was " + p50);
+        assertTrue(Math.abs(p99 - 99_000) <= 99_000 / 32, "p99 was " + p99);
+        assertEquals(1, histogram.percentile(0.0));
+    }
+    /**
+     * Tests that small values are exact and huge values still have a bucket
+     * SVR-HIST-002
+     */
+    @Test
+    public void SmallValuesExactAndLargeValuesFit() {
+        // Arrange
+        LatencyHistogram histogram = new LatencyHistogram();
+        LatencyHistogram empty = new LatencyHistogram();
+
+        // Act
+        histogram.record(-5);
+        histogram.record(3);
+        histogram.record(63);
+        histogram.record(Long.MAX_VALUE);
+
+        // Assert
+        assertEquals(0, histogram.percentile(0.25));
+        assertEquals(3, histogram.percentile(0.50));
+        assertEquals(63, histogram.percentile(0.75));
+        assertTrue(histogram.percentile(1.0) >= Long.MAX_VALUE / 64 * 63);
+        assertEquals(0, empty.percentile(0.99));
+    }
+}
@@ -0,0 +1,76 @@
+package com.belgianwaffles.battleshipserver;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+public class LogRingTest {
+    /**
+     * Tests that a full ring refuses items and hands them back in order
+     * SVR-RING-001
+     */
+    @Test
+    public void RingFillsAndDrainsInOrder() {
+        // Arrange
+        LogRing<Integer> ring = new LogRing<>(4);
+
+        // Act
+        for (int i = 0; i < 4; i++) {
+            assertTrue(ring.offer(i));
+        }
+        boolean offeredWhenFull = ring.offer(4);
+
+        // Assert
+        assertFalse(offeredWhenFull);
+        for (int i = 0; i < 4; i++) {
+            assertEquals(i, ring.poll());
+        }
+        assertNull(ring.poll());
+    }
+    /**
+     * Tests that items from many producer threads all arrive exactly once
+     * SVR-RING-002
+     */
+    @Test
+    public void ManyProducersSingleConsumer() throws InterruptedException {
+        // Arrange
+        final int producers = 4, perProducer = 10000;
+        LogRing<Integer> ring = new LogRing<>(64);
+        boolean[] seen = new boolean[producers * perProducer];
+        Thread[] threads = new Thread[producers];
+
+        // Act
+        for (int p = 0; p < producers; p++) {
+            int first = p * perProducer;
+            threads[p] = new Thread(() -> {
+                for (int i = 0; i < perProducer; i++) {
+                    while (!ring.offer(first + i)) {
+                        Thread.yield();
+                    }
+                }
+            });
+            threads[p].start();
+        }
+        int received = 0;
+        while (received < seen.length) {
+            Integer item = ring.poll();
+            if (item == null) {
+                Thread.yield();
+                continue;
+            }
+            assertFalse(seen[item]);
+            seen[item] = true;
+            received++;
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        // Assert
+        assertEquals(seen.length, received);
+        assertNull(ring.poll());
+    }
+}
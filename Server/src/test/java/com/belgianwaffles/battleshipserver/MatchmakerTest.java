@@ -0,0 +1,126 @@
+package com.belgianwaffles.battleshipserver;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+public class MatchmakerTest {
+    /**
+     * Tests that live clients are paired in the order they arrived, only within their bucket
+     * SVR-MATCH-001
+     */
+    @Test
+    public void PairsLiveClientsInOrder() throws IOException, InterruptedException {
+        // Arrange
+        BlockingQueue<Socket[]> pairs = new ArrayBlockingQueue<>(4);
+        Matchmaker matchmaker = new Matchmaker((s1, s2) -> pairs.add(new Socket[] { s1, s2 }));
+        try (ServerSocket server = new ServerSocket(0, 8, InetAddress.getLoopbackAddress())) {
+            Socket first = connect(server, true);
+            Socket other = connect(server, true);
+            Socket second = connect(server, true);
+
+            // Act
+            matchmaker.add(first);
+            waitForWaiting(matchmaker, 1);
+            matchmaker.add(other, 1);
+            waitForWaiting(matchmaker, 2);
+            matchmaker.add(second);
+            Socket[] pair = pairs.poll(5, TimeUnit.SECONDS);
+
+            // Assert
+            assertSame(first, pair[0]);
+            assertSame(second, pair[1]);
+            assertEquals(1, matchmaker.waiting());
+        } finally {
+            matchmaker.close();
+        }
+        assertEquals(0, matchmaker.waiting());
+    }
+    /**
+     * Tests that a client that stops answering is dropped and the next client waits instead
+     * SVR-MATCH-002
+     */
+    @Test
+    public void DropsDeadClients() throws IOException, InterruptedException {
+        // Arrange
+        BlockingQueue<Socket[]> pairs = new ArrayBlockingQueue<>(4);
+        Matchmaker matchmaker = new Matchmaker((s1, s2) -> pairs.add(new Socket[] { s1, s2 }));
+        try (ServerSocket server = new ServerSocket(0, 8, InetAddress.getLoopbackAddress())) {
+            Socket silent = connect(server, false);
+            Socket live1 = connect(server, true);
+            Socket live2 = connect(server, true);
+
+            // Act
+            matchmaker.add(silent);
+            matchmaker.add(live1);
+            matchmaker.add(live2);
+            Socket[] pair = pairs.poll(5, TimeUnit.SECONDS);
+
+            // Assert
+            assertTrue(silent.isClosed());
+            assertTrue((pair[0] == live1 && pair[1] == live2) || (pair[0] == live2 && pair[1] == live1));
+            assertEquals(0, matchmaker.waiting());
+        } finally {
+            matchmaker.close();
+        }
+    }
+
+    /**
+     * Connects a client to the server socket and gives back the servers end
+     * @param server the server socket
+     * @param answer true if the client answers pings, false if it closes straight away
+     * @return the servers end of the connection
+     */
+    private static Socket connect(ServerSocket server, boolean answer) throws IOException {
+        Socket client = new Socket(server.getInetAddress(), server.getLocalPort());
+        Socket accepted = server.accept();
+        accepted.setSoTimeout(2000);
+        if (!answer) {
+            client.close();
+            return accepted;
+        }
+
+        // Echo every ping until the connection closes
+        Thread echo = new Thread(() -> {
+            try (client) {
+                InputStream input = client.getInputStream();
+                while (true) {
+                    byte[] head = input.readNBytes(Packet.HEADER_SIZE);
+                    if (head.length < Packet.HEADER_SIZE) {
+                        return;
+                    }
+                    input.readNBytes(Packet.frameLength(head) - Packet.HEADER_SIZE);
+                    client.getOutputStream().write(Packet.sharedPing().getBuffer());
+                }
+            } catch (IOException e) {
+                // Test is over
+            }
+        });
+        echo.setDaemon(true);
+        echo.start();
+        return accepted;
+    }
+
+    /**
+     * Waits until the matchmaker has an amount of clients waiting
+     * @param matchmaker the matchmaker
+     * @param count the amount of waiting clients
+     */
+    private static void waitForWaiting(Matchmaker matchmaker, int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (matchmaker.waiting() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.belgianwaffles.battleshipserver;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.Socket;
+
+import org.junit.jupiter.api.Test;
+
+public class PacketMailboxTest {
+    /**
+     * Tests that packets are only returned for the client and type they arrived as
+     * SVR-MAIL-001
+     */
+    @Test
+    public void PacketsIndexedByClientAndType() throws InterruptedException {
+        // Arrange
+        Socket s1 = new Socket();
+        Socket s2 = new Socket();
+        PacketMailbox mailbox = new PacketMailbox(s1, s2);
+        Packet ping = new Packet();
+        ping.serialize();
+        Packet grid = new Packet();
+        grid.serialize(new Grid());
+
+        // Act
+        mailbox.offer(s1, ping);
+        mailbox.offer(s2, grid);
+
+        // Assert
+        assertNull(mailbox.poll(s1, Packet.PACKET_TYPE_GRID, 0));
+        assertNull(mailbox.poll(s2, Packet.PACKET_TYPE_PING, 0));
+        assertSame(ping, mailbox.poll(s1, Packet.PACKET_TYPE_PING, 0));
+        assertSame(grid, mailbox.take(s2, Packet.PACKET_TYPE_GRID));
+    }
+    /**
+     * Tests that a disconnect wakes a waiting thread and stays disconnected
+     * SVR-MAIL-002
+     */
+    @Test
+    public void DisconnectWakesWaiter() throws InterruptedException {
+        // Arrange
+        Socket s1 = new Socket();
+        Socket s2 = new Socket();
+        PacketMailbox mailbox = new PacketMailbox(s1, s2);
+        Packet[] received = new Packet[1];
+        Thread waiter = new Thread(() -> {
+            try {
+                received[0] = mailbox.take(s1, Packet.PACKET_TYPE_PING);
+            } catch (InterruptedException e) {
+                received[0] = null;
+            }
+        });
+
+        // Act
+        waiter.start();
+        mailbox.offer(s1, null);
+        waiter.join(1000);
+
+        // Assert
+        assertSame(PacketMailbox.DISCONNECTED, received[0]);
+        assertSame(PacketMailbox.DISCONNECTED, mailbox.poll(s1, Packet.PACKET_TYPE_GRID, 0));
+        assertNull(mailbox.poll(s2, Packet.PACKET_TYPE_GRID, 0));
+    }
+    /**
+     * Tests that closing the mailbox ends all waits and unknown clients are rejected
+     * SVR-MAIL-003
+     */
+    @Test
+    public void CloseAndUnknownClient() throws InterruptedException {
+        // Arrange
+        Socket s1 = new Socket();
+        Socket s2 = new Socket();
+        PacketMailbox mailbox = new PacketMailbox(s1, s2);
+
+        // Act
+        mailbox.close();
+
+        // Assert
+        assertSame(PacketMailbox.DISCONNECTED, mailbox.poll(s2, Packet.PACKET_TYPE_PING, 1000));
+        assertFalse(mailbox.offer(new Socket(), new Packet()));
+    }
+    /**
+     * Tests that deltas and asset requests each have their own queue instead of waiting behind grids
+     * SVR-MAIL-004
+     */
+    @Test
+    public void DeltasAndAssetsHaveOwnQueues() throws InterruptedException {
+        // Arrange
+        Socket s1 = new Socket();
+        Socket s2 = new Socket();
+        PacketMailbox mailbox = new PacketMailbox(s1, s2);
+        Packet grid = new Packet();
+        grid.serialize(new Grid());
+        Packet delta = new Packet();
+        delta.serialize(0, 12, (byte)0b00100000);
+        Packet asset = new Packet();
+        asset.serialize(new byte[Packet.ASSET_HASH_SIZE]);
+
+        // Act
+        mailbox.offer(s1, grid);
+        mailbox.offer(s1, delta);
+        mailbox.offer(s1, asset);
+
+        // Assert
+        assertSame(delta, mailbox.peek(s1, Packet.PACKET_TYPE_DELTA));
+        assertSame(delta, mailbox.poll(s1, Packet.PACKET_TYPE_DELTA, 0));
+        assertSame(asset, mailbox.poll(s1, Packet.PACKET_TYPE_ASSET, 0));
+        assertSame(grid, mailbox.poll(s1, Packet.PACKET_TYPE_GRID, 0));
+        assertNull(mailbox.peek(s1, Packet.PACKET_TYPE_GRID));
+    }
+    /**
+     * Tests that a game waiting on the mailbox is woken by either client, and only once for what already came
+     * SVR-MAIL-005
+     */
+    @Test
+    public void EitherClientWakesGame() throws InterruptedException {
+        // Arrange
+        Socket s1 = new Socket();
+        Socket s2 = new Socket();
+        PacketMailbox mailbox = new PacketMailbox(s1, s2);
+        Packet grid = new Packet();
+        grid.serialize(new Grid());
+
+        // Act, assert
+        assertFalse(mailbox.await(0));
+        mailbox.offer(s2, grid);
+        mailbox.offer(s2, grid);
+        assertTrue(mailbox.await(0));
+        assertFalse(mailbox.await(0));
+        mailbox.offer(s1, null);
+        assertTrue(mailbox.await(1000));
+        assertTrue(mailbox.isDisconnected(s1));
+        assertFalse(mailbox.isDisconnected(s2));
+    }
+}
@@ -3,6 +3,7 @@ package com.belgianwaffles.battleshipserver;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.fail;
 
 import org.junit.jupiter.api.Test;
@@ -208,4 +209,58 @@ public class PacketTest {
         assertTrue(winner.hasFlag(Packet.PACKET_FLAG_WINNER));
         assertFalse(loser.hasFlag(Packet.PACKET_FLAG_WINNER));
     }
+    /**
+     * Tests that a received grid packet can be wrapped without copying and still read back
+     * SVR-PKT-009
+     */
+    @Test
+    public void PacketWrapReceivedGrid() {
+        // Arrange
+        Grid grid = new Grid();
+        grid.getCells()[3][4].setShotP1(true);
+        Packet packet = new Packet();
+        packet.serialize(grid);
+        byte[] frame = packet.getBuffer().clone();
+
+        // Act
+        Packet recv = new Packet();
+        recv.wrap(frame);
+
+        // Assert
+        assertSame(frame, recv.getBuffer());
+        assertEquals(frame.length, Packet.frameLength(frame));
+        assertEquals(Packet.PACKET_TYPE_GRID, recv.getType());
+        assertTrue(recv.getGrid().getCells()[3][4].hasShotP1());
+        assertFalse(recv.getGrid().getCells()[4][3].hasShotP1());
+    }
+    /**
+     * Tests that a delta only carries the changed cells and rebuilds the new grid on the old one
+     * SVR-PKT-010
+     */
+    @Test
+    public void PacketDeltaRebuildsGrid() {
+        // Arrange
+        Grid before = new Grid();
+        before.getCells()[1][1].setShipP1(true);
+        Grid after = new Grid(before);
+        after.getCells()[5][2].setShotP1(true);
+        after.getCells()[9][9].setSharkP1(true);
+        Packet packet = new Packet();
+
+        // Act
+        packet.serialize(7, before, after);
+        Packet recv = new Packet();
+        recv.wrap(packet.getBuffer().clone());
+        Grid rebuilt = new Grid(before);
+        boolean applied = recv.applyDelta(rebuilt);
+
+        // Assert
+        assertEquals(Packet.PACKET_TYPE_DELTA, recv.getType());
+        assertEquals(7, recv.getVersion());
+        assertEquals(2, recv.getDeltaCount());
+        assertEquals(52, recv.getDeltaIndex(0));
+        assertTrue(applied);
+        assertEquals(0, rebuilt.checkDifferences(after));
+        assertEquals(Packet.HEADER_SIZE + 6 + Packet.PACKET_TAIL_SIZE, packet.getBuffer().length);
+    }
 }
@@ -0,0 +1,85 @@
+package com.belgianwaffles.battleshipserver;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+public class ServerConfigTest {
+    /**
+     * Tests that no arguments gives the default blocking server
+     * SVR-CFG-001
+     */
+    @Test
+    public void DefaultConfig() {
+        ServerConfig config = ServerConfig.parse(new String[0]);
+        assertEquals(ConnectionManager.DEFAULT_PORT, config.getPort());
+        assertEquals(ConnectionManager.MODE_BLOCKING, config.getMode());
+        assertFalse(config.useVirtualThreads());
+        assertEquals(0, config.getWorkers());
+    }
+    /**
+     * Tests that the mode arguments are read
+     * SVR-CFG-002
+     */
+    @Test
+    public void ParseModeArguments() {
+        ServerConfig config = ServerConfig.parse(new String[] {
+            ServerConfig.ARG_SELECTOR, ServerConfig.ARG_VIRTUAL_THREADS
+        });
+        assertEquals(ConnectionManager.MODE_SELECTOR, config.getMode());
+        assertTrue(config.useVirtualThreads());
+    }
+    /**
+     * Tests that the worker count is read and defaults to one per core
+     * SVR-CFG-003
+     */
+    @Test
+    public void ParseWorkerArgument() {
+        ServerConfig config = ServerConfig.parse(new String[] { ServerConfig.ARG_WORKERS, "4" });
+        assertEquals(4, config.getWorkers());
+
+        config = ServerConfig.parse(new String[] { ServerConfig.ARG_WORKERS, ServerConfig.ARG_SELECTOR });
+        assertEquals(GameScheduler.DEFAULT_WORKERS, config.getWorkers());
+        assertEquals(ConnectionManager.MODE_SELECTOR, config.getMode());
+    }
+    /**
+     * Tests that the fleet pool size and watermark are read, and a size of 0 turns it off
+     * SVR-CFG-004
+     */
+    @Test
+    public void ParseFleetPoolArgument() {
+        ServerConfig config = ServerConfig.parse(new String[0]);
+        assertEquals(FleetPool.DEFAULT_SIZE, config.getFleetPoolSize());
+        assertEquals(FleetPool.DEFAULT_WATERMARK, config.getFleetPoolWatermark());
+
+        config = ServerConfig.parse(new String[] { ServerConfig.ARG_FLEET_POOL, "32", "8" });
+        assertEquals(32, config.getFleetPoolSize());
+        assertEquals(8, config.getFleetPoolWatermark());
+
+        config = ServerConfig.parse(new String[] { ServerConfig.ARG_FLEET_POOL, "0", ServerConfig.ARG_SELECTOR });
+        assertEquals(0, config.getFleetPoolSize());
+        assertEquals(ConnectionManager.MODE_SELECTOR, config.getMode());
+    }
+    /**
+     * Tests that metrics are off by default and the port is optional
+     * SVR-CFG-005
+     */
+    @Test
+    public void ParseMetricsArgument() {
+        assertEquals(0, ServerConfig.parse(new String[0]).getMetricsPort());
+        assertEquals(MetricsServer.DEFAULT_PORT, ServerConfig.parse(new String[] { ServerConfig.ARG_METRICS }).getMetricsPort());
+        assertEquals(9100, ServerConfig.parse(new String[] { ServerConfig.ARG_METRICS, "9100" }).getMetricsPort());
+    }
+    /**
+     * Tests that the journal is off by default and the folder is optional
+     * SVR-CFG-006
+     */
+    @Test
+    public void ParseJournalArgument() {
+        assertEquals(null, ServerConfig.parse(new String[0]).getJournalDirectory());
+        assertEquals(GameJournal.DEFAULT_DIRECTORY, ServerConfig.parse(new String[] { ServerConfig.ARG_JOURNAL, ServerConfig.ARG_SELECTOR }).getJournalDirectory());
+        assertEquals("games", ServerConfig.parse(new String[] { ServerConfig.ARG_JOURNAL, "games" }).getJournalDirectory());
+    }
+}
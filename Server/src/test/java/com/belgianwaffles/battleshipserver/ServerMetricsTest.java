@@ -0,0 +1,76 @@
+package com.belgianwaffles.battleshipserver;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.Socket;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+public class ServerMetricsTest {
+    /**
+     * Tests that packets and clients are counted, clients only once however often they close
+     * SVR-METRIC-001
+     */
+    @Test
+    public void CountsPacketsAndClients() {
+        // Arrange
+        ServerMetrics metrics = ServerMetrics.get();
+        long pingsIn = metrics.getPacketsIn(Packet.PACKET_TYPE_PING);
+        long gridsOut = metrics.getPacketsOut(Packet.PACKET_TYPE_GRID);
+        long bytesOut = metrics.getBytesOut();
+        int clients = metrics.getConnectedClients();
+        Socket client = new Socket();
+
+        // Act
+        ServerMetrics.packetIn(Packet.PACKET_TYPE_PING, 8);
+        ServerMetrics.packetOut(Packet.PACKET_TYPE_GRID, 108);
+        ServerMetrics.packetOut(99, 1);
+        ServerMetrics.clientConnected(client);
+        int connected = metrics.getConnectedClients();
+        ServerMetrics.clientClosed(client);
+        ServerMetrics.clientClosed(client);
+
+        // Assert
+        assertEquals(pingsIn + 1, metrics.getPacketsIn(Packet.PACKET_TYPE_PING));
+        assertEquals(gridsOut + 1, metrics.getPacketsOut(Packet.PACKET_TYPE_GRID));
+        assertEquals(bytesOut + 109, metrics.getBytesOut());
+        assertEquals(clients + 1, connected);
+        assertEquals(clients, metrics.getConnectedClients());
+    }
+    /**
+     * Tests that the endpoint serves the metrics as text
+     * SVR-METRIC-002
+     */
+    @Test
+    public void EndpointServesText() throws IOException {
+        // Arrange
+        ServerMetrics.turnLatency(2_000_000);
+        MetricsServer server = new MetricsServer(0);
+
+        // Act
+        String text;
+        int status;
+        try {
+            HttpURLConnection connection = (HttpURLConnection)URI.create(
+                "http://localhost:" + server.getPort() + MetricsServer.PATH).toURL().openConnection();
+            status = connection.getResponseCode();
+            try (InputStream input = connection.getInputStream()) {
+                text = new String(input.readAllBytes(), StandardCharsets.UTF_8);
+            }
+        } finally {
+            server.close();
+        }
+
+        // Assert
+        assertEquals(200, status);
+        assertTrue(text.contains("battleship_active_games "));
+        assertTrue(text.contains("battleship_packets_in{type=\"ping\"} "));
+        assertTrue(text.contains("battleship_turn_latency_us_max "));
+    }
+}
@@ -0,0 +1,80 @@
+package com.belgianwaffles.battleshipserver;
+
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+public class ShipPlacerTest {
+    /**
+     * Tests that placed fleets stay on the grid, have every ship length and never overlap or touch
+     * SVR-PLACE-001
+     */
+    @Test
+    public void FleetsAreLegal() {
+        // Arrange
+        SplittableRandom rng = new SplittableRandom(42);
+        int fleets = 500;
+
+        for (int f = 0; f < fleets; f++) {
+            // Act
+            Ship[] ships = ShipPlacer.placeFleet(rng);
+            int[][] owner = new int[Grid.GRID_SIZE][Grid.GRID_SIZE];
+
+            // Assert
+            assertEquals(ShipPlacer.FLEET.length, ships.length);
+            for (int i = 0; i < ships.length; i++) {
+                Ship ship = ships[i];
+                int length = (ship.getEndX() - ship.getStartX()) + (ship.getEndY() - ship.getStartY()) + 1;
+                assertEquals(ShipPlacer.FLEET[i], length);
+                assertTrue(ship.getStartX() >= 0 && ship.getStartY() >= 0);
+                assertTrue(ship.getEndX() < Grid.GRID_SIZE && ship.getEndY() < Grid.GRID_SIZE);
+                for (int x = ship.getStartX(); x <= ship.getEndX(); x++) {
+                    for (int y = ship.getStartY(); y <= ship.getEndY(); y++) {
+                        assertEquals(0, owner[x][y]);
+                        owner[x][y] = i + 1;
+                    }
+                }
+            }
+            for (int x = 0; x < Grid.GRID_SIZE; x++) {
+                for (int y = 0; y < Grid.GRID_SIZE; y++) {
+                    if (owner[x][y] == 0) {
+                        continue;
+                    }
+                    if (x + 1 < Grid.GRID_SIZE && owner[x + 1][y] != 0) {
+                        assertEquals(owner[x][y], owner[x + 1][y]);
+                    }
+                    if (y + 1 < Grid.GRID_SIZE && owner[x][y + 1] != 0) {
+                        assertEquals(owner[x][y], owner[x][y + 1]);
+                    }
+                }
+            }
+        }
+    }
+    /**
+     * Tests that every placement is counted and that a seeded generator repeats its fleets
+     * SVR-PLACE-002
+     */
+    @Test
+    public void SeededFleetsRepeat() {
+        // Arrange
+        long seed = 7;
+
+        // Act
+        Ship[] first = ShipPlacer.placeFleet(new SplittableRandom(seed));
+        Ship[] second = ShipPlacer.placeFleet(new SplittableRandom(seed));
+        Ship[] other = ShipPlacer.placeFleet(new SplittableRandom(seed + 1));
+
+        // Assert
+        assertEquals(180, ShipPlacer.placementCount(2));
+        assertEquals(120, ShipPlacer.placementCount(5));
+        boolean same = true;
+        for (int i = 0; i < first.length; i++) {
+            assertEquals(first[i].toString(), second[i].toString());
+            same &= first[i].toString().equals(other[i].toString());
+        }
+        assertFalse(same);
+    }
+}
@@ -0,0 +1,2 @@
+cd ./Benchmarks
+mvn clean package && cd ../Server && java -jar ../Benchmarks/target/benchmarks.jar
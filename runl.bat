@@ -0,0 +1,2 @@
+cd ./LoadGenerator
+mvn clean package && cd ../Server && java -jar ../LoadGenerator/target/loadgenerator.jar
\ No newline at end of file